@@ -0,0 +1,97 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.async.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tc.async.api.Source;
+import com.tc.logging.DefaultLoggerProvider;
+import com.tc.util.concurrent.QueueFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Several producer threads adding to one {@link StageQueueImpl} while a background thread drains it, the way a stage
+ * worker would.  The producers are what is measured; the consumer only has to keep up so that the queue stays in its
+ * steady state rather than filling up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class StageQueueBenchmark {
+
+  @Param({ QueueFactory.LINKED_QUEUE, QueueFactory.RING_BUFFER_QUEUE })
+  public String                    queueType;
+
+  private static final Object      CONTEXT = new Object();
+
+  private StageQueueImpl<Object>   queue;
+  private Thread                   consumer;
+  private volatile boolean         running;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    this.queue = new StageQueueImpl<Object>(1, new QueueFactory<ContextWrapper<Object>>(this.queueType, 16384),
+                                            new DefaultLoggerProvider(), "benchmark", 16384);
+    final Source<ContextWrapper<Object>> source = this.queue.getSource(0);
+    this.running = true;
+    this.consumer = new Thread("StageQueueBenchmark consumer") {
+      @Override
+      public void run() {
+        try {
+          while (StageQueueBenchmark.this.running) {
+            source.poll(10);
+          }
+        } catch (InterruptedException e) {
+          // done
+        }
+      }
+    };
+    this.consumer.setDaemon(true);
+    this.consumer.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    this.running = false;
+    this.consumer.join();
+  }
+
+  @Benchmark
+  public void addSingleThreaded() {
+    this.queue.addSingleThreaded(CONTEXT);
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.tc.bytes.TCByteBuffer;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes a message shaped record (a few primitives, a short string and an opaque payload) through
+ * {@link TCByteBufferOutputStream} and {@link TCByteBufferInputStream}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TCByteBufferStreamBenchmark {
+
+  @Param({ "64", "4096", "262144" })
+  public int          payloadSize;
+
+  private byte[]       payload;
+  private byte[]       readBuffer;
+  private TCByteBuffer[] encoded;
+
+  @Setup
+  public void setup() {
+    this.payload = new byte[this.payloadSize];
+    new Random(0).nextBytes(this.payload);
+    this.readBuffer = new byte[this.payloadSize];
+    TCByteBufferOutputStream out = new TCByteBufferOutputStream();
+    write(out);
+    this.encoded = out.toArray();
+  }
+
+  @Benchmark
+  public int encode() {
+    TCByteBufferOutputStream out = new TCByteBufferOutputStream();
+    write(out);
+    TCByteBuffer[] buffers = out.toArray();
+    int length = out.getBytesWritten() + buffers.length;
+    out.recycle();
+    return length;
+  }
+
+  @Benchmark
+  public void decode(Blackhole bh) throws IOException {
+    TCByteBufferInputStream in = new TCByteBufferInputStream(this.encoded);
+    bh.consume(in.readLong());
+    bh.consume(in.readInt());
+    bh.consume(in.readBoolean());
+    bh.consume(in.readString());
+    int length = in.readInt();
+    bh.consume(in.read(this.readBuffer, 0, length));
+    in.close();
+  }
+
+  private void write(TCByteBufferOutputStream out) {
+    out.writeLong(42L);
+    out.writeInt(7);
+    out.writeBoolean(true);
+    out.writeString("org.terracotta.benchmark.Entity");
+    out.writeInt(this.payload.length);
+    out.write(this.payload);
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One message written over a loopback socket, either copied through the {@link ClearTextBufferManager} send buffer or
+ * handed to the socket in a single gathering write.  A background thread drains the other end.  Run with
+ * <code>-prof gc</code> to compare the bytes each path allocates per message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GatheringWriteBenchmark {
+
+  private static final int       HEADER_LENGTH = 32;
+
+  @Param({ "4", "16" })
+  public int                     payloadBuffers;
+
+  @Param({ "4096" })
+  public int                     payloadBufferSize;
+
+  private ServerSocketChannel    server;
+  private SocketChannel          client;
+  private SocketChannel          accepted;
+  private Thread                 drain;
+  private ClearTextBufferManager manager;
+  private TCByteBuffer[]         message;
+  private ByteBuffer[]           srcs;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    this.message = new TCByteBuffer[this.payloadBuffers + 1];
+    this.message[0] = TCByteBufferFactory.getInstance(false, HEADER_LENGTH);
+    for (int i = 1; i < this.message.length; i++) {
+      this.message[i] = TCByteBufferFactory.getInstance(false, this.payloadBufferSize);
+    }
+    this.srcs = new ByteBuffer[this.message.length];
+
+    this.server = ServerSocketChannel.open();
+    this.server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    this.client = SocketChannel.open(this.server.socket().getLocalSocketAddress());
+    this.accepted = this.server.accept();
+    final SocketChannel sinkChannel = this.accepted;
+    this.drain = new Thread("GatheringWriteBenchmark drain") {
+      @Override
+      public void run() {
+        ByteBuffer sink = ByteBuffer.allocateDirect(256 * 1024);
+        try {
+          while (sinkChannel.read(sink) >= 0) {
+            sink.clear();
+          }
+        } catch (IOException e) {
+          // closed
+        }
+      }
+    };
+    this.drain.start();
+    this.manager = new ClearTextBufferManager(this.client);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    this.client.close();
+    this.drain.join();
+    this.accepted.close();
+    this.server.close();
+  }
+
+  @Benchmark
+  public long copying() throws IOException {
+    long written = 0;
+    for (ByteBuffer src : views()) {
+      while (src.hasRemaining()) {
+        if (this.manager.forwardToWriteBuffer(src) == 0) {
+          written += this.manager.sendFromBuffer();
+        }
+      }
+    }
+    int sent;
+    while ((sent = this.manager.sendFromBuffer()) > 0) {
+      written += sent;
+    }
+    return written;
+  }
+
+  @Benchmark
+  public long gathering() throws IOException {
+    ByteBuffer[] views = views();
+    long written = 0;
+    while (views[views.length - 1].hasRemaining()) {
+      written += this.manager.sendFromBuffers(views, 0, views.length);
+    }
+    return written;
+  }
+
+  private ByteBuffer[] views() {
+    // views over the original buffers, exactly what TCConnectionImpl.WriteContext does when packup is off
+    for (int i = 0; i < this.message.length; i++) {
+      this.srcs[i] = this.message[i].duplicate().rewind().asReadOnlyBuffer().getNioBuffer();
+    }
+    return this.srcs;
+  }
+}
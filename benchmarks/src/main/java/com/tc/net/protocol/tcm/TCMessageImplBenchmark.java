@@ -0,0 +1,103 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.tcm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.entity.NetworkVoltronEntityMessageImpl;
+import com.tc.entity.VoltronEntityMessage;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.ClientID;
+import com.tc.object.ClientInstanceID;
+import com.tc.object.EntityDescriptor;
+import com.tc.object.FetchID;
+import com.tc.object.session.SessionID;
+import com.tc.object.tx.TransactionID;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dehydrates and hydrates the entity invoke message, the most common {@link TCMessageImpl} on the wire.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TCMessageImplBenchmark {
+
+  @Param({ "16", "1024", "65536" })
+  public int                         payloadSize;
+
+  private final MessageMonitor       monitor    = new NullMessageMonitor();
+  private final ClientID             clientID   = new ClientID(1);
+  private final EntityDescriptor     descriptor = EntityDescriptor.createDescriptorForInvoke(new FetchID(1), new ClientInstanceID(1));
+  private byte[]                     payload;
+  private long                       nextTransaction;
+  private TCMessageHeader            header;
+  private TCByteBuffer[]             encoded;
+
+  @Setup
+  public void setup() {
+    this.payload = new byte[this.payloadSize];
+    new Random(0).nextBytes(this.payload);
+    NetworkVoltronEntityMessageImpl message = newInvoke();
+    message.dehydrate();
+    this.header = (TCMessageHeader) message.getHeader();
+    this.encoded = message.getPayload();
+  }
+
+  @Benchmark
+  public int dehydrate() {
+    NetworkVoltronEntityMessageImpl message = newInvoke();
+    message.dehydrate();
+    int length = message.getTotalLength();
+    message.doRecycleOnWrite();
+    return length;
+  }
+
+  @Benchmark
+  public Object hydrate() throws IOException, UnknownNameException {
+    NetworkVoltronEntityMessageImpl message = new NetworkVoltronEntityMessageImpl(SessionID.NULL_ID, this.monitor, null, this.header, this.encoded);
+    message.hydrate();
+    return message.getExtendedData();
+  }
+
+  private NetworkVoltronEntityMessageImpl newInvoke() {
+    NetworkVoltronEntityMessageImpl message = new NetworkVoltronEntityMessageImpl(new SessionID(0), this.monitor, new TCByteBufferOutputStream(4, 4096, false), null, TCMessageType.VOLTRON_ENTITY_MESSAGE);
+    TransactionID transactionID = new TransactionID(++this.nextTransaction);
+    message.setContents(this.clientID, transactionID, this.descriptor, VoltronEntityMessage.Type.INVOKE_ACTION, false, this.payload, transactionID, EnumSet.of(VoltronEntityMessage.Acks.RECEIVED));
+    return message;
+  }
+}
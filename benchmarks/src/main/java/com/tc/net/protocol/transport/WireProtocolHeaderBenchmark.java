@@ -0,0 +1,74 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.transport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Adler32 header checksum, computed for every message sent and verified for every message received.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireProtocolHeaderBenchmark {
+
+  private WireProtocolHeader header;
+  private int                length;
+
+  @Setup
+  public void setup() {
+    this.header = new WireProtocolHeader();
+    this.header.setProtocol(WireProtocolHeader.PROTOCOL_TCM);
+    this.header.setSourceAddress(new byte[] { 10, 0, 0, 1 });
+    this.header.setDestinationAddress(new byte[] { 10, 0, 0, 2 });
+    this.header.setSourcePort(51234);
+    this.header.setDestinationPort(9510);
+    this.header.setMessageCount(1);
+    this.header.setTotalPacketLength(this.header.getHeaderByteLength() + 1024);
+    this.header.computeChecksum();
+  }
+
+  @Benchmark
+  public long computeChecksum() {
+    // vary a covered field so the computation can't be hoisted out of the loop
+    this.length = (this.length + 1) & 0xFFFF;
+    this.header.setTotalPacketLength(this.header.getHeaderByteLength() + this.length);
+    this.header.computeChecksum();
+    return this.header.getChecksum();
+  }
+
+  @Benchmark
+  public boolean isChecksumValid() {
+    return this.header.isChecksumValid();
+  }
+}
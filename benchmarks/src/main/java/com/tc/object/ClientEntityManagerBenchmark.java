@@ -0,0 +1,171 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.object;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tc.entity.NetworkVoltronEntityMessageImpl;
+import com.tc.entity.VoltronEntityMessage;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.ClientID;
+import com.tc.net.protocol.TCNetworkMessage;
+import com.tc.net.protocol.tcm.ClientMessageChannel;
+import com.tc.net.protocol.tcm.MessageChannel;
+import com.tc.net.protocol.tcm.MessageMonitor;
+import com.tc.net.protocol.tcm.NullMessageMonitor;
+import com.tc.net.protocol.tcm.TCMessageHeader;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.object.session.SessionID;
+import com.tc.object.tx.TransactionID;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invoke round trips through {@link ClientEntityManagerImpl} over an in-process transport.
+ * <p>
+ * The channel dehydrates each invoke as it would for the wire and a loopback server thread hydrates it and answers
+ * with received, complete (echoing the payload) and retired, so the client side runs its real send, ack and
+ * completion paths.  Everything below the channel (the network stack and the server) is left out.  Run with
+ * <code>-t</code> to see how the invoke path behaves with concurrent callers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientEntityManagerBenchmark {
+
+  @Param({ "64", "4096" })
+  public int                                payloadSize;
+
+  @Param({ "none", "received" })
+  public String                             acks;
+
+  private final MessageMonitor              monitor    = new NullMessageMonitor();
+  private final EntityDescriptor            descriptor = EntityDescriptor.createDescriptorForInvoke(new FetchID(1), new ClientInstanceID(1));
+  private ClientEntityManagerImpl           manager;
+  private Set<VoltronEntityMessage.Acks>    requestedAcks;
+  private byte[]                            payload;
+  private LoopbackServer                    server;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    this.payload = new byte[this.payloadSize];
+    this.requestedAcks = "received".equals(this.acks) ? EnumSet.of(VoltronEntityMessage.Acks.RECEIVED) : EnumSet.noneOf(VoltronEntityMessage.Acks.class);
+    this.server = new LoopbackServer();
+    ClientMessageChannel channel = (ClientMessageChannel) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ClientMessageChannel.class }, new LoopbackChannel(this.server));
+    // The stage manager is only needed for reconnect handshakes.
+    this.manager = new ClientEntityManagerImpl(channel, null);
+    this.server.manager = this.manager;
+    this.server.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    this.server.interrupt();
+    this.server.join();
+  }
+
+  @Benchmark
+  public byte[] invoke() throws Exception {
+    return this.manager.invokeAction(this.descriptor, this.requestedAcks, false, false, this.payload).get();
+  }
+
+  /**
+   * Plays the server: acks and completes each hydrated invoke on its own thread, as the network threads would.
+   */
+  private static class LoopbackServer extends Thread {
+    private final BlockingQueue<NetworkVoltronEntityMessageImpl> inbound = new LinkedBlockingQueue<NetworkVoltronEntityMessageImpl>();
+    private volatile ClientEntityManagerImpl manager;
+
+    LoopbackServer() {
+      super("ClientEntityManagerBenchmark server");
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          NetworkVoltronEntityMessageImpl message = this.inbound.take();
+          TransactionID id = message.getTransactionID();
+          this.manager.received(id);
+          this.manager.complete(id, message.getExtendedData());
+          this.manager.retired(id);
+        }
+      } catch (InterruptedException e) {
+        // shutting down
+      }
+    }
+  }
+
+  private class LoopbackChannel implements InvocationHandler {
+    private final LoopbackServer server;
+    private final ClientID       clientID = new ClientID(1);
+
+    LoopbackChannel(LoopbackServer server) {
+      this.server = server;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if ("createMessage".equals(name)) {
+        return new NetworkVoltronEntityMessageImpl(new SessionID(0), monitor, new TCByteBufferOutputStream(4, 4096, false), (MessageChannel) proxy, (TCMessageType) args[0]);
+      } else if ("send".equals(name)) {
+        TCNetworkMessage sent = (TCNetworkMessage) args[0];
+        NetworkVoltronEntityMessageImpl received = new NetworkVoltronEntityMessageImpl(SessionID.NULL_ID, monitor, null, (TCMessageHeader) sent.getHeader(), sent.getPayload());
+        received.hydrate();
+        this.server.inbound.put(received);
+        return null;
+      } else if ("getClientID".equals(name)) {
+        return this.clientID;
+      } else if ("isOpen".equals(name) || "isConnected".equals(name)) {
+        return Boolean.TRUE;
+      } else if ("hashCode".equals(name)) {
+        return System.identityHashCode(proxy);
+      } else if ("equals".equals(name)) {
+        return proxy == args[0];
+      } else if ("toString".equals(name)) {
+        return "LoopbackChannel";
+      }
+      throw new UnsupportedOperationException(name);
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tc.object.ObjectID;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link BitSetObjectIDSet} and {@link ExpandingBitSetObjectIDSet} on densely allocated IDs (consecutive, as
+ * the server hands them out) and on sparse ones (what remains after most objects have gone away).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectIDSetBenchmark {
+
+  private static final int SIZE = 1 << 16;
+
+  @Param({ "bitset", "expanding" })
+  public String          implementation;
+
+  @Param({ "dense", "sparse" })
+  public String          distribution;
+
+  private ObjectID[]     members;
+  private ObjectID[]     probes;
+  private ObjectID[]     extras;
+  private ObjectIDSet    set;
+  private int            next;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(0);
+    boolean dense = "dense".equals(this.distribution);
+    this.members = new ObjectID[SIZE];
+    this.extras = new ObjectID[SIZE];
+    long id = 0;
+    for (int i = 0; i < SIZE; ++i) {
+      id += dense ? 1 : 2 + random.nextInt(1000);
+      this.members[i] = new ObjectID(id);
+      // never members: dense extras are the next IDs to be allocated, sparse ones fall in the gaps
+      this.extras[i] = new ObjectID(dense ? SIZE + id : id + 1);
+    }
+    this.set = newSet();
+    for (ObjectID member : this.members) {
+      this.set.add(member);
+    }
+    // half hits, half misses, in random order
+    this.probes = new ObjectID[SIZE];
+    for (int i = 0; i < SIZE; ++i) {
+      this.probes[i] = random.nextBoolean() ? this.members[random.nextInt(SIZE)] : this.extras[random.nextInt(SIZE)];
+    }
+  }
+
+  @Benchmark
+  public boolean contains() {
+    return this.set.contains(this.probes[nextIndex()]);
+  }
+
+  @Benchmark
+  public boolean addRemove() {
+    ObjectID extra = this.extras[nextIndex()];
+    return this.set.add(extra) & this.set.remove(extra);
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int populate() {
+    ObjectIDSet fresh = newSet();
+    for (ObjectID member : this.members) {
+      fresh.add(member);
+    }
+    return fresh.size();
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public long iterate() {
+    long sum = 0;
+    for (ObjectID member : this.set) {
+      sum += member.toLong();
+    }
+    return sum;
+  }
+
+  private int nextIndex() {
+    this.next = (this.next + 1) & (SIZE - 1);
+    return this.next;
+  }
+
+  private ObjectIDSet newSet() {
+    return "bitset".equals(this.implementation) ? new BitSetObjectIDSet() : new ExpandingBitSetObjectIDSet();
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.async.api;
+
+/**
+ * Marker for event handlers that would rather see their events in batches. When a stage is created with a handler
+ * implementing this interface, each worker thread drains whatever has accumulated in its queue (up to
+ * <code>seda.&lt;stage name&gt;.batchsize</code>, or <code>tc.stage.batch.maxsize</code> when not set per stage) and
+ * passes it to {@link #handleEvents(java.util.Collection)} in a single call, in queue order.
+ * <p>
+ * Specialized contexts in the queue are not part of any batch: the events ahead of one are handled before it executes
+ * and the events behind it go into the next batch. Handlers that only implement {@link EventHandler} keep receiving one
+ * event at a time through {@link #handleEvent(Object)}.
+ */
+public interface BatchEventHandler<EC> extends EventHandler<EC> {
+  // marker only, handleEvents(Collection) is the batch entry point
+}
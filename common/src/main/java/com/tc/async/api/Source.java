@@ -18,6 +18,8 @@
  */
 package com.tc.async.api;
 
+import java.util.Collection;
+
 /**
  * This is used by the internals to manage the process of processing EventContexts in the manner that makes sense for
  * each one. Individual Stages SHOULD NOT HAVE TO EITHER USE OR IMPLEMENT THIS INTERFACE
@@ -28,6 +30,14 @@ public interface Source<EC> {
 
   public EC poll(long period) throws InterruptedException;
 
+  /**
+   * Removes up to <code>maxElements</code> contexts that are immediately available, without waiting, and adds them to
+   * the given collection in queue order.
+   *
+   * @return the number of contexts added
+   */
+  public int drainTo(Collection<? super EC> c, int maxElements);
+
   public String getSourceName();
 
   public boolean isEmpty();
@@ -18,6 +18,7 @@
  */
 package com.tc.async.api;
 
+import com.tc.stats.LatencyHistogram;
 import com.tc.stats.Stats;
 
 public interface StageQueueStats extends Stats {
@@ -25,4 +26,16 @@ public interface StageQueueStats extends Stats {
   String getName();
 
   int getDepth();
+
+  /**
+   * Nanoseconds contexts spent queued before a worker picked them up, <code>null</code> unless stage latency tracking
+   * is enabled.
+   */
+  LatencyHistogram getQueueWaitHistogram();
+
+  /**
+   * Nanoseconds spent in the handler per context (per batch for batching stages), <code>null</code> unless stage
+   * latency tracking is enabled.
+   */
+  LatencyHistogram getHandlerHistogram();
 }
@@ -0,0 +1,102 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.async.impl;
+
+import com.tc.async.api.ConfigurationContext;
+import com.tc.async.api.EventHandler;
+import com.tc.async.api.EventHandlerException;
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Per worker stand-in for a batching stage's handler. The queued {@link ContextWrapper}s of one drained batch run
+ * against this collector, which gathers the events and hands them to the real handler in one
+ * {@link EventHandler#handleEvents(Collection)} call. Wrappers that must not be reordered with the events around them
+ * call {@link #dispatch()} first.
+ * <p>
+ * A batch whose {@link EventHandler#handleEvents(Collection)} throws is dropped as a whole and the exception rethrown,
+ * just as a single event is when {@link EventHandler#handleEvent(Object)} throws in an unbatched stage.
+ */
+class BatchCollector<EC> implements EventHandler<EC> {
+  private static final TCLogger  logger = TCLogging.getLogger(BatchCollector.class);
+  private final EventHandler<EC> delegate;
+  private final List<EC>         pending;
+
+  BatchCollector(EventHandler<EC> delegate, int maxBatchSize) {
+    this.delegate = delegate;
+    this.pending = new ArrayList<EC>(maxBatchSize);
+  }
+
+  @Override
+  public void handleEvent(EC context) {
+    this.pending.add(context);
+  }
+
+  @Override
+  public void handleEvents(Collection<EC> contexts) {
+    this.pending.addAll(contexts);
+  }
+
+  /**
+   * Hands everything collected so far to the real handler.
+   */
+  void dispatch() throws EventHandlerException {
+    if (this.pending.isEmpty()) { return; }
+    try {
+      if (this.pending.size() == 1) {
+        this.delegate.handleEvent(this.pending.get(0));
+      } else {
+        this.delegate.handleEvents(this.pending);
+      }
+    } catch (EventHandlerException e) {
+      logFailedBatch(e);
+      throw e;
+    } catch (RuntimeException e) {
+      logFailedBatch(e);
+      throw e;
+    } finally {
+      this.pending.clear();
+    }
+  }
+
+  private void logFailedBatch(Exception e) {
+    logger.warn("Handler failed on a batch of " + this.pending.size() + " events, none of them will be retried: " + e);
+  }
+
+  /**
+   * Drops anything collected but not yet dispatched, used when a batch is abandoned because of an exception.
+   */
+  void reset() {
+    this.pending.clear();
+  }
+
+  @Override
+  public void initializeContext(ConfigurationContext context) {
+    this.delegate.initializeContext(context);
+  }
+
+  @Override
+  public void destroy() {
+    this.delegate.destroy();
+  }
+}
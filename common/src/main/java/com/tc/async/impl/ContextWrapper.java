@@ -27,4 +27,12 @@ import com.tc.async.api.EventHandlerException;
    */
 public interface ContextWrapper<EC> {
   public void runWithHandler(EventHandler<EC> handler) throws EventHandlerException;
+
+  /**
+   * Stamps the {@link System#nanoTime()} at which the wrapper was put on a stage queue. Only set while stage latency
+   * tracking is enabled, otherwise it stays 0.
+   */
+  public void setEnqueueTime(long nanoTime);
+
+  public long getEnqueueTime();
 }
@@ -18,6 +18,7 @@
  */
 package com.tc.async.impl;
 
+import com.tc.async.api.BatchEventHandler;
 import com.tc.async.api.ConfigurationContext;
 import com.tc.async.api.EventHandler;
 import com.tc.async.api.EventHandlerException;
@@ -28,11 +29,15 @@ import com.tc.exception.TCNotRunningException;
 import com.tc.exception.TCRuntimeException;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLoggerProvider;
+import com.tc.properties.TCPropertiesConsts;
 import com.tc.properties.TCPropertiesImpl;
 import com.tc.text.PrettyPrinter;
 import com.tc.util.concurrent.QueueFactory;
 import com.tc.util.concurrent.ThreadUtil;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * The SEDA Stage
  */
@@ -47,6 +52,7 @@ public class StageImpl<EC> implements Stage<EC> {
   private final TCLogger       logger;
   private final int            sleepMs;
   private final boolean        pausable;
+  private final int            batchSize;
 
   private volatile boolean     paused;
   private volatile boolean     shutdown = true;
@@ -79,6 +85,12 @@ public class StageImpl<EC> implements Stage<EC> {
     if (this.pausable) {
       logger.warn("Stage pausing is enabled for stage " + name);
     }
+    if (handler instanceof BatchEventHandler) {
+      int defaultBatchSize = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.TC_STAGE_BATCH_MAXSIZE, 64);
+      this.batchSize = Math.max(1, TCPropertiesImpl.getProperties().getInt("seda." + name + ".batchsize", defaultBatchSize));
+    } else {
+      this.batchSize = 1;
+    }
   }
 
   @Override
@@ -124,7 +136,7 @@ public class StageImpl<EC> implements Stage<EC> {
       } else {
         threadName = threadName + ")";
       }
-      threads[i] = new WorkerThread<EC>(threadName, this.stageQueue.getSource(i), handler, group, logger, sleepMs, pausable, name);
+      threads[i] = new WorkerThread<EC>(threadName, this.stageQueue.getSource(i), handler, group, logger, sleepMs, pausable, name, batchSize, i);
       threads[i].start();
     }
   }
@@ -157,8 +169,12 @@ public class StageImpl<EC> implements Stage<EC> {
     private final int          sleepMs;
     private final boolean      pausable;
     private final String       stageName;
+    private final int          batchSize;
+    private final List<ContextWrapper<EC>> batch;
+    private final BatchCollector<EC> collector;
+    private final int          queueIndex;
 
-    public WorkerThread(String name, Source<ContextWrapper<EC>> source, EventHandler<EC> handler, ThreadGroup group, TCLogger logger, int sleepMs, boolean pausable, String stageName) {
+    public WorkerThread(String name, Source<ContextWrapper<EC>> source, EventHandler<EC> handler, ThreadGroup group, TCLogger logger, int sleepMs, boolean pausable, String stageName, int batchSize, int queueIndex) {
       super(group, name);
       tcLogger = logger;
       setDaemon(true);
@@ -167,6 +183,15 @@ public class StageImpl<EC> implements Stage<EC> {
       this.sleepMs = sleepMs;
       this.pausable = pausable;
       this.stageName = stageName;
+      this.batchSize = batchSize;
+      this.queueIndex = queueIndex;
+      if (batchSize > 1) {
+        this.batch = new ArrayList<ContextWrapper<EC>>(batchSize);
+        this.collector = new BatchCollector<EC>(handler, batchSize);
+      } else {
+        this.batch = null;
+        this.collector = null;
+      }
     }
 
     private void handleStageDebugPauses() {
@@ -189,7 +214,16 @@ public class StageImpl<EC> implements Stage<EC> {
           ctxt = source.poll(pollTime);
           if (ctxt != null) {
             handleStageDebugPauses();
-            ctxt.runWithHandler(handler);
+            final boolean timed = stageQueue.isLatencyTracked(queueIndex);
+            final long start = timed ? System.nanoTime() : 0;
+            if (collector == null) {
+              ctxt.runWithHandler(handler);
+            } else {
+              runBatch(ctxt);
+            }
+            if (timed) {
+              stageQueue.recordHandlerTime(queueIndex, System.nanoTime() - start);
+            }
           }
         } catch (InterruptedException ie) {
           if (shutdown) { continue; }
@@ -210,6 +244,48 @@ public class StageImpl<EC> implements Stage<EC> {
           // to the context will exist until another context comes in. This can potentially keep many objects in memory
           // longer than necessary
           ctxt = null;
+          if (batch != null) {
+            batch.clear();
+            collector.reset();
+          }
+        }
+      }
+    }
+
+    /**
+     * Runs the polled context together with whatever else is already waiting in this worker's queue. Handled contexts
+     * are collected and passed to the handler as one batch, specialized contexts dispatch the collected events before
+     * they execute so queue order is kept.
+     */
+    private void runBatch(ContextWrapper<EC> first) throws EventHandlerException {
+      batch.add(first);
+      source.drainTo(batch, batchSize - 1);
+      int next = 0;
+      try {
+        while (next < batch.size()) {
+          batch.get(next++).runWithHandler(collector);
+        }
+        collector.dispatch();
+      } catch (EventHandlerException e) {
+        runRemaining(next, e);
+        throw e;
+      } catch (RuntimeException e) {
+        runRemaining(next, e);
+        throw e;
+      }
+    }
+
+    /**
+     * The contexts drained behind a failed batch were never handed to the handler. They are delivered one at a time,
+     * as they would have been without batching, so only the failed batch is lost.
+     */
+    private void runRemaining(int from, Exception failure) {
+      collector.reset();
+      for (int i = from; i < batch.size(); i++) {
+        try {
+          batch.get(i).runWithHandler(handler);
+        } catch (Exception e) {
+          failure.addSuppressed(e);
         }
       }
     }
@@ -50,6 +50,8 @@ public class StageManagerImpl implements StageManager {
                                                      .getBoolean(TCPropertiesConsts.TC_STAGE_MONITOR_ENABLED);
   private static final long        MONITOR_DELAY = TCPropertiesImpl.getProperties()
                                                      .getLong(TCPropertiesConsts.TC_STAGE_MONITOR_DELAY);
+  private static final boolean     LATENCY       = TCPropertiesImpl.getProperties()
+                                                     .getBoolean(TCPropertiesConsts.TC_STAGE_MONITOR_LATENCY_ENABLED, false);
 
   private final Map<String, Stage<?>>   stages        = new ConcurrentHashMap<String, Stage<?>>();
   private final Map<String, Class<?>> classVerifications = new ConcurrentHashMap<String, Class<?>>();
@@ -121,7 +123,7 @@ public class StageManagerImpl implements StageManager {
   private synchronized <EC> void addStage(String name, Stage<EC> s) {
     Object prev = stages.put(name, s);
     Assert.assertNull(prev);
-    s.getSink().enableStatsCollection(MONITOR);
+    s.getSink().enableStatsCollection(MONITOR || LATENCY);
     stageNames = stages.keySet().toArray(new String[stages.size()]);
     Arrays.sort(stageNames);
   }
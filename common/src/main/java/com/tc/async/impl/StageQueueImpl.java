@@ -28,12 +28,20 @@ import com.tc.async.api.StageQueueStats;
 import com.tc.exception.TCRuntimeException;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLoggerProvider;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+import com.tc.stats.LatencyHistogram;
 import com.tc.stats.Stats;
 import com.tc.util.Assert;
 import com.tc.util.concurrent.QueueFactory;
+import com.tc.util.concurrent.RingBufferBlockingQueue;
+import java.util.Collection;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Predicate;
 
 /**
  * This StageQueueImpl represents the sink and gives a handle to the source. We are internally justun using a queue
@@ -42,11 +50,19 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class StageQueueImpl<EC> implements Sink<EC> {
 
+  private static final boolean    TRACK_LATENCY = TCPropertiesImpl.getProperties()
+                                                    .getBoolean(TCPropertiesConsts.TC_STAGE_MONITOR_LATENCY_ENABLED, false);
+
   private final String            stageName;
   private final TCLogger          logger;
   private final SourceQueueImpl<ContextWrapper<EC>>[] sourceQueues;
   private volatile boolean closed = false;
   private volatile int fcheck = 0;  // used to start the shortest queue search
+  // set when the queues are ring buffers, unkeyed contexts are then handed to idle workers or stolen by them
+  private boolean workStealing = false;
+  private AtomicIntegerArray idleWorkers;
+  // stealing is suspended while a flush travels through the queues so it still runs after everything ahead of it
+  private final AtomicInteger flushesInFlight = new AtomicInteger();
   /**
    * The Constructor.
    * 
@@ -75,10 +91,20 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     }
     Assert.eval(queueSize > 0);
 
+    boolean stealable = queueCount > 1;
     for (int i = 0; i < queueCount; i++) {
       q = queueFactory.createInstance(queueSize);
+      stealable &= q instanceof RingBufferBlockingQueue;
       this.sourceQueues[i] = new SourceQueueImpl<ContextWrapper<EC>>(q, i, statsCollector);
     }
+    if (queueSize == Integer.MAX_VALUE && q instanceof RingBufferBlockingQueue) {
+      this.logger.info("Stage " + stage + " is unbounded but its ring buffer queues hold at most "
+                       + ((RingBufferBlockingQueue<?>) q).capacity() + " contexts each, senders block once one is full");
+    }
+    if (stealable) {
+      this.idleWorkers = new AtomicIntegerArray(queueCount);
+      this.workStealing = true;
+    }
   }
 
   public Source<ContextWrapper<EC>> getSource(int index) {
@@ -135,7 +161,17 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     boolean interrupted = Thread.interrupted();
     MultiThreadedEventContext cxt = (MultiThreadedEventContext)context;
     int index = getSourceQueueFor(cxt);
-    ContextWrapper<EC> wrapper = (cxt.flush()) ? new FlushingHandledContext(context, index) : new HandledContext<EC>(context);
+    ContextWrapper<EC> wrapper;
+    if (cxt.flush()) {
+      if (workStealing) {
+        flushesInFlight.incrementAndGet();
+      }
+      wrapper = new FlushingHandledContext(context, index);
+    } else if (cxt.getSchedulingKey() == null) {
+      wrapper = new UnorderedHandledContext<EC>(context);
+    } else {
+      wrapper = new HandledContext<EC>(context);
+    }
     try {
       while (true) {
         try {
@@ -158,7 +194,8 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     if (closed) {
       throw new IllegalStateException("closed");
     }
-    ContextWrapper<EC> wrapper = new DirectExecuteContext<EC>(specialized);
+    ContextWrapper<EC> wrapper = (specialized.getSchedulingKey() == null) ? new UnorderedDirectExecuteContext<EC>(specialized)
+        : new DirectExecuteContext<EC>(specialized);
     boolean interrupted = Thread.interrupted();
     int index = getSourceQueueFor(specialized);
     try {
@@ -201,10 +238,45 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     return can;
   }
 
+  /**
+   * Work stealing placement for unkeyed contexts. Claims an idle worker if there is one so it wakes up with the
+   * context, otherwise picks a random queue and relies on the other workers to steal from it once they run dry. Only
+   * the idle flags are read, never the queue sizes.
+   */
+  private int findIdleQueueIndex() {
+    final int length = this.sourceQueues.length;
+    final int start = ThreadLocalRandom.current().nextInt(length);
+    for (int x = 0; x < length; x++) {
+      int index = (start + x) % length;
+      if (this.idleWorkers.get(index) != 0 && this.idleWorkers.compareAndSet(index, 1, 0)) {
+        return index;
+      }
+    }
+    return start;
+  }
+
+  /**
+   * Takes the head of another worker's queue if it carries no ordering requirement.  Keyed contexts are never stolen
+   * so per-key ordering is the same as with the blocking queues.
+   */
+  private ContextWrapper<EC> steal(int thief) {
+    if (this.flushesInFlight.get() > 0) {
+      return null;
+    }
+    final int length = this.sourceQueues.length;
+    for (int x = 1; x < length; x++) {
+      ContextWrapper<EC> stolen = this.sourceQueues[(thief + x) % length].stealUnordered();
+      if (stolen != null) {
+        return stolen;
+      }
+    }
+    return null;
+  }
+
   private int getSourceQueueFor(MultiThreadedEventContext context) {
     Object schedulingKey = context.getSchedulingKey();
     if (null == schedulingKey) {
-      return findShortestQueueIndex();
+      return (workStealing) ? findIdleQueueIndex() : findShortestQueueIndex();
     } else {
       int index = hashCodeToArrayIndex(schedulingKey.hashCode(), this.sourceQueues.length);
       return index;
@@ -247,22 +319,36 @@ public class StageQueueImpl<EC> implements Sink<EC> {
   @Override
   public void enableStatsCollection(boolean enable) {
     StageQueueStatsCollector collector = null;
+    // latency histograms are per stage, shared by all of its queues
+    LatencyHistogram queueWait = (enable && TRACK_LATENCY) ? new LatencyHistogram() : null;
+    LatencyHistogram handlerTime = (enable && TRACK_LATENCY) ? new LatencyHistogram() : null;
     for (SourceQueueImpl<ContextWrapper<EC>> src : this.sourceQueues) {
       String name = this.stageName + "[" + src.getSourceName() + "]";
       if (collector == null || !collector.getName().equals(name)) {
-        collector = (enable) ? new StageQueueStatsCollectorImpl(name) : new NullStageQueueStatsCollector(name);
+        collector = (enable) ? new StageQueueStatsCollectorImpl(name, queueWait, handlerTime) : new NullStageQueueStatsCollector(name);
       }
       src.setStatsCollector(collector);
     }
   }
 
+  /**
+   * @return true if the worker of the given queue should time its handler calls
+   */
+  boolean isLatencyTracked(int index) {
+    return this.sourceQueues[index].getStatsCollector().isLatencyTracked();
+  }
+
+  void recordHandlerTime(int index, long nanos) {
+    this.sourceQueues[index].getStatsCollector().recordHandlerTime(nanos);
+  }
+
   @Override
   public Stats getStats(long frequency) {
     // Since all source queues have the same collector, the first reference is passed.
     if (this.sourceQueues.length == 1 ) {
       return this.sourceQueues[0].getStatsCollector();
     } else {
-      return new Stats() {
+      return new StageQueueStats() {
 
         @Override
         public String getDetails() {
@@ -272,10 +358,11 @@ public class StageQueueImpl<EC> implements Sink<EC> {
             StageQueueStatsCollector current = impl.getStatsCollector();
             if (stats != current) {
               if (stats != null) build.append('\n');
-              build.append(current.getDetails());
+              build.append(current.getDepthDetails());
             }
             stats = current;
           }
+          StageQueueStatsCollector.appendLatencyDetails(build, getQueueWaitHistogram(), getHandlerHistogram());
           return build.toString();
         }
 
@@ -283,6 +370,30 @@ public class StageQueueImpl<EC> implements Sink<EC> {
         public void logDetails(TCLogger statsLogger) {
           statsLogger.info(getDetails());
         }
+
+        @Override
+        public String getName() {
+          return stageName;
+        }
+
+        @Override
+        public int getDepth() {
+          int depth = 0;
+          for (SourceQueueImpl<ContextWrapper<EC>> impl : sourceQueues) {
+            depth += Math.max(0, impl.getStatsCollector().getDepth());
+          }
+          return depth;
+        }
+
+        @Override
+        public LatencyHistogram getQueueWaitHistogram() {
+          return sourceQueues[0].getStatsCollector().getQueueWaitHistogram();
+        }
+
+        @Override
+        public LatencyHistogram getHandlerHistogram() {
+          return sourceQueues[0].getStatsCollector().getHandlerHistogram();
+        }
       };
     }
   }
@@ -327,6 +438,14 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     // XXX: poor man's clear.
     public int clear() {
       int cleared = 0;
+      if (workStealing) {
+        // drain only this queue, the others are cleared on their own
+        while (this.queue.poll() != null) {
+          this.statsCollector.contextRemoved();
+          cleared++;
+        }
+        return cleared;
+      }
       try {
         while (poll(0) != null) {
           cleared++;
@@ -344,9 +463,12 @@ public class StageQueueImpl<EC> implements Sink<EC> {
 
     @Override
     public W poll(long timeout) throws InterruptedException {
+      if (workStealing) {
+        return pollOrSteal(timeout);
+      }
       W rv = this.queue.poll(timeout, TimeUnit.MILLISECONDS);
       if (rv != null) {
-        this.statsCollector.contextRemoved();
+        removed(rv);
         if (queue.isEmpty()) {
           // set the empty index for shortest queue in hopes of catching it on the first try
           fcheck = this.sourceIndex;
@@ -357,9 +479,77 @@ public class StageQueueImpl<EC> implements Sink<EC> {
       return rv;
     }
 
+    @Override
+    public int drainTo(Collection<? super W> c, int maxElements) {
+      // never steals, a batch only takes what is already queued for this worker
+      if (!this.statsCollector.isLatencyTracked()) {
+        int drained = this.queue.drainTo(c, maxElements);
+        for (int i = 0; i < drained; i++) {
+          this.statsCollector.contextRemoved();
+        }
+        return drained;
+      }
+      int drained = 0;
+      W next;
+      while (drained < maxElements && (next = this.queue.poll()) != null) {
+        removed(next);
+        c.add(next);
+        drained++;
+      }
+      return drained;
+    }
+
+    @SuppressWarnings("unchecked")
+    private W pollOrSteal(long timeout) throws InterruptedException {
+      W rv = this.queue.poll();
+      if (rv != null) {
+        removed(rv);
+        return rv;
+      }
+      rv = (W) steal(this.sourceIndex);
+      if (rv != null) {
+        return rv;
+      }
+      // advertise this worker as idle so the next unkeyed context is handed straight to it
+      idleWorkers.set(this.sourceIndex, 1);
+      try {
+        rv = this.queue.poll(timeout, TimeUnit.MILLISECONDS);
+      } finally {
+        idleWorkers.set(this.sourceIndex, 0);
+      }
+      if (rv != null) {
+        removed(rv);
+      }
+      return rv;
+    }
+
+    @SuppressWarnings("unchecked")
+    ContextWrapper<EC> stealUnordered() {
+      W rv = ((RingBufferBlockingQueue<W>) this.queue).pollIf(UNORDERED);
+      if (rv != null) {
+        removed(rv);
+      }
+      return (ContextWrapper<EC>) rv;
+    }
+
     public void put(W context) throws InterruptedException {
+      StageQueueStatsCollector collector = this.statsCollector;
+      if (collector.isLatencyTracked()) {
+        ((ContextWrapper<?>) context).setEnqueueTime(System.nanoTime());
+      }
       this.queue.put(context);
-      this.statsCollector.contextAdded();
+      collector.contextAdded();
+    }
+
+    private void removed(W context) {
+      StageQueueStatsCollector collector = this.statsCollector;
+      collector.contextRemoved();
+      if (collector.isLatencyTracked()) {
+        long enqueued = ((ContextWrapper<?>) context).getEnqueueTime();
+        if (enqueued != 0) {
+          collector.recordQueueWait(System.nanoTime() - enqueued);
+        }
+      }
     }
 
     public int size() {
@@ -385,6 +575,44 @@ public class StageQueueImpl<EC> implements Sink<EC> {
 
     public abstract void contextRemoved();
 
+    /**
+     * @return the per queue depth line, {@link #getDetails()} adds the stage latencies to it
+     */
+    public String getDepthDetails() {
+      return getDetails();
+    }
+
+    public boolean isLatencyTracked() {
+      return false;
+    }
+
+    public void recordQueueWait(long nanos) {
+      // NO-OP
+    }
+
+    public void recordHandlerTime(long nanos) {
+      // NO-OP
+    }
+
+    @Override
+    public LatencyHistogram getQueueWaitHistogram() {
+      return null;
+    }
+
+    @Override
+    public LatencyHistogram getHandlerHistogram() {
+      return null;
+    }
+
+    static void appendLatencyDetails(StringBuilder build, LatencyHistogram queueWait, LatencyHistogram handlerTime) {
+      if (queueWait != null) {
+        build.append("\n    queue wait : ").append(queueWait.toString(1000, "us"));
+      }
+      if (handlerTime != null) {
+        build.append("\n    handler    : ").append(handlerTime.toString(1000, "us"));
+      }
+    }
+
     protected String makeWidth(String name, int width) {
       final int len = name.length();
       if (len == width) { return name; }
@@ -444,17 +672,53 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     private final AtomicInteger count = new AtomicInteger(0);
     private final String        name;
     private final String        trimmedName;
+    private final LatencyHistogram queueWait;
+    private final LatencyHistogram handlerTime;
 
-    public StageQueueStatsCollectorImpl(String stage) {
+    public StageQueueStatsCollectorImpl(String stage, LatencyHistogram queueWait, LatencyHistogram handlerTime) {
       this.trimmedName = stage.trim();
       this.name = makeWidth(stage, 40);
+      this.queueWait = queueWait;
+      this.handlerTime = handlerTime;
     }
 
     @Override
     public String getDetails() {
+      StringBuilder build = new StringBuilder(getDepthDetails());
+      appendLatencyDetails(build, this.queueWait, this.handlerTime);
+      return build.toString();
+    }
+
+    @Override
+    public String getDepthDetails() {
       return this.name + " : " + this.count;
     }
 
+    @Override
+    public boolean isLatencyTracked() {
+      return this.queueWait != null;
+    }
+
+    @Override
+    public void recordQueueWait(long nanos) {
+      this.queueWait.record(nanos);
+    }
+
+    @Override
+    public void recordHandlerTime(long nanos) {
+      this.handlerTime.record(nanos);
+    }
+
+    @Override
+    public LatencyHistogram getQueueWaitHistogram() {
+      return this.queueWait;
+    }
+
+    @Override
+    public LatencyHistogram getHandlerHistogram() {
+      return this.handlerTime;
+    }
+
     @Override
     public void contextAdded() {
       this.count.incrementAndGet();
@@ -468,6 +732,10 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     @Override
     public void reset() {
       this.count.set(0);
+      if (this.queueWait != null) {
+        this.queueWait.reset();
+        this.handlerTime.reset();
+      }
     }
 
     @Override
@@ -481,18 +749,55 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     }
   }
   
-  private static class DirectExecuteContext<EC> implements ContextWrapper<EC> {
+  /**
+   * Marks wrappers that may run on any worker, i.e. unkeyed multi-threaded contexts that are not flushes.
+   */
+  private interface Unordered {
+  }
+
+  private static final Predicate<Object> UNORDERED = new Predicate<Object>() {
+    @Override
+    public boolean test(Object wrapper) {
+      return wrapper instanceof Unordered;
+    }
+  };
+
+  private static abstract class TimedContextWrapper<EC> implements ContextWrapper<EC> {
+    private long enqueueTime;
+
+    @Override
+    public void setEnqueueTime(long nanoTime) {
+      this.enqueueTime = nanoTime;
+    }
+
+    @Override
+    public long getEnqueueTime() {
+      return this.enqueueTime;
+    }
+  }
+
+  private static class DirectExecuteContext<EC> extends TimedContextWrapper<EC> {
     private final SpecializedEventContext context;
     public DirectExecuteContext(SpecializedEventContext context) {
       this.context = context;
     }
     @Override
     public void runWithHandler(EventHandler<EC> handler) throws EventHandlerException {
-      this.context.execute();
+      if (handler instanceof BatchCollector) {
+        // everything queued ahead of this context must be handled before it executes, a failed batch ahead of it
+        // doesn't stop it from running, as a failed event wouldn't in an unbatched stage
+        try {
+          ((BatchCollector<EC>) handler).dispatch();
+        } finally {
+          this.context.execute();
+        }
+      } else {
+        this.context.execute();
+      }
     }
   }
   
-  private static class HandledContext<EC> implements ContextWrapper<EC> {
+  private static class HandledContext<EC> extends TimedContextWrapper<EC> {
     private final EC context;
     public HandledContext(EC context) {
       this.context = context;
@@ -511,7 +816,19 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     }
   }
   
-  private class FlushingHandledContext<T extends EC> implements ContextWrapper<EC> {
+  private static class UnorderedDirectExecuteContext<EC> extends DirectExecuteContext<EC> implements Unordered {
+    public UnorderedDirectExecuteContext(SpecializedEventContext context) {
+      super(context);
+    }
+  }
+
+  private static class UnorderedHandledContext<EC> extends HandledContext<EC> implements Unordered {
+    public UnorderedHandledContext(EC context) {
+      super(context);
+    }
+  }
+
+  private class FlushingHandledContext<T extends EC> extends TimedContextWrapper<EC> {
     private final EC context;
     private final int offset;
     private int executionCount = 0;
@@ -524,7 +841,17 @@ public class StageQueueImpl<EC> implements Sink<EC> {
     public void runWithHandler(EventHandler<EC> handler) throws EventHandlerException {
       if (++executionCount == sourceQueues.length) {
 //  been through all the queues.  execute now.
-        handler.handleEvent(this.context);
+        try {
+          handler.handleEvent(this.context);
+          if (handler instanceof BatchCollector) {
+            // the flush is only done once it has actually been handled
+            ((BatchCollector<EC>) handler).dispatch();
+          }
+        } finally {
+          if (workStealing) {
+            flushesInFlight.decrementAndGet();
+          }
+        }
       } else {
 //  move to next queue
         boolean interrupted = false;
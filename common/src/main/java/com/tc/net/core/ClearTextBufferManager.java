@@ -31,7 +31,7 @@ import java.nio.channels.SocketChannel;
 /**
  * @author Ludovic Orban
  */
-class ClearTextBufferManager implements BufferManager {
+class ClearTextBufferManager implements GatheringBufferManager {
   private static final TCLogger logger         = TCLogging.getLogger(ClearTextBufferManager.class);
   private static final String   BUFFER_SIZE    = "clear.text.buffer.size";
   private static final int      BUFFER_SIZE_KB = Integer.getInteger(BUFFER_SIZE, 16) * 1024;
@@ -55,6 +55,17 @@ class ClearTextBufferManager implements BufferManager {
     return written;
   }
 
+  @Override
+  public long sendFromBuffers(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    if (sendBuffer.position() > 0) {
+      sendFromBuffer();
+      if (sendBuffer.position() > 0) { return 0; }
+    }
+    long written = this.channel.write(srcs, offset, length);
+    if (written == -1) { throw new EOFException(); }
+    return written;
+  }
+
   @Override
   public int recvToBuffer() throws IOException {
     int read = this.channel.read(recvBuffer);
@@ -27,6 +27,8 @@ import com.tc.net.core.event.TCConnectionEvent;
 import com.tc.net.core.event.TCConnectionEventListener;
 import com.tc.net.core.event.TCListenerEvent;
 import com.tc.net.core.event.TCListenerEventListener;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.util.Assert;
 import com.tc.util.Util;
 import com.tc.util.concurrent.SetOnceFlag;
@@ -53,22 +55,33 @@ import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The communication thread. Creates {@link Selector selector}, registers {@link SocketChannel} to the selector and does
  * other NIO operations.
+ * <p>
+ * By default each instance runs a reader and a writer thread, each with its own selector. In single selector mode one
+ * thread and selector handle both, so a connection's interest changes never cross threads, and a connection with
+ * nothing queued may write from the sending thread without involving the selector at all (see
+ * {@link #isInlineWriteEnabled()}).
  *
  * @author mgovinda
  */
 
 class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListener {
   private static final TCLogger                logger        = TCLogging.getLogger(CoreNIOServices.class);
+  private static final boolean                 SINGLE_SELECTOR = TCPropertiesImpl
+                                                                 .getProperties()
+                                                                 .getBoolean(TCPropertiesConsts.TC_COMM_SINGLE_SELECTOR_ENABLED,
+                                                                             false);
   private final TCWorkerCommManager            workerCommMgr;
   private final String                         commThreadName;
   private final SocketParams                   socketParams;
   private final CommThread                     readerComm;
   private final CommThread                     writerComm;
+  private final boolean                        singleSelector;
   private final SetOnceFlag                    stopRequested = new SetOnceFlag();
 
   // maintains weight of all L1 Connections which is handled by this WorkerComm
@@ -79,33 +92,72 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
   private String                               listenerString;
 
   private static enum COMM_THREAD_MODE {
-    NIO_READER, NIO_WRITER
+    NIO_READER, NIO_WRITER, NIO_READER_WRITER
   }
 
   public CoreNIOServices(String commThreadName, TCWorkerCommManager workerCommManager, SocketParams socketParams) {
+    this(commThreadName, workerCommManager, socketParams, SINGLE_SELECTOR);
+  }
+
+  CoreNIOServices(String commThreadName, TCWorkerCommManager workerCommManager, SocketParams socketParams,
+                  boolean singleSelector) {
     this.commThreadName = commThreadName;
     this.workerCommMgr = workerCommManager;
     this.socketParams = socketParams;
     this.managedConnectionsMap = new HashMap<TCConnection, Integer>();
-    this.readerComm = new CommThread(COMM_THREAD_MODE.NIO_READER);
-    this.writerComm = new CommThread(COMM_THREAD_MODE.NIO_WRITER);
+    this.singleSelector = singleSelector;
+    if (singleSelector) {
+      this.readerComm = new CommThread(COMM_THREAD_MODE.NIO_READER_WRITER);
+      this.writerComm = this.readerComm;
+    } else {
+      this.readerComm = new CommThread(COMM_THREAD_MODE.NIO_READER);
+      this.writerComm = new CommThread(COMM_THREAD_MODE.NIO_WRITER);
+    }
   }
 
   public void start() {
     readerComm.start();
-    writerComm.start();
+    if (!singleSelector) {
+      writerComm.start();
+    }
   }
 
   public void requestStop() {
     if (stopRequested.attemptSet()) {
       readerComm.requestStop();
-      writerComm.requestStop();
+      if (!singleSelector) {
+        writerComm.requestStop();
+      }
     }
   }
 
   public void cleanupChannel(SocketChannel channel, Runnable callback) {
     readerComm.cleanupChannel(channel, callback);
-    writerComm.cleanupChannel(channel, callback);
+    if (!singleSelector) {
+      writerComm.cleanupChannel(channel, callback);
+    }
+  }
+
+  /**
+   * In single selector mode a connection with nothing queued may write from the sending thread: its write interest,
+   * if it needs one, is then handled on the same thread as its reads, so there is no writer thread to hand off to.
+   */
+  boolean isInlineWriteEnabled() {
+    return singleSelector;
+  }
+
+  /**
+   * One thread serves both reads and writes, so a write must never wait for a full socket.
+   */
+  boolean isSingleSelector() {
+    return singleSelector;
+  }
+
+  /**
+   * Runs the task on the thread handling writes, for work which must not run on a sending thread.
+   */
+  void runOnWriterThread(Runnable task) {
+    writerComm.addSelectorTask(task);
   }
 
   @Override
@@ -128,15 +180,20 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     boolean removed = listeners.remove(listener);
     Assert.eval(removed);
     updateListenerString();
-    readerComm.updateThreadName();
-    writerComm.updateThreadName();
+    updateThreadNames();
   }
 
   private synchronized void listenerAdded(TCListener listener) {
     listeners.add(listener);
     updateListenerString();
+    updateThreadNames();
+  }
+
+  private void updateThreadNames() {
     readerComm.updateThreadName();
-    writerComm.updateThreadName();
+    if (!singleSelector) {
+      writerComm.updateThreadName();
+    }
   }
 
   private void updateListenerString() {
@@ -163,11 +220,26 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
   }
 
   public long getTotalBytesRead() {
-    return readerComm.getTotalBytesRead() + writerComm.getTotalBytesRead();
+    return singleSelector ? readerComm.getTotalBytesRead() : readerComm.getTotalBytesRead()
+                                                             + writerComm.getTotalBytesRead();
   }
 
   public long getTotalBytesWritten() {
-    return readerComm.getTotalBytesWritten() + writerComm.getTotalBytesWritten();
+    return singleSelector ? readerComm.getTotalBytesWritten() : readerComm.getTotalBytesWritten()
+                                                                + writerComm.getTotalBytesWritten();
+  }
+
+  /**
+   * @return selector wakeups requested by other threads and how many of them were folded into one already pending
+   */
+  public long[] getWakeupCounts() {
+    long requested = readerComm.getWakeupsRequested();
+    long coalesced = readerComm.getWakeupsCoalesced();
+    if (!singleSelector) {
+      requested += writerComm.getWakeupsRequested();
+      coalesced += writerComm.getWakeupsCoalesced();
+    }
+    return new long[] { requested, coalesced };
   }
   
   public boolean compareWeights(CoreNIOServices incoming) {
@@ -310,8 +382,12 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
   }
 
   private void requestReadWriteInterest(TCConnectionImpl conn, SocketChannel sc) {
-    readerComm.requestReadInterest(conn, sc);
-    writerComm.requestWriteInterest(conn, sc);
+    if (singleSelector) {
+      readerComm.requestReadWriteInterest(conn, sc);
+    } else {
+      readerComm.requestReadInterest(conn, sc);
+      writerComm.requestWriteInterest(conn, sc);
+    }
   }
 
   protected class CommThread extends Thread {
@@ -320,10 +396,15 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     private final String                        name;
     private final AtomicLong                    bytesRead    = new AtomicLong(0);
     private final AtomicLong                    bytesWritten = new AtomicLong(0);
+    // set while a wakeup is outstanding so a burst of tasks costs the selector a single wakeup
+    private final AtomicBoolean                 wakeupPending     = new AtomicBoolean(false);
+    private final AtomicLong                    wakeupsRequested  = new AtomicLong(0);
+    private final AtomicLong                    wakeupsCoalesced  = new AtomicLong(0);
     private final COMM_THREAD_MODE              mode;
 
     public CommThread(COMM_THREAD_MODE mode) {
-      name = commThreadName + (mode == COMM_THREAD_MODE.NIO_READER ? "_R" : "_W");
+      name = commThreadName + (mode == COMM_THREAD_MODE.NIO_READER ? "_R"
+          : mode == COMM_THREAD_MODE.NIO_WRITER ? "_W" : "_RW");
       setDaemon(true);
       setName(name);
 
@@ -332,8 +413,12 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       this.mode = mode;
     }
 
-    private boolean isReader() {
-      return (this.mode == COMM_THREAD_MODE.NIO_READER);
+    private boolean handlesReads() {
+      return (this.mode != COMM_THREAD_MODE.NIO_WRITER);
+    }
+
+    private boolean handlesWrites() {
+      return (this.mode != COMM_THREAD_MODE.NIO_READER);
     }
 
     @Override
@@ -410,11 +495,28 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
           }
         }
       } finally {
-        this.selector.wakeup();
+        wakeup();
         Util.selfInterruptIfNeeded(isInterrupted);
       }
     }
 
+    private void wakeup() {
+      wakeupsRequested.incrementAndGet();
+      if (wakeupPending.compareAndSet(false, true)) {
+        this.selector.wakeup();
+      } else {
+        wakeupsCoalesced.incrementAndGet();
+      }
+    }
+
+    long getWakeupsRequested() {
+      return wakeupsRequested.get();
+    }
+
+    long getWakeupsCoalesced() {
+      return wakeupsCoalesced.get();
+    }
+
     void unregister(final SelectableChannel channel) {
       if (Thread.currentThread() != this) {
         final CountDownLatch latch = new CountDownLatch(1);
@@ -593,6 +695,9 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
       LinkedBlockingQueue<Runnable> localSelectorTasks = this.selectorTasks;
 
       while (true) {
+        // cleared before selecting, and so before any path back round the loop, so a task queued from here on wakes
+        // the select below or the next one
+        wakeupPending.set(false);
         final int numKeys;
         try {
           numKeys = localSelector.select();
@@ -672,7 +777,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
               continue;
             }
 
-            if (isReader() && key.isValid() && key.isReadable()) {
+            if (handlesReads() && key.isValid() && key.isReadable()) {
               int read;
               TCChannelReader reader = (TCChannelReader) key.attachment();
               do {
@@ -681,7 +786,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
               } while ((read != 0) && key.isReadable());
             }
 
-            if (key.isValid() && !isReader() && key.isWritable()) {
+            if (key.isValid() && handlesWrites() && key.isWritable()) {
               int written = ((TCChannelWriter) key.attachment()).doWrite();
               this.bytesWritten.addAndGet(written);
             }
@@ -740,7 +845,8 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
 
       try {
         if (sc.finishConnect()) {
-          sc.register(selector, SelectionKey.OP_READ, conn);
+          // keep any write interest requested while connecting, it lives on this selector in single selector mode
+          sc.register(selector, (key.interestOps() & ~SelectionKey.OP_CONNECT) | SelectionKey.OP_READ, conn);
           conn.finishConnect();
         } else {
           String errMsg = "finishConnect() returned false, but no exception thrown";
@@ -820,7 +926,7 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
         } else if (request.set) {
           request.channel.register(localSelector, request.interestOps, request.attachment);
         } else if (request.remove) {
-          request.channel.register(localSelector, existingOps ^ request.interestOps, request.attachment);
+          request.channel.register(localSelector, existingOps & ~request.interestOps, request.attachment);
         } else {
           throw new TCInternalError();
         }
@@ -836,29 +942,35 @@ class CoreNIOServices implements TCListenerEventListener, TCConnectionEventListe
     }
 
     void requestReadInterest(TCChannelReader reader, ScatteringByteChannel channel) {
-      Assert.eval(isReader());
+      Assert.eval(handlesReads());
       handleRequest(InterestRequest.createAddInterestRequest((SelectableChannel) channel, reader, SelectionKey.OP_READ,
                                                              this));
     }
 
     void requestWriteInterest(TCChannelWriter writer, GatheringByteChannel channel) {
-      Assert.eval(!isReader());
+      Assert.eval(handlesWrites());
       handleRequest(InterestRequest.createAddInterestRequest((SelectableChannel) channel, writer,
                                                              SelectionKey.OP_WRITE, this));
     }
 
+    private void requestReadWriteInterest(TCConnectionImpl conn, SocketChannel sc) {
+      Assert.eval(handlesReads() && handlesWrites());
+      handleRequest(InterestRequest.createAddInterestRequest(sc, conn, SelectionKey.OP_READ | SelectionKey.OP_WRITE,
+                                                             this));
+    }
+
     private void requestAcceptInterest(TCListenerImpl lsnr, ServerSocketChannel ssc) {
-      Assert.eval(isReader());
+      Assert.eval(handlesReads());
       handleRequest(InterestRequest.createSetInterestRequest(ssc, lsnr, SelectionKey.OP_ACCEPT, this));
     }
 
     void removeWriteInterest(TCConnectionImpl conn, SelectableChannel channel) {
-      Assert.eval(!isReader());
+      Assert.eval(handlesWrites());
       handleRequest(InterestRequest.createRemoveInterestRequest(channel, conn, SelectionKey.OP_WRITE, this));
     }
 
     void removeReadInterest(TCConnectionImpl conn, SelectableChannel channel) {
-      Assert.eval(isReader());
+      Assert.eval(handlesReads());
       handleRequest(InterestRequest.createRemoveInterestRequest(channel, conn, SelectionKey.OP_READ, this));
     }
   }
@@ -0,0 +1,38 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link BufferManager} that can hand caller owned buffers straight to the channel with a single gathering write,
+ * instead of copying them into its own send buffer first.
+ */
+public interface GatheringBufferManager extends BufferManager {
+
+  /**
+   * Writes as much of the given buffers as the channel accepts right now, advancing their positions. Anything already
+   * staged through {@link #forwardToWriteBuffer(ByteBuffer)} is flushed first and the given buffers are not touched
+   * until it has been fully sent, so the two paths can never reorder bytes on the wire.
+   *
+   * @return number of bytes written from <code>srcs</code>
+   */
+  long sendFromBuffers(ByteBuffer[] srcs, int offset, int length) throws IOException;
+}
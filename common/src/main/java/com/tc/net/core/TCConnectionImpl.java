@@ -29,6 +29,9 @@ import com.tc.net.core.event.TCConnectionEventListener;
 import com.tc.net.core.security.TCSecurityManager;
 import com.tc.net.protocol.TCNetworkMessage;
 import com.tc.net.protocol.TCProtocolAdaptor;
+import com.tc.net.protocol.transport.WireCompression;
+import com.tc.net.protocol.transport.WireCompressionStats;
+import com.tc.net.protocol.transport.WireCompressor;
 import com.tc.net.protocol.transport.WireProtocolGroupMessageImpl;
 import com.tc.net.protocol.transport.WireProtocolHeader;
 import com.tc.net.protocol.transport.WireProtocolMessage;
@@ -53,6 +56,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -84,6 +88,9 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
 
   private final BufferManagerFactory            bufferManagerFactory;
   private final AtomicBoolean                   transportEstablished        = new AtomicBoolean(false);
+  private final WireCompressionStats            compressionStats            = new WireCompressionStats();
+  private volatile WireCompressor               compressor                  = null;
+  private volatile int                          compressionThreshold        = Integer.MAX_VALUE;
   private final LinkedList<TCNetworkMessage>    writeMessages               = new LinkedList<TCNetworkMessage>();
   private final TCConnectionManagerImpl         parent;
   private final TCConnectionEventCaller         eventCaller                 = new TCConnectionEventCaller(logger);
@@ -116,8 +123,21 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
                                                                                 .getProperties()
                                                                                 .getBoolean(TCPropertiesConsts.TC_MESSAGE_PACKUP_ENABLED,
                                                                                             true);
+  private static final boolean                  GATHERING_WRITE             = TCPropertiesImpl
+                                                                                .getProperties()
+                                                                                .getBoolean(TCPropertiesConsts.TC_MESSAGE_GATHERING_WRITE_ENABLED,
+                                                                                            false);
+  // stay well below IOV_MAX so the JDK never has to split a gathering write
+  private static final int                      GATHERING_WRITE_MAX_BUFFERS = 256;
+  private ByteBuffer[]                          gatherBuffers               = new ByteBuffer[16];
   private final Object                          readerLock                  = new Object();
   private final Object                          writerLock                  = new Object();
+  // both guarded by writerLock, set while a sending thread writes for itself in single selector mode
+  private boolean                               writingInline               = false;
+  private IOException                           inlineWriteError            = null;
+  // guarded by writerLock, bytes a write left in the buffer manager's send buffer because the socket was full
+  private int                                   unsentBytes                 = 0;
+  private final AtomicLong                      inlineWrites                = new AtomicLong(0);
 
   static {
     logger.info("Comms Message Batching " + (MSG_GROUPING_ENABLED ? "enabled" : "disabled"));
@@ -168,6 +188,9 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
   private void closeImpl(Runnable callback) {
     Assert.assertTrue(this.closed.isSet());
     this.transportEstablished.set(false);
+    if (!this.compressionStats.isEmpty()) {
+      logger.info("Wire compression on " + this.channel + ": " + this.compressionStats);
+    }
     try {
       if (this.channel != null) {
         this.commWorker.cleanupChannel(this.channel, callback);
@@ -325,6 +348,8 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
   }
 
   private int doWriteInternal() throws IOException {
+    if (isGatheringWrite()) { return doGatheringWrite(); }
+
     int written;
     try {
       written = doWriteToBuffer();
@@ -333,8 +358,9 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       return 0;
     }
 
+    final int pending = this.unsentBytes + written;
     int channelWritten = 0;
-    while (channelWritten != written) {
+    while (channelWritten != pending) {
       int sent;
       try {
         sent = bufferManager.sendFromBuffer();
@@ -351,12 +377,102 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
         closeWriteOnException(ioe);
         break;
       }
+      if (sent == 0 && (this.writingInline || this.commWorker.isSingleSelector())) {
+        // the socket is full, the selector sends the rest once it has room.  Neither a sending thread nor the only
+        // comm thread of the worker, which also does its reads, may spin on it.
+        break;
+      }
       channelWritten += sent;
     }
+    this.unsentBytes = pending - channelWritten;
+    if (pipeSocket == null) {
+      // only now is it known whether the socket took everything
+      removeWriteInterestIfIdle();
+    }
     this.totalWrite.addAndGet(channelWritten);
     return channelWritten;
   }
 
+  private boolean isGatheringWrite() {
+    return GATHERING_WRITE && pipeSocket == null && bufferManager instanceof GatheringBufferManager;
+  }
+
+  private int doGatheringWrite() throws IOException {
+    long written;
+    try {
+      written = doGatheringWriteInternal((GatheringBufferManager) bufferManager);
+    } catch (IOException ioe) {
+      closeWriteOnException(ioe);
+      return 0;
+    }
+    this.totalWrite.addAndGet(written);
+    return (int) written;
+  }
+
+  /**
+   * Hands the header and payload buffers of as many pending messages as possible to a single gathering write, instead
+   * of copying them through the buffer manager's send buffer. Stops as soon as the socket doesn't take everything it
+   * was offered, the remaining bytes go out on the next write readiness.
+   */
+  private long doGatheringWriteInternal(GatheringBufferManager manager) throws IOException {
+    final boolean debug = logger.isDebugEnabled();
+    long totalBytesWritten = 0;
+
+    if (this.writeContexts.isEmpty()) {
+      buildWriteContextsFromMessages();
+    }
+    while (!this.writeContexts.isEmpty()) {
+      int count = 0;
+      long requested = 0;
+      gather: for (WriteContext context : this.writeContexts) {
+        final TCByteBuffer[] buffers = context.entireMessageData;
+        for (int i = context.index; i < buffers.length; i++) {
+          if (count == GATHERING_WRITE_MAX_BUFFERS) {
+            break gather;
+          }
+          final ByteBuffer buf = extractNioBuffer(buffers[i]);
+          if (buf.hasRemaining()) {
+            if (count == this.gatherBuffers.length) {
+              this.gatherBuffers = Arrays.copyOf(this.gatherBuffers, count * 2);
+            }
+            this.gatherBuffers[count++] = buf;
+            requested += buf.remaining();
+          }
+        }
+      }
+
+      final long written;
+      try {
+        written = manager.sendFromBuffers(this.gatherBuffers, 0, count);
+      } finally {
+        Arrays.fill(this.gatherBuffers, 0, count, null);
+      }
+      if (debug) {
+        logger.debug("Wrote " + written + " of " + requested + " bytes from " + count + " buffers on connection "
+                     + this.channel.toString());
+      }
+      totalBytesWritten += written;
+
+      while (!this.writeContexts.isEmpty()) {
+        WriteContext context = this.writeContexts.get(0);
+        context.skipWrittenBuffers();
+        if (!context.done()) {
+          break;
+        }
+        context.writeComplete();
+        this.writeContexts.remove(0);
+      }
+
+      if (written < requested) {
+        // socket send buffer is full
+        break;
+      }
+    }
+
+    removeWriteInterestIfIdle();
+    return totalBytesWritten;
+  }
+
   private int doWriteToBuffer() throws IOException {
     if (pipeSocket != null) {
       synchronized (pipeSocketWriteInterestLock) {
@@ -392,15 +508,15 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       if (element instanceof WireProtocolMessage) {
         // we don't want to group already constructed Transport Handshake WireProtocolMessages
         final WireProtocolMessage ms = finalizeWireProtocolMessage((WireProtocolMessage) element, 1);
-        this.writeContexts.add(new WriteContext(ms));
+        this.writeContexts.add(newWriteContext(ms));
       } else if (WireProtocolHeader.PROTOCOL_UNKNOWN == WireProtocolHeader.getProtocolForMessageClass(element)) {
         // GenericNetwork messages are used for testing
-        this.writeContexts.add(new WriteContext(element));
+        this.writeContexts.add(newWriteContext(element));
       } else if (MSG_GROUPING_ENABLED) {
         int realMessageSize = getRealMessgeSize(element.getTotalLength());
         if (!canBatch(realMessageSize, batchSize, batchMsgCount)) {
           // We can't add this to the current batch so seal the current batch as a write context and create a new one.
-          this.writeContexts.add(new WriteContext(buildWireProtocolMessageGroup(currentBatch)));
+          this.writeContexts.add(newWriteContext(buildWireProtocolMessageGroup(currentBatch)));
           batchSize = 0;
           batchMsgCount = 0;
           currentBatch = new ArrayList<TCNetworkMessage>();
@@ -409,16 +525,21 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
         batchMsgCount++;
         currentBatch.add(element);
       } else {
-        this.writeContexts.add(new WriteContext(buildWireProtocolMessage(element)));
+        this.writeContexts.add(newWriteContext(buildWireProtocolMessage(element)));
       }
     }
 
     if (MSG_GROUPING_ENABLED && batchMsgCount > 0) {
       final WireProtocolMessage ms = buildWireProtocolMessageGroup(currentBatch);
-      this.writeContexts.add(new WriteContext(ms));
+      this.writeContexts.add(newWriteContext(ms));
     }
   }
 
+  private WriteContext newWriteContext(TCNetworkMessage message) {
+    // packing up would copy every payload byte once more, which is exactly what the gathering write avoids
+    return new WriteContext(message, MESSSAGE_PACKUP && TCByteBufferFactory.isPoolingEnabled() && !isGatheringWrite());
+  }
+
   private boolean canBatch(int realMessageSize, int currentBatchSize, int currentBatchMsgCount) {
     // We can add this message to the batch if it fits, we don't already have too many messages in the batch
     //  OR if the message batch is currently empty (a degenerate case where a single message is too big to batch but
@@ -519,14 +640,19 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       }
     }
 
+    return totalBytesWritten;
+  }
+
+  private void removeWriteInterestIfIdle() {
+    // an inline write never registered any interest, removing it would only cost the selector a wakeup
+    if (this.writingInline) { return; }
     synchronized (this.writeMessages) {
-      if (this.closed.isSet()) { return totalBytesWritten; }
+      if (this.closed.isSet()) { return; }
 
-      if (this.writeMessages.isEmpty() && this.writeContexts.isEmpty()) {
+      if (this.writeMessages.isEmpty() && this.writeContexts.isEmpty() && this.unsentBytes == 0) {
         this.commWorker.removeWriteInterest(this, this.channel);
       }
     }
-    return totalBytesWritten;
   }
 
   static private ByteBuffer extractNioBuffer(TCByteBuffer buffer) {
@@ -567,18 +693,73 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       // NOTE: this might be the very first message on the socket and
       // given the current implementation, it isn't necessarily
       // safe to assume one can write to the channel. Long story
-      // short, always enqueue the message and wait until it is selected
-      // for write interest.
-
-      // If you're trying to optimize for performance by letting the calling thread do the
-      // write, we need to add more logic to connection setup. Specifically, you need register
-      // for, as well as actually be selected for, write interest immediately
-      // after finishConnect(). Only after this selection occurs it is always safe to try
-      // to write.
-      this.commWorker.requestWriteInterest(this, this.channel);
+      // short, unless the connection is established and the worker runs
+      // in single selector mode, enqueue the message and wait until it is
+      // selected for write interest.
+      if (!tryInlineWrite()) {
+        this.commWorker.requestWriteInterest(this, this.channel);
+      }
     }
   }
 
+  /**
+   * Writes the queue from the calling thread when nothing is already waiting on write readiness, so a socket with
+   * room takes the message without a selector wakeup or a thread hand off. Only done in single selector mode on an
+   * established clear text connection; SSL may need the selector to make progress on a handshake. It never waits for
+   * a full socket, whatever the socket doesn't take is left to the selector.
+   *
+   * @return false if anything is left queued, the caller must then register write interest
+   */
+  private boolean tryInlineWrite() {
+    final CoreNIOServices worker = this.commWorker;
+    if (worker == null || !worker.isInlineWriteEnabled() || this.pipeSocket != null || !isConnected()
+        || !(this.bufferManager instanceof ClearTextBufferManager)) { return false; }
+
+    final IOException error;
+    final boolean unsent;
+    synchronized (this.writerLock) {
+      // a partly written message means the socket was full, leave it to the selector
+      if (!this.writeContexts.isEmpty() || this.unsentBytes > 0) { return false; }
+      this.writingInline = true;
+      try {
+        doWriteInternal();
+      } catch (IOException ioe) {
+        this.inlineWriteError = ioe;
+      } finally {
+        this.writingInline = false;
+      }
+      error = this.inlineWriteError;
+      this.inlineWriteError = null;
+      unsent = this.unsentBytes > 0;
+    }
+    this.inlineWrites.incrementAndGet();
+
+    if (error != null) {
+      // error events are fired from the comm thread, as they would be for a selector driven write
+      worker.runOnWriterThread(new Runnable() {
+        @Override
+        public void run() {
+          synchronized (writerLock) {
+            try {
+              closeWriteOnException(error);
+            } catch (IOException ioe) {
+              logger.warn("error closing connection after failed write " + TCConnectionImpl.this, ioe);
+            }
+          }
+        }
+      });
+      return true;
+    }
+
+    synchronized (this.writeMessages) {
+      return this.closed.isSet() || (!unsent && this.writeMessages.isEmpty() && this.writeContexts.isEmpty());
+    }
+  }
+
+  long getInlineWrites() {
+    return this.inlineWrites.get();
+  }
+
   @Override
   public final void asynchClose() {
     if (this.closed.attemptSet()) {
@@ -855,7 +1036,7 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
         }
       });
     }
-    return finalizeWireProtocolMessage(message, messageGroupSize);
+    return finalizeWireProtocolMessage(compress(message), messageGroupSize);
   }
 
   private WireProtocolMessage buildWireProtocolMessage(TCNetworkMessage message) {
@@ -869,7 +1050,13 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     if (callback != null) {
       wireMessage.setSentCallback(callback);
     }
-    return finalizeWireProtocolMessage(wireMessage, 1);
+    return finalizeWireProtocolMessage(compress(wireMessage), 1);
+  }
+
+  private WireProtocolMessage compress(WireProtocolMessage message) {
+    final WireCompressor codec = this.compressor;
+    if (codec == null) { return message; }
+    return WireCompression.compress(message, codec, this.compressionThreshold, this.compressionStats);
   }
 
   private WireProtocolMessage finalizeWireProtocolMessage(WireProtocolMessage message, int messageCount) {
@@ -909,6 +1096,11 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
   }
 
   public void closeWriteOnException(IOException ioe) throws IOException {
+    if (this.writingInline) {
+      // handled once the inline write returns, see tryInlineWrite()
+      this.inlineWriteError = ioe;
+      return;
+    }
     if (pipeSocket != null) {
       TCConnectionImpl.this.commWorker.removeWriteInterest(TCConnectionImpl.this, TCConnectionImpl.this.channel);
       pipeSocket.closeWrite();
@@ -933,12 +1125,14 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     private final TCNetworkMessage message;
     private int                    index = 0;
     private final TCByteBuffer[]   entireMessageData;
+    private final boolean          packedUp;
 
-    WriteContext(TCNetworkMessage message) {
+    WriteContext(TCNetworkMessage message, boolean packUp) {
       // either WireProtocolMessage or WireProtocolMessageGroup
       this.message = message;
+      this.packedUp = packUp;
 
-      if (MESSSAGE_PACKUP && TCByteBufferFactory.isPoolingEnabled()) {
+      if (packUp) {
         this.entireMessageData = getPackedUpMessage(message.getEntireMessageData());
       } else {
         this.entireMessageData = getClonedMessage(message.getEntireMessageData());
@@ -954,8 +1148,14 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
       return true;
     }
 
+    void skipWrittenBuffers() {
+      while (index < entireMessageData.length && !entireMessageData[index].hasRemaining()) {
+        incrementIndexAndCleanOld();
+      }
+    }
+
     void incrementIndexAndCleanOld() {
-      if (MESSSAGE_PACKUP) {
+      if (packedUp) {
         // we created these new messages. lets recycle it.
         entireMessageData[index].recycle();
       }
@@ -1043,4 +1243,15 @@ final class TCConnectionImpl implements TCConnection, TCChannelReader, TCChannel
     return this.transportEstablished.get();
   }
 
+  @Override
+  public void enableCompression(WireCompressor codec, int threshold) {
+    this.compressionThreshold = threshold;
+    this.compressor = codec;
+  }
+
+  @Override
+  public WireCompressionStats getCompressionStats() {
+    return this.compressionStats;
+  }
+
 }
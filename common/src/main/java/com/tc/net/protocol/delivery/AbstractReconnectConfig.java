@@ -30,16 +30,25 @@ public class AbstractReconnectConfig implements ReconnectConfig {
   private final int             reconnectTimeout;
   private final int             reconnectSendQueueCap;
   private final int             reconnectMaxDelayedAcks;
+  private final int             reconnectMaxDelayedAckMicros;
   private final int             reconnectSendWindow;
   private static final TCLogger logger = TCLogging.getLogger(AbstractReconnectConfig.class);
 
   public AbstractReconnectConfig(boolean reconnectEnabled, int reconnectTimeout, int reconnectSendQueueCap,
                                  int reconnectMaxDelayedAcks, int reconnectSendWindow, String name) {
+    this(reconnectEnabled, reconnectTimeout, reconnectSendQueueCap, reconnectMaxDelayedAcks, 0, reconnectSendWindow,
+         name);
+  }
+
+  public AbstractReconnectConfig(boolean reconnectEnabled, int reconnectTimeout, int reconnectSendQueueCap,
+                                 int reconnectMaxDelayedAcks, int reconnectMaxDelayedAckMicros,
+                                 int reconnectSendWindow, String name) {
     this.name = name;
     this.reconnectEnabled = reconnectEnabled;
     this.reconnectTimeout = reconnectTimeout;
     this.reconnectSendQueueCap = reconnectSendQueueCap;
     this.reconnectMaxDelayedAcks = reconnectMaxDelayedAcks;
+    this.reconnectMaxDelayedAckMicros = Math.max(reconnectMaxDelayedAckMicros, 0);
     this.reconnectSendWindow = (reconnectSendWindow > 0 ? reconnectSendWindow : 0);
     validateConfig();
   }
@@ -79,6 +88,11 @@ public class AbstractReconnectConfig implements ReconnectConfig {
     return reconnectMaxDelayedAcks;
   }
 
+  @Override
+  public int getMaxDelayAckMicros() {
+    return reconnectMaxDelayedAckMicros;
+  }
+
   @Override
   public int getSendWindow() {
     return reconnectSendWindow;
@@ -23,6 +23,9 @@ import com.tc.properties.ReconnectConfig;
 import com.tc.util.Assert;
 import com.tc.util.Util;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * This implements an asynchronous Once and only once protocol. Sent messages go out on the sent queue received messages
  * come in to the ProtocolMessageDelivery instance.
@@ -100,6 +103,17 @@ class GuaranteedDeliveryProtocol {
     return sender;
   }
 
+  public Map<String, Long> getStatistics() {
+    Map<String, Long> stats = new LinkedHashMap<String, Long>();
+    for (Map.Entry<String, Long> e : sender.getStatistics().entrySet()) {
+      stats.put("Send" + e.getKey(), e.getValue());
+    }
+    for (Map.Entry<String, Long> e : receiver.getStatistics().entrySet()) {
+      stats.put("Receive" + e.getKey(), e.getValue());
+    }
+    return stats;
+  }
+
   @Override
   public String toString() {
     return "SendStateMachine: " + sender + "; ReceiveStateMachine: " + receiver;
@@ -31,6 +31,13 @@ public interface OOOProtocolMessageDelivery {
 
   public OOOProtocolMessage createAckMessage(long sequence);
 
+  /**
+   * Arranges for {@link ReceiveStateMachine#flushDelayedAck()} to run after the given delay.
+   *
+   * @return false if acks can't be delayed, the receiver then acks by count only
+   */
+  public boolean scheduleDelayedAck(long delayNanos);
+
   public boolean sendMessage(OOOProtocolMessage msg);
 
   public void receiveMessage(OOOProtocolMessage msg);
@@ -23,17 +23,26 @@ import com.tc.net.protocol.TCNetworkMessage;
 import com.tc.util.UUID;
 
 public class OOOProtocolMessageFactory {
+  private static final long[] NO_SELECTIVE_ACKS = new long[0];
 
   public OOOProtocolMessage createNewHandshakeMessage(UUID sessionId, long ack) {
+    return createNewHandshakeMessage(sessionId, ack, NO_SELECTIVE_ACKS);
+  }
+
+  public OOOProtocolMessage createNewHandshakeMessage(UUID sessionId, long ack, long[] selectiveAcks) {
     return new OOOProtocolMessageImpl(new OOOProtocolMessageHeader(OOOProtocolMessageHeader.VERSION,
                                                                    OOOProtocolMessageHeader.TYPE_HANDSHAKE, ack,
-                                                                   sessionId));
+                                                                   sessionId), selectiveAcks);
   }
 
   public OOOProtocolMessage createNewAckMessage(UUID sessionId, long ackSequence) {
+    return createNewAckMessage(sessionId, ackSequence, NO_SELECTIVE_ACKS);
+  }
+
+  public OOOProtocolMessage createNewAckMessage(UUID sessionId, long ackSequence, long[] selectiveAcks) {
     return new OOOProtocolMessageImpl(new OOOProtocolMessageHeader(OOOProtocolMessageHeader.VERSION,
                                                                    OOOProtocolMessageHeader.TYPE_ACK, 0, ackSequence,
-                                                                   sessionId));
+                                                                   sessionId), selectiveAcks);
   }
 
   public OOOProtocolMessage createNewSendMessage(UUID sessionId, long sequence, long ackSequence,
@@ -53,9 +62,13 @@ public class OOOProtocolMessageFactory {
   }
 
   public OOOProtocolMessage createNewHandshakeReplyOkMessage(UUID sessionId, long sequence) {
+    return createNewHandshakeReplyOkMessage(sessionId, sequence, NO_SELECTIVE_ACKS);
+  }
+
+  public OOOProtocolMessage createNewHandshakeReplyOkMessage(UUID sessionId, long sequence, long[] selectiveAcks) {
     return new OOOProtocolMessageImpl(new OOOProtocolMessageHeader(OOOProtocolMessageHeader.VERSION,
                                                                    OOOProtocolMessageHeader.TYPE_HANDSHAKE_REPLY_OK,
-                                                                   sequence, sessionId));
+                                                                   sequence, sessionId), selectiveAcks);
   }
 
   public OOOProtocolMessage createNewHandshakeReplyFailMessage(UUID sessionId, long sequence) {
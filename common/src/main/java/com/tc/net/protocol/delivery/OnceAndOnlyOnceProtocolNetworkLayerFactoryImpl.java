@@ -19,8 +19,11 @@
 package com.tc.net.protocol.delivery;
 
 import com.tc.properties.ReconnectConfig;
+import com.tc.util.concurrent.ThreadFactoryBuilder;
 
 import java.util.Timer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Creates new instances of OnceAndOnlyOnceProtocolNetworkLayers. This is used so that a mock one may be injected into
@@ -29,13 +32,16 @@ import java.util.Timer;
 public class OnceAndOnlyOnceProtocolNetworkLayerFactoryImpl implements OnceAndOnlyOnceProtocolNetworkLayerFactory {
 
   public static final String RESTORE_TIMERTHREAD_NAME = "OOO Connection Restore Timer";
+  public static final String DELAYED_ACK_THREAD_NAME  = "OOO Delayed Ack Timer";
   private Timer              restoreConnectTimer      = null;
+  private ScheduledExecutorService delayedAckTimer    = null;
 
   @Override
   public synchronized OnceAndOnlyOnceProtocolNetworkLayer createNewClientInstance(ReconnectConfig reconnectConfig) {
     OOOProtocolMessageFactory messageFactory = new OOOProtocolMessageFactory();
     OOOProtocolMessageParser messageParser = new OOOProtocolMessageParser(messageFactory);
-    return new OnceAndOnlyOnceProtocolNetworkLayerImpl(messageFactory, messageParser, reconnectConfig, true);
+    return new OnceAndOnlyOnceProtocolNetworkLayerImpl(messageFactory, messageParser, reconnectConfig, true, null,
+                                                       getDelayedAckTimer(reconnectConfig));
   }
 
   @Override
@@ -48,6 +54,16 @@ public class OnceAndOnlyOnceProtocolNetworkLayerFactoryImpl implements OnceAndOn
     OOOProtocolMessageFactory messageFactory = new OOOProtocolMessageFactory();
     OOOProtocolMessageParser messageParser = new OOOProtocolMessageParser(messageFactory);
     return new OnceAndOnlyOnceProtocolNetworkLayerImpl(messageFactory, messageParser, reconnectConfig, false,
-                                                       restoreConnectTimer);
+                                                       restoreConnectTimer, getDelayedAckTimer(reconnectConfig));
+  }
+
+  // one thread flushes the delayed acks of every layer, it is only started once some config asks for them
+  private ScheduledExecutorService getDelayedAckTimer(ReconnectConfig reconnectConfig) {
+    if (reconnectConfig.getMaxDelayAckMicros() <= 0) { return null; }
+    if (delayedAckTimer == null) {
+      delayedAckTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setNameFormat(DELAYED_ACK_THREAD_NAME + "-%d").setDaemon(true).build());
+    }
+    return delayedAckTimer;
   }
 }
@@ -44,7 +44,11 @@ import com.tc.util.UUID;
 
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.util.Map;
 import java.util.Timer;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -66,6 +70,13 @@ public class OnceAndOnlyOnceProtocolNetworkLayerImpl extends AbstractMessageTran
   private final String                     debugId;
   private UUID                             sessionId        = UUID.NULL_ID;
   private final Timer                      restoreConnectTimer;
+  private final ScheduledExecutorService   delayedAckTimer;
+  private final Runnable                   flushDelayedAck  = new Runnable() {
+                                                              @Override
+                                                              public void run() {
+                                                                delivery.getReceiver().flushDelayedAck();
+                                                              }
+                                                            };
   private static final boolean             debug            = Boolean.getBoolean("ooo.logging.enabled");
 
   public OnceAndOnlyOnceProtocolNetworkLayerImpl(OOOProtocolMessageFactory messageFactory,
@@ -78,6 +89,13 @@ public class OnceAndOnlyOnceProtocolNetworkLayerImpl extends AbstractMessageTran
                                                  OOOProtocolMessageParser messageParser,
                                                  ReconnectConfig reconnectConfig, boolean isClient,
                                                  Timer restoreConnectTimer) {
+    this(messageFactory, messageParser, reconnectConfig, isClient, restoreConnectTimer, null);
+  }
+
+  public OnceAndOnlyOnceProtocolNetworkLayerImpl(OOOProtocolMessageFactory messageFactory,
+                                                 OOOProtocolMessageParser messageParser,
+                                                 ReconnectConfig reconnectConfig, boolean isClient,
+                                                 Timer restoreConnectTimer, ScheduledExecutorService delayedAckTimer) {
     super(TCLogging.getLogger(OnceAndOnlyOnceProtocolNetworkLayerImpl.class));
     this.messageFactory = messageFactory;
     this.messageParser = messageParser;
@@ -86,6 +104,7 @@ public class OnceAndOnlyOnceProtocolNetworkLayerImpl extends AbstractMessageTran
     this.delivery.start();
     this.delivery.pause();
     this.restoreConnectTimer = restoreConnectTimer;
+    this.delayedAckTimer = delayedAckTimer;
     this.sessionId = (this.isClient) ? UUID.NULL_ID : UUID.getUUID();
     this.debugId = (this.isClient) ? "CLIENT" : "SERVER";
   }
@@ -170,11 +189,12 @@ public class OnceAndOnlyOnceProtocolNetworkLayerImpl extends AbstractMessageTran
         if (debug) {
           debugLog("A same-session client is trying to connect - reply OK");
         }
-        OOOProtocolMessage reply = createHandshakeReplyOkMessage(delivery.getReceiver().getReceived());
+        OOOProtocolMessage reply = createHandshakeReplyOkMessage(delivery.getReceiver().getReceived(),
+                                                                 delivery.getReceiver().getSelectiveAcks());
         sendMessage(reply);
 
         delivery.resume();
-        delivery.receive(createHandshakeReplyOkMessage(msg.getAckSequence()));
+        delivery.receive(createHandshakeReplyOkMessage(msg.getAckSequence(), msg.getSelectiveAcks()));
 
         resetModesAndfireTransportConnectedEvent();
 
@@ -389,7 +409,8 @@ public class OnceAndOnlyOnceProtocolNetworkLayerImpl extends AbstractMessageTran
 
   @Override
   public OOOProtocolMessage createHandshakeMessage(long ack) {
-    OOOProtocolMessage rv = this.messageFactory.createNewHandshakeMessage(getSessionId(), ack);
+    OOOProtocolMessage rv = this.messageFactory.createNewHandshakeMessage(getSessionId(), ack, delivery.getReceiver()
+        .getSelectiveAcks());
     return rv;
   }
 
@@ -399,19 +420,42 @@ public class OnceAndOnlyOnceProtocolNetworkLayerImpl extends AbstractMessageTran
     return rv;
   }
 
+  private OOOProtocolMessage createHandshakeReplyOkMessage(long ack, long[] selectiveAcks) {
+    return this.messageFactory.createNewHandshakeReplyOkMessage(getSessionId(), ack, selectiveAcks);
+  }
+
   @Override
   public OOOProtocolMessage createHandshakeReplyFailMessage(long ack) {
     OOOProtocolMessage rv = this.messageFactory.createNewHandshakeReplyFailMessage(getSessionId(), ack);
     return rv;
   }
 
+  /**
+   * @return send window and resend counters of the sender followed by the out of order and ack counters of the
+   *         receiver
+   */
+  public Map<String, Long> getStatistics() {
+    return delivery.getStatistics();
+  }
+
   private UUID getSessionId() {
     return sessionId;
   }
 
   @Override
   public OOOProtocolMessage createAckMessage(long ack) {
-    return (this.messageFactory.createNewAckMessage(getSessionId(), ack));
+    return (this.messageFactory.createNewAckMessage(getSessionId(), ack, delivery.getReceiver().getSelectiveAcks()));
+  }
+
+  @Override
+  public boolean scheduleDelayedAck(long delayNanos) {
+    if (delayedAckTimer == null) { return false; }
+    try {
+      delayedAckTimer.schedule(flushDelayedAck, delayNanos, TimeUnit.NANOSECONDS);
+      return true;
+    } catch (RejectedExecutionException e) {
+      return false;
+    }
   }
 
   @Override
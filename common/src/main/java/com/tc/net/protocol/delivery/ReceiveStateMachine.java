@@ -23,21 +23,57 @@ import com.tc.util.Assert;
 import com.tc.util.DebugUtil;
 import com.tc.util.UUID;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
 /**
  * State Machine handling message receive for OOO
+ * <p>
+ * Messages which arrive ahead of a gap are held, up to a send window beyond the last in-order message, and delivered
+ * once the gap is filled. The held sequences are reported to the sender as selective acks so a resend after reconnect
+ * only has to cover the gaps.
+ * <p>
+ * In-order messages are acked once every maxDelayedAcks messages. When a delay is configured the ack is also due that
+ * long after the first unacked message, so a burst shorter than maxDelayedAcks still gets acked. An outbound message
+ * which carries the ack before then makes the delayed one unnecessary.
  */
 public class ReceiveStateMachine extends AbstractStateMachine {
+  // used when the send window is disabled, to keep the out of order buffer bounded
+  private static final int                 DEFAULT_OUT_OF_ORDER_WINDOW = 128;
+  // an ack reports at most this many ranges, the lowest ones, which are the ones a resend reaches first
+  static final int                         MAX_SELECTIVE_ACK_RANGES    = 16;
+  private static final long[]              NO_SELECTIVE_ACKS           = new long[0];
+
   private final State                      MESSAGE_WAIT_STATE = new MessageWaitState();
   private final int                        maxDelayedAcks;
+  private final long                       maxDelayedAckNanos;
+  private final int                        outOfOrderWindow;
   private final String                     debugId;
   private final OOOProtocolMessageDelivery delivery;
   private static final boolean             debug              = false;
 
   private volatile long                    received           = -1;
   private volatile long                    lastAcked          = -1;
+  private final TreeMap<Long, OOOProtocolMessage> outOfOrder  = new TreeMap<Long, OOOProtocolMessage>();
+  private long                             outOfOrderHeld     = 0;
+  private long                             outOfOrderDropped  = 0;
+  private long                             duplicates         = 0;
+  private boolean                          delayedAckPending  = false;
+  private long                             delivered          = 0;
+  private long                             acksSent           = 0;
+  private long                             delayedAcksSent    = 0;
+  private long                             delayedAcksSkipped = 0;
+  // only written by the sender, under its lock, when it piggybacks the ack on an outbound message
+  private volatile long                    piggybackedAcks    = 0;
 
   public ReceiveStateMachine(OOOProtocolMessageDelivery delivery, ReconnectConfig reconnectConfig, boolean isClient) {
     maxDelayedAcks = reconnectConfig.getMaxDelayAcks();
+    maxDelayedAckNanos = TimeUnit.MICROSECONDS.toNanos(reconnectConfig.getMaxDelayAckMicros());
+    int sendWindow = reconnectConfig.getSendWindow();
+    this.outOfOrderWindow = (sendWindow > 0) ? sendWindow : DEFAULT_OUT_OF_ORDER_WINDOW;
     this.debugId = (isClient) ? "CLIENT" : "SERVER";
     this.delivery = delivery;
   }
@@ -54,8 +90,8 @@ public class ReceiveStateMachine extends AbstractStateMachine {
 
   @Override
   public String toString() {
-    return "CurrentState: " + getCurrentState() + "; Received: " + received + "; lastAcked: " + lastAcked + "; "
-           + super.toString();
+    return "CurrentState: " + getCurrentState() + "; Received: " + received + "; lastAcked: " + lastAcked
+           + "; OutOfOrder: " + outOfOrder.size() + "; " + super.toString();
   }
 
   private class MessageWaitState extends AbstractState {
@@ -76,24 +112,39 @@ public class ReceiveStateMachine extends AbstractStateMachine {
 
     private void handleSendMessage(OOOProtocolMessage msg) {
       final long r = msg.getSent();
-      if (r <= received) {
+      if (r <= received || outOfOrder.containsKey(r)) {
         // we already got message
         debugLog("Received dup msg " + r);
+        duplicates++;
         sendAck(received);
       } else if (r > (received + 1)) {
-        // message missed, resend ack, receive to resend message.
+        // message missed, hold this one if it is inside the window and ack what we have so the gap gets resent
         debugLog("Received out of order msg " + r);
+        if (r - received <= outOfOrderWindow) {
+          outOfOrder.put(r, msg);
+          outOfOrderHeld++;
+        } else {
+          outOfOrderDropped++;
+        }
         sendAck(received);
       } else {
         Assert.assertTrue(r == (received + 1));
         putMessage(msg);
-        ackIfNeeded(received = r);
+        received = r;
+        // the gap is filled, deliver whatever was held behind it
+        OOOProtocolMessage next;
+        while ((next = outOfOrder.remove(received + 1)) != null) {
+          putMessage(next);
+          received++;
+        }
+        ackIfNeeded(received);
       }
     }
   }
 
   private void putMessage(OOOProtocolMessage msg) {
     this.delivery.receiveMessage(msg);
+    delivered++;
   }
 
   private void ackIfNeeded(long next) {
@@ -101,6 +152,23 @@ public class ReceiveStateMachine extends AbstractStateMachine {
       if (!sendAck(next)) {
         debugLog("Failed to send ack:" + next);
       }
+    } else if (maxDelayedAckNanos > 0 && !delayedAckPending && next > lastAcked) {
+      delayedAckPending = delivery.scheduleDelayedAck(maxDelayedAckNanos);
+    }
+  }
+
+  /**
+   * Sends the ack scheduled by {@link OOOProtocolMessageDelivery#scheduleDelayedAck(long)}, unless an outbound message
+   * or a later ack already covered everything received.
+   */
+  public synchronized void flushDelayedAck() {
+    delayedAckPending = false;
+    if (isPaused() || received <= lastAcked) {
+      delayedAcksSkipped++;
+      return;
+    }
+    if (sendAck(received)) {
+      delayedAcksSent++;
     }
   }
 
@@ -109,6 +177,7 @@ public class ReceiveStateMachine extends AbstractStateMachine {
     Assert.assertTrue(!opm.getSessionId().equals(UUID.NULL_ID));
     if (delivery.sendMessage(opm)) {
       lastAcked = seq;
+      acksSent++;
       return true;
     } else {
       return false;
@@ -119,13 +188,64 @@ public class ReceiveStateMachine extends AbstractStateMachine {
     // This is inherently a bit racey; on the SendStateMachine side (receiver for this ack), acks will arrive out of order
     // but that should be fine, as all we need to do is clean out the send window up to the highest received ack, essentially
     // ignore everything less than the highest ack seen.
-    return (lastAcked = received);
+    long current = received;
+    if (current > lastAcked) {
+      piggybackedAcks++;
+    }
+    return (lastAcked = current);
+  }
+
+  /**
+   * @return the held out of order sequences as inclusive first/last pairs, for the next ack or handshake
+   */
+  public synchronized long[] getSelectiveAcks() {
+    if (outOfOrder.isEmpty()) { return NO_SELECTIVE_ACKS; }
+    long[] ranges = new long[Math.min(outOfOrder.size(), MAX_SELECTIVE_ACK_RANGES) * 2];
+    int count = 0;
+    Iterator<Long> it = outOfOrder.keySet().iterator();
+    long first = it.next();
+    long last = first;
+    while (count < ranges.length) {
+      Long seq = it.hasNext() ? it.next() : null;
+      if (seq != null && seq == last + 1) {
+        last = seq;
+        continue;
+      }
+      ranges[count++] = first;
+      ranges[count++] = last;
+      if (seq == null) {
+        break;
+      }
+      first = last = seq;
+    }
+    if (count == ranges.length) { return ranges; }
+    long[] trimmed = new long[count];
+    System.arraycopy(ranges, 0, trimmed, 0, count);
+    return trimmed;
+  }
+
+  public synchronized Map<String, Long> getStatistics() {
+    Map<String, Long> stats = new LinkedHashMap<String, Long>();
+    stats.put("Received", received);
+    stats.put("OutOfOrderPending", (long) outOfOrder.size());
+    stats.put("OutOfOrderHeld", outOfOrderHeld);
+    stats.put("OutOfOrderDropped", outOfOrderDropped);
+    stats.put("Duplicates", duplicates);
+    stats.put("Delivered", delivered);
+    stats.put("AcksSent", acksSent);
+    stats.put("DelayedAcksSent", delayedAcksSent);
+    stats.put("DelayedAcksSkipped", delayedAcksSkipped);
+    stats.put("PiggybackedAcks", piggybackedAcks);
+    // standalone ack messages per thousand messages delivered
+    stats.put("AckRatioPerMille", delivered == 0 ? 0L : acksSent * 1000 / delivered);
+    return stats;
   }
 
   @Override
   public synchronized void reset() {
     received = -1;
     lastAcked = -1;
+    outOfOrder.clear();
   }
 
   private void debugLog(String msg) {
@@ -140,6 +260,6 @@ public class ReceiveStateMachine extends AbstractStateMachine {
 
   // for testing purpose only
   synchronized boolean isClean() {
-    return ((received == -1) && (lastAcked == -1));
+    return ((received == -1) && (lastAcked == -1) && outOfOrder.isEmpty());
   }
 }
@@ -26,14 +26,21 @@ import com.tc.util.Assert;
 import com.tc.util.DebugUtil;
 import com.tc.util.Util;
 
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * State Machine handling message send for OOO
+ * <p>
+ * Outstanding messages sit in a ring indexed by sequence, so acking, marking and resending never walk a list. A
+ * message the peer has selectively acked is skipped when resending after a reconnect but is only released once the
+ * cumulative ack covers it, since the peer may still discard what it held out of order.
  */
 public class SendStateMachine extends AbstractStateMachine {
+  // ring size when the send window is disabled, it grows as needed
+  private static final int                 DEFAULT_WINDOW_CAPACITY = 32;
   private final int                        sendQueueCap;
   final State                              HANDSHAKE_WAIT_STATE  = new HandshakeWaitState();
   final State                              MESSAGE_WAIT_STATE    = new MessageWaitState();
@@ -42,7 +49,8 @@ public class SendStateMachine extends AbstractStateMachine {
   final State                              PAUSED_STATE          = new PausedState();
 
   private final OOOProtocolMessageDelivery delivery;
-  private final LinkedList<OOOProtocolMessage> outstandingMsgs       = new LinkedList<OOOProtocolMessage>();
+  private OOOProtocolMessage[]             outstandingMsgs;
+  private boolean[]                        selectivelyAcked;
   private final int                        sendWindow;
   private final boolean                    isClient;
   private final String                     debugId;
@@ -53,12 +61,19 @@ public class SendStateMachine extends AbstractStateMachine {
   private long                             sent                  = -1;
   private long                             acked                 = -1;
   private int                              outstandingCnt        = 0;
+  private int                              maxOutstandingCnt     = 0;
+  private long                             resent                = 0;
+  private long                             resendsSkipped        = 0;
+  private long                             selectiveAcksReceived = 0;
   private LinkedBlockingQueue<TCNetworkMessage> sendQueue;
 
   public SendStateMachine(OOOProtocolMessageDelivery delivery, ReconnectConfig reconnectConfig, boolean isClient) {
     this.delivery = delivery;
     // set sendWindow from tc.properties if exist. 0 to disable window send.
     sendWindow = reconnectConfig.getSendWindow();
+    int capacity = Integer.highestOneBit(Math.max(sendWindow > 0 ? sendWindow : DEFAULT_WINDOW_CAPACITY, 2) - 1) << 1;
+    this.outstandingMsgs = new OOOProtocolMessage[capacity];
+    this.selectivelyAcked = new boolean[capacity];
     int queueCap = reconnectConfig.getSendQueueCapacity();
     this.sendQueueCap = (queueCap == 0) ? Integer.MAX_VALUE : queueCap;
     this.sendQueue = new LinkedBlockingQueue<TCNetworkMessage>(this.sendQueueCap);
@@ -90,7 +105,8 @@ public class SendStateMachine extends AbstractStateMachine {
   @Override
   public String toString() {
     return "CurrentState: " + getCurrentState() + "; OutStandingMsgsCount: " + outstandingCnt + "; Sent: " + sent
-           + "; Acked: " + acked + "; " + super.toString();
+           + "; Acked: " + acked + "; Resent: " + resent + "; ResendsSkipped: " + resendsSkipped + "; "
+           + super.toString();
   }
 
   @Override
@@ -137,6 +153,7 @@ public class SendStateMachine extends AbstractStateMachine {
           removeMessage();
         }
       }
+      markSelectivelyAcked(msg.getSelectiveAcks());
       if (outstandingCnt > 0) {
         // resend those not acked
         resendOutstandings();
@@ -209,6 +226,7 @@ public class SendStateMachine extends AbstractStateMachine {
         ++acked;
         removeMessage();
       }
+      markSelectivelyAcked(protocolMessage.getSelectiveAcks());
 
       if (outstandingCnt < sendWindow) {
         switchToState(MESSAGE_WAIT_STATE);
@@ -265,26 +283,84 @@ public class SendStateMachine extends AbstractStateMachine {
   private OOOProtocolMessage createProtocolMessage(long count) {
     final OOOProtocolMessage opm = delivery.createProtocolMessage(count, dequeue(sendQueue));
     Assert.eval(opm != null);
+    if (outstandingCnt == outstandingMsgs.length) {
+      growWindow();
+    }
+    outstandingMsgs[slot(count)] = opm;
     outstandingCnt++;
-    outstandingMsgs.add(opm);
+    maxOutstandingCnt = Math.max(maxOutstandingCnt, outstandingCnt);
     return (opm);
   }
 
-  private void resendOutstandings() { 
-    ListIterator<OOOProtocolMessage> it = outstandingMsgs.listIterator(0);
-    while (it.hasNext()) {
-      OOOProtocolMessage msg = it.next();
-      delivery.sendMessage(msg);
+  private int slot(long seq) {
+    return (int) (seq & (outstandingMsgs.length - 1));
+  }
+
+  private void growWindow() {
+    OOOProtocolMessage[] oldMsgs = outstandingMsgs;
+    boolean[] oldAcked = selectivelyAcked;
+    outstandingMsgs = new OOOProtocolMessage[oldMsgs.length << 1];
+    selectivelyAcked = new boolean[oldMsgs.length << 1];
+    for (long seq = acked + 1; seq <= sent - 1; seq++) {
+      int oldSlot = (int) (seq & (oldMsgs.length - 1));
+      outstandingMsgs[slot(seq)] = oldMsgs[oldSlot];
+      selectivelyAcked[slot(seq)] = oldAcked[oldSlot];
+    }
+  }
+
+  private void markSelectivelyAcked(long[] ranges) {
+    for (int i = 0; i + 1 < ranges.length; i += 2) {
+      long first = Math.max(ranges[i], acked + 1);
+      long last = Math.min(ranges[i + 1], sent);
+      for (long seq = first; seq <= last; seq++) {
+        if (!selectivelyAcked[slot(seq)]) {
+          selectivelyAcked[slot(seq)] = true;
+          selectiveAcksReceived++;
+        }
+      }
     }
   }
 
+  private void resendOutstandings() {
+    int count = 0;
+    int skipped = 0;
+    for (long seq = acked + 1; seq <= sent; seq++) {
+      if (selectivelyAcked[slot(seq)]) {
+        skipped++;
+      } else {
+        delivery.sendMessage(outstandingMsgs[slot(seq)]);
+        count++;
+      }
+    }
+    resent += count;
+    resendsSkipped += skipped;
+    logger.info("SENDER-" + debugId + "-" + delivery.getConnectionId() + "; Resent: " + count
+                + " Skipped (selectively acked): " + skipped);
+  }
+
   private void removeMessage() {
-    OOOProtocolMessage msg = outstandingMsgs.removeFirst();
+    int slot = slot(acked);
+    OOOProtocolMessage msg = outstandingMsgs[slot];
+    outstandingMsgs[slot] = null;
+    selectivelyAcked[slot] = false;
     msg.reallyDoRecycleOnWrite();
     outstandingCnt--;
     Assert.eval(outstandingCnt >= 0);
   }
 
+  public synchronized Map<String, Long> getStatistics() {
+    Map<String, Long> stats = new LinkedHashMap<String, Long>();
+    stats.put("Sent", sent);
+    stats.put("Acked", acked);
+    stats.put("Outstanding", (long) outstandingCnt);
+    stats.put("MaxOutstanding", (long) maxOutstandingCnt);
+    stats.put("WindowCapacity", (long) outstandingMsgs.length);
+    stats.put("SelectivelyAcked", selectiveAcksReceived);
+    stats.put("Resent", resent);
+    stats.put("ResendsSkipped", resendsSkipped);
+    return stats;
+  }
+
   @Override
   public synchronized void reset() {
 
@@ -293,7 +369,8 @@ public class SendStateMachine extends AbstractStateMachine {
 
     // purge out outstanding sends
     outstandingCnt = 0;
-    outstandingMsgs.clear();
+    Arrays.fill(outstandingMsgs, null);
+    Arrays.fill(selectivelyAcked, false);
 
     LinkedBlockingQueue<TCNetworkMessage> tmpQ = sendQueue;
     sendQueue = new LinkedBlockingQueue<TCNetworkMessage>(sendQueueCap);
@@ -325,7 +402,7 @@ public class SendStateMachine extends AbstractStateMachine {
 
   // for testing purpose only
   boolean isClean() {
-    return (sendQueue.isEmpty() && outstandingMsgs.isEmpty());
+    return (sendQueue.isEmpty() && outstandingCnt == 0);
   }
 
 }
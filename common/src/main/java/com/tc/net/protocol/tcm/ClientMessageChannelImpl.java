@@ -175,6 +175,7 @@ public class ClientMessageChannelImpl extends AbstractMessageChannel implements
     rv.setClientVersion(clientVersion);
     rv.setEnterpriseClient(isEnterpriseClient);
     rv.setDiagnosticClient(isDiagnosticClient);
+    rv.setAcceptsQueueDepth(true);
     rv.setClientPID(getPID());
     rv.setUUID(uuid);
     rv.setName(name);
@@ -284,6 +284,12 @@ public class ClientMessageTransport extends MessageTransportBase {
         Assert.eval(!ConnectionID.NULL_ID.equals(getConnectionId()));
         Assert.assertNotNull(this.waitForSynAckResult);
       }
+      if (!synAck.hasErrorContext()) {
+        WireCompressor codec = TransportCompression.negotiated(synAck);
+        if (codec != null) {
+          TransportCompression.enable(getConnection(), codec);
+        }
+      }
       getConnection().setTransportEstablished();
       this.waitForSynAckResult.set(synAck);
       setRemoteCallbackPort(synAck.getCallbackPort());
@@ -351,6 +357,7 @@ public class ClientMessageTransport extends MessageTransportBase {
       }
       TransportHandshakeMessage syn = this.messageFactory.createSyn(getConnectionId(), getConnection(),
                                                                     stackLayerFlags, this.callbackPort);
+      TransportCompression.offer(syn);
       // send syn message
       try {
         this.sendToConnection(syn);
@@ -281,7 +281,7 @@ public class ServerStackProvider implements NetworkStackProvider, MessageTranspo
           sendSynAck(((SynMessage) message).getConnectionId(),
                      new TransportHandshakeErrorContext(errorMessage,
                                                         TransportHandshakeError.ERROR_RECONNECTION_REJECTED),
-                     ((SynMessage) message).getSource(), false);
+                     ((SynMessage) message).getSource(), false, null);
 
           handleHandshakeError(new TransportHandshakeErrorContext(errorMessage, e));
         }
@@ -351,7 +351,7 @@ public class ServerStackProvider implements NetworkStackProvider, MessageTranspo
         layersPresentInServer += this.transport.getCommunicationStackNames(this.transport);
         sendSynAck(connectionId, new TransportHandshakeErrorContext(layersPresentInServer,
             TransportHandshakeError.ERROR_STACK_MISMATCH),
-            syn.getSource(), isMaxConnectionReached);
+            syn.getSource(), isMaxConnectionReached, null);
         if ((serverStackLayerFlags & NetworkLayer.TYPE_OOO_LAYER) != 0) logger
             .error(NetworkLayer.ERROR_OOO_IN_SERVER_NOT_IN_CLIENT);
         else logger.error(NetworkLayer.ERROR_OOO_IN_CLIENT_NOT_IN_SERVER);
@@ -375,16 +375,18 @@ public class ServerStackProvider implements NetworkStackProvider, MessageTranspo
       }
       logger.info("User " + principal + " successfully authenticated");
       // todo store principal ?
-      sendSynAck(connectionId, syn.getSource(), isMaxConnectionReached);
+      sendSynAck(connectionId, syn, isMaxConnectionReached);
     }
 
     private boolean verifySyn(WireProtocolMessage message) {
       return message instanceof TransportHandshakeMessage && (((TransportHandshakeMessage) message).isSyn());
     }
 
-    private void sendSynAck(ConnectionID connectionId, TCConnection source, boolean isMaxConnectionReached) {
+    private void sendSynAck(ConnectionID connectionId, SynMessage syn, boolean isMaxConnectionReached) {
+      TCConnection source = syn.getSource();
       source.addWeight(MessageTransport.CONNWEIGHT_TX_HANDSHAKED);
-      sendSynAck(connectionId, null, source, isMaxConnectionReached);
+      sendSynAck(connectionId, null, source, isMaxConnectionReached,
+                 isMaxConnectionReached ? null : TransportCompression.negotiated(syn));
     }
 
     /**
@@ -393,11 +395,11 @@ public class ServerStackProvider implements NetworkStackProvider, MessageTranspo
     private void sendSynAck(TransportHandshakeErrorContext errorContext, TCConnection source,
                             boolean isMaxConnectionsReached) {
       Assert.eval(errorContext != null);
-      sendSynAck(null, errorContext, source, isMaxConnectionsReached);
+      sendSynAck(null, errorContext, source, isMaxConnectionsReached, null);
     }
 
     private void sendSynAck(ConnectionID connectionId, TransportHandshakeErrorContext errorContext,
-                            TCConnection source, boolean isMaxConnectionsReached) {
+                            TCConnection source, boolean isMaxConnectionsReached, WireCompressor compression) {
       TransportHandshakeMessage synAck;
       boolean isError = (errorContext != null);
       int maxConnections = connectionPolicy.getMaxConnections();
@@ -417,6 +419,10 @@ public class ServerStackProvider implements NetworkStackProvider, MessageTranspo
         int callbackPort = source.getLocalAddress().getPort();
         synAck = handshakeMessageFactory.createSynAck(connectionId, source, isMaxConnectionsReached, maxConnections,
                                                       callbackPort);
+        if (compression != null) {
+          TransportCompression.accept(synAck, compression);
+          TransportCompression.enable(source, compression);
+        }
       }
       sendMessage(synAck);
     }
@@ -0,0 +1,77 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.transport;
+
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+import com.tc.net.core.TCConnection;
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+
+/**
+ * Negotiates wire compression during the transport handshake. The client offers its codec in the SYN header, the
+ * server accepts it by echoing the codec in the SYN_ACK header when it has compression enabled with the same codec.
+ * Peers that know nothing about compression leave the type of service byte alone, so they never negotiate it.
+ */
+final class TransportCompression {
+  private static final TCLogger       logger = TCLogging.getLogger(TransportCompression.class);
+
+  private static final WireCompressor CODEC;
+  private static final int            THRESHOLD;
+
+  static {
+    TCProperties props = TCPropertiesImpl.getProperties();
+    if (props.getBoolean(TCPropertiesConsts.TC_MESSAGE_COMPRESSION_ENABLED, false)) {
+      String codec = props.getProperty(TCPropertiesConsts.TC_MESSAGE_COMPRESSION_CODEC, true);
+      CODEC = WireCompression.forName(codec == null ? "lz4" : codec);
+      THRESHOLD = props.getInt(TCPropertiesConsts.TC_MESSAGE_COMPRESSION_THRESHOLD, 8192);
+      logger.info("Wire compression enabled: codec " + CODEC.getName() + ", threshold " + THRESHOLD + " bytes");
+    } else {
+      CODEC = null;
+      THRESHOLD = Integer.MAX_VALUE;
+    }
+  }
+
+  private TransportCompression() {
+    // no instances
+  }
+
+  static void offer(TransportHandshakeMessage syn) {
+    if (CODEC != null) {
+      syn.getWireProtocolHeader().setCompressionCodec(CODEC.getCodecId());
+    }
+  }
+
+  /**
+   * @return the codec both sides agreed on, or <code>null</code>
+   */
+  static WireCompressor negotiated(TransportHandshakeMessage handshake) {
+    if (CODEC == null) { return null; }
+    return handshake.getWireProtocolHeader().getCompressionCodec() == CODEC.getCodecId() ? CODEC : null;
+  }
+
+  static void accept(TransportHandshakeMessage synAck, WireCompressor codec) {
+    synAck.getWireProtocolHeader().setCompressionCodec(codec.getCodecId());
+  }
+
+  static void enable(TCConnection connection, WireCompressor codec) {
+    connection.enableCompression(codec, THRESHOLD);
+  }
+}
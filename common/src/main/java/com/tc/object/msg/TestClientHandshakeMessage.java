@@ -49,6 +49,7 @@ public class TestClientHandshakeMessage extends TestTCMessage implements ClientH
   public boolean                requestedObjectIDs;
   private boolean               enterpriseClient               = false;
   private boolean               diagnosticClient               = false;
+  private boolean               acceptsQueueDepth              = false;
   public NoExceptionLinkedQueue<List<SequenceID>> setTransactionSequenceIDsCalls = new NoExceptionLinkedQueue<List<SequenceID>>();
   public NoExceptionLinkedQueue<List<TransactionID>> setTransactionIDsCalls         = new NoExceptionLinkedQueue<List<TransactionID>>();
   public List<SequenceID>                   transactionSequenceIDs         = new ArrayList<SequenceID>();
@@ -155,6 +156,16 @@ public class TestClientHandshakeMessage extends TestTCMessage implements ClientH
     this.enterpriseClient = isEnterpriseClient;
   }
 
+  @Override
+  public void setAcceptsQueueDepth(boolean acceptsQueueDepth) {
+    this.acceptsQueueDepth = acceptsQueueDepth;
+  }
+
+  @Override
+  public boolean acceptsQueueDepth() {
+    return this.acceptsQueueDepth;
+  }
+
   @Override
   public boolean diagnosticClient() {
     return this.diagnosticClient;
@@ -29,6 +29,7 @@ public class L1ReconnectConfigImpl extends AbstractReconnectConfig {
         .getProperties().getInt(TCPropertiesConsts.L2_L1RECONNECT_TIMEOUT_MILLS), TCPropertiesImpl.getProperties()
         .getInt(TCPropertiesConsts.L2_L1RECONNECT_SENDQUEUE_CAP), TCPropertiesImpl.getProperties()
         .getInt(TCPropertiesConsts.L2_L1RECONNECT_MAX_DELAYEDACKS), TCPropertiesImpl.getProperties()
+        .getInt(TCPropertiesConsts.L2_L1RECONNECT_MAX_DELAYEDACK_MICROS), TCPropertiesImpl.getProperties()
         .getInt(TCPropertiesConsts.L2_L1RECONNECT_SEND_WINDOW), NAME);
   }
 
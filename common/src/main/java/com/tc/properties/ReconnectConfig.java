@@ -27,6 +27,12 @@ public interface ReconnectConfig {
   int getSendQueueCapacity();
   
   int getMaxDelayAcks();
+
+  /**
+   * @return how long, in microseconds, a received message may go unacknowledged when fewer than
+   *         {@link #getMaxDelayAcks()} messages follow it, 0 to ack only by count
+   */
+  int getMaxDelayAckMicros();
   
   int getSendWindow();
   
@@ -73,6 +73,8 @@ public interface TCPropertiesConsts {
    * tcgroupcomm.reconnect.timeout        - L2-L2 reconnect windows in milliseconds
    * tcgroupcomm.reconnect.sendqueue.cap  - Sendqueue capacity, 0 for Integer.MAX_VALUE
    * tcgroupcomm.reconnect.maxDelayedAcks - At least one ack per maxDelayedAcks messages received
+   * tcgroupcomm.reconnect.maxDelayedAck.micros - Max microseconds a received message may wait for its ack,
+   *                                        0 to ack only every maxDelayedAcks messages
    * tcgroupcomm.reconnect.sendWindow     - Max outstanding messages before ack received
    * tcgroupcomm.reconnect.enabled        - Enable L2-L2 reconnect
    * send.timeout.millis                  - Number of milliseconds to retry sending a message
@@ -84,6 +86,7 @@ public interface TCPropertiesConsts {
   public static final String L2_NHA_TCGROUPCOMM_RECONNECT_TIMEOUT                           = "l2.nha.tcgroupcomm.reconnect.timeout";
   public static final String L2_NHA_TCGROUPCOMM_RECONNECT_SENDQUEUE_CAP                     = "l2.nha.tcgroupcomm.reconnect.sendqueue.cap";
   public static final String L2_NHA_TCGROUPCOMM_RECONNECT_MAX_DELAYEDACKS                   = "l2.nha.tcgroupcomm.reconnect.maxDelayedAcks";
+  public static final String L2_NHA_TCGROUPCOMM_RECONNECT_MAX_DELAYEDACK_MICROS             = "l2.nha.tcgroupcomm.reconnect.maxDelayedAck.micros";
   public static final String L2_NHA_TCGROUPCOMM_RECONNECT_SEND_WINDOW                       = "l2.nha.tcgroupcomm.reconnect.sendWindow";
   public static final String L2_NHA_TCGROUPCOMM_DISCOVERY_INTERVAL                          = "l2.nha.tcgroupcomm.discovery.interval";
   // a hidden tc.properties only used for l2 proxy testing purpose
@@ -100,9 +103,40 @@ public interface TCPropertiesConsts {
    *                                 instance in a cluster with no passives present
    * startuplock.retries.enabled   : If true then L2s will try to lock indefinitely on the data
    *                                 directory while starting up
+   * entitypersistor.compaction.interval        : Number of entity lifecycle journal records written
+   *                                              between snapshots of the entity state
+   * passivesync.pipelined                      : If true then passive sync streams entity payloads without
+   *                                              waiting on the passive for every message
+   * passivesync.window.bytes                   : Most payload bytes a pipelined passive sync has sent but
+   *                                              not yet seen received by the passive
+   * passivesync.throttle.enabled               : If true then passive sync backs off while live client
+   *                                              requests are slowed down or queued up
+   * passivesync.throttle.min.percent           : Smallest share of its unthrottled time passive sync keeps
+   * passivesync.throttle.interval.millis       : How often the throttle level is re-evaluated
+   * passivesync.throttle.latency.percent       : Live request latency, relative to its baseline, above
+   *                                              which passive sync backs off
+   * passivesync.throttle.queue.highwater       : Queued live requests above which passive sync backs off
+   * passivesync.throttle.bytes.per.second      : Cap on the passive sync payload rate at full throttle
+   *                                              level, averaged between concurrency keys, 0 for no cap
+   * stats.sample.interval.seconds              : Resolution of the global rate statistics, in seconds
+   * stats.sample.history.size                  : Number of samples of each global rate kept for its trend
+   * reconnect.incremental                      : If true then, after a failover, entities resume as soon as
+   *                                              every client which used them has reconnected
    * </code>
    ********************************************************************************************************************/
   public static final String L2_STARTUPLOCK_RETRIES_ENABLED                                 = "l2.startuplock.retries.enabled";
+  public static final String L2_ENTITY_PERSISTOR_COMPACTION_INTERVAL                        = "l2.entitypersistor.compaction.interval";
+  public static final String L2_PASSIVE_SYNC_PIPELINED                                      = "l2.passivesync.pipelined";
+  public static final String L2_PASSIVE_SYNC_WINDOW_BYTES                                   = "l2.passivesync.window.bytes";
+  public static final String L2_PASSIVE_SYNC_THROTTLE_ENABLED                               = "l2.passivesync.throttle.enabled";
+  public static final String L2_PASSIVE_SYNC_THROTTLE_MIN_PERCENT                           = "l2.passivesync.throttle.min.percent";
+  public static final String L2_PASSIVE_SYNC_THROTTLE_INTERVAL_MILLIS                       = "l2.passivesync.throttle.interval.millis";
+  public static final String L2_PASSIVE_SYNC_THROTTLE_LATENCY_PERCENT                       = "l2.passivesync.throttle.latency.percent";
+  public static final String L2_PASSIVE_SYNC_THROTTLE_QUEUE_HIGH_WATER                      = "l2.passivesync.throttle.queue.highwater";
+  public static final String L2_PASSIVE_SYNC_THROTTLE_BYTES_PER_SECOND                      = "l2.passivesync.throttle.bytes.per.second";
+  public static final String L2_STATS_SAMPLE_INTERVAL_SECONDS                               = "l2.stats.sample.interval.seconds";
+  public static final String L2_STATS_SAMPLE_HISTORY_SIZE                                   = "l2.stats.sample.history.size";
+  public static final String L2_RECONNECT_INCREMENTAL                                       = "l2.reconnect.incremental";
   public static final String ENTITY_DEFERMENT_QUEUE_SIZE                                    = "server.entity.deferment.queue.size";
   
   /*********************************************************************************************************************
@@ -126,6 +160,14 @@ public interface TCPropertiesConsts {
   
   public static final String CLIENT_MAX_PENDING_REQUESTS                                    = "client.requests.pending.max";
   public static final String CLIENT_MAX_SENT_REQUESTS                                       = "client.requests.sent.max";
+  public static final String CLIENT_REQUEST_WINDOW_ADAPTIVE                                 = "client.requests.window.adaptive";
+  public static final String CLIENT_REQUEST_WINDOW_MIN                                      = "client.requests.window.min";
+  public static final String CLIENT_REQUEST_WINDOW_MAX                                      = "client.requests.window.max";
+  public static final String CLIENT_REQUEST_WINDOW_QUEUE_HIGH_WATER                         = "client.requests.window.queue.highwater";
+  public static final String CLIENT_INVOKE_COALESCE_ENABLED                                 = "client.invoke.coalesce.enabled";
+  public static final String CLIENT_INVOKE_COALESCE_WINDOW_MICROS                           = "client.invoke.coalesce.window.micros";
+  public static final String CLIENT_INVOKE_COALESCE_MAX_BYTES                               = "client.invoke.coalesce.bytes.max";
+  public static final String CLIENT_INVOKE_COALESCE_MAX_INVOKES                             = "client.invoke.coalesce.invokes.max";
 
   public static final String TC_TRANSPORT_HANDSHAKE_TIMEOUT                                 = "tc.transport.handshake.timeout";
   public static final String TC_CONFIG_SOURCEGET_TIMEOUT                                    = "tc.config.getFromSource.timeout";
@@ -155,6 +197,8 @@ public interface TCPropertiesConsts {
    * sendqueue.cap  - Sendqueue capacity, 0 for Integer.MAX_VALUE
    *                  reconnect to L2 that has not crashed
    * maxDelayedAcks - Max number of messages received for which ack may not be sent
+   * maxDelayedAck.micros - Max microseconds a received message may wait for its ack, 0 to ack only every
+   *                  maxDelayedAcks messages
    * sendWindow     - Max number of messages that can be sent without getting an ack back
    * rejoin.sleep.millis - Number of milliseconds to sleep before retry rejoin, if rejoin attempt was unsuccessful for some reason
    * </code>
@@ -163,6 +207,7 @@ public interface TCPropertiesConsts {
   public static final String L2_L1RECONNECT_TIMEOUT_MILLS                                   = "l2.l1reconnect.timeout.millis";
   public static final String L2_L1RECONNECT_SENDQUEUE_CAP                                   = "l2.l1reconnect.sendqueue.cap";
   public static final String L2_L1RECONNECT_MAX_DELAYEDACKS                                 = "l2.l1reconnect.maxDelayedAcks";
+  public static final String L2_L1RECONNECT_MAX_DELAYEDACK_MICROS                           = "l2.l1reconnect.maxDelayedAck.micros";
   public static final String L2_L1RECONNECT_SEND_WINDOW                                     = "l2.l1reconnect.sendWindow";
 
   /*********************************************************************************************************************
@@ -182,19 +227,39 @@ public interface TCPropertiesConsts {
    * Description : Stage monitoring can be enabled or disabled for debugging.
    * stage.monitor.enabled                : <true/false>    - Enable or Disable Monitoring
    * stage.monitor.delay                  : long            - frequency in milliseconds
+   * stage.monitor.latency.enabled        : <true/false>    - Track queue wait and handler time histograms per stage
+   * stage.queue.type                     : linked/ringbuffer - queue implementation backing the stages
+   * stage.queue.ringbuffer.capacity      : Capacity of a ring buffer stage queue when the stage is unbounded, senders
+   *                                        block once it is full
+   * stage.batch.maxsize                  : Max contexts drained per handleEvents call for batching stages
    * bytebuffer.pooling.enabled           : Enable/disable tc byte buffer pooling
-   * bytebuffer.common.pool.maxcount      : Max size of pool for tc byte buffer
-   * bytebuffer.threadlocal.pool.maxcount : Thread pool size
+   * bytebuffer.common.pool.maxcount      : Max size of pool for tc byte buffer, in 4KiB buffers split across size classes
+   * bytebuffer.threadlocal.pool.maxcount : Thread pool size, in 4KiB buffers split across size classes
+   * messages.gatheringwrite.enabled      : Write clear text messages with a single gathering write, bypassing packup
+   * messages.compression.enabled         : Offer/accept wire compression during the transport handshake
+   * messages.compression.codec           : lz4/deflate - codec to offer and accept
+   * messages.compression.threshold       : Minimum payload size in bytes for a message to be compressed
+   * comm.singleselector.enabled          : One thread and selector per comm worker for both reads and writes, senders
+   *                                        write directly when nothing is queued on the connection
    * </code>
    ********************************************************************************************************************/
   public static final String TC_STAGE_MONITOR_ENABLED                                       = "tc.stage.monitor.enabled";
   public static final String TC_STAGE_MONITOR_DELAY                                         = "tc.stage.monitor.delay";
+  public static final String TC_STAGE_MONITOR_LATENCY_ENABLED                               = "tc.stage.monitor.latency.enabled";
+  public static final String TC_STAGE_QUEUE_TYPE                                            = "tc.stage.queue.type";
+  public static final String TC_STAGE_QUEUE_RINGBUFFER_CAPACITY                             = "tc.stage.queue.ringbuffer.capacity";
+  public static final String TC_STAGE_BATCH_MAXSIZE                                         = "tc.stage.batch.maxsize";
   public static final String TC_BYTEBUFFER_POOLING_ENABLED                                  = "tc.bytebuffer.pooling.enabled";
   public static final String TC_BYTEBUFFER_COMMON_POOL_MAXCOUNT                             = "tc.bytebuffer.common.pool.maxcount";
   public static final String TC_BYTEBUFFER_THREADLOCAL_POOL_MAXCOUNT                        = "tc.bytebuffer.threadlocal.pool.maxcount";
   public static final String TC_MESSAGE_GROUPING_ENABLED                                    = "tc.messages.grouping.enabled";
   public static final String TC_MESSAGE_GROUPING_MAXSIZE_KB                                 = "tc.messages.grouping.maxSizeKiloBytes";
   public static final String TC_MESSAGE_PACKUP_ENABLED                                      = "tc.messages.packup.enabled";
+  public static final String TC_MESSAGE_GATHERING_WRITE_ENABLED                             = "tc.messages.gatheringwrite.enabled";
+  public static final String TC_MESSAGE_COMPRESSION_ENABLED                                 = "tc.messages.compression.enabled";
+  public static final String TC_MESSAGE_COMPRESSION_CODEC                                   = "tc.messages.compression.codec";
+  public static final String TC_MESSAGE_COMPRESSION_THRESHOLD                               = "tc.messages.compression.threshold";
+  public static final String TC_COMM_SINGLE_SELECTOR_ENABLED                                = "tc.comm.singleselector.enabled";
 
   /*********************************************************************************************************************
    * <code>
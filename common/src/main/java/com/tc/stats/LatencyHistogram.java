@@ -0,0 +1,132 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size, log-linear histogram of non-negative long values (typically nanosecond latencies) in the style of
+ * HdrHistogram. Every power of two is split into {@link #SUB_BUCKET_COUNT} / 2 linear sub-buckets, so any recorded
+ * value is reported to within about 3% while the whole positive long range fits in under two thousand counters.
+ * <p>
+ * Recording is lock-free and safe from any number of threads. Reads are not an atomic snapshot of concurrent
+ * recordings, which is fine for monitoring.
+ */
+public class LatencyHistogram {
+
+  private static final int  SUB_BUCKET_BITS  = 6;
+  private static final int  SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int  SUB_BUCKET_HALF  = SUB_BUCKET_COUNT >> 1;
+  private static final int  MAX_SHIFT        = 62 - SUB_BUCKET_BITS + 1;
+
+  private final AtomicLongArray counts       = new AtomicLongArray((MAX_SHIFT + 2) * SUB_BUCKET_HALF);
+  private final AtomicLong      totalCount   = new AtomicLong();
+  private final AtomicLong      maxValue     = new AtomicLong();
+
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    this.counts.incrementAndGet(indexFor(value));
+    this.totalCount.incrementAndGet();
+    long max = this.maxValue.get();
+    while (value > max && !this.maxValue.compareAndSet(max, value)) {
+      max = this.maxValue.get();
+    }
+  }
+
+  public long getCount() {
+    return this.totalCount.get();
+  }
+
+  public long getMax() {
+    return this.maxValue.get();
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the highest value equivalent (within the histogram's precision) to the value at the given percentile, or 0
+   *         if nothing has been recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    long total = this.totalCount.get();
+    if (total == 0) { return 0; }
+    long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+    long seen = 0;
+    for (int i = 0; i < this.counts.length(); i++) {
+      seen += this.counts.get(i);
+      if (seen >= target) { return Math.min(highestEquivalentValue(i), getMax()); }
+    }
+    return getMax();
+  }
+
+  /**
+   * Adds the counts of another histogram into this one.
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < this.counts.length(); i++) {
+      long c = other.counts.get(i);
+      if (c != 0) {
+        this.counts.addAndGet(i, c);
+      }
+    }
+    this.totalCount.addAndGet(other.getCount());
+    long otherMax = other.getMax();
+    long max = this.maxValue.get();
+    while (otherMax > max && !this.maxValue.compareAndSet(max, otherMax)) {
+      max = this.maxValue.get();
+    }
+  }
+
+  public void reset() {
+    for (int i = 0; i < this.counts.length(); i++) {
+      this.counts.set(i, 0);
+    }
+    this.totalCount.set(0);
+    this.maxValue.set(0);
+  }
+
+  static int indexFor(long value) {
+    if (value < SUB_BUCKET_COUNT) { return (int) value; }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+    return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+  }
+
+  static long highestEquivalentValue(int index) {
+    if (index < SUB_BUCKET_COUNT) { return index; }
+    int shift = index / SUB_BUCKET_HALF - 1;
+    long subBucket = index - (long) shift * SUB_BUCKET_HALF;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  /**
+   * One line summary with the 50th, 99th and 99.9th percentiles and the max, values divided by <code>unitDivisor</code>.
+   */
+  public String toString(long unitDivisor, String unit) {
+    return "count=" + getCount() + " p50=" + getValueAtPercentile(50) / unitDivisor + unit + " p99="
+           + getValueAtPercentile(99) / unitDivisor + unit + " p999=" + getValueAtPercentile(99.9) / unitDivisor + unit
+           + " max=" + getMax() / unitDivisor + unit;
+  }
+
+  @Override
+  public String toString() {
+    return toString(1, "ns");
+  }
+}
@@ -20,6 +20,9 @@ package com.tc.stats.counter;
 
 /**
  * A simple counter
+ * <p>
+ * The update methods return the value after the update unless the implementation says otherwise, see
+ * {@link StripedCounter}.
  */
 public interface Counter {
 
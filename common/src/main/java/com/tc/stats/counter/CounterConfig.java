@@ -24,4 +24,10 @@ public interface CounterConfig {
   
   long getInitialValue();
 
+  /**
+   * @return true if the counter should be striped across threads (see {@link StripedCounter}) rather than kept in a
+   *         single atomic value
+   */
+  boolean isStriped();
+
 }
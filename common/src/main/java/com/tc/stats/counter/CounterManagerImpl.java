@@ -18,24 +18,48 @@
  */
 package com.tc.stats.counter;
 
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
 import com.tc.stats.counter.sampled.SampledCounter;
 import com.tc.stats.counter.sampled.SampledCounterImpl;
+import com.tc.util.concurrent.ThreadFactoryBuilder;
 
-import java.util.Timer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Creates counters and samples all of its sampled counters from one scheduled task, ticking once a second (the
+ * smallest sampling interval), rather than from a timer task per counter.
+ */
 public class CounterManagerImpl implements CounterManager {
-  private final Timer timer    = new Timer("SampledCounterManager Timer", true);
-  private boolean     shutdown = false;
+  private static final TCLogger          logger      = TCLogging.getLogger(CounterManagerImpl.class);
+  private static final long              TICK_MILLIS = 1000;
+
+  private final ScheduledExecutorService sampler     = Executors
+                                                         .newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                                                             .setNameFormat("SampledCounterManager Sampler-%d")
+                                                             .setDaemon(true).build());
+  private final List<Sampled>            sampled     = new CopyOnWriteArrayList<Sampled>();
+  private boolean                        shutdown    = false;
 
   public CounterManagerImpl() {
-    super();
+    sampler.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        sampleAll();
+      }
+    }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
   }
 
   @Override
   public synchronized void shutdown() {
     if (shutdown) { return; }
     try {
-      timer.cancel();
+      sampler.shutdownNow();
+      sampled.clear();
     } finally {
       shutdown = true;
     }
@@ -48,9 +72,7 @@ public class CounterManagerImpl implements CounterManager {
 
     Counter counter = config.createCounter();
     if (counter instanceof SampledCounterImpl) {
-      SampledCounterImpl sampledCounter = (SampledCounterImpl) counter;
-      timer.schedule(sampledCounter.getTimerTask(), sampledCounter.getIntervalMillis(), sampledCounter
-          .getIntervalMillis());
+      sampled.add(new Sampled((SampledCounterImpl) counter));
     }
     return counter;
 
@@ -64,4 +86,47 @@ public class CounterManagerImpl implements CounterManager {
     }
   }
 
+  /**
+   * @return the number of sampled counters still being sampled
+   */
+  public int getSampledCounterCount() {
+    return sampled.size();
+  }
+
+  private void sampleAll() {
+    for (Sampled next : sampled) {
+      if (next.counter.isShutdown()) {
+        sampled.remove(next);
+      } else {
+        try {
+          next.tick();
+        } catch (RuntimeException e) {
+          // one bad counter mustn't stop the others being sampled
+          logger.error("Failed to sample counter " + next.counter, e);
+        }
+      }
+    }
+  }
+
+  private static class Sampled {
+    private final SampledCounterImpl counter;
+    private final long               ticksPerSample;
+    // only touched by the sampler thread
+    private long                     ticksUntilSample;
+
+    Sampled(SampledCounterImpl counter) {
+      this.counter = counter;
+      this.ticksPerSample = Math.max(1, counter.getIntervalMillis() / TICK_MILLIS);
+      this.ticksUntilSample = this.ticksPerSample;
+    }
+
+    void tick() {
+      ticksUntilSample -= 1;
+      if (ticksUntilSample <= 0) {
+        ticksUntilSample = ticksPerSample;
+        counter.recordSample();
+      }
+    }
+  }
+
 }
@@ -20,10 +20,16 @@ package com.tc.stats.counter;
 
 public class SimpleCounterConfig implements CounterConfig {
 
-  private final long initialValue;
+  private final long    initialValue;
+  private final boolean striped;
 
   public SimpleCounterConfig(long initialValue) {
+    this(initialValue, false);
+  }
+
+  public SimpleCounterConfig(long initialValue, boolean striped) {
     this.initialValue = initialValue;
+    this.striped = striped;
   }
 
   @Override
@@ -31,8 +37,20 @@ public class SimpleCounterConfig implements CounterConfig {
     return initialValue;
   }
 
+  @Override
+  public boolean isStriped() {
+    return striped;
+  }
+
   @Override
   public Counter createCounter() {
-    return new CounterImpl(initialValue);
+    return createValueCounter(initialValue);
+  }
+
+  /**
+   * The plain counter this config stores values in, striped or not.
+   */
+  public Counter createValueCounter(long value) {
+    return striped ? new StripedCounter(value) : new CounterImpl(value);
   }
 }
@@ -0,0 +1,85 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.stats.counter;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter striped over a {@link LongAdder} so threads updating it concurrently don't fight over one cache line.
+ * Updates are cheap but reads have to sum the stripes, which makes this the counter for values updated on hot paths
+ * and read now and then (statistics sampling, for instance).
+ * <p>
+ * The update methods return the change they made rather than the new value, which would mean summing the stripes on
+ * every update; read the value with {@link #getValue()}. {@link #getAndSet(long)} only takes back what it read so
+ * updates racing with it are never lost.
+ */
+public class StripedCounter implements Counter, Serializable {
+  private final LongAdder value = new LongAdder();
+
+  public StripedCounter() {
+    this(0L);
+  }
+
+  public StripedCounter(long initialValue) {
+    this.value.add(initialValue);
+  }
+
+  @Override
+  public long increment() {
+    value.increment();
+    return 1L;
+  }
+
+  @Override
+  public long decrement() {
+    value.decrement();
+    return -1L;
+  }
+
+  @Override
+  public long getAndSet(long newValue) {
+    long previous = value.sum();
+    value.add(newValue - previous);
+    return previous;
+  }
+
+  @Override
+  public long getValue() {
+    return value.sum();
+  }
+
+  @Override
+  public long increment(long amount) {
+    value.add(amount);
+    return amount;
+  }
+
+  @Override
+  public long decrement(long amount) {
+    value.add(amount * -1);
+    return amount * -1;
+  }
+
+  @Override
+  public void setValue(long newValue) {
+    getAndSet(newValue);
+  }
+
+}
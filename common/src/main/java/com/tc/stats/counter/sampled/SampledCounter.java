@@ -27,6 +27,33 @@ public interface SampledCounter extends Counter {
   
   TimeStampedCounterValue getMostRecentSample();
 
+  /**
+   * @return the samples still held in the history, most recent first.  At most the configured history size of them
+   *         are kept, one per sampling interval.
+   */
+  TimeStampedCounterValue[] getAllSampleValues();
+
+  /**
+   * @return the smallest sample in the history, 0 if there are none
+   */
+  long getMinSample();
+
+  /**
+   * @return the largest sample in the history, 0 if there are none
+   */
+  long getMaxSample();
+
+  /**
+   * @return the mean of the samples in the history, 0 if there are none
+   */
+  long getMeanSample();
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the sample at the given percentile of the history (nearest rank), 0 if there are none
+   */
+  long getSamplePercentile(double percentile);
+
   long getAndReset();
   
   public final static SampledCounter NULL_SAMPLED_COUNTER = new SampledCounter() {
@@ -41,6 +68,31 @@ public interface SampledCounter extends Counter {
       //
     }
 
+    @Override
+    public TimeStampedCounterValue[] getAllSampleValues() {
+      return new TimeStampedCounterValue[0];
+    }
+
+    @Override
+    public long getMinSample() {
+      return 0;
+    }
+
+    @Override
+    public long getMaxSample() {
+      return 0;
+    }
+
+    @Override
+    public long getMeanSample() {
+      return 0;
+    }
+
+    @Override
+    public long getSamplePercentile(double percentile) {
+      return 0;
+    }
+
     @Override
     public long decrement() {
       return 0;
@@ -37,7 +37,15 @@ public class SampledCounterConfig extends SimpleCounterConfig {
    * @param isResetOnSample true if the counter should be reset to 0 upon each sample
    */
   public SampledCounterConfig(int intervalSecs, int historySize, boolean isResetOnSample, long initialValue) {
-    super(initialValue);
+    this(intervalSecs, historySize, isResetOnSample, initialValue, false);
+  }
+
+  /**
+   * @param striped true if the counter is updated from many threads at once and should be striped across them
+   */
+  public SampledCounterConfig(int intervalSecs, int historySize, boolean isResetOnSample, long initialValue,
+                              boolean striped) {
+    super(initialValue, striped);
     if (intervalSecs < 1) { throw new IllegalArgumentException("Interval (" + intervalSecs
                                                                + ") must be greater than or equal to 1"); }
     if (historySize < 1) { throw new IllegalArgumentException("History size (" + historySize
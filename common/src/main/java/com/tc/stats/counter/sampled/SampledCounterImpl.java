@@ -18,32 +18,30 @@
  */
 package com.tc.stats.counter.sampled;
 
-import com.tc.stats.counter.CounterImpl;
+import com.tc.stats.counter.Counter;
+import com.tc.util.concurrent.CircularLossyQueue;
 
-import java.util.TimerTask;
+import java.util.Arrays;
 
 /**
- * A counter that keeps sampled values
+ * A counter that keeps sampled values.  Samples are taken by the {@link com.tc.stats.counter.CounterManager} which
+ * created the counter, on the sampler it shares between all of its counters.  The last history size samples are kept
+ * in a ring buffer so the trend over that window can be read back, along with its min, max, mean and percentiles.
  */
-public class SampledCounterImpl extends CounterImpl implements SampledCounter {
+public class SampledCounterImpl implements SampledCounter {
   protected final boolean                                     resetOnSample;
-  private final TimerTask                                     samplerTask;
+  private final Counter                                       value;
   private final long                                          intervalMillis;
+  private volatile boolean                                    shutdown;
   private volatile TimeStampedCounterValue                    mostRecentSample;
+  private final CircularLossyQueue<TimeStampedCounterValue>   history;
   
   public SampledCounterImpl(SampledCounterConfig config) {
-    super(config.getInitialValue());
-
+    this.value = config.createValueCounter(config.getInitialValue());
     this.intervalMillis = config.getIntervalSecs() * 1000;
     this.resetOnSample = config.isResetOnSample();
+    this.history = new CircularLossyQueue<TimeStampedCounterValue>(config.getHistorySize());
 
-    this.samplerTask = new TimerTask() {
-      @Override
-      public void run() {
-        recordSample();
-      }
-    };
-    
     recordSample();
   }
 
@@ -54,20 +52,18 @@ public class SampledCounterImpl extends CounterImpl implements SampledCounter {
 
   @Override
   public void shutdown() {
-    if (samplerTask != null) {
-      samplerTask.cancel();
-    }
+    shutdown = true;
   }
 
-  public TimerTask getTimerTask() {
-    return this.samplerTask;
+  public boolean isShutdown() {
+    return shutdown;
   }
 
   public long getIntervalMillis() {
     return intervalMillis;
   }
 
-  void recordSample() {
+  public void recordSample() {
     final long sample;
     if (resetOnSample) {
       sample = getAndReset();
@@ -76,11 +72,104 @@ public class SampledCounterImpl extends CounterImpl implements SampledCounter {
     }
 
     final long now = System.currentTimeMillis();
-    mostRecentSample = new TimeStampedCounterValue(now, sample);
+    TimeStampedCounterValue value = new TimeStampedCounterValue(now, sample);
+    history.push(value);
+    mostRecentSample = value;
+  }
+
+  @Override
+  public TimeStampedCounterValue[] getAllSampleValues() {
+    TimeStampedCounterValue[] values = history.toArray(new TimeStampedCounterValue[history.depth()]);
+    // until the ring wraps, a slot the sampler has claimed but not filled yet still reads as null, leave it out
+    int filled = 0;
+    for (TimeStampedCounterValue sample : values) {
+      if (sample != null) {
+        values[filled++] = sample;
+      }
+    }
+    return (filled == values.length) ? values : Arrays.copyOf(values, filled);
+  }
+
+  @Override
+  public long getMinSample() {
+    long[] samples = sortedSamples();
+    return samples.length == 0 ? 0 : samples[0];
+  }
+
+  @Override
+  public long getMaxSample() {
+    long[] samples = sortedSamples();
+    return samples.length == 0 ? 0 : samples[samples.length - 1];
+  }
+
+  @Override
+  public long getMeanSample() {
+    long[] samples = sortedSamples();
+    if (samples.length == 0) { return 0; }
+    long total = 0;
+    for (long sample : samples) {
+      total += sample;
+    }
+    return total / samples.length;
+  }
+
+  @Override
+  public long getSamplePercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) { throw new IllegalArgumentException("percentile (" + percentile
+                                                                                  + ") must be between 0 and 100"); }
+    long[] samples = sortedSamples();
+    if (samples.length == 0) { return 0; }
+    int rank = (int) Math.ceil(percentile / 100 * samples.length);
+    return samples[Math.max(0, rank - 1)];
+  }
+
+  private long[] sortedSamples() {
+    TimeStampedCounterValue[] values = getAllSampleValues();
+    long[] samples = new long[values.length];
+    for (int i = 0; i < values.length; i++) {
+      samples[i] = values[i].getCounterValue();
+    }
+    Arrays.sort(samples);
+    return samples;
   }
 
   @Override
   public long getAndReset() {
     return getAndSet(0L);
   }
+
+  @Override
+  public long increment() {
+    return value.increment();
+  }
+
+  @Override
+  public long decrement() {
+    return value.decrement();
+  }
+
+  @Override
+  public long getAndSet(long newValue) {
+    return value.getAndSet(newValue);
+  }
+
+  @Override
+  public long getValue() {
+    return value.getValue();
+  }
+
+  @Override
+  public long increment(long amount) {
+    return value.increment(amount);
+  }
+
+  @Override
+  public long decrement(long amount) {
+    return value.decrement(amount);
+  }
+
+  @Override
+  public void setValue(long newValue) {
+    value.setValue(newValue);
+  }
 }
@@ -29,6 +29,11 @@ public class SampledCumulativeCounterConfig extends SampledCounterConfig {
     super(intervalSecs, historySize, isResetOnSample, initialValue);
   }
 
+  public SampledCumulativeCounterConfig(int intervalSecs, int historySize, boolean isResetOnSample, long initialValue,
+                                        boolean striped) {
+    super(intervalSecs, historySize, isResetOnSample, initialValue, striped);
+  }
+
   @Override
   public Counter createCounter() {
     return new SampledCumulativeCounterImpl(this);
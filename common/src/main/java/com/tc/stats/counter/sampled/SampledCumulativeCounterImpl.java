@@ -18,21 +18,21 @@
  */
 package com.tc.stats.counter.sampled;
 
-import java.util.concurrent.atomic.AtomicLong;
+import com.tc.stats.counter.Counter;
 
 public class SampledCumulativeCounterImpl extends SampledCounterImpl implements SampledCumulativeCounter {
 
-  private AtomicLong cumulativeCount;
+  private final Counter cumulativeCount;
 
   public SampledCumulativeCounterImpl(SampledCounterConfig config) {
     super(config);
-    cumulativeCount = new AtomicLong(config.getInitialValue());
+    cumulativeCount = config.createValueCounter(config.getInitialValue());
   }
 
   @Override
   public long getCumulativeValue() {
     if (resetOnSample) {
-      return cumulativeCount.get();
+      return cumulativeCount.getValue();
     } else {
       return getValue();
     }
@@ -40,25 +40,25 @@ public class SampledCumulativeCounterImpl extends SampledCounterImpl implements
 
   @Override
   public long decrement() {
-    cumulativeCount.decrementAndGet();
+    cumulativeCount.decrement();
     return super.decrement();
   }
 
   @Override
   public long decrement(long amount) {
-    cumulativeCount.addAndGet(amount * -1);
+    cumulativeCount.decrement(amount);
     return super.decrement(amount);
   }
 
   @Override
   public long increment() {
-    cumulativeCount.incrementAndGet();
+    cumulativeCount.increment();
     return super.increment();
   }
 
   @Override
   public long increment(long amount) {
-    cumulativeCount.addAndGet(amount);
+    cumulativeCount.increment(amount);
     return super.increment(amount);
   }
 
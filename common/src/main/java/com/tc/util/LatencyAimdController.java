@@ -0,0 +1,187 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util;
+
+/**
+ * Additive increase, multiplicative decrease of a value (a window, a rate) using latency as the congestion signal, in
+ * the style of delay based TCP congestion control.
+ * <p>
+ * Latency within the target grows the value by the increase step once per value's worth of such samples, so a window
+ * grows by one per window's worth of completions and a value below one grows on every sample.  Latency above the
+ * target, or an explicit {@link #decrease(long)}, multiplies the value by the decrease factor, at most once per
+ * smoothed round trip since whatever is still in flight was sent against the old value.  The target is a multiple of
+ * the lowest latency seen, never below a floor, and that minimum is re-based every epoch of samples so it can follow a
+ * link or a server which got slower for good.  The value never leaves [minimum, maximum].
+ * <p>
+ * Not thread-safe:  callers serialize access under their own lock.
+ */
+public class LatencyAimdController {
+  private final double minimum;
+  private final double maximum;
+  private final double increaseStep;
+  private final double decreaseFactor;
+  private final double latencyTolerance;
+  private final long   latencyFloorNanos;
+  private final int    minLatencyEpoch;
+
+  private double       value;
+  private double       increaseCredit;
+  private long         minLatency      = Long.MAX_VALUE;
+  private long         epochMinLatency = Long.MAX_VALUE;
+  private int          epochSamples;
+  private long         smoothedLatency;
+  private boolean      hasDecreased;
+  private long         lastDecrease;
+  private long         increases;
+  private long         decreases;
+
+  /**
+   * @param latencyTolerance latency above this multiple of the minimum latency is congestion
+   * @param latencyFloorNanos latency up to this is never congestion, whatever the minimum latency is
+   * @param minLatencyEpoch samples after which the minimum latency is re-based
+   */
+  public LatencyAimdController(double minimum, double maximum, double initial, double increaseStep,
+                               double decreaseFactor, double latencyTolerance, long latencyFloorNanos,
+                               int minLatencyEpoch) {
+    if (minimum <= 0 || maximum < minimum) {
+      throw new IllegalArgumentException("Invalid bounds [" + minimum + ", " + maximum + "]");
+    }
+    if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+      throw new IllegalArgumentException("Decrease factor must be in (0, 1): " + decreaseFactor);
+    }
+    this.minimum = minimum;
+    this.maximum = maximum;
+    this.increaseStep = increaseStep;
+    this.decreaseFactor = decreaseFactor;
+    this.latencyTolerance = latencyTolerance;
+    this.latencyFloorNanos = latencyFloorNanos;
+    this.minLatencyEpoch = Math.max(1, minLatencyEpoch);
+    this.value = Math.max(minimum, Math.min(maximum, initial));
+  }
+
+  /**
+   * Records a latency sample and increases or decreases the value from it.
+   *
+   * @param now current System.nanoTime()
+   * @return true if the sample decreased the value
+   */
+  public boolean sample(long latencyNanos, long now) {
+    recordLatency(latencyNanos);
+    if (isCongested(latencyNanos)) {
+      return decrease(now);
+    } else {
+      increase();
+      return false;
+    }
+  }
+
+  /**
+   * Records a latency sample without adjusting the value, for callers which combine it with other signals.
+   */
+  public void recordLatency(long latencyNanos) {
+    this.minLatency = Math.min(this.minLatency, latencyNanos);
+    this.epochMinLatency = Math.min(this.epochMinLatency, latencyNanos);
+    if (++this.epochSamples >= this.minLatencyEpoch) {
+      this.minLatency = this.epochMinLatency;
+      this.epochMinLatency = Long.MAX_VALUE;
+      this.epochSamples = 0;
+    }
+    this.smoothedLatency = (0 == this.smoothedLatency) ? latencyNanos
+        : this.smoothedLatency + ((latencyNanos - this.smoothedLatency) >> 3);
+  }
+
+  public boolean isCongested(long latencyNanos) {
+    return latencyNanos > getTargetLatency();
+  }
+
+  /**
+   * Counts one uncongested sample towards the next increase.
+   */
+  public void increase() {
+    this.increaseCredit += 1;
+    if (this.increaseCredit >= this.value && this.value < this.maximum) {
+      this.increaseCredit = 0;
+      this.value = Math.min(this.maximum, this.value + this.increaseStep);
+      this.increases += 1;
+    }
+  }
+
+  /**
+   * Applies the decrease factor unless the value already decreased within the last smoothed round trip.
+   *
+   * @return true if the value decreased
+   */
+  public boolean decrease(long now) {
+    boolean canDecrease = this.value > this.minimum
+                          && (!this.hasDecreased || now - this.lastDecrease >= this.smoothedLatency);
+    if (canDecrease) {
+      this.value = Math.max(this.minimum, this.value * this.decreaseFactor);
+      this.increaseCredit = 0;
+      this.hasDecreased = true;
+      this.lastDecrease = now;
+      this.decreases += 1;
+    }
+    return canDecrease;
+  }
+
+  /**
+   * Goes straight back to the maximum, for a caller which knows nothing competes with it any more.
+   */
+  public void reset() {
+    if (this.value < this.maximum) {
+      this.value = this.maximum;
+      this.increaseCredit = 0;
+      this.increases += 1;
+    }
+  }
+
+  public double getValue() {
+    return this.value;
+  }
+
+  public long getTargetLatency() {
+    return (Long.MAX_VALUE == this.minLatency) ? this.latencyFloorNanos
+        : Math.max(this.latencyFloorNanos, (long) (this.minLatency * this.latencyTolerance));
+  }
+
+  /**
+   * @return the lowest latency of the current epoch, 0 before the first sample
+   */
+  public long getMinLatency() {
+    return (Long.MAX_VALUE == this.minLatency) ? 0 : this.minLatency;
+  }
+
+  public long getSmoothedLatency() {
+    return this.smoothedLatency;
+  }
+
+  public long getIncreases() {
+    return this.increases;
+  }
+
+  public long getDecreases() {
+    return this.decreases;
+  }
+
+  @Override
+  public String toString() {
+    return "LatencyAimdController{value=" + value + ", minimum=" + minimum + ", maximum=" + maximum
+           + ", targetLatency=" + getTargetLatency() + '}';
+  }
+}
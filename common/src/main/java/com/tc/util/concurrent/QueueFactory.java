@@ -18,16 +18,53 @@
  */
 package com.tc.util.concurrent;
 
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
+/**
+ * Creates the queues backing the SEDA stages. The implementation is chosen with the
+ * {@link TCPropertiesConsts#TC_STAGE_QUEUE_TYPE} property so the lock based and the ring buffer queues can be compared
+ * on the same build.
+ * <p>
+ * Ring buffers are always bounded:  a stage asking for an unbounded queue gets one of
+ * {@link TCPropertiesConsts#TC_STAGE_QUEUE_RINGBUFFER_CAPACITY} slots and its senders block once it is full, where a
+ * linked queue would have kept growing.  The stage logs when that happens.
+ */
 public class QueueFactory<E> {
 
+  public static final String LINKED_QUEUE      = "linked";
+  public static final String RING_BUFFER_QUEUE = "ringbuffer";
+
+  private final boolean      ringBuffer;
+  private final int          ringBufferCapacity;
+
+  public QueueFactory() {
+    this(TCPropertiesImpl.getProperties());
+  }
+
+  private QueueFactory(TCProperties properties) {
+    this(properties.getProperty(TCPropertiesConsts.TC_STAGE_QUEUE_TYPE, true),
+         properties.getInt(TCPropertiesConsts.TC_STAGE_QUEUE_RINGBUFFER_CAPACITY, 16384));
+  }
+
+  public QueueFactory(String type, int ringBufferCapacity) {
+    this.ringBuffer = RING_BUFFER_QUEUE.equalsIgnoreCase(type);
+    this.ringBufferCapacity = ringBufferCapacity;
+  }
+
   public BlockingQueue<E> createInstance() {
-    return new LinkedBlockingQueue<E>();
+    return createInstance(Integer.MAX_VALUE);
   }
 
   public BlockingQueue<E> createInstance(int capacity) {
+    if (ringBuffer) {
+      // ring buffers are always bounded, unbounded requests get the configured size
+      return new RingBufferBlockingQueue<E>(capacity == Integer.MAX_VALUE ? ringBufferCapacity : capacity);
+    }
     return new LinkedBlockingQueue<E>(capacity);
   }
 
@@ -0,0 +1,306 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * A bounded, lock-free ring buffer queue. Producers and consumers claim slots with a CAS on their respective cursor
+ * and publish through a per-slot sequence number so neither side ever takes a lock. The queue is safe for many
+ * producers and many consumers; the stage queues use it with one owning consumer plus occasional stealing consumers
+ * (see {@link #pollIf(Predicate)}).
+ * <p>
+ * The capacity is rounded up to the next power of two, and to at least two. Consumers that find the queue empty park and are unparked by
+ * the next producer. Producers that find the queue full wait on a condition which consumers only signal, under its
+ * lock, while some producer is waiting, so the consumer side stays lock-free as long as the queue isn't full.
+ */
+public class RingBufferBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+  private final Object[]                    buffer;
+  private final AtomicLongArray             sequences;
+  private final int                         mask;
+  private final AtomicLong                  head                   = new AtomicLong();
+  private final AtomicLong                  tail                   = new AtomicLong();
+  private final ConcurrentLinkedQueue<Thread> waiters              = new ConcurrentLinkedQueue<Thread>();
+  private final ReentrantLock               fullLock               = new ReentrantLock();
+  private final Condition                   notFull                = this.fullLock.newCondition();
+  // producers waiting for room, raised before their last offer so a consumer freeing a slot either sees it or the
+  //  offer sees the slot
+  private final AtomicInteger               fullWaiters            = new AtomicInteger();
+
+  public RingBufferBlockingQueue(int capacity) {
+    if (capacity <= 0) { throw new IllegalArgumentException("capacity must be positive: " + capacity); }
+    if (capacity > (1 << 30)) { throw new IllegalArgumentException("capacity too large: " + capacity); }
+    // a single slot can't tell a filled slot from the next free one, its sequence is one ahead either way
+    int size = Math.max(2, Integer.highestOneBit(capacity));
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.buffer = new Object[size];
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      this.sequences.set(i, i);
+    }
+    this.mask = size - 1;
+  }
+
+  public int capacity() {
+    return this.buffer.length;
+  }
+
+  @Override
+  public boolean offer(E e) {
+    if (e == null) { throw new NullPointerException(); }
+    long pos = this.tail.get();
+    while (true) {
+      int index = (int) (pos & this.mask);
+      long diff = this.sequences.get(index) - pos;
+      if (diff == 0) {
+        if (this.tail.compareAndSet(pos, pos + 1)) {
+          this.buffer[index] = e;
+          this.sequences.set(index, pos + 1);
+          signalNotEmpty();
+          return true;
+        }
+        pos = this.tail.get();
+      } else if (diff < 0) {
+        // the slot still holds an element from the previous lap
+        return false;
+      } else {
+        pos = this.tail.get();
+      }
+    }
+  }
+
+  @Override
+  public E poll() {
+    return pollIf(null);
+  }
+
+  /**
+   * Removes the head of the queue only if it matches the given predicate. Elements behind a non-matching head are not
+   * examined, so the relative order of everything left in the queue is preserved.
+   *
+   * @param predicate test applied to the head, or <code>null</code> to accept any element
+   * @return the removed head or <code>null</code> if the queue is empty or the head does not match
+   */
+  @SuppressWarnings("unchecked")
+  public E pollIf(Predicate<? super E> predicate) {
+    long pos = this.head.get();
+    while (true) {
+      int index = (int) (pos & this.mask);
+      long diff = this.sequences.get(index) - (pos + 1);
+      if (diff == 0) {
+        // the slot cannot be reused until the head moves past pos so this read is stable for the CAS below
+        E candidate = (E) this.buffer[index];
+        if (predicate != null && !predicate.test(candidate)) { return null; }
+        if (this.head.compareAndSet(pos, pos + 1)) {
+          this.buffer[index] = null;
+          this.sequences.set(index, pos + this.mask + 1);
+          signalNotFull();
+          return candidate;
+        }
+        pos = this.head.get();
+      } else if (diff < 0) {
+        return null;
+      } else {
+        pos = this.head.get();
+      }
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E peek() {
+    long pos = this.head.get();
+    while (true) {
+      int index = (int) (pos & this.mask);
+      if (this.sequences.get(index) != pos + 1) { return null; }
+      E candidate = (E) this.buffer[index];
+      if (this.head.get() == pos) { return candidate; }
+      pos = this.head.get();
+    }
+  }
+
+  @Override
+  public void put(E e) throws InterruptedException {
+    if (offer(e)) { return; }
+    this.fullLock.lockInterruptibly();
+    try {
+      this.fullWaiters.incrementAndGet();
+      try {
+        while (!offer(e)) {
+          this.notFull.await();
+        }
+      } finally {
+        this.fullWaiters.decrementAndGet();
+      }
+    } finally {
+      this.fullLock.unlock();
+    }
+  }
+
+  @Override
+  public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+    if (offer(e)) { return true; }
+    long remaining = unit.toNanos(timeout);
+    this.fullLock.lockInterruptibly();
+    try {
+      this.fullWaiters.incrementAndGet();
+      try {
+        while (!offer(e)) {
+          if (remaining <= 0) { return false; }
+          remaining = this.notFull.awaitNanos(remaining);
+        }
+      } finally {
+        this.fullWaiters.decrementAndGet();
+      }
+      return true;
+    } finally {
+      this.fullLock.unlock();
+    }
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    E e;
+    while ((e = poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) == null) {
+      // keep waiting
+    }
+    return e;
+  }
+
+  @Override
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    E e = poll();
+    if (e != null) { return e; }
+    final Thread current = Thread.currentThread();
+    long remaining = unit.toNanos(timeout);
+    final long deadline = System.nanoTime() + remaining;
+    while (true) {
+      if (Thread.interrupted()) { throw new InterruptedException(); }
+      // register before the re-check so a concurrent producer either sees us or we see its element
+      this.waiters.add(current);
+      e = poll();
+      if (e != null || remaining <= 0) {
+        this.waiters.remove(current);
+        return e;
+      }
+      LockSupport.parkNanos(this, remaining);
+      this.waiters.remove(current);
+      e = poll();
+      if (e != null) { return e; }
+      remaining = deadline - System.nanoTime();
+    }
+  }
+
+  private void signalNotFull() {
+    if (this.fullWaiters.get() > 0) {
+      this.fullLock.lock();
+      try {
+        this.notFull.signal();
+      } finally {
+        this.fullLock.unlock();
+      }
+    }
+  }
+
+  private void signalNotEmpty() {
+    if (!this.waiters.isEmpty()) {
+      Thread waiter = this.waiters.poll();
+      if (waiter != null) {
+        LockSupport.unpark(waiter);
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    while (true) {
+      long before = this.head.get();
+      long size = this.tail.get() - before;
+      if (this.head.get() == before) { return (int) Math.max(0, Math.min(size, this.buffer.length)); }
+    }
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return peek() == null;
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return this.buffer.length - size();
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    if (c == this) { throw new IllegalArgumentException(); }
+    int count = 0;
+    E e;
+    while (count < maxElements && (e = poll()) != null) {
+      c.add(e);
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Weakly consistent, read-only view of the elements present when the iterator was created.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public Iterator<E> iterator() {
+    List<E> snapshot = new ArrayList<E>();
+    long end = this.tail.get();
+    for (long pos = this.head.get(); pos < end; pos++) {
+      int index = (int) (pos & this.mask);
+      Object e = this.buffer[index];
+      if (this.sequences.get(index) == pos + 1 && e != null) {
+        snapshot.add((E) e);
+      }
+    }
+    return Collections.unmodifiableList(snapshot).iterator();
+  }
+
+  @Override
+  public String toString() {
+    return "RingBufferBlockingQueue[size=" + size() + ", capacity=" + capacity() + "]";
+  }
+}
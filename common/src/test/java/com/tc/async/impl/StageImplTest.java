@@ -18,20 +18,28 @@
  */
 package com.tc.async.impl;
 
+import com.tc.async.api.BatchEventHandler;
 import com.tc.async.api.ConfigurationContext;
 import com.tc.async.api.EventHandler;
 import com.tc.async.api.EventHandlerException;
 import com.tc.async.api.MultiThreadedEventContext;
+import com.tc.async.api.SpecializedEventContext;
+import com.tc.exception.TCNotRunningException;
 import com.tc.logging.DefaultLoggerProvider;
 import com.tc.logging.TCLoggerProvider;
 import com.tc.util.concurrent.QueueFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -130,4 +138,134 @@ public class StageImplTest {
     }
     
   }
+
+  @Test
+  public void testBatchHandlerDrainsQueuedContexts() throws Exception {
+    TCLoggerProvider logger = new DefaultLoggerProvider();
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final BlockingQueue<Object> handled = new LinkedBlockingQueue<Object>();
+    EventHandler<Object> handler = new BatchEventHandler<Object>() {
+      @Override
+      public void handleEvent(Object context) throws EventHandlerException {
+        handled.add(Collections.singletonList(context));
+        if ("block".equals(context)) {
+          blocked.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException in) {
+            throw new AssertionError(in);
+          }
+        }
+      }
+      @Override
+      public void handleEvents(Collection<Object> context) throws EventHandlerException {
+        handled.add(new ArrayList<Object>(context));
+      }
+      @Override
+      public void destroy() { }
+      @Override
+      public void initializeContext(ConfigurationContext context) { }
+    };
+
+    StageImpl<Object> instance = new StageImpl<Object>(logger, "batch", handler, 1, null,
+        new QueueFactory<ContextWrapper<Object>>(QueueFactory.LINKED_QUEUE, 0), 16);
+    instance.start(null);
+    try {
+      instance.getSink().addSingleThreaded("block");
+      assertTrue(blocked.await(30, TimeUnit.SECONDS));
+      instance.getSink().addSingleThreaded("a");
+      instance.getSink().addSingleThreaded("b");
+      instance.getSink().addSpecialized(new SpecializedEventContext() {
+        @Override
+        public void execute() throws EventHandlerException {
+          handled.add("specialized");
+        }
+        @Override
+        public Object getSchedulingKey() {
+          return null;
+        }
+        @Override
+        public boolean flush() {
+          return false;
+        }
+      });
+      instance.getSink().addSingleThreaded("c");
+      release.countDown();
+
+//  the queued contexts are drained together, the specialized context splits the batch but keeps its place
+      assertEquals(Collections.singletonList("block"), handled.poll(30, TimeUnit.SECONDS));
+      assertEquals(Arrays.asList("a", "b"), handled.poll(30, TimeUnit.SECONDS));
+      assertEquals("specialized", handled.poll(30, TimeUnit.SECONDS));
+      assertEquals(Collections.singletonList("c"), handled.poll(30, TimeUnit.SECONDS));
+    } finally {
+      instance.destroy();
+    }
+  }
+
+  @Test
+  public void testFailedBatchDoesNotDropContextsBehindIt() throws Exception {
+    TCLoggerProvider logger = new DefaultLoggerProvider();
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final BlockingQueue<Object> handled = new LinkedBlockingQueue<Object>();
+    EventHandler<Object> handler = new BatchEventHandler<Object>() {
+      @Override
+      public void handleEvent(Object context) throws EventHandlerException {
+        handled.add(Collections.singletonList(context));
+        if ("block".equals(context)) {
+          blocked.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException in) {
+            throw new AssertionError(in);
+          }
+        }
+      }
+      @Override
+      public void handleEvents(Collection<Object> context) throws EventHandlerException {
+        if (context.contains("fail")) {
+          throw new TCNotRunningException();
+        }
+        handled.add(new ArrayList<Object>(context));
+      }
+      @Override
+      public void destroy() { }
+      @Override
+      public void initializeContext(ConfigurationContext context) { }
+    };
+
+    StageImpl<Object> instance = new StageImpl<Object>(logger, "batch", handler, 1, null,
+        new QueueFactory<ContextWrapper<Object>>(QueueFactory.LINKED_QUEUE, 0), 16);
+    instance.start(null);
+    try {
+      instance.getSink().addSingleThreaded("block");
+      assertTrue(blocked.await(30, TimeUnit.SECONDS));
+      instance.getSink().addSingleThreaded("fail");
+      instance.getSink().addSingleThreaded("a");
+      instance.getSink().addSpecialized(new SpecializedEventContext() {
+        @Override
+        public void execute() throws EventHandlerException {
+          handled.add("specialized");
+        }
+        @Override
+        public Object getSchedulingKey() {
+          return null;
+        }
+        @Override
+        public boolean flush() {
+          return false;
+        }
+      });
+      instance.getSink().addSingleThreaded("c");
+      release.countDown();
+
+//  the failed batch is lost as a failed event would be, everything drained behind it is still delivered in order
+      assertEquals(Collections.singletonList("block"), handled.poll(30, TimeUnit.SECONDS));
+      assertEquals("specialized", handled.poll(30, TimeUnit.SECONDS));
+      assertEquals(Collections.singletonList("c"), handled.poll(30, TimeUnit.SECONDS));
+    } finally {
+      instance.destroy();
+    }
+  }
 }
@@ -184,4 +184,21 @@ public class StageQueueImplTest {
     impl.addMultiThreaded(cxt);
     Assert.assertFalse(cxts.get(5).isEmpty());
   }
+
+  @Test
+  public void testRingBufferStealsOnlyUnkeyed() throws Exception {
+    TCLoggerProvider logger = new DefaultLoggerProvider();
+    StageQueueImpl<Object> impl = new StageQueueImpl<Object>(2, new QueueFactory<ContextWrapper<Object>>(QueueFactory.RING_BUFFER_QUEUE, 16), logger, "mock", 16);
+    MultiThreadedEventContext cxt = mock(MultiThreadedEventContext.class);
+    when(cxt.getSchedulingKey()).thenReturn(null);
+//  wherever the unkeyed context landed, worker 0 either owns it or steals it
+    impl.addMultiThreaded(cxt);
+    assertNotNull(impl.getSource(0).poll(0));
+    assertEquals(0, impl.size());
+//  keyed contexts stay with their worker
+    when(cxt.getSchedulingKey()).thenReturn(1);
+    impl.addMultiThreaded(cxt);
+    assertNull(impl.getSource(0).poll(0));
+    assertNotNull(impl.getSource(1).poll(0));
+  }
 }
@@ -0,0 +1,229 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+import com.tc.net.core.security.TCSecurityManager;
+import com.tc.net.protocol.NullProtocolAdaptor;
+import com.tc.net.protocol.TCNetworkMessage;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+import com.tc.test.TCTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GatheringWriteTest extends TCTestCase {
+
+  private ServerSocketChannel server;
+  private SocketChannel       client;
+  private SocketChannel       accepted;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    client = SocketChannel.open(server.socket().getLocalSocketAddress());
+    accepted = server.accept();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    accepted.close();
+    client.close();
+    server.close();
+    super.tearDown();
+  }
+
+  public void testSendFromBuffersWritesAllBuffersInOrder() throws Exception {
+    ClearTextBufferManager manager = new ClearTextBufferManager(client);
+    ByteBuffer[] srcs = new ByteBuffer[] { fill(32, 1), fill(5000, 2), fill(0, 3), fill(70000, 4) };
+
+    long written = 0;
+    while (written < 32 + 5000 + 70000) {
+      written += manager.sendFromBuffers(srcs, 0, srcs.length);
+    }
+    for (ByteBuffer src : srcs) {
+      assertFalse(src.hasRemaining());
+    }
+
+    ByteBuffer received = read(32 + 5000 + 70000);
+    assertBytes(received, 32, 1);
+    assertBytes(received, 5000, 2);
+    assertBytes(received, 70000, 4);
+  }
+
+  public void testStagedBytesGoOutBeforeGatheredBuffers() throws Exception {
+    ClearTextBufferManager manager = new ClearTextBufferManager(client);
+    assertEquals(100, manager.forwardToWriteBuffer(fill(100, 7)));
+
+    ByteBuffer[] srcs = new ByteBuffer[] { fill(32, 8), fill(200, 9) };
+    long written = 0;
+    while (written < 232) {
+      written += manager.sendFromBuffers(srcs, 0, srcs.length);
+    }
+    assertEquals(232, written);
+
+    ByteBuffer received = read(332);
+    assertBytes(received, 100, 7);
+    assertBytes(received, 32, 8);
+    assertBytes(received, 200, 9);
+  }
+
+  public void testShortWriteResumesFromTheUnwrittenBytes() throws Exception {
+    // read once when TCConnectionImpl is loaded, nothing else in this test class loads it
+    TCPropertiesImpl.getProperties().setProperty(TCPropertiesConsts.TC_MESSAGE_GATHERING_WRITE_ENABLED, "true");
+    final ShortWriteBufferManager manager = new ShortWriteBufferManager(client);
+    TCSecurityManager securityManager = mock(TCSecurityManager.class);
+    when(securityManager.getBufferManagerFactory()).thenReturn(new BufferManagerFactory() {
+      @Override
+      public BufferManager createBufferManager(SocketChannel socketChannel, boolean isClient) {
+        return manager;
+      }
+    });
+    SocketParams socketParams = new SocketParams();
+    TCConnectionImpl connection = new TCConnectionImpl(null, new NullProtocolAdaptor(), client,
+                                                       new TCConnectionManagerImpl(),
+                                                       new CoreNIOServices("gathering write test", null, socketParams),
+                                                       socketParams, securityManager);
+
+    TCNetworkMessage first = message(tcFill(10, 1), tcFill(100, 2));
+    TCNetworkMessage second = message(tcFill(10, 3), tcFill(50, 4));
+    connection.putMessage(first);
+    connection.putMessage(second);
+
+    // the socket takes part of the first payload
+    manager.accept = 105;
+    assertEquals(105, connection.doWrite());
+    assertEquals(4, manager.lastCount);
+    assertEquals(170, manager.lastRequested);
+    verify(first, never()).wasSent();
+
+    // the rest of the first payload and half of the second header, nothing already written is offered again
+    manager.accept = 10;
+    assertEquals(10, connection.doWrite());
+    assertEquals(3, manager.lastCount);
+    assertEquals(65, manager.lastRequested);
+    verify(first).wasSent();
+    verify(second, never()).wasSent();
+
+    manager.accept = Integer.MAX_VALUE;
+    assertEquals(55, connection.doWrite());
+    assertEquals(2, manager.lastCount);
+    assertEquals(55, manager.lastRequested);
+    verify(second).wasSent();
+
+    // nothing left to resume, the channel isn't even offered an empty write
+    assertEquals(0, connection.doWrite());
+    assertEquals(3, manager.writes);
+
+    ByteBuffer received = ByteBuffer.wrap(manager.sent.toByteArray());
+    assertEquals(170, received.remaining());
+    assertBytes(received, 10, 1);
+    assertBytes(received, 100, 2);
+    assertBytes(received, 10, 3);
+    assertBytes(received, 50, 4);
+  }
+
+  private static TCNetworkMessage message(TCByteBuffer... data) {
+    int length = 0;
+    for (TCByteBuffer buf : data) {
+      length += buf.limit();
+    }
+    TCNetworkMessage message = mock(TCNetworkMessage.class);
+    when(message.getEntireMessageData()).thenReturn(data);
+    when(message.getTotalLength()).thenReturn(length);
+    return message;
+  }
+
+  private static TCByteBuffer tcFill(int length, int value) {
+    return TCByteBufferFactory.wrap(fill(length, value).array());
+  }
+
+  /**
+   * Takes at most {@link #accept} bytes per gathering write, as a socket with a nearly full send buffer would.
+   */
+  private static class ShortWriteBufferManager extends ClearTextBufferManager {
+    private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+    private int                         accept;
+    private int                         writes;
+    private int                         lastCount;
+    private long                        lastRequested;
+
+    ShortWriteBufferManager(SocketChannel channel) {
+      super(channel);
+    }
+
+    @Override
+    public long sendFromBuffers(ByteBuffer[] srcs, int offset, int length) {
+      writes++;
+      lastCount = length;
+      lastRequested = 0;
+      long written = 0;
+      for (int i = offset; i < offset + length; i++) {
+        lastRequested += srcs[i].remaining();
+        while (srcs[i].hasRemaining() && written < accept) {
+          sent.write(srcs[i].get());
+          written++;
+        }
+      }
+      return written;
+    }
+  }
+
+  private static ByteBuffer fill(int length, int value) {
+    ByteBuffer buf = ByteBuffer.allocate(length);
+    while (buf.hasRemaining()) {
+      buf.put((byte) value);
+    }
+    buf.flip();
+    return buf;
+  }
+
+  private ByteBuffer read(int length) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(length);
+    while (buf.hasRemaining()) {
+      if (accepted.read(buf) < 0) {
+        fail("unexpected end of stream after " + buf.position() + " bytes");
+      }
+    }
+    buf.flip();
+    return buf;
+  }
+
+  private static void assertBytes(ByteBuffer buf, int length, int value) {
+    for (int i = 0; i < length; i++) {
+      assertEquals((byte) value, buf.get());
+    }
+  }
+}
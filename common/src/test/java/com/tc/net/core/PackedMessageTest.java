@@ -54,24 +54,25 @@ public class PackedMessageTest extends TCTestCase {
 
     TCByteBuffer[] packedBuffers = TCConnectionImpl.WriteContext.getPackedUpMessage(inputs);
     long packedLength = 0;
+    long packedCapacity = 0;
     System.out.println("Packed buffers size: " + packedBuffers.length);
     for (int i = 0; i < packedBuffers.length; i++) {
       TCByteBuffer buf = packedBuffers[i];
-      final boolean last = i == packedBuffers.length - 1;
-      if (last) {
-        Assert.assertTrue(TCByteBufferFactory.FIXED_BUFFER_SIZE >= buf.capacity());
-      } else {
-        Assert.assertEquals(TCByteBufferFactory.FIXED_BUFFER_SIZE, buf.capacity());
+      // largest size classes first, only the tail is split into fixed size buffers
+      if (i > 0) {
+        Assert.assertTrue(packedBuffers[i - 1].capacity() >= buf.capacity());
       }
+      Assert.assertTrue(buf.capacity() == TCByteBufferFactory.FIXED_BUFFER_SIZE
+                        || buf.capacity() == TCByteBufferFactory.MEDIUM_BUFFER_SIZE
+                        || buf.capacity() == TCByteBufferFactory.LARGE_BUFFER_SIZE);
+      packedCapacity += buf.capacity();
       while (buf.hasRemaining()) {
         Assert.assertEquals(payloadGenerator.nextByte(), buf.get());
         packedLength++;
       }
     }
     System.out.println("Input length: " + inputBuffersLength + ", packed length: " + packedLength);
-    long numExpectedBlocks = packedLength / TCByteBufferFactory.FIXED_BUFFER_SIZE;
-    if (packedLength % TCByteBufferFactory.FIXED_BUFFER_SIZE != 0) numExpectedBlocks++;
-    Assert.assertEquals(numExpectedBlocks, packedBuffers.length);
+    Assert.assertEquals(TCByteBufferFactory.getTotalBufferSizeNeededForMessageSize((int) packedLength), packedCapacity);
 
     Assert.assertEquals("Packed count should be same - input length: " + inputBuffersLength + ", packed length: "
                         + packedLength, inputBuffersLength, packedLength);
@@ -0,0 +1,178 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.core;
+
+import com.tc.net.protocol.NullProtocolAdaptor;
+import com.tc.net.protocol.delivery.OOOProtocolMessageFactory;
+import com.tc.test.TCTestCase;
+import com.tc.util.UUID;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public class SingleSelectorTest extends TCTestCase {
+
+  private ServerSocketChannel server;
+  private SocketChannel       client;
+  private SocketChannel       accepted;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    client = SocketChannel.open(server.socket().getLocalSocketAddress());
+    client.configureBlocking(false);
+    accepted = server.accept();
+    accepted.configureBlocking(false);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    accepted.close();
+    client.close();
+    server.close();
+    super.tearDown();
+  }
+
+  public void testOneThreadServesReadsAndWrites() {
+    CoreNIOServices single = new CoreNIOServices("single", null, new SocketParams(), true);
+    assertSame(single.getReaderComm(), single.getWriterComm());
+    assertTrue(single.isInlineWriteEnabled());
+
+    CoreNIOServices split = new CoreNIOServices("split", null, new SocketParams(), false);
+    assertNotSame(split.getReaderComm(), split.getWriterComm());
+    assertFalse(split.isInlineWriteEnabled());
+  }
+
+  public void testSenderWritesInlineWhenNothingIsQueued() throws Exception {
+    // the comm thread is never started, so anything on the wire was written by the sending thread
+    CoreNIOServices services = new CoreNIOServices("single", null, new SocketParams(), true);
+    TCConnectionImpl conn = newConnection(services);
+
+    conn.putMessage(new OOOProtocolMessageFactory().createNewAckMessage(UUID.getUUID(), 1));
+    assertEquals(1, conn.getInlineWrites());
+    assertTrue(readAvailable() > 0);
+  }
+
+  public void testInlineWriteLeavesAFullSocketToTheSelector() throws Exception {
+    CoreNIOServices services = new CoreNIOServices("single", null, new SocketParams(), true);
+    client.socket().setSendBufferSize(4096);
+    TCConnectionImpl conn = newConnection(services);
+
+    // nothing reads the other end, so the socket fills up long before the last message and the sender must not wait
+    int messages = 100000;
+    OOOProtocolMessageFactory factory = new OOOProtocolMessageFactory();
+    for (int i = 0; i < messages; i++) {
+      conn.putMessage(factory.createNewAckMessage(UUID.getUUID(), i));
+    }
+    assertTrue(conn.getInlineWrites() > 0);
+    assertTrue(conn.getInlineWrites() < messages);
+  }
+
+  public void testFullSocketDoesNotStopReadsOnTheSameWorker() throws Exception {
+    CoreNIOServices services = new CoreNIOServices("single", null, new SocketParams(), true);
+    services.start();
+    // small socket buffers so that a little room on the socket is much less than the connection has buffered
+    ServerSocketChannel smallServer = ServerSocketChannel.open();
+    smallServer.socket().setReceiveBufferSize(4096);
+    smallServer.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    SocketChannel writeClient = SocketChannel.open();
+    writeClient.socket().setSendBufferSize(4096);
+    writeClient.connect(smallServer.socket().getLocalSocketAddress());
+    SocketChannel writePeer = smallServer.accept();
+    SocketChannel readClient = SocketChannel.open(server.socket().getLocalSocketAddress());
+    SocketChannel readPeer = server.accept();
+    try {
+      readClient.configureBlocking(false);
+      TCConnectionImpl reader = new TCConnectionImpl(null, new NullProtocolAdaptor(), readClient,
+                                                     new TCConnectionManagerImpl(), services, new SocketParams(), null);
+      reader.finishConnect();
+      services.requestReadInterest(reader, readClient);
+      readPeer.write(ByteBuffer.wrap(new byte[100]));
+      waitForBytesRead(services, 100);
+
+      // nothing reads the other end yet, so the socket fills up
+      writeClient.configureBlocking(false);
+      TCConnectionImpl writer = new TCConnectionImpl(null, new NullProtocolAdaptor(), writeClient,
+                                                     new TCConnectionManagerImpl(), services, new SocketParams(), null);
+      writer.finishConnect();
+      OOOProtocolMessageFactory factory = new OOOProtocolMessageFactory();
+      for (int i = 0; i < 100000; i++) {
+        writer.putMessage(factory.createNewAckMessage(UUID.getUUID(), i));
+      }
+      // make a little room, the socket turns writable for the comm thread but fills up again halfway through its write
+      Thread.sleep(500);
+      writePeer.read(ByteBuffer.allocate(4096));
+      Thread.sleep(500);
+
+      readPeer.write(ByteBuffer.wrap(new byte[100]));
+      waitForBytesRead(services, 200);
+    } finally {
+      services.requestStop();
+      readPeer.close();
+      readClient.close();
+      writePeer.close();
+      writeClient.close();
+      smallServer.close();
+    }
+  }
+
+  public void testSplitModeLeavesWritesToTheSelector() throws Exception {
+    CoreNIOServices services = new CoreNIOServices("split", null, new SocketParams(), false);
+    TCConnectionImpl conn = newConnection(services);
+
+    conn.putMessage(new OOOProtocolMessageFactory().createNewAckMessage(UUID.getUUID(), 1));
+    assertEquals(0, conn.getInlineWrites());
+    assertEquals(0, readAvailable());
+  }
+
+  private static void waitForBytesRead(CoreNIOServices services, long expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 30 * 1000;
+    while (services.getTotalBytesRead() < expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, services.getTotalBytesRead());
+  }
+
+  private TCConnectionImpl newConnection(CoreNIOServices services) throws Exception {
+    TCConnectionImpl conn = new TCConnectionImpl(null, new NullProtocolAdaptor(), client,
+                                                 new TCConnectionManagerImpl(), services, new SocketParams(), null);
+    conn.finishConnect();
+    return conn;
+  }
+
+  private int readAvailable() throws Exception {
+    ByteBuffer buf = ByteBuffer.allocate(4096);
+    int total = 0;
+    // the loopback socket may need a moment to hand over what was written
+    for (int i = 0; i < 10 && total == 0; i++) {
+      Thread.sleep(50);
+      int read;
+      while ((read = accepted.read(buf)) > 0) {
+        total += read;
+        buf.clear();
+      }
+    }
+    return total;
+  }
+}
@@ -24,6 +24,8 @@ import com.tc.net.protocol.tcm.msgs.PingMessage;
 import com.tc.properties.L1ReconnectConfigImpl;
 import com.tc.test.TCTestCase;
 
+import java.util.Arrays;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -58,4 +60,128 @@ public class ReceiveStateMachineTest extends TCTestCase {
     assertEquals(received, delivery.receivedMessageCount);
     assertTrue(receiveQueue.poll() == null);
   }
+
+  public void testOutOfOrderHeldUntilGapFilled() throws Exception {
+    BlockingQueue<TCNetworkMessage> receiveQueue = new LinkedBlockingQueue<TCNetworkMessage>();
+    TestProtocolMessageDelivery delivery = new TestProtocolMessageDelivery(receiveQueue);
+    ReceiveStateMachine rsm = new ReceiveStateMachine(delivery, new L1ReconnectConfigImpl(true, 5000, 100, 4, 8),
+                                                      true);
+    rsm.start();
+
+    rsm.execute(sendMessage(0));
+    rsm.execute(sendMessage(2));
+    rsm.execute(sendMessage(3));
+    rsm.execute(sendMessage(5));
+    // outside the window of 8 beyond the last in order message
+    rsm.execute(sendMessage(9));
+    assertEquals(1, delivery.receivedMessageCount);
+    assertEquals(0, delivery.ackCount);
+    assertTrue(Arrays.equals(new long[] { 2, 3, 5, 5 }, rsm.getSelectiveAcks()));
+
+    rsm.execute(sendMessage(1));
+    assertEquals(4, delivery.receivedMessageCount);
+    assertEquals(3, rsm.getReceived());
+    assertTrue(Arrays.equals(new long[] { 5, 5 }, rsm.getSelectiveAcks()));
+
+    // held messages count as received
+    rsm.execute(sendMessage(5));
+    rsm.execute(sendMessage(4));
+    assertEquals(6, delivery.receivedMessageCount);
+    assertEquals(0, rsm.getSelectiveAcks().length);
+
+    Map<String, Long> stats = rsm.getStatistics();
+    assertEquals(Long.valueOf(5), stats.get("Received"));
+    assertEquals(Long.valueOf(3), stats.get("OutOfOrderHeld"));
+    assertEquals(Long.valueOf(1), stats.get("OutOfOrderDropped"));
+    assertEquals(Long.valueOf(1), stats.get("Duplicates"));
+
+    // no delay configured, acks go by count only
+    assertEquals(0, delivery.delayedAcksScheduled);
+
+    rsm.execute(sendMessage(7));
+    rsm.reset();
+    assertTrue(rsm.isClean());
+  }
+
+  public void testDelayedAckCoalescing() throws Exception {
+    TestProtocolMessageDelivery delivery = new TestProtocolMessageDelivery(new LinkedBlockingQueue<TCNetworkMessage>());
+    ReceiveStateMachine rsm = new ReceiveStateMachine(delivery, new AbstractReconnectConfig(true, 5000, 100, 4, 1000,
+                                                                                            8, "test"), true);
+    rsm.start();
+    rsm.resume();
+
+    rsm.execute(sendMessage(0));
+    rsm.execute(sendMessage(1));
+    assertEquals(1, delivery.delayedAcksScheduled);
+    assertEquals(-1, delivery.ackCount);
+    rsm.flushDelayedAck();
+    assertEquals(1, delivery.ackCount);
+
+    // an outbound message carries the ack before the delay runs out
+    rsm.execute(sendMessage(2));
+    rsm.execute(sendMessage(3));
+    assertEquals(2, delivery.delayedAcksScheduled);
+    assertEquals(3, rsm.ackSequence());
+    rsm.flushDelayedAck();
+    assertEquals(1, delivery.ackCount);
+
+    // maxDelayedAcks messages are acked without waiting
+    for (int i = 4; i < 8; i++) {
+      rsm.execute(sendMessage(i));
+    }
+    assertEquals(7, delivery.ackCount);
+    assertEquals(3, delivery.delayedAcksScheduled);
+
+    Map<String, Long> stats = rsm.getStatistics();
+    assertEquals(Long.valueOf(8), stats.get("Delivered"));
+    assertEquals(Long.valueOf(2), stats.get("AcksSent"));
+    assertEquals(Long.valueOf(1), stats.get("DelayedAcksSent"));
+    assertEquals(Long.valueOf(1), stats.get("DelayedAcksSkipped"));
+    assertEquals(Long.valueOf(1), stats.get("PiggybackedAcks"));
+    assertEquals(Long.valueOf(250), stats.get("AckRatioPerMille"));
+  }
+
+  public void testNoDelayedAckByDefault() throws Exception {
+    TestProtocolMessageDelivery delivery = new TestProtocolMessageDelivery(new LinkedBlockingQueue<TCNetworkMessage>());
+    L1ReconnectConfigImpl config = new L1ReconnectConfigImpl();
+    assertEquals(0, config.getMaxDelayAckMicros());
+    ReceiveStateMachine rsm = new ReceiveStateMachine(delivery, config, true);
+    rsm.start();
+    rsm.resume();
+
+    rsm.execute(sendMessage(0));
+    rsm.execute(sendMessage(1));
+    assertEquals(0, delivery.delayedAcksScheduled);
+    assertEquals(-1, delivery.ackCount);
+  }
+
+  public void testDelayedAckNotSentWhenOutboundTrafficCarriesIt() throws Exception {
+    TestProtocolMessageDelivery delivery = new TestProtocolMessageDelivery(new LinkedBlockingQueue<TCNetworkMessage>());
+    ReceiveStateMachine rsm = new ReceiveStateMachine(delivery, new AbstractReconnectConfig(true, 5000, 100, 4, 1000,
+                                                                                            8, "test"), true);
+    rsm.start();
+    rsm.resume();
+
+    // request/response traffic, every message received is answered before its delayed ack is due
+    for (int i = 0; i < 100; i++) {
+      rsm.execute(sendMessage(i));
+      assertEquals(i, rsm.ackSequence());
+      rsm.flushDelayedAck();
+    }
+    assertEquals(-1, delivery.ackCount);
+    assertEquals(100, delivery.delayedAcksScheduled);
+
+    Map<String, Long> stats = rsm.getStatistics();
+    assertEquals(Long.valueOf(0), stats.get("AcksSent"));
+    assertEquals(Long.valueOf(0), stats.get("DelayedAcksSent"));
+    assertEquals(Long.valueOf(100), stats.get("DelayedAcksSkipped"));
+    assertEquals(Long.valueOf(100), stats.get("PiggybackedAcks"));
+    assertEquals(Long.valueOf(0), stats.get("AckRatioPerMille"));
+  }
+
+  private static TestProtocolMessage sendMessage(long sent) {
+    TestProtocolMessage tpm = new TestProtocolMessage(new PingMessage(new NullMessageMonitor()), sent, -1);
+    tpm.isSend = true;
+    return tpm;
+  }
 }
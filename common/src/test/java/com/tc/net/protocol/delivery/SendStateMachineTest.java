@@ -27,6 +27,9 @@ import com.tc.properties.ReconnectConfig;
 import com.tc.test.TCTestCase;
 import com.tc.util.UUID;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
 
 /**
@@ -103,4 +106,95 @@ public class SendStateMachineTest extends TCTestCase {
     assertEquals(4, delivery.msg.getSent());
 
   }
+
+  public void testResendSkipsSelectivelyAcked() throws Exception {
+    TestProtocolMessageDelivery delivery = new TestProtocolMessageDelivery(new LinkedBlockingQueue<TCNetworkMessage>());
+    final UUID sessionId = UUID.getUUID();
+    SendStateMachine ssm = new SendStateMachine(delivery, new L1ReconnectConfigImpl(true, 5000, 100, 16, 32), true);
+    ssm.start();
+    ssm.resume();
+    ssm.execute(handshakeReply(sessionId, -1));
+
+    MessageMonitor monitor = new NullMessageMonitor();
+    for (int i = 0; i < 6; i++) {
+      ssm.put(new PingMessage(monitor));
+    }
+    ssm.execute(null); // msgs 0 - 5
+    assertEquals(6, delivery.sentMessages.size());
+
+    TestProtocolMessage ack = new TestProtocolMessage(null, -1, 0);
+    ack.setSessionId(sessionId);
+    ack.isAck = true;
+    ack.selectiveAcks = new long[] { 2, 3 };
+    ssm.execute(ack);
+
+    ssm.pause();
+    delivery.clearAll();
+    ssm.resume();
+    TestProtocolMessage reply = handshakeReply(sessionId, 0);
+    reply.selectiveAcks = new long[] { 5, 5 };
+    ssm.execute(reply);
+
+    List<Long> resent = new ArrayList<Long>();
+    for (OOOProtocolMessage m : delivery.sentMessages) {
+      resent.add(m.getSent());
+    }
+    assertEquals(2, resent.size());
+    assertEquals(Long.valueOf(1), resent.get(0));
+    assertEquals(Long.valueOf(4), resent.get(1));
+
+    Map<String, Long> stats = ssm.getStatistics();
+    assertEquals(Long.valueOf(5), stats.get("Outstanding"));
+    assertEquals(Long.valueOf(6), stats.get("MaxOutstanding"));
+    assertEquals(Long.valueOf(3), stats.get("SelectivelyAcked"));
+    assertEquals(Long.valueOf(2), stats.get("Resent"));
+    assertEquals(Long.valueOf(3), stats.get("ResendsSkipped"));
+
+    ack.ack = 5;
+    ack.selectiveAcks = new long[0];
+    ssm.execute(ack);
+    assertTrue(ssm.isClean());
+  }
+
+  public void testLargeWindowResendsOnlyUnacked() throws Exception {
+    TestProtocolMessageDelivery delivery = new TestProtocolMessageDelivery(new LinkedBlockingQueue<TCNetworkMessage>());
+    final UUID sessionId = UUID.getUUID();
+    SendStateMachine ssm = new SendStateMachine(delivery, new L1ReconnectConfigImpl(true, 5000, 0, 16, 100), true);
+    ssm.start();
+    ssm.resume();
+    ssm.execute(handshakeReply(sessionId, -1));
+
+    MessageMonitor monitor = new NullMessageMonitor();
+    for (int i = 0; i < 100; i++) {
+      ssm.put(new PingMessage(monitor));
+    }
+    ssm.execute(null);
+    assertEquals(100, delivery.sentMessages.size());
+    assertEquals(Long.valueOf(128), ssm.getStatistics().get("WindowCapacity"));
+
+    TestProtocolMessage ack = new TestProtocolMessage(null, -1, 49);
+    ack.setSessionId(sessionId);
+    ack.isAck = true;
+    ssm.execute(ack);
+    assertEquals(Long.valueOf(50), ssm.getStatistics().get("Outstanding"));
+
+    ssm.pause();
+    delivery.clearAll();
+    ssm.resume();
+    ssm.execute(handshakeReply(sessionId, 49));
+    assertEquals(50, delivery.sentMessages.size());
+    assertEquals(50, delivery.sentMessages.get(0).getSent());
+    assertEquals(99, delivery.sentMessages.get(49).getSent());
+
+    ack.ack = 99;
+    ssm.execute(ack);
+    assertTrue(ssm.isClean());
+  }
+
+  private static TestProtocolMessage handshakeReply(UUID sessionId, long ack) {
+    TestProtocolMessage msg = new TestProtocolMessage(null, 0, ack);
+    msg.isHandshakeReplyOk = true;
+    msg.setSessionId(sessionId);
+    return msg;
+  }
 }
@@ -37,6 +37,7 @@ public class TestProtocolMessage implements OOOProtocolMessage {
   public boolean          isAck                = false;
   private boolean         isGoodbye            = false;
   public UUID             sessionId            = UUID.getUUID();
+  public long[]           selectiveAcks        = new long[0];
 
   public TestProtocolMessage(TCNetworkMessage msg, long sent, long ack) {
     this.msg = msg;
@@ -58,6 +59,11 @@ public class TestProtocolMessage implements OOOProtocolMessage {
     return sent;
   }
 
+  @Override
+  public long[] getSelectiveAcks() {
+    return selectiveAcks;
+  }
+
   @Override
   public boolean isHandshake() {
     return isHandshake;
@@ -22,6 +22,8 @@ import com.tc.net.protocol.TCNetworkMessage;
 import com.tc.net.protocol.transport.ConnectionID;
 import com.tc.util.Assert;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 
 /**
@@ -35,6 +37,8 @@ public class TestProtocolMessageDelivery implements OOOProtocolMessageDelivery {
   public TCNetworkMessage   tcMessage      = null;
   public boolean            created        = false;
   public int                receivedMessageCount;
+  public int                delayedAcksScheduled;
+  public final List<OOOProtocolMessage> sentMessages = new ArrayList<OOOProtocolMessage>();
   private final BlockingQueue<TCNetworkMessage> receivedQueue;
 
   public TestProtocolMessageDelivery(BlockingQueue<TCNetworkMessage> receivedQueue) {
@@ -63,6 +67,12 @@ public class TestProtocolMessageDelivery implements OOOProtocolMessageDelivery {
     return (opm);
   }
 
+  @Override
+  public boolean scheduleDelayedAck(long delayNanos) {
+    delayedAcksScheduled++;
+    return true;
+  }
+
   public void sendAck(long count) {
     this.ackCount = count;
     this.sentAck = true;
@@ -71,6 +81,7 @@ public class TestProtocolMessageDelivery implements OOOProtocolMessageDelivery {
   @Override
   public boolean sendMessage(OOOProtocolMessage pmsg) {
     this.msg = pmsg;
+    this.sentMessages.add(pmsg);
     return (true);
   }
 
@@ -89,6 +100,7 @@ public class TestProtocolMessageDelivery implements OOOProtocolMessageDelivery {
     sentAckRequest = false;
     ackCount = -1;
     msg = null;
+    sentMessages.clear();
     tcMessage = null;
     created = false;
   }
@@ -98,6 +110,7 @@ public class TestProtocolMessageDelivery implements OOOProtocolMessageDelivery {
     sentAck = false;
     sentAckRequest = false;
     msg = null;
+    sentMessages.clear();
     tcMessage = null;
     created = false;
   }
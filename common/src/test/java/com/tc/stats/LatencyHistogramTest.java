@@ -0,0 +1,74 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.stats;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+  public void testEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+
+  public void testIndexesAreContiguous() {
+    int last = -1;
+    for (long v = 0; v < 100000; v++) {
+      int index = LatencyHistogram.indexFor(v);
+      assertTrue(index == last || index == last + 1);
+      assertTrue(LatencyHistogram.highestEquivalentValue(index) >= v);
+      last = index;
+    }
+    assertTrue(LatencyHistogram.highestEquivalentValue(LatencyHistogram.indexFor(Long.MAX_VALUE)) == Long.MAX_VALUE);
+  }
+
+  public void testPercentilesWithinPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long v = 1; v <= 10000; v++) {
+      histogram.record(v * 1000);
+    }
+    assertEquals(10000, histogram.getCount());
+    assertEquals(10000000, histogram.getMax());
+    assertWithin(5000000, histogram.getValueAtPercentile(50));
+    assertWithin(9900000, histogram.getValueAtPercentile(99));
+    assertWithin(9990000, histogram.getValueAtPercentile(99.9));
+    assertEquals(10000000, histogram.getValueAtPercentile(100));
+  }
+
+  public void testAddAndReset() {
+    LatencyHistogram a = new LatencyHistogram();
+    LatencyHistogram b = new LatencyHistogram();
+    a.record(10);
+    b.record(20);
+    b.record(5000);
+    a.add(b);
+    assertEquals(3, a.getCount());
+    assertEquals(5000, a.getMax());
+    assertEquals(20, a.getValueAtPercentile(50));
+    a.reset();
+    assertEquals(0, a.getCount());
+    assertEquals(0, a.getValueAtPercentile(50));
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue("expected ~" + expected + " but was " + actual, Math.abs(actual - expected) <= expected * 0.04);
+  }
+}
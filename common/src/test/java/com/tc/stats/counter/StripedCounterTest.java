@@ -0,0 +1,125 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.stats.counter;
+
+import com.tc.stats.counter.sampled.SampledCounter;
+import com.tc.stats.counter.sampled.SampledCounterConfig;
+import com.tc.stats.counter.sampled.SampledCumulativeCounter;
+import com.tc.stats.counter.sampled.SampledCumulativeCounterConfig;
+import com.tc.util.concurrent.ThreadUtil;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class StripedCounterTest extends TestCase {
+
+  public void testConfigSelectsStriped() {
+    assertTrue(new SimpleCounterConfig(0L, true).createCounter() instanceof StripedCounter);
+    assertTrue(new SimpleCounterConfig(0L).createCounter() instanceof CounterImpl);
+    assertFalse(new SampledCounterConfig(1, 300, true, 0L).isStriped());
+    assertTrue(new SampledCounterConfig(1, 300, true, 0L, true).isStriped());
+  }
+
+  public void testSingleThreaded() {
+    Counter counter = new StripedCounter(5L);
+    assertEquals(5L, counter.getValue());
+    // updates return the change, not the new value
+    assertEquals(1L, counter.increment());
+    assertEquals(6L, counter.getValue());
+    assertEquals(-2L, counter.decrement(2L));
+    assertEquals(-1L, counter.decrement());
+    assertEquals(10L, counter.increment(10L));
+    assertEquals(13L, counter.getAndSet(42L));
+    assertEquals(42L, counter.getValue());
+    counter.setValue(Long.MIN_VALUE);
+    assertEquals(Long.MIN_VALUE, counter.getValue());
+  }
+
+  public void testResetDoesNotLoseConcurrentIncrements() throws InterruptedException {
+    final Counter counter = new StripedCounter();
+    final int perThread = 200000;
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>(null);
+
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int n = 0; n < perThread; n++) {
+              counter.increment();
+            }
+          } catch (Throwable t) {
+            error.set(t);
+          }
+        }
+      };
+      threads[i].start();
+    }
+
+    long total = 0;
+    boolean running = true;
+    while (running) {
+      total += counter.getAndSet(0L);
+      running = false;
+      for (Thread thread : threads) {
+        running |= thread.isAlive();
+      }
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    total += counter.getAndSet(0L);
+
+    assertNull(error.get());
+    assertEquals((long) threads.length * perThread, total);
+  }
+
+  public void testStripedSampledCounters() {
+    CounterManagerImpl manager = new CounterManagerImpl();
+    try {
+      SampledCounter counter = (SampledCounter) manager
+          .createCounter(new SampledCounterConfig(1, 300, true, 0L, true));
+      SampledCumulativeCounter cumulative = (SampledCumulativeCounter) manager
+          .createCounter(new SampledCumulativeCounterConfig(1, 300, true, 0L, true));
+      assertEquals(2, manager.getSampledCounterCount());
+
+      counter.increment(7L);
+      cumulative.increment(3L);
+      long deadline = System.currentTimeMillis() + 10000;
+      while (counter.getMostRecentSample().getCounterValue() != 7L && System.currentTimeMillis() < deadline) {
+        ThreadUtil.reallySleep(50);
+      }
+      assertEquals(7L, counter.getMostRecentSample().getCounterValue());
+      assertEquals(3L, cumulative.getCumulativeValue());
+
+      // one sampler serves all counters, a shut down counter just drops out of it
+      manager.shutdownCounter(counter);
+      deadline = System.currentTimeMillis() + 10000;
+      while (manager.getSampledCounterCount() != 1 && System.currentTimeMillis() < deadline) {
+        ThreadUtil.reallySleep(50);
+      }
+      assertEquals(1, manager.getSampledCounterCount());
+    } finally {
+      manager.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.stats.counter.sampled;
+
+import junit.framework.TestCase;
+
+public class SampledCounterImplTest extends TestCase {
+
+  public void testHistoryKeepsLastSamples() {
+    // the constructor takes the first sample, of the initial value
+    SampledCounterImpl counter = new SampledCounterImpl(new SampledCounterConfig(1, 5, true, 0L));
+    assertEquals(1, counter.getAllSampleValues().length);
+
+    for (int i = 1; i <= 7; i++) {
+      counter.increment(i * 10);
+      counter.recordSample();
+    }
+
+    TimeStampedCounterValue[] samples = counter.getAllSampleValues();
+    assertEquals(5, samples.length);
+    // most recent first
+    for (int i = 0; i < samples.length; i++) {
+      assertEquals((7 - i) * 10L, samples[i].getCounterValue());
+    }
+    assertEquals(samples[0], counter.getMostRecentSample());
+  }
+
+  public void testSummary() {
+    SampledCounterImpl counter = new SampledCounterImpl(new SampledCounterConfig(1, 100, true, 0L, true));
+    // replace the initial sample so the window holds 1..100
+    counter.increment(1);
+    counter.recordSample();
+    for (int i = 2; i <= 100; i++) {
+      counter.increment(i);
+      counter.recordSample();
+    }
+
+    assertEquals(100, counter.getAllSampleValues().length);
+    assertEquals(1L, counter.getMinSample());
+    assertEquals(100L, counter.getMaxSample());
+    assertEquals(50L, counter.getMeanSample());
+    assertEquals(50L, counter.getSamplePercentile(50));
+    assertEquals(90L, counter.getSamplePercentile(90));
+    assertEquals(99L, counter.getSamplePercentile(99));
+    assertEquals(100L, counter.getSamplePercentile(100));
+    assertEquals(1L, counter.getSamplePercentile(0));
+  }
+
+  public void testCumulativeSampling() {
+    SampledCounterImpl counter = new SampledCounterImpl(new SampledCounterConfig(1, 10, false, 3L));
+    counter.increment(2);
+    counter.recordSample();
+    assertEquals(3L, counter.getMinSample());
+    assertEquals(5L, counter.getMaxSample());
+    assertEquals(5L, counter.getValue());
+  }
+
+  public void testBadPercentile() {
+    SampledCounterImpl counter = new SampledCounterImpl(new SampledCounterConfig(1, 10, true, 0L));
+    try {
+      counter.getSamplePercentile(101);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testSamplingWhileReadingNeverShowsAnEmptySlot() throws Exception {
+    for (int round = 0; round < 20; round++) {
+      final SampledCounterImpl counter = new SampledCounterImpl(new SampledCounterConfig(1, 20000, true, 0L));
+      Thread sampler = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 20000; i++) {
+            counter.increment();
+            counter.recordSample();
+          }
+        }
+      };
+      sampler.start();
+      // the history hasn't wrapped yet, so every slot a push claims is still empty until it is set
+      while (sampler.isAlive()) {
+        for (TimeStampedCounterValue sample : counter.getAllSampleValues()) {
+          assertNotNull(sample);
+        }
+        counter.getMaxSample();
+      }
+      sampler.join();
+    }
+  }
+
+  public void testNullCounterHasNoHistory() {
+    assertEquals(0, SampledCounter.NULL_SAMPLED_COUNTER.getAllSampleValues().length);
+    assertEquals(0L, SampledCounter.NULL_SAMPLED_COUNTER.getSamplePercentile(99));
+  }
+
+}
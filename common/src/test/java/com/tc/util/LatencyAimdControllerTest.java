@@ -0,0 +1,107 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+
+public class LatencyAimdControllerTest {
+  private static final long FLOOR = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long FAST = TimeUnit.MICROSECONDS.toNanos(100);
+  private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(20);
+
+  @Test
+  public void testGrowsByOneStepPerValueOfGoodSamples() {
+    LatencyAimdController controller = new LatencyAimdController(1, 8, 4, 1, 0.5, 2, FLOOR, 1024);
+    for (int i = 0; i < 3; ++i) {
+      controller.sample(FAST, 0);
+    }
+    Assert.assertEquals(4, controller.getValue(), 0.0);
+    controller.sample(FAST, 0);
+    Assert.assertEquals(5, controller.getValue(), 0.0);
+    for (int i = 0; i < 100; ++i) {
+      controller.sample(FAST, 0);
+    }
+    Assert.assertEquals(8, controller.getValue(), 0.0);
+  }
+
+  @Test
+  public void testValueBelowOneGrowsOnEverySample() {
+    LatencyAimdController controller = new LatencyAimdController(0.1, 1, 0.5, 0.1, 0.5, 2, FLOOR, 64);
+    controller.increase();
+    controller.increase();
+    Assert.assertEquals(0.7, controller.getValue(), 0.001);
+  }
+
+  @Test
+  public void testDecreasesAtMostOncePerRoundTrip() {
+    LatencyAimdController controller = new LatencyAimdController(1, 8, 8, 1, 0.5, 2, FLOOR, 1024);
+    long now = FAST;
+    Assert.assertFalse(controller.sample(FAST, now));
+    Assert.assertTrue(controller.sample(SLOW, now));
+    Assert.assertEquals(4, controller.getValue(), 0.0);
+    // still the same round trip
+    Assert.assertFalse(controller.sample(SLOW, now));
+    Assert.assertFalse(controller.decrease(now));
+    Assert.assertEquals(4, controller.getValue(), 0.0);
+
+    now += controller.getSmoothedLatency();
+    Assert.assertTrue(controller.decrease(now));
+    Assert.assertEquals(2, controller.getValue(), 0.0);
+    Assert.assertEquals(2, controller.getDecreases());
+  }
+
+  @Test
+  public void testNeverLeavesItsBounds() {
+    LatencyAimdController controller = new LatencyAimdController(3, 8, 4, 1, 0.75, 2, FLOOR, 1024);
+    long now = 0;
+    for (int i = 0; i < 10; ++i) {
+      now += TimeUnit.SECONDS.toNanos(1);
+      controller.decrease(now);
+    }
+    Assert.assertEquals(3, controller.getValue(), 0.0);
+    Assert.assertFalse(controller.decrease(now + TimeUnit.SECONDS.toNanos(1)));
+    controller.reset();
+    Assert.assertEquals(8, controller.getValue(), 0.0);
+  }
+
+  @Test
+  public void testTargetFollowsMinimumLatencyAboveTheFloor() {
+    LatencyAimdController controller = new LatencyAimdController(1, 8, 1, 1, 0.5, 2, TimeUnit.MICROSECONDS.toNanos(10), 4);
+    Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(10), controller.getTargetLatency());
+    controller.recordLatency(FAST);
+    Assert.assertEquals(2 * FAST, controller.getTargetLatency());
+    Assert.assertFalse(controller.isCongested(2 * FAST));
+    Assert.assertTrue(controller.isCongested(2 * FAST + 1));
+
+    // the minimum is re-based on the samples of the epoch just ended, the second one only saw slow samples
+    for (int i = 0; i < 3; ++i) {
+      controller.recordLatency(SLOW);
+    }
+    Assert.assertEquals(FAST, controller.getMinLatency());
+    for (int i = 0; i < 4; ++i) {
+      controller.recordLatency(SLOW);
+    }
+    Assert.assertEquals(SLOW, controller.getMinLatency());
+    Assert.assertEquals(2 * SLOW, controller.getTargetLatency());
+  }
+}
@@ -60,6 +60,14 @@ public class TCPropertiesConstsTest extends TCTestCase {
   
     exemptedProperties.add(TCPropertiesConsts.CLIENT_MAX_PENDING_REQUESTS);
     exemptedProperties.add(TCPropertiesConsts.CLIENT_MAX_SENT_REQUESTS);
+    exemptedProperties.add(TCPropertiesConsts.CLIENT_REQUEST_WINDOW_ADAPTIVE);
+    exemptedProperties.add(TCPropertiesConsts.CLIENT_REQUEST_WINDOW_MIN);
+    exemptedProperties.add(TCPropertiesConsts.CLIENT_REQUEST_WINDOW_MAX);
+    exemptedProperties.add(TCPropertiesConsts.CLIENT_REQUEST_WINDOW_QUEUE_HIGH_WATER);
+    exemptedProperties.add(TCPropertiesConsts.CLIENT_INVOKE_COALESCE_ENABLED);
+    exemptedProperties.add(TCPropertiesConsts.CLIENT_INVOKE_COALESCE_WINDOW_MICROS);
+    exemptedProperties.add(TCPropertiesConsts.CLIENT_INVOKE_COALESCE_MAX_BYTES);
+    exemptedProperties.add(TCPropertiesConsts.CLIENT_INVOKE_COALESCE_MAX_INVOKES);
 
     // exempt all subcategories
     exemptedProperties.add(TCPropertiesConsts.L1_CATEGORY);
@@ -0,0 +1,211 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import junit.framework.TestCase;
+
+public class RingBufferBlockingQueueTest extends TestCase {
+
+  public void testCapacityRoundsUp() {
+    assertEquals(8, new RingBufferBlockingQueue<Object>(5).capacity());
+    assertEquals(16, new RingBufferBlockingQueue<Object>(16).capacity());
+    assertEquals(2, new RingBufferBlockingQueue<Object>(1).capacity());
+  }
+
+  public void testFifoAndFull() {
+    RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(4);
+    for (int i = 0; i < 4; i++) {
+      assertTrue(queue.offer(i));
+    }
+    assertFalse(queue.offer(4));
+    assertEquals(4, queue.size());
+    assertEquals(0, queue.remainingCapacity());
+    for (int i = 0; i < 4; i++) {
+      assertEquals(Integer.valueOf(i), queue.peek());
+      assertEquals(Integer.valueOf(i), queue.poll());
+    }
+    assertNull(queue.poll());
+    assertTrue(queue.isEmpty());
+  }
+
+  public void testPollIfOnlyTakesMatchingHead() {
+    RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(4);
+    Predicate<Integer> even = new Predicate<Integer>() {
+      @Override
+      public boolean test(Integer t) {
+        return t % 2 == 0;
+      }
+    };
+    queue.offer(1);
+    queue.offer(2);
+    assertNull(queue.pollIf(even));
+    assertEquals(Integer.valueOf(1), queue.poll());
+    assertEquals(Integer.valueOf(2), queue.pollIf(even));
+  }
+
+  public void testTimedPollWakesOnOffer() throws Exception {
+    final RingBufferBlockingQueue<String> queue = new RingBufferBlockingQueue<String>(2);
+    assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    Thread producer = new Thread() {
+      @Override
+      public void run() {
+        ThreadUtil.reallySleep(100);
+        queue.offer("wake");
+      }
+    };
+    producer.start();
+    assertEquals("wake", queue.poll(30, TimeUnit.SECONDS));
+    producer.join();
+  }
+
+  public void testPutWaitsForRoom() throws Exception {
+    final RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(2);
+    queue.put(1);
+    queue.put(2);
+    Thread producer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          queue.put(3);
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+    producer.start();
+    // waiting on the condition, not parking and polling for room
+    awaitState(producer, Thread.State.WAITING);
+    assertEquals(2, queue.size());
+    assertEquals(Integer.valueOf(1), queue.poll());
+    producer.join(30000);
+    assertFalse(producer.isAlive());
+    assertEquals(Integer.valueOf(2), queue.poll());
+    assertEquals(Integer.valueOf(3), queue.poll());
+  }
+
+  public void testTimedOfferGivesUpWhenFull() throws Exception {
+    RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(1);
+    assertTrue(queue.offer(1, 10, TimeUnit.MILLISECONDS));
+    assertTrue(queue.offer(2, 10, TimeUnit.MILLISECONDS));
+    assertFalse(queue.offer(3, 10, TimeUnit.MILLISECONDS));
+    assertEquals(Integer.valueOf(1), queue.poll());
+    assertTrue(queue.offer(3, 10, TimeUnit.MILLISECONDS));
+    assertEquals(Integer.valueOf(2), queue.poll());
+    assertEquals(Integer.valueOf(3), queue.poll());
+  }
+
+  public void testBlockedPutIsInterruptible() throws Exception {
+    final RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(2);
+    queue.put(1);
+    queue.put(2);
+    final AtomicLong interrupted = new AtomicLong();
+    Thread producer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          queue.put(3);
+        } catch (InterruptedException e) {
+          interrupted.incrementAndGet();
+        }
+      }
+    };
+    producer.start();
+    awaitState(producer, Thread.State.WAITING);
+    producer.interrupt();
+    producer.join(30000);
+    assertEquals(1, interrupted.get());
+    assertEquals(2, queue.size());
+  }
+
+  private static void awaitState(Thread thread, Thread.State state) {
+    long deadline = System.currentTimeMillis() + 30000;
+    while (thread.getState() != state) {
+      assertTrue("still " + thread.getState(), System.currentTimeMillis() < deadline);
+      ThreadUtil.reallySleep(10);
+    }
+  }
+
+  public void testDrainTo() {
+    RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<Integer>(8);
+    for (int i = 0; i < 5; i++) {
+      queue.offer(i);
+    }
+    List<Integer> drained = new ArrayList<Integer>();
+    assertEquals(3, queue.drainTo(drained, 3));
+    assertEquals(2, queue.drainTo(drained));
+    assertEquals(5, drained.size());
+    assertEquals(Integer.valueOf(4), drained.get(4));
+  }
+
+  public void testConcurrentProducersAndConsumers() throws Exception {
+    final RingBufferBlockingQueue<Long> queue = new RingBufferBlockingQueue<Long>(64);
+    final int producers = 4;
+    final int perProducer = 20000;
+    final AtomicLong sum = new AtomicLong();
+    final AtomicLong count = new AtomicLong();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int p = 0; p < producers; p++) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (long i = 1; i <= perProducer; i++) {
+              queue.put(i);
+            }
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+        }
+      });
+    }
+    for (int c = 0; c < 2; c++) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            while (count.get() < producers * perProducer) {
+              Long l = queue.poll(10, TimeUnit.MILLISECONDS);
+              if (l != null) {
+                sum.addAndGet(l);
+                count.incrementAndGet();
+              }
+            }
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+        }
+      });
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertEquals(producers * perProducer, count.get());
+    assertEquals(producers * ((long) perProducer * (perProducer + 1) / 2), sum.get());
+    assertTrue(queue.isEmpty());
+  }
+}
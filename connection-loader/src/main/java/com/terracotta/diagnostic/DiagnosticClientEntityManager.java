@@ -29,6 +29,7 @@ import com.tc.object.EntityClientEndpointImpl;
 import com.tc.object.EntityDescriptor;
 import com.tc.object.EntityID;
 import com.tc.object.InFlightMessage;
+import com.tc.object.InvocationAckListener;
 import com.tc.object.msg.ClientHandshakeMessage;
 import com.tc.object.tx.TransactionID;
 import com.tc.text.PrettyPrinter;
@@ -36,6 +37,7 @@ import com.tc.util.Assert;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import org.terracotta.entity.EntityClientEndpoint;
@@ -115,6 +117,11 @@ public class DiagnosticClientEntityManager implements ClientEntityManager {
 
   }
 
+  @Override
+  public void serverLoad(int queueDepth) {
+
+  }
+
   @Override
   public void pause() {
 
@@ -144,6 +151,16 @@ public class DiagnosticClientEntityManager implements ClientEntityManager {
     return message;
   }
 
+  @Override
+  public CompletionStage<byte[]> invokeActionAsync(EntityDescriptor entityDescriptor, Set<VoltronEntityMessage.Acks> acks, boolean requiresReplication, boolean shouldBlockGetOnRetire, byte[] payload, InvocationAckListener listener) {
+    DiagnosticMessage network = createMessage(payload);
+    InFlightMessage message = new InFlightMessage(network, Collections.<Acks>emptySet(), false, listener);
+    CompletionStage<byte[]> stage = message.asCompletionStage();
+    waitingForAnswer.put(network.getTransactionID(), message);
+    network.send();
+    return stage;
+  }
+
   private DiagnosticMessage createMessage(byte[] config) {
     // Get the clientID for our channel.
     // Get the next transaction ID.
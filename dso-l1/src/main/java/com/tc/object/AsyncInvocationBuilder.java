@@ -0,0 +1,53 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.object;
+
+import org.terracotta.entity.EntityMessage;
+import org.terracotta.entity.EntityResponse;
+import org.terracotta.entity.InvocationBuilder;
+import org.terracotta.entity.MessageCodecException;
+
+import java.util.concurrent.CompletionStage;
+
+
+/**
+ * An {@link InvocationBuilder} which can also send without blocking the calling thread.
+ * <p>
+ * Every builder returned by this implementation's EntityClientEndpoint.beginInvoke() is an AsyncInvocationBuilder, so
+ * entity code can cast to it.
+ */
+public interface AsyncInvocationBuilder<M extends EntityMessage, R extends EntityResponse> extends InvocationBuilder<M, R> {
+  /**
+   * @param listener Notified of each ack as the invocation progresses.
+   */
+  AsyncInvocationBuilder<M, R> ackListener(InvocationAckListener listener);
+
+  /**
+   * Sends the invocation without waiting for any of the requested acks.
+   * <p>
+   * The returned stage completes on the response stage once invoke().get() would have returned, i.e. on COMPLETED or,
+   * when blocking get on retire, on RETIRED.  It completes exceptionally with the EntityException the server reported
+   * (or a connection closed exception).  Dependent stages without an explicit executor run on the response stage too so
+   * they must not block.
+   * <p>
+   * The calling thread still waits for a send ticket when the client already has the maximum number of requests in
+   * flight.
+   */
+  CompletionStage<R> invokeAsync() throws MessageCodecException;
+}
@@ -38,6 +38,16 @@ public class ClientConfigurationContext extends ConfigurationContextImpl {
 
   public static final int                MAX_PENDING_REQUESTS                        = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.CLIENT_MAX_PENDING_REQUESTS, 5000);
   public static final int                MAX_SENT_REQUESTS                        = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.CLIENT_MAX_SENT_REQUESTS, 200);
+  // With an adaptive window MAX_SENT_REQUESTS is only the starting point, the window then moves between these bounds.
+  public static final boolean            ADAPTIVE_REQUEST_WINDOW                  = TCPropertiesImpl.getProperties().getBoolean(TCPropertiesConsts.CLIENT_REQUEST_WINDOW_ADAPTIVE, true);
+  public static final int                MIN_REQUEST_WINDOW                       = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.CLIENT_REQUEST_WINDOW_MIN, 16);
+  public static final int                MAX_REQUEST_WINDOW                       = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.CLIENT_REQUEST_WINDOW_MAX, 1000);
+  public static final int                REQUEST_WINDOW_QUEUE_HIGH_WATER          = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.CLIENT_REQUEST_WINDOW_QUEUE_HIGH_WATER, 1000);
+  // Opt-in coalescing of invokes sent within a short window into one network message.
+  public static final boolean            COALESCE_INVOKES                         = TCPropertiesImpl.getProperties().getBoolean(TCPropertiesConsts.CLIENT_INVOKE_COALESCE_ENABLED, false);
+  public static final long               COALESCE_WINDOW_MICROS                   = TCPropertiesImpl.getProperties().getLong(TCPropertiesConsts.CLIENT_INVOKE_COALESCE_WINDOW_MICROS, 200);
+  public static final int                COALESCE_MAX_BYTES                       = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.CLIENT_INVOKE_COALESCE_MAX_BYTES, 64 * 1024);
+  public static final int                COALESCE_MAX_INVOKES                     = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.CLIENT_INVOKE_COALESCE_MAX_INVOKES, 64);
   
   private final ClientEntityManager       entityManager;
   private final ClientHandshakeManager    clientHandshakeManager;
@@ -70,8 +70,8 @@ import java.util.EnumSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import org.terracotta.exception.EntityNotFoundException;
@@ -84,7 +84,9 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
   private final ClientMessageChannel channel;
   private final ConcurrentMap<TransactionID, InFlightMessage> inFlightMessages;
   private final Sink<InFlightMessage> outbound;
-  private final Semaphore requestTickets;
+  private final RequestWindow requestWindow;
+  // null unless invokes are coalesced
+  private final InvokeCoalescer coalescer;
   private final AtomicLong currentTransactionID;
 
   private final ClientEntityStateManager stateManager;
@@ -103,11 +105,13 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     this.channel = channel;
 
     this.inFlightMessages = new ConcurrentHashMap<TransactionID, InFlightMessage>();
-    this.requestTickets = new Semaphore(ClientConfigurationContext.MAX_SENT_REQUESTS);
+    this.requestWindow = createRequestWindow();
     this.currentTransactionID = new AtomicLong();
     this.stateManager = new ClientEntityStateManager();
     this.objectStoreMap = new ConcurrentHashMap<ClientInstanceID, EntityClientEndpointImpl<?, ?>>(10240, 0.75f, 128);
     this.stages = mgr;
+    this.coalescer = ClientConfigurationContext.COALESCE_INVOKES ? new InvokeCoalescer(channel, logger, ClientConfigurationContext.COALESCE_WINDOW_MICROS, 
+        ClientConfigurationContext.COALESCE_MAX_BYTES, ClientConfigurationContext.COALESCE_MAX_INVOKES) : null;
     
     this.outbound = createSendStage();
   }
@@ -120,21 +124,43 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     }
   }
 
+  private static RequestWindow createRequestWindow() {
+    int initial = ClientConfigurationContext.MAX_SENT_REQUESTS;
+    if (ClientConfigurationContext.ADAPTIVE_REQUEST_WINDOW) {
+      int minimum = Math.min(initial, ClientConfigurationContext.MIN_REQUEST_WINDOW);
+      int maximum = Math.max(initial, ClientConfigurationContext.MAX_REQUEST_WINDOW);
+      return new RequestWindow(initial, minimum, maximum, ClientConfigurationContext.REQUEST_WINDOW_QUEUE_HIGH_WATER);
+    } else {
+      return new RequestWindow(initial, initial, initial, Integer.MAX_VALUE);
+    }
+  }
+
   private Sink<InFlightMessage> createSendStage() {
     final EventHandler<InFlightMessage> handler = new AbstractEventHandler<InFlightMessage>() {
       @Override
       public void handleEvent(InFlightMessage first) throws EventHandlerException {
         try {
-          requestTickets.acquire();
+          requestWindow.acquire();
           boolean doSend = false;
+          boolean coalesced = false;
           synchronized (ClientEntityManagerImpl.this) {
             if (!isShutdown) {
               inFlightMessages.put(first.getTransactionID(), first);
               first.sent();
               doSend = true;
+//  queued under the lock so the reconnect handshake, which discards anything still queued, can't miss or double it.
+//  once queued the coalescer sends it along with whatever else is queued
+              coalesced = coalescer != null && first.getMessage().getVoltronType() == VoltronEntityMessage.Type.INVOKE_ACTION
+                  && coalescer.add(first);
             }
           }
-          if (doSend) {
+          if (!doSend) {
+            requestWindow.release();
+            throwClosedExceptionOnMessage(first, "Connection closed before sending message");
+          } else if (!coalesced) {
+              if (coalescer != null) {
+                coalescer.flush();
+              }
               if (first.send()) {
 //  when encountering a send for anything other than an invoke, wait here before sending anything else
 //  this is a bit paranoid but it is to prevent too many resends of lifecycle operations.  Just
@@ -145,9 +171,6 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
               } else {
                 logger.warn("message not sent.  Make sure resend happens " + first);
               }
-          } else {
-            requestTickets.release();
-            throwClosedExceptionOnMessage(first, "Connection closed before sending message");
           }
         } catch (InterruptedException ie) {
           throw new EventHandlerException(ie);
@@ -291,6 +314,16 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     return createInFlightMessageAfterAcks(message, requestedAcks, shouldBlockGetOnRetire);
   }
 
+  @Override
+  public CompletionStage<byte[]> invokeActionAsync(EntityDescriptor entityDescriptor, Set<VoltronEntityMessage.Acks> requestedAcks, boolean requiresReplication, boolean shouldBlockGetOnRetire, byte[] payload, InvocationAckListener listener) {
+    NetworkVoltronEntityMessage message = createMessageWithDescriptor(entityDescriptor, requiresReplication, payload, VoltronEntityMessage.Type.INVOKE_ACTION, requestedAcks);
+    InFlightMessage inFlight = new InFlightMessage(message, requestedAcks, shouldBlockGetOnRetire, listener);
+    CompletionStage<byte[]> stage = inFlight.asCompletionStage();
+    // NOTE:  If we are already shutdown, the handler in outbound will fail this message for us.
+    outbound.addSingleThreaded(inFlight);
+    return stage;
+  }
+
   @Override
   public synchronized PrettyPrinter prettyPrint(PrettyPrinter out) {
     out.print(this.getClass().getName()).flush();
@@ -298,6 +331,11 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     out.duplicateAndIndent().indent().print("inFlightMessages size: ").print(Integer.valueOf(this.inFlightMessages.size())).flush();
     out.duplicateAndIndent().indent().print("outbound size: ").print(Integer.valueOf(outbound.size())).flush();
     out.duplicateAndIndent().indent().print("objectStoreMap size: ").print(Integer.valueOf(this.objectStoreMap.size())).flush();
+    out.duplicateAndIndent().indent().print("request window: ").print(this.requestWindow.getStatistics()).flush();
+    if (this.coalescer != null) {
+      out.duplicateAndIndent().indent().print("coalesced invokes: ").print(Long.valueOf(this.coalescer.getCoalescedCount()))
+          .print(" in ").print(Long.valueOf(this.coalescer.getBatchCount())).print(" batches").flush();
+    }
     return out;
   }
 
@@ -346,10 +384,23 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     InFlightMessage inFlight = inFlightMessages.remove(id);
     if (inFlight != null) {
       inFlight.retired();
+      requestWindow.release(System.nanoTime() - inFlight.getSentNanos());
     } else {
    // resend result
+      requestWindow.release();
     }
-    requestTickets.release();
+  }
+
+  @Override
+  public void serverLoad(int queueDepth) {
+    requestWindow.serverLoad(queueDepth);
+  }
+
+  /**
+   * @return The current request window of this connection and how it got there.
+   */
+  public Map<String, Long> getRequestWindowStatistics() {
+    return requestWindow.getStatistics();
   }
 
   @Override
@@ -383,6 +434,10 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
     flush = new FlushResponse();
     responderMulti.getSink().addSingleThreaded(flush);
     flush.waitForAccess();
+    if (this.coalescer != null) {
+      // Anything still queued is in inFlightMessages so it goes out below, as a resend.
+      this.coalescer.discard();
+    }
     // Walk the inFlightMessages, adding them all to the handshake, since we need them to be replayed.
     for (InFlightMessage inFlight : this.inFlightMessages.values()) {
       VoltronEntityMessage message = inFlight.getMessage();
@@ -399,6 +454,9 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
   public synchronized void shutdown(boolean fromShutdownHook) {
     isShutdown = true;
     stateManager.stop();
+    if (this.coalescer != null) {
+      this.coalescer.shutdown();
+    }
     for (InFlightMessage msg : inFlightMessages.values()) {
       throwClosedExceptionOnMessage(msg, "Connection closed under in-flight message");
     }
@@ -678,6 +736,16 @@ public class ClientEntityManagerImpl implements ClientEntityManager {
       throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    @Override
+    public void setQueueDepth(int depth) {
+      throw new UnsupportedOperationException("Not supported yet.");
+    }
+
+    @Override
+    public int getQueueDepth() {
+      return -1;
+    }
+
     public synchronized void waitForAccess() {
       boolean interrupted = false;
       while (!accessed) {
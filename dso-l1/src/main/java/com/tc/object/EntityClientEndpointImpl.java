@@ -34,8 +34,10 @@ import org.terracotta.exception.EntityException;
 
 import java.util.EnumSet;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 
 public class EntityClientEndpointImpl<M extends EntityMessage, R extends EntityResponse> implements EntityClientEndpoint<M, R> {
@@ -114,8 +116,9 @@ public class EntityClientEndpointImpl<M extends EntityMessage, R extends EntityR
     return new InvocationBuilderImpl();
   }
 
-  private class InvocationBuilderImpl implements InvocationBuilder<M, R> {
+  private class InvocationBuilderImpl implements AsyncInvocationBuilder<M, R> {
     private boolean invoked = false;
+    private InvocationAckListener ackListener;
     private M request;
     private final Set<VoltronEntityMessage.Acks> acks = EnumSet.noneOf(VoltronEntityMessage.Acks.class);
     private boolean requiresReplication = true;
@@ -203,6 +206,30 @@ public class EntityClientEndpointImpl<M extends EntityMessage, R extends EntityR
       };
     }
 
+    @Override
+    public synchronized AsyncInvocationBuilder<M, R> ackListener(InvocationAckListener listener) {
+      checkInvoked();
+      this.ackListener = listener;
+      return this;
+    }
+
+    @Override
+    public synchronized CompletionStage<R> invokeAsync() throws MessageCodecException {
+      checkInvoked();
+      invoked = true;
+      CompletionStage<byte[]> raw = invocationHandler.invokeActionAsync(invokeDescriptor, this.acks, this.requiresReplication, this.shouldBlockGetOnRetire, codec.encodeMessage(request), this.ackListener);
+      return raw.thenApply(new Function<byte[], R>() {
+        @Override
+        public R apply(byte[] response) {
+          try {
+            return codec.decodeResponse(response);
+          } catch (MessageCodecException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+    }
+
     private void checkInvoked() {
       if (invoked) {
         throw new IllegalStateException("Already invoked");
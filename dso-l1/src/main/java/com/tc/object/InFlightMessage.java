@@ -22,7 +22,9 @@ import org.terracotta.entity.InvokeFuture;
 import org.terracotta.exception.EntityException;
 
 import com.tc.entity.NetworkVoltronEntityMessage;
+import com.tc.entity.NetworkVoltronEntityMultiMessage;
 import com.tc.entity.VoltronEntityMessage;
+import com.tc.exception.VoltronWrapperException;
 import com.tc.net.protocol.tcm.TCMessage;
 import com.tc.object.tx.TransactionID;
 import com.tc.util.Assert;
@@ -30,6 +32,8 @@ import com.tc.util.Assert;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -54,14 +58,25 @@ public class InFlightMessage implements InvokeFuture<byte[]> {
   private final Set<Thread> waitingThreads;
 
   private boolean isSent;
+  private long sentNanos;
   private EntityException exception;
   private byte[] value;
   private boolean canSetResult;
+  private boolean resultSeen;
+  private boolean receivedSeen;
   private boolean getCanComplete;
   private final boolean blockGetOnRetired;
+  // Only set for asynchronous invocations.  Both are notified outside of our monitor since they run caller code.
+  private final InvocationAckListener ackListener;
+  private CompletableFuture<byte[]> completion;
 
   public InFlightMessage(VoltronEntityMessage message, Set<VoltronEntityMessage.Acks> acks, boolean shouldBlockGetOnRetire) {
+    this(message, acks, shouldBlockGetOnRetire, null);
+  }
+
+  public InFlightMessage(VoltronEntityMessage message, Set<VoltronEntityMessage.Acks> acks, boolean shouldBlockGetOnRetire, InvocationAckListener ackListener) {
     this.message = message;
+    this.ackListener = ackListener;
     this.pendingAcks = EnumSet.noneOf(VoltronEntityMessage.Acks.class);
     this.pendingAcks.addAll(acks);
     this.waitingThreads = new HashSet<Thread>();
@@ -87,6 +102,15 @@ public class InFlightMessage implements InvokeFuture<byte[]> {
     this.isSent = true;
     return ((TCMessage)this.message).send();
   }
+
+  /**
+   * Sends this message as part of a coalesced message instead of on its own.
+   */
+  public void addTo(NetworkVoltronEntityMultiMessage batch) {
+    Assert.assertFalse(this.isSent);
+    this.isSent = true;
+    batch.addInvoke((NetworkVoltronEntityMessage)this.message);
+  }
   
   public synchronized void waitForAcks() {
     boolean interrupted = false;
@@ -102,22 +126,55 @@ public class InFlightMessage implements InvokeFuture<byte[]> {
     }
   }
 
-  public synchronized void sent() {
-    if (this.pendingAcks.remove(VoltronEntityMessage.Acks.SENT)) {
-      if (this.pendingAcks.isEmpty()) {
-        notifyAll();
+  public void sent() {
+    synchronized (this) {
+      this.sentNanos = System.nanoTime();
+      if (this.pendingAcks.remove(VoltronEntityMessage.Acks.SENT)) {
+        if (this.pendingAcks.isEmpty()) {
+          notifyAll();
+        }
       }
     }
+    notifyAck(VoltronEntityMessage.Acks.SENT);
   }
 
-  public synchronized void received() {
-    if (this.pendingAcks.remove(VoltronEntityMessage.Acks.RECEIVED)) {
-      if (this.pendingAcks.isEmpty()) {
-        notifyAll();
+  /**
+   * @return The System.nanoTime() at which the message was handed to the network.
+   */
+  public synchronized long getSentNanos() {
+    return this.sentNanos;
+  }
+
+  public void received() {
+    boolean isFirstReceived;
+    synchronized (this) {
+      if (this.pendingAcks.remove(VoltronEntityMessage.Acks.RECEIVED)) {
+        if (this.pendingAcks.isEmpty()) {
+          notifyAll();
+        }
       }
+      // a closed connection synthesizes RECEIVED even if the server already sent it
+      isFirstReceived = !this.receivedSeen;
+      this.receivedSeen = true;
+    }
+    if (isFirstReceived) {
+      notifyAck(VoltronEntityMessage.Acks.RECEIVED);
     }
   }
 
+  /**
+   * The result as a stage which completes when get() would return, without any thread waiting for it.
+   */
+  public synchronized CompletionStage<byte[]> asCompletionStage() {
+    if (null == this.completion) {
+      this.completion = new CompletableFuture<byte[]>();
+      if (this.getCanComplete) {
+        completeStage(this.completion, this.value, this.exception);
+      }
+    }
+    return this.completion;
+  }
+
   @Override
   public synchronized void interrupt() {
     for (Thread waitingThread : this.waitingThreads) {
@@ -181,25 +238,67 @@ public class InFlightMessage implements InvokeFuture<byte[]> {
     }
   }
 
-  public synchronized void setResult(byte[] value, EntityException error) {
-    this.pendingAcks.remove(VoltronEntityMessage.Acks.COMPLETED);
-    if (this.canSetResult) {
-      this.exception = error;
-      this.value = value;
-      if (!this.blockGetOnRetired) {
+  public void setResult(byte[] value, EntityException error) {
+    boolean isFirstResult;
+    CompletableFuture<byte[]> toComplete = null;
+    synchronized (this) {
+      this.pendingAcks.remove(VoltronEntityMessage.Acks.COMPLETED);
+      isFirstResult = !this.resultSeen;
+      this.resultSeen = true;
+      if (this.canSetResult) {
+        this.exception = error;
+        this.value = value;
+        if (!this.blockGetOnRetired) {
+          this.getCanComplete = true;
+          toComplete = this.completion;
+          notifyAll();
+        }
+        // Determine if this can be over-written - only if we are waiting for the retired.
+        this.canSetResult = this.blockGetOnRetired;
+      }
+    }
+    if (isFirstResult) {
+      notifyAck(VoltronEntityMessage.Acks.COMPLETED);
+    }
+    if (null != toComplete) {
+      completeStage(toComplete, value, error);
+    }
+  }
+
+  public void retired() {
+    CompletableFuture<byte[]> toComplete = null;
+    byte[] result;
+    EntityException failure;
+    synchronized (this) {
+      this.pendingAcks.remove(VoltronEntityMessage.Acks.RETIRED);
+      if (this.blockGetOnRetired) {
         this.getCanComplete = true;
-        notifyAll();
+        toComplete = this.completion;
       }
-      // Determine if this can be over-written - only if we are waiting for the retired.
-      this.canSetResult = this.blockGetOnRetired;
+      result = this.value;
+      failure = this.exception;
+      notifyAll();
+    }
+    notifyAck(VoltronEntityMessage.Acks.RETIRED);
+    if (null != toComplete) {
+      completeStage(toComplete, result, failure);
     }
   }
 
-  public synchronized void retired() {
-    this.pendingAcks.remove(VoltronEntityMessage.Acks.RETIRED);
-    if (this.blockGetOnRetired) {
-      this.getCanComplete = true;
+  private void notifyAck(VoltronEntityMessage.Acks ack) {
+    if (null != this.ackListener) {
+      this.ackListener.acked(ack);
+    }
+  }
+
+  private static void completeStage(CompletableFuture<byte[]> stage, byte[] value, EntityException error) {
+    if (error instanceof VoltronWrapperException) {
+      // the runtime exception get() would throw, such as ConnectionClosedException
+      stage.completeExceptionally(((VoltronWrapperException) error).getWrappedException());
+    } else if (null != error) {
+      stage.completeExceptionally(error);
+    } else {
+      stage.complete(value);
     }
-    notifyAll();
   }
 }
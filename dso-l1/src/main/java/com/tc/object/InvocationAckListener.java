@@ -0,0 +1,33 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.object;
+
+import com.tc.entity.VoltronEntityMessage;
+
+
+/**
+ * Notified as an asynchronous invocation progresses.
+ * <p>
+ * Calls are made on the thread which observed the ack (the sending thread for SENT, the response stage for the others)
+ * so implementations must be quick and must never block.  RECEIVED is only seen when it was requested from the
+ * invocation builder, the other acks always arrive.
+ */
+public interface InvocationAckListener {
+  void acked(VoltronEntityMessage.Acks ack);
+}
@@ -21,6 +21,7 @@ package com.tc.object;
 import com.tc.entity.VoltronEntityMessage;
 
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 
 import org.terracotta.entity.InvokeFuture;
 
@@ -30,4 +31,12 @@ import org.terracotta.entity.InvokeFuture;
  */
 public interface InvocationHandler {
   InvokeFuture<byte[]> invokeAction(EntityDescriptor entityDescriptor, Set<VoltronEntityMessage.Acks> acks, boolean requiresReplication, boolean shouldBlockGetOnRetire, byte[] payload);
+
+  /**
+   * Like invokeAction but returns as soon as the message is queued for sending.
+   *
+   * @param listener Notified of each ack, may be null.
+   * @return A stage completed with the raw response once the invocation is done (see AsyncInvocationBuilder).
+   */
+  CompletionStage<byte[]> invokeActionAsync(EntityDescriptor entityDescriptor, Set<VoltronEntityMessage.Acks> acks, boolean requiresReplication, boolean shouldBlockGetOnRetire, byte[] payload, InvocationAckListener listener);
 }
@@ -0,0 +1,239 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.object;
+
+import com.tc.entity.NetworkVoltronEntityMultiMessage;
+import com.tc.logging.TCLogger;
+import com.tc.net.protocol.tcm.ClientMessageChannel;
+import com.tc.net.protocol.tcm.TCMessageType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Coalesces INVOKE_ACTION messages which are sent close together into a single NetworkVoltronEntityMultiMessage.
+ * <p>
+ * The first invoke queued opens a window.  The batch is sent by a background thread when the window closes or as soon
+ * as it reaches the byte or invoke limit, so the thread queueing an invoke never sends.  Sends happen outside the
+ * queue lock, under a separate send lock, so batches leave in the order their invokes were queued.
+ */
+class InvokeCoalescer {
+  // Rough allowance for the per-invoke header (transaction IDs, descriptor and acks).
+  private static final int INVOKE_OVERHEAD_BYTES = 64;
+
+  private final ClientMessageChannel channel;
+  private final TCLogger logger;
+  private final long windowNanos;
+  private final int maxBytes;
+  private final int maxInvokes;
+
+  private final ReentrantLock sendLock = new ReentrantLock();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition windowOpened = lock.newCondition();
+  private final Deque<List<InFlightMessage>> ready = new ArrayDeque<List<InFlightMessage>>();
+  private final List<InFlightMessage> pending = new ArrayList<InFlightMessage>();
+  private int pendingBytes;
+  private long windowEnd;
+  private boolean stopped;
+  private volatile long batchCount;
+  private volatile long coalescedCount;
+
+  private final Thread flusher;
+
+  InvokeCoalescer(ClientMessageChannel channel, TCLogger logger, long windowMicros, int maxBytes, int maxInvokes) {
+    this.channel = channel;
+    this.logger = logger;
+    this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+    this.maxBytes = maxBytes;
+    this.maxInvokes = maxInvokes;
+    this.flusher = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        flushOnWindowClose();
+      }
+    }, "Invoke coalescer - " + channel.getChannelID());
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  /**
+   * Queues an invoke which has already been recorded as in-flight.  Never sends on the calling thread.
+   *
+   * @return false if the coalescer has stopped, in which case the caller must send the invoke itself
+   */
+  boolean add(InFlightMessage invoke) {
+    lock.lock();
+    try {
+      if (this.stopped) {
+        return false;
+      }
+      this.pending.add(invoke);
+      this.pendingBytes += invoke.getMessage().getExtendedData().length + INVOKE_OVERHEAD_BYTES;
+      if (this.pending.size() >= this.maxInvokes || this.pendingBytes >= this.maxBytes) {
+        this.ready.add(takePending());
+        this.windowOpened.signal();
+      } else if (this.pending.size() == 1) {
+        this.windowEnd = System.nanoTime() + this.windowNanos;
+        this.windowOpened.signal();
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Sends anything queued now, on the calling thread.  Used before a message which must not overtake queued invokes.
+   */
+  void flush() {
+    sendQueued(true);
+  }
+
+  /**
+   * Drops anything queued without sending it.  The caller is responsible for the dropped invokes, which are still
+   * in-flight and will be re-sent with the reconnect handshake.  Waits for a send already in progress to finish.
+   */
+  void discard() {
+    sendLock.lock();
+    try {
+      lock.lock();
+      try {
+        this.ready.clear();
+        this.pending.clear();
+        this.pendingBytes = 0;
+      } finally {
+        lock.unlock();
+      }
+    } finally {
+      sendLock.unlock();
+    }
+  }
+
+  void shutdown() {
+    lock.lock();
+    try {
+      this.stopped = true;
+      this.ready.clear();
+      this.pending.clear();
+      this.pendingBytes = 0;
+      this.windowOpened.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  long getBatchCount() {
+    return this.batchCount;
+  }
+
+  long getCoalescedCount() {
+    return this.coalescedCount;
+  }
+
+  private void flushOnWindowClose() {
+    try {
+      while (true) {
+        boolean windowClosed;
+        lock.lock();
+        try {
+          while (!this.stopped && this.ready.isEmpty() && (this.pending.isEmpty() || this.windowEnd - System.nanoTime() > 0)) {
+            if (this.pending.isEmpty()) {
+              this.windowOpened.await();
+            } else {
+              this.windowOpened.awaitNanos(this.windowEnd - System.nanoTime());
+            }
+          }
+          if (this.stopped) {
+            return;
+          }
+          windowClosed = !this.pending.isEmpty() && this.windowEnd - System.nanoTime() <= 0;
+        } finally {
+          lock.unlock();
+        }
+        sendQueued(windowClosed);
+      }
+    } catch (InterruptedException ie) {
+      logger.warn("invoke coalescer interrupted, invokes will no longer be coalesced");
+      lock.lock();
+      try {
+        this.stopped = true;
+      } finally {
+        lock.unlock();
+      }
+      sendQueued(true);
+    }
+  }
+
+  /**
+   * Sends the full batches and, if asked, the partial one.  They are taken under the queue lock but sent outside it,
+   * holding the send lock so a later batch can't overtake an earlier one.
+   */
+  private void sendQueued(boolean includePending) {
+    sendLock.lock();
+    try {
+      List<List<InFlightMessage>> batches = new ArrayList<List<InFlightMessage>>();
+      lock.lock();
+      try {
+        batches.addAll(this.ready);
+        this.ready.clear();
+        if (includePending && !this.pending.isEmpty()) {
+          batches.add(takePending());
+        }
+      } finally {
+        lock.unlock();
+      }
+      for (List<InFlightMessage> batch : batches) {
+        sendBatch(batch);
+      }
+    } finally {
+      sendLock.unlock();
+    }
+  }
+
+  private List<InFlightMessage> takePending() {
+    List<InFlightMessage> batch = new ArrayList<InFlightMessage>(this.pending);
+    this.pending.clear();
+    this.pendingBytes = 0;
+    return batch;
+  }
+
+  private void sendBatch(List<InFlightMessage> batch) {
+    boolean didSend;
+    if (batch.size() == 1) {
+      didSend = batch.get(0).send();
+    } else {
+      NetworkVoltronEntityMultiMessage multi = (NetworkVoltronEntityMultiMessage) this.channel.createMessage(TCMessageType.VOLTRON_ENTITY_MULTI_MESSAGE);
+      for (InFlightMessage invoke : batch) {
+        invoke.addTo(multi);
+      }
+      didSend = multi.send();
+      this.coalescedCount += batch.size();
+      this.batchCount += 1;
+    }
+    if (!didSend) {
+      logger.warn("message not sent.  Make sure resend happens " + batch);
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.object;
+
+import com.tc.util.LatencyAimdController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Limits the number of requests a client has in flight, replacing a fixed number of send tickets with a window that
+ * follows the server.
+ * <p>
+ * Each retired request reports its round trip to a {@link LatencyAimdController}.  While round trips stay within twice
+ * the best one seen recently, the window grows by one request per window's worth of completions.  When they don't, or
+ * when the server reports more than queueHighWater requests waiting in its queue, the window is cut by a quarter, at
+ * most once per smoothed round trip.
+ * The window never leaves [minimum, maximum]; a window with minimum == maximum is just a fixed ticket count.
+ */
+class RequestWindow {
+  // Round trips below this never count as congestion, whatever the best round trip is.
+  private static final long LATENCY_FLOOR_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  // The best round trip is re-based every so many samples so it can follow a slower network or server.
+  private static final int MIN_LATENCY_EPOCH = 1024;
+
+  private final int minimum;
+  private final int maximum;
+  private final int queueHighWater;
+  private final LatencyAimdController controller;
+
+  private int inFlight;
+  private int lastQueueDepth = -1;
+
+  private long waits;
+  private long decreases;
+  private long serverDecreases;
+
+  RequestWindow(int initial, int minimum, int maximum, int queueHighWater) {
+    if (minimum < 1 || maximum < minimum) {
+      throw new IllegalArgumentException("invalid window bounds [" + minimum + ", " + maximum + "]");
+    }
+    this.minimum = minimum;
+    this.maximum = maximum;
+    this.queueHighWater = queueHighWater;
+    this.controller = new LatencyAimdController(minimum, maximum, initial, 1, 0.75, 2, LATENCY_FLOOR_NANOS, MIN_LATENCY_EPOCH);
+  }
+
+  /**
+   * Takes a slot for a new request, waiting while the window is full.
+   */
+  synchronized void acquire() throws InterruptedException {
+    if (this.inFlight >= getWindow()) {
+      this.waits += 1;
+      while (this.inFlight >= getWindow()) {
+        wait();
+      }
+    }
+    this.inFlight += 1;
+  }
+
+  /**
+   * Gives back a slot for a request which never completed a round trip (for example because the connection closed).
+   */
+  synchronized void release() {
+    this.inFlight -= 1;
+    notify();
+  }
+
+  /**
+   * Gives back the slot of a retired request and adjusts the window from its round trip.
+   */
+  synchronized void release(long latencyNanos) {
+    this.inFlight -= 1;
+    int before = getWindow();
+    if (this.controller.sample(latencyNanos, System.nanoTime())) {
+      this.decreases += 1;
+    }
+    if (getWindow() > before) {
+      notifyAll();
+    } else {
+      notify();
+    }
+  }
+
+  /**
+   * Applies the server's report of how many requests it has queued.
+   */
+  synchronized void serverLoad(int queueDepth) {
+    this.lastQueueDepth = queueDepth;
+    if (queueDepth > this.queueHighWater && this.controller.decrease(System.nanoTime())) {
+      this.serverDecreases += 1;
+    }
+  }
+
+  synchronized int getWindow() {
+    return (int) this.controller.getValue();
+  }
+
+  synchronized int getInFlight() {
+    return this.inFlight;
+  }
+
+  synchronized Map<String, Long> getStatistics() {
+    Map<String, Long> stats = new LinkedHashMap<String, Long>();
+    stats.put("Window", Long.valueOf(getWindow()));
+    stats.put("InFlight", Long.valueOf(this.inFlight));
+    stats.put("Waits", Long.valueOf(this.waits));
+    stats.put("WindowIncreases", Long.valueOf(this.controller.getIncreases()));
+    stats.put("WindowDecreases", Long.valueOf(this.decreases));
+    stats.put("ServerBackpressureDecreases", Long.valueOf(this.serverDecreases));
+    stats.put("ServerQueueDepth", Long.valueOf(this.lastQueueDepth));
+    stats.put("SmoothedLatencyMicros", Long.valueOf(TimeUnit.NANOSECONDS.toMicros(this.controller.getSmoothedLatency())));
+    stats.put("MinLatencyMicros", Long.valueOf(TimeUnit.NANOSECONDS.toMicros(this.controller.getMinLatency())));
+    return stats;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "RequestWindow{" + "window=" + getWindow() + ", inFlight=" + inFlight + ", minimum=" + minimum + ", maximum=" + maximum + '}';
+  }
+}
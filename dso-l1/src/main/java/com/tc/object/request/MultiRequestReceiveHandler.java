@@ -50,5 +50,9 @@ public class MultiRequestReceiveHandler extends AbstractEventHandler<VoltronEnti
     for (TransactionID retires : response.getRetiredTransactions()) {
       handler.retired(retires);
     }
+    int queueDepth = response.getQueueDepth();
+    if (queueDepth >= 0) {
+      handler.serverLoad(queueDepth);
+    }
   }
 }
@@ -57,4 +57,11 @@ public interface RequestResponseHandler {
    * This is the last message in the sequence, coming after either a "complete" or "failed".
    */
   void retired(TransactionID id);
+
+  /**
+   * Called when the server reports its load alongside a batch of responses.
+   * 
+   * @param queueDepth The number of requests queued on the server, waiting to be processed.
+   */
+  void serverLoad(int queueDepth);
 }
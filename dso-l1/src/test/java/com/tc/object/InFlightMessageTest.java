@@ -18,13 +18,22 @@
  */
 package com.tc.object;
 
+import org.terracotta.exception.ConnectionClosedException;
 import org.terracotta.exception.EntityException;
+import org.terracotta.exception.EntityNotFoundException;
 
 import com.tc.entity.NetworkVoltronEntityMessage;
 import com.tc.entity.VoltronEntityMessage.Acks;
+import com.tc.exception.VoltronWrapperException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import junit.framework.TestCase;
 import static org.mockito.Mockito.mock;
@@ -59,6 +68,78 @@ public class InFlightMessageTest extends TestCase {
     assertTrue(thread.didInterrupt);
   }
 
+  public void testCompletionStageOnResult() throws Exception {
+    NetworkVoltronEntityMessage mockedEntityMessage = mock(NetworkVoltronEntityMessage.class);
+    RecordingListener listener = new RecordingListener();
+    InFlightMessage message = new InFlightMessage(mockedEntityMessage, EnumSet.of(Acks.RECEIVED), false, listener);
+    CompletableFuture<byte[]> stage = message.asCompletionStage().toCompletableFuture();
+    message.sent();
+    message.received();
+    assertFalse(stage.isDone());
+    byte[] result = new byte[] {1};
+    message.setResult(result, null);
+    assertSame(result, stage.get());
+    message.retired();
+    assertEquals(Arrays.asList(Acks.SENT, Acks.RECEIVED, Acks.COMPLETED, Acks.RETIRED), listener.acks);
+  }
+
+  public void testCompletionStageWaitsForRetire() throws Exception {
+    NetworkVoltronEntityMessage mockedEntityMessage = mock(NetworkVoltronEntityMessage.class);
+    InFlightMessage message = new InFlightMessage(mockedEntityMessage, Collections.<Acks>emptySet(), true);
+    CompletableFuture<byte[]> stage = message.asCompletionStage().toCompletableFuture();
+    message.sent();
+    byte[] result = new byte[] {1};
+    message.setResult(result, null);
+    assertFalse(stage.isDone());
+    message.retired();
+    assertSame(result, stage.get());
+    // A stage requested after the fact is already complete.
+    assertSame(result, message.asCompletionStage().toCompletableFuture().getNow(null));
+  }
+
+  public void testCompletionStageOnError() throws Exception {
+    NetworkVoltronEntityMessage mockedEntityMessage = mock(NetworkVoltronEntityMessage.class);
+    InFlightMessage message = new InFlightMessage(mockedEntityMessage, Collections.<Acks>emptySet(), false);
+    CompletableFuture<byte[]> stage = message.asCompletionStage().toCompletableFuture();
+    EntityException error = new EntityNotFoundException("test", "test");
+    message.setResult(null, error);
+    try {
+      stage.get();
+      fail();
+    } catch (ExecutionException e) {
+      assertSame(error, e.getCause());
+    }
+  }
+
+  public void testCompletionStageOnClosedConnection() throws Exception {
+    NetworkVoltronEntityMessage mockedEntityMessage = mock(NetworkVoltronEntityMessage.class);
+    RecordingListener listener = new RecordingListener();
+    InFlightMessage message = new InFlightMessage(mockedEntityMessage, EnumSet.of(Acks.RECEIVED), false, listener);
+    CompletableFuture<byte[]> stage = message.asCompletionStage().toCompletableFuture();
+    message.sent();
+    message.received();
+    // what the entity manager does to every in-flight message when the connection closes
+    message.received();
+    message.setResult(null, new VoltronWrapperException(new ConnectionClosedException("closed")));
+    message.retired();
+    try {
+      stage.get();
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof ConnectionClosedException);
+    }
+    assertEquals(Arrays.asList(Acks.SENT, Acks.RECEIVED, Acks.COMPLETED, Acks.RETIRED), listener.acks);
+  }
+
+  private static class RecordingListener implements InvocationAckListener {
+    private final List<Acks> acks = new ArrayList<Acks>();
+
+    @Override
+    public synchronized void acked(Acks ack) {
+      this.acks.add(ack);
+    }
+  }
+
   /**
    * This thread just calls get() on the given message and records whether or not it was interrupted.
    */
@@ -0,0 +1,142 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.object;
+
+import com.tc.entity.NetworkVoltronEntityMessage;
+import com.tc.entity.NetworkVoltronEntityMultiMessage;
+import com.tc.entity.VoltronEntityMessage;
+import com.tc.logging.TCLogger;
+import com.tc.net.protocol.tcm.ClientMessageChannel;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.util.concurrent.ThreadUtil;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class InvokeCoalescerTest {
+  private ClientMessageChannel channel;
+  private NetworkVoltronEntityMultiMessage batch;
+  private InvokeCoalescer coalescer;
+
+  @Before
+  public void setUp() {
+    this.channel = mock(ClientMessageChannel.class);
+    this.batch = mock(NetworkVoltronEntityMultiMessage.class);
+    when(this.batch.send()).thenReturn(true);
+    when(this.channel.createMessage(TCMessageType.VOLTRON_ENTITY_MULTI_MESSAGE)).thenReturn(this.batch);
+  }
+
+  @After
+  public void tearDown() {
+    if (null != this.coalescer) {
+      this.coalescer.shutdown();
+    }
+  }
+
+  @Test
+  public void testFullBatchIsSentWithoutWaitingForTheWindow() {
+    // A window long enough that only the invoke limit can trigger the send.
+    this.coalescer = new InvokeCoalescer(this.channel, mock(TCLogger.class), 60L * 1000 * 1000, 1024 * 1024, 3);
+    Assert.assertTrue(this.coalescer.add(createInvoke(16)));
+    Assert.assertTrue(this.coalescer.add(createInvoke(16)));
+    verify(this.batch, times(0)).send();
+    Assert.assertTrue(this.coalescer.add(createInvoke(16)));
+    waitForBatches(1);
+    verify(this.batch, times(3)).addInvoke(any(NetworkVoltronEntityMessage.class));
+    verify(this.batch, times(1)).send();
+    Assert.assertEquals(1, this.coalescer.getBatchCount());
+    Assert.assertEquals(3, this.coalescer.getCoalescedCount());
+  }
+
+  @Test
+  public void testByteLimit() {
+    this.coalescer = new InvokeCoalescer(this.channel, mock(TCLogger.class), 60L * 1000 * 1000, 1000, 100);
+    this.coalescer.add(createInvoke(600));
+    verify(this.batch, times(0)).send();
+    this.coalescer.add(createInvoke(600));
+    waitForBatches(1);
+    verify(this.batch, times(1)).send();
+  }
+
+  @Test
+  public void testWindowCloseSendsBatch() {
+    this.coalescer = new InvokeCoalescer(this.channel, mock(TCLogger.class), 1000, 1024 * 1024, 100);
+    this.coalescer.add(createInvoke(16));
+    this.coalescer.add(createInvoke(16));
+    waitForBatches(1);
+    verify(this.batch, times(1)).send();
+  }
+
+  @Test
+  public void testSingleInvokeIsSentAlone() {
+    this.coalescer = new InvokeCoalescer(this.channel, mock(TCLogger.class), 60L * 1000 * 1000, 1024 * 1024, 100);
+    NetworkVoltronEntityMessage single = mock(NetworkVoltronEntityMessage.class);
+    when(single.getExtendedData()).thenReturn(new byte[16]);
+    when(single.send()).thenReturn(true);
+    this.coalescer.add(new InFlightMessage(single, Collections.<VoltronEntityMessage.Acks>emptySet(), false));
+    this.coalescer.flush();
+    verify(single, times(1)).send();
+    verify(this.batch, times(0)).send();
+    Assert.assertEquals(0, this.coalescer.getBatchCount());
+  }
+
+  @Test
+  public void testDiscardDropsQueuedInvokes() {
+    this.coalescer = new InvokeCoalescer(this.channel, mock(TCLogger.class), 60L * 1000 * 1000, 1024 * 1024, 100);
+    this.coalescer.add(createInvoke(16));
+    this.coalescer.add(createInvoke(16));
+    this.coalescer.discard();
+    this.coalescer.flush();
+    verify(this.batch, times(0)).send();
+  }
+
+  @Test
+  public void testStoppedCoalescerLeavesTheSendToTheCaller() {
+    this.coalescer = new InvokeCoalescer(this.channel, mock(TCLogger.class), 60L * 1000 * 1000, 1024 * 1024, 100);
+    this.coalescer.shutdown();
+    Assert.assertFalse(this.coalescer.add(createInvoke(16)));
+    this.coalescer.flush();
+    verify(this.batch, times(0)).send();
+  }
+
+  private void waitForBatches(long count) {
+    long deadline = System.currentTimeMillis() + 30 * 1000;
+    while (this.coalescer.getBatchCount() < count && System.currentTimeMillis() < deadline) {
+      ThreadUtil.reallySleep(1);
+    }
+    Assert.assertEquals(count, this.coalescer.getBatchCount());
+  }
+
+  private static InFlightMessage createInvoke(int size) {
+    NetworkVoltronEntityMessage message = mock(NetworkVoltronEntityMessage.class);
+    when(message.getExtendedData()).thenReturn(new byte[size]);
+    return new InFlightMessage(message, Collections.<VoltronEntityMessage.Acks>emptySet(), false);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.object;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class RequestWindowTest {
+  private static final long FAST = TimeUnit.MICROSECONDS.toNanos(100);
+  private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+  @Test
+  public void testFixedWindowBlocksWhenFull() throws Exception {
+    final RequestWindow window = new RequestWindow(2, 2, 2, Integer.MAX_VALUE);
+    window.acquire();
+    window.acquire();
+    final AtomicBoolean acquired = new AtomicBoolean();
+    Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        try {
+          window.acquire();
+          acquired.set(true);
+        } catch (InterruptedException e) {
+          // test fails below
+        }
+      }
+    };
+    waiter.start();
+    waiter.join(200);
+    Assert.assertFalse(acquired.get());
+    window.release(FAST);
+    waiter.join();
+    Assert.assertTrue(acquired.get());
+    Assert.assertEquals(2, window.getWindow());
+  }
+
+  @Test
+  public void testGrowsWhileLatencyIsLow() throws Exception {
+    RequestWindow window = new RequestWindow(4, 2, 8, Integer.MAX_VALUE);
+    // one window's worth of fast completions buys one more slot
+    completeRequests(window, 4, FAST);
+    Assert.assertEquals(5, window.getWindow());
+    completeRequests(window, 100, FAST);
+    Assert.assertEquals(8, window.getWindow());
+  }
+
+  @Test
+  public void testShrinksWhenLatencyRises() throws Exception {
+    RequestWindow window = new RequestWindow(8, 2, 8, Integer.MAX_VALUE);
+    completeRequests(window, 8, FAST);
+    completeRequests(window, 1, SLOW);
+    Assert.assertEquals(6, window.getWindow());
+    // the next slow completion is within the same round trip so it doesn't cut again
+    completeRequests(window, 1, SLOW);
+    Assert.assertEquals(6, window.getWindow());
+  }
+
+  @Test
+  public void testServerBackpressure() throws Exception {
+    RequestWindow window = new RequestWindow(8, 2, 8, 100);
+    window.serverLoad(50);
+    Assert.assertEquals(8, window.getWindow());
+    window.serverLoad(500);
+    Assert.assertEquals(6, window.getWindow());
+    Assert.assertEquals(Long.valueOf(500), window.getStatistics().get("ServerQueueDepth"));
+    Assert.assertEquals(Long.valueOf(1), window.getStatistics().get("ServerBackpressureDecreases"));
+  }
+
+  @Test
+  public void testNeverBelowMinimum() throws Exception {
+    RequestWindow window = new RequestWindow(4, 3, 8, 0);
+    for (int i = 0; i < 10; ++i) {
+      window.serverLoad(1000);
+      Thread.sleep(1);
+    }
+    Assert.assertEquals(3, window.getWindow());
+  }
+
+  private static void completeRequests(RequestWindow window, int count, long latency) throws InterruptedException {
+    for (int i = 0; i < count; ++i) {
+      window.acquire();
+      window.release(latency);
+    }
+  }
+}
@@ -118,8 +118,8 @@ public class L2Utils {
 
     long totalDirectMemeoryNeeded;
     if (poolingEnabled) {
-      totalDirectMemeoryNeeded = (totalCommsThreads * directMemoryThreadLocalPool * TCByteBufferFactory.FIXED_BUFFER_SIZE)
-                                 + (directMemoryCommonPool * TCByteBufferFactory.FIXED_BUFFER_SIZE);
+      totalDirectMemeoryNeeded = (totalCommsThreads * TCByteBufferFactory.getMaxPooledBytes(directMemoryThreadLocalPool))
+                                 + TCByteBufferFactory.getMaxPooledBytes(directMemoryCommonPool);
     } else {
       int maxPossbileMessageBytesSend = (TCPropertiesImpl.getProperties()
           .getBoolean(TCPropertiesConsts.TC_MESSAGE_GROUPING_ENABLED) ? TCPropertiesImpl.getProperties()
@@ -24,6 +24,7 @@ import com.tc.l2.msg.SyncReplicationActivity;
 import com.tc.net.NodeID;
 import com.tc.object.EntityID;
 import com.tc.objectserver.entity.MessagePayload;
+import com.tc.objectserver.entity.PassiveSyncWindow;
 import com.tc.objectserver.entity.SimpleCompletion;
 import com.tc.objectserver.handler.RetirementManager;
 import java.util.function.Consumer;
@@ -63,8 +64,10 @@ public interface ManagedEntity extends StateDumpable {
    * Called to sync an entity.  Caller initiates sync of an entity through this method.  
    * 
    * @param passive target passive
+   * @param window flow control shared by all the entities synced to this passive.  The passive may still be applying
+   *  this entity's sync when this returns, until the window is drained.
    */
-  void sync(NodeID passive);
+  void sync(NodeID passive, PassiveSyncWindow window);
   /**
   * Called when passive sync wants to start sync on this entity.
   * 
@@ -18,12 +18,14 @@
  */
 package com.tc.objectserver.core.impl;
 
+import com.tc.async.api.StageManager;
 import com.tc.management.RemoteManagement;
 import com.tc.net.protocol.transport.ConnectionPolicy;
 import com.tc.object.net.ChannelStats;
 import com.tc.object.net.DSOChannelManagerMBean;
 import com.tc.objectserver.api.ObjectInstanceMonitorMBean;
 import com.tc.objectserver.core.api.GlobalServerStats;
+import com.tc.objectserver.entity.PassiveSyncThrottle;
 import com.tc.objectserver.locks.LockManagerMBean;
 
 public class ServerManagementContext {
@@ -35,12 +37,16 @@ public class ServerManagementContext {
   private final ObjectInstanceMonitorMBean    instanceMonitor;
   private final ConnectionPolicy              connectionPolicy;
   private final RemoteManagement              remoteManagement;
+  private final StageManager                  stageManager;
+  private final PassiveSyncThrottle           syncThrottle;
 
   public ServerManagementContext(LockManagerMBean lockMgr, DSOChannelManagerMBean channelMgr,
                                  GlobalServerStats serverStats, ChannelStats channelStats,
                                  ObjectInstanceMonitorMBean instanceMonitor,
                                  ConnectionPolicy connectionPolicy,
-                                 RemoteManagement remoteManagement) {
+                                 RemoteManagement remoteManagement,
+                                 StageManager stageManager,
+                                 PassiveSyncThrottle syncThrottle) {
     this.lockMgr = lockMgr;
     this.channelMgr = channelMgr;
     this.serverStats = serverStats;
@@ -48,6 +54,8 @@ public class ServerManagementContext {
     this.instanceMonitor = instanceMonitor;
     this.connectionPolicy = connectionPolicy;
     this.remoteManagement = remoteManagement;
+    this.stageManager = stageManager;
+    this.syncThrottle = syncThrottle;
   }
 
   public DSOChannelManagerMBean getChannelManager() {
@@ -78,4 +86,12 @@ public class ServerManagementContext {
     return remoteManagement;
   }
 
+  public StageManager getStageManager() {
+    return stageManager;
+  }
+
+  public PassiveSyncThrottle getPassiveSyncThrottle() {
+    return syncThrottle;
+  }
+
 }
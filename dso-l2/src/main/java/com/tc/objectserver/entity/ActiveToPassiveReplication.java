@@ -68,13 +68,19 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
   private final EntityPersistor persistor;
   private final GroupManager serverCheck;
   private final ProcessTransactionHandler snapshotter;
+  private final PassiveSyncThrottle syncThrottle;
 
   public ActiveToPassiveReplication(ProcessTransactionHandler snapshotter, Iterable<NodeID> passives, EntityPersistor persistor, ReplicationSender replicationSender, GroupManager serverMatch) {
+    this(snapshotter, passives, persistor, replicationSender, serverMatch, PassiveSyncThrottle.disabled());
+  }
+
+  public ActiveToPassiveReplication(ProcessTransactionHandler snapshotter, Iterable<NodeID> passives, EntityPersistor persistor, ReplicationSender replicationSender, GroupManager serverMatch, PassiveSyncThrottle syncThrottle) {
     this.replicationSender = replicationSender;
     this.passives = passives;
     this.persistor = persistor;
     this.serverCheck = serverMatch;
     this.snapshotter = snapshotter;
+    this.syncThrottle = syncThrottle;
   }
 
   @Override
@@ -165,11 +171,22 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
                             toArray(new SyncReplicationActivity.EntityCreationTuple[tuplesForCreation.size()])), Collections.singleton(newNode)).waitForCompleted();
           }}
         );
+        PassiveSyncWindow window = PassiveSyncWindow.fromProperties(syncThrottle);
+        int entityCount = 0;
+        for (ManagedEntity entity : e) {
+          entityCount += 1;
+        }
+        window.syncStarted(newNode, entityCount);
         for (ManagedEntity entity : e) {
           logger.debug("starting sync for entity " + newNode + "/" + entity.getID());
-          entity.sync(newNode);
+          entity.sync(newNode, window);
+          window.entitySynced();
           logger.debug("ending sync for entity " + newNode + "/" + entity.getID());
         }
+    //  everything streamed so far has to be applied before the passive is told sync is over
+        window.drain();
+        window.syncFinished();
+        logger.info("Entity sync to " + newNode + " done: " + window);
     //  passive sync done message.  causes passive to go into passive standby mode
         logger.debug("ending sync " + newNode);
         replicateActivity(SyncReplicationActivity.createEndSyncMessage(replicateEntityPersistor()), Collections.singleton(newNode)).waitForCompleted();
@@ -193,6 +210,7 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
   public void batchAckReceived(ReplicationMessageAck context) {
     NodeID messageFrom = context.messageFrom();
     for (ReplicationAckTuple tuple : context.getBatch()) {
+      this.replicationSender.acknowledged(messageFrom, tuple.respondTo);
       if (ReplicationResultCode.RECEIVED == tuple.result) {
         ActivePassiveAckWaiter waiter = waiters.get(tuple.respondTo);
         if (null != waiter) {
@@ -258,6 +276,7 @@ public class ActiveToPassiveReplication implements PassiveReplicationBroker, Gro
 // first remove it from the list of passive nodes so that anything sending new messages 
 // will have to remove it from the list of nodes to send to
     passiveNodes.remove(nodeID);
+    syncThrottle.passiveRemoved(nodeID);
 //  acknowledge all the messages for this node because it is gone, this may result in 
 //  a double ack locally but that is ok.  acknowledge is loose and can tolerate it. 
     if (activated) {
@@ -58,4 +58,37 @@ public interface ClientEntityStateManager {
   public boolean verifyNoReferences(EntityID entityDescriptor);
   
   public List<VoltronEntityMessage> clientDisconnected(ClientID clientID);
+
+  /**
+   * Records, while this server is a passive, that clientID fetched the entity.  These are the clients an incremental
+   * reconnect waits for, per entity, if this server becomes active.
+   * 
+   * @param clientID The client.
+   * @param entityID The entity.
+   */
+  public void addExpectedReference(ClientID clientID, EntityID entityID);
+
+  /**
+   * Records, while this server is a passive, that clientID released the entity.  Releases of references this server
+   * never saw are ignored.
+   * 
+   * @param clientID The client.
+   * @param entityID The entity.
+   */
+  public void removeExpectedReference(ClientID clientID, EntityID entityID);
+
+  /**
+   * Records that some references to the entity were made before this server could see them (it was synced or loaded
+   * from disk) so an incremental reconnect can't tell which clients it waits for.
+   * 
+   * @param entityID The entity.
+   */
+  public void expectedReferencesUnknown(EntityID entityID);
+
+  /**
+   * Hands over the expected references recorded so far, once this server becomes active, and stops recording them.
+   * 
+   * @return the readiness of each entity, with none of its clients reconnected yet
+   */
+  public ReconnectReadiness takeExpectedReferences();
 }
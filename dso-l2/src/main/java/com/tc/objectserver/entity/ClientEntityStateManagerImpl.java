@@ -27,16 +27,34 @@ import com.tc.object.EntityDescriptor;
 import com.tc.object.EntityID;
 import com.tc.util.Assert;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 
 public class ClientEntityStateManagerImpl implements ClientEntityStateManager {
   private final Map<ClientDescriptorImpl, EntityID> clientStates = new ConcurrentHashMap<>();
   private static final TCLogger logger    = TCLogging.getLogger(ClientEntityStateManagerImpl.class);
+  // references seen while passive, the count is per client since a client can fetch an entity many times.  null once
+  //  taken, or if they aren't tracked at all.
+  private Map<EntityID, Map<ClientID, Integer>> expectedReferences;
+  private Set<EntityID> unknownReferences;
 
   public ClientEntityStateManagerImpl() {
+    this(false);
+  }
+
+  /**
+   * @param trackExpectedReferences true to record the references seen while passive, for an incremental reconnect
+   */
+  public ClientEntityStateManagerImpl(boolean trackExpectedReferences) {
+    if (trackExpectedReferences) {
+      this.expectedReferences = new HashMap<>();
+      this.unknownReferences = new HashSet<>();
+    }
   }
 
   @Override
@@ -71,4 +89,47 @@ public class ClientEntityStateManagerImpl implements ClientEntityStateManager {
     );
     return msgs;
   }
+
+  @Override
+  public synchronized void addExpectedReference(ClientID clientID, EntityID eid) {
+    if (this.expectedReferences != null && clientID != null && !clientID.isNull()) {
+      this.expectedReferences.computeIfAbsent(eid, k -> new HashMap<>()).merge(clientID, 1, Integer::sum);
+    }
+  }
+
+  @Override
+  public synchronized void removeExpectedReference(ClientID clientID, EntityID eid) {
+    if (this.expectedReferences != null) {
+      Map<ClientID, Integer> clients = this.expectedReferences.get(eid);
+      if (clients != null) {
+        clients.computeIfPresent(clientID, (k, count) -> (count > 1) ? count - 1 : null);
+        if (clients.isEmpty()) {
+          this.expectedReferences.remove(eid);
+        }
+      }
+    }
+  }
+
+  @Override
+  public synchronized void expectedReferencesUnknown(EntityID eid) {
+    if (this.unknownReferences != null) {
+      this.unknownReferences.add(eid);
+    }
+  }
+
+  @Override
+  public synchronized ReconnectReadiness takeExpectedReferences() {
+    if (this.expectedReferences == null) {
+      throw new IllegalStateException("expected references are not being tracked");
+    }
+    Map<EntityID, Set<ClientID>> expected = new HashMap<>();
+    for (Map.Entry<EntityID, Map<ClientID, Integer>> entry : this.expectedReferences.entrySet()) {
+      expected.put(entry.getKey(), entry.getValue().keySet());
+    }
+    ReconnectReadiness readiness = new ReconnectReadiness(expected, this.unknownReferences);
+    logger.info("Expected references for reconnect: " + readiness);
+    this.expectedReferences = null;
+    this.unknownReferences = null;
+    return readiness;
+  }
 }
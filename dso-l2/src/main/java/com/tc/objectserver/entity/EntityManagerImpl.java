@@ -179,6 +179,8 @@ public class EntityManagerImpl implements EntityManager {
     
     checkNull = entityIndex.put(set, temp);
     Assert.assertNull(checkNull); //  must be null, nothing should be competing
+    // clients referencing an entity loaded from disk weren't seen by this server
+    clientEntityStateManager.expectedReferencesUnknown(entityID);
     try {
       temp.loadEntity(configuration);
     } catch (ConfigurationException ce) {
@@ -488,7 +488,7 @@ public class ManagedEntityImpl implements ManagedEntity {
             performAction(request, response, message);
             break;
           case REQUEST_SYNC_ENTITY:
-            performSync(response, request.replicateTo(executor.passives()), concurrencyKey);
+            performSync(response, request.replicateTo(executor.passives()), ((PassiveSyncServerEntityRequest)request).window, concurrencyKey);
             break;
           case RECEIVE_SYNC_ENTITY_KEY_START:
             receiveSyncEntityKeyStart(response, concurrencyKey);
@@ -693,7 +693,7 @@ public class ManagedEntityImpl implements ManagedEntity {
     response.complete();
   }
 
-  private void performSync(ResultCapture response, Set<NodeID> passives, int concurrencyKey) {
+  private void performSync(ResultCapture response, Set<NodeID> passives, PassiveSyncWindow window, int concurrencyKey) {
     if (!this.isDestroyed) {
       if (this.isInActiveState) {
         if (null == this.activeServerEntity) {
@@ -707,7 +707,7 @@ public class ManagedEntityImpl implements ManagedEntity {
               for (NodeID passive : passives) {
                 try {
                   byte[] message = runWithHelper(()->syncCodec.encode(concurrencyKey, payload));
-                  executor.scheduleSync(SyncReplicationActivity.createPayloadMessage(id, version, fetchID, concurrencyKey, message, ""), passive).waitForReceived();
+                  window.payloadSent(executor.scheduleSync(SyncReplicationActivity.createPayloadMessage(id, version, fetchID, concurrencyKey, message, ""), passive), message.length);
                 } catch (EntityUserException eu) {
                 // TODO: do something reasoned here
                   throw new RuntimeException(eu);
@@ -802,6 +802,9 @@ public class ManagedEntityImpl implements ManagedEntity {
 //   this is a reconnection, handle the extended reconnect data
           this.activeServerEntity.handleReconnect(descriptor, extendedData);
         }
+      } else {
+        // remember who uses the entity in case this server has to wait for them to reconnect after a failover
+        clientEntityStateManager.addExpectedReference(getEntityRequest.getNodeID(), this.id);
       }
       ByteBuffer buffer = ByteBuffer.allocate(this.constructorInfo.length + Long.BYTES);
       buffer.putLong(this.consumerID);
@@ -830,6 +833,8 @@ public class ManagedEntityImpl implements ManagedEntity {
         this.activeServerEntity.disconnected(clientInstance);
         // Fire the event that the client released the entity.
         this.eventCollector.clientDidReleaseEntity(clientID, this.id, request.getClientInstance());
+      } else {
+        clientEntityStateManager.removeExpectedReference(request.getNodeID(), this.id);
       }
       response.complete();
     }
@@ -838,6 +843,10 @@ public class ManagedEntityImpl implements ManagedEntity {
   @Override
   public void resetReferences(int count) {
     this.clientReferenceCount = count;
+    if (count != 0) {
+      // synced, this server never saw who made these references
+      clientEntityStateManager.expectedReferencesUnknown(this.id);
+    }
   }
   
   @Override
@@ -868,19 +877,19 @@ public class ManagedEntityImpl implements ManagedEntity {
   }
 
   @Override
-  public void sync(NodeID passive) {
+  public void sync(NodeID passive, PassiveSyncWindow window) {
 //  this is simply a barrier to make sure all actions are flushed before sync is started (hence, it has a null passive).
-    PassiveSyncServerEntityRequest req = new PassiveSyncServerEntityRequest(passive);
+    PassiveSyncServerEntityRequest req = new PassiveSyncServerEntityRequest(passive, window);
 // wait for future is ok, occuring on sync executor thread
     BarrierCompletion opComplete = new BarrierCompletion();
     this.executor.scheduleRequest(this.id, this.version, this.fetchID, new ServerEntityRequestImpl(ClientInstanceID.NULL_ID, ServerEntityAction.LOCAL_FLUSH_AND_SYNC, ClientID.NULL_ID, TransactionID.NULL_ID, TransactionID.NULL_ID, false, Collections.emptySet()), MessagePayload.emptyPayload(), ()-> { 
         Assert.assertTrue(this.isInActiveState);
         if (!this.isDestroyed) {
-          executor.scheduleSync(SyncReplicationActivity.createStartEntityMessage(id, version, fetchID, constructorInfo, canDelete ? this.clientReferenceCount : ManagedEntity.UNDELETABLE_ENTITY), passive).waitForCompleted();
+          window.controlSent(executor.scheduleSync(SyncReplicationActivity.createStartEntityMessage(id, version, fetchID, constructorInfo, canDelete ? this.clientReferenceCount : ManagedEntity.UNDELETABLE_ENTITY), passive));
         }
         opComplete.complete();
       }, true, ConcurrencyStrategy.MANAGEMENT_KEY).waitForCompleted();
-    //  wait for completed above waits for acknowledgment from the passive
+    //  wait for completed above waits for the flush on the management key (nothing is replicated for it)
     //  waitForCompletion below waits for completion of the local request processor
     opComplete.waitForCompletion();
     interop.syncStarted();
@@ -893,17 +902,20 @@ public class ManagedEntityImpl implements ManagedEntity {
           Assert.assertTrue(concurrency > 0);  
           // We don't actually use the message in the direct strategy so this is safe.
           //  don't care about the result
-                                              
+          long keyStart = System.nanoTime();
           BarrierCompletion sectionComplete = new BarrierCompletion();
-          this.executor.scheduleRequest(this.id, this.version, this.fetchID, req, MessagePayload.emptyPayload(),  ()->invoke(req, new ResultCapture(null, result->sectionComplete.complete(), null, null, false), MessagePayload.emptyPayload(), concurrency), true, concurrency).waitForCompleted();
-        //  wait for completed above waits for acknowledgment from the passive
-        //  waitForCompletion below waits for completion of the local request processor
+          window.controlSent(this.executor.scheduleRequest(this.id, this.version, this.fetchID, req, MessagePayload.emptyPayload(),  ()->invoke(req, new ResultCapture(null, result->sectionComplete.complete(), null, null, false), MessagePayload.emptyPayload(), concurrency), true, concurrency));
+        //  the window tracks the passive's acknowledgment of the key start
+        //  waitForCompletion below waits for the local request processor to have sent every payload of the key, which
+        //  must all be ahead of the key end in the replication stream
           sectionComplete.waitForCompletion();
-          executor.scheduleSync(SyncReplicationActivity.createEndEntityKeyMessage(id, version, fetchID, concurrency), passive).waitForCompleted();
+          window.controlSent(executor.scheduleSync(SyncReplicationActivity.createEndEntityKeyMessage(id, version, fetchID, concurrency), passive));
+        //  the key held a request processor thread, give live requests their share before the next one
+          window.pace(System.nanoTime() - keyStart);
         }
   //  end passive sync for an entity
   // wait for future is ok, occuring on sync executor thread
-        executor.scheduleSync(SyncReplicationActivity.createEndEntityMessage(id, version, fetchID), passive).waitForCompleted();
+        window.controlSent(executor.scheduleSync(SyncReplicationActivity.createEndEntityMessage(id, version, fetchID), passive));
       }
     } finally {
       interop.syncFinished();
@@ -957,11 +969,13 @@ public class ManagedEntityImpl implements ManagedEntity {
 
   private static class PassiveSyncServerEntityRequest implements ServerEntityRequest {
     private final NodeID passive;
+    private final PassiveSyncWindow window;
     private final ServerEntityAction action;
     
-    public PassiveSyncServerEntityRequest(NodeID passive) {
+    public PassiveSyncServerEntityRequest(NodeID passive, PassiveSyncWindow window) {
       action = ServerEntityAction.REQUEST_SYNC_ENTITY;
       this.passive = passive;
+      this.window = window;
     }
 
     @Override
@@ -0,0 +1,233 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.entity;
+
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+import com.tc.net.NodeID;
+import com.tc.properties.TCProperties;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+import com.tc.util.LatencyAimdController;
+import com.tc.util.concurrent.ThreadUtil;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+
+/**
+ * Keeps passive sync from starving live client traffic.
+ * <p>
+ * Sync runs on the same request processor threads, replication batches and connection as live requests.  The throttle
+ *  gives it a level between its minimum and 1:  after every piece of sync work the sync thread pauses long enough that
+ *  sync only takes that share of the time it would use unthrottled and, if a byte rate cap is set, long enough that the
+ *  payloads sent so far average that share of the cap.  Payloads are sent from request processor threads, which only
+ *  account for their bytes:  every pause is taken on the sync thread.
+ * <p>
+ * The level is re-evaluated every interval from the live invoke latency recorded over the interval and the depth of
+ *  the live request queue, by a {@link LatencyAimdController} fed one sample per interval.  Latency above its baseline
+ *  by the configured factor, or a queue above its high water mark, halves the level.  An interval without live traffic
+ *  restores full speed and otherwise the level climbs back slowly.  One throttle is shared by every passive being
+ *  synced.
+ */
+public class PassiveSyncThrottle {
+  private static final TCLogger LOGGER = TCLogging.getLogger(PassiveSyncThrottle.class);
+  private static final double INCREASE_STEP = 0.1;
+  // latency this low is noise, never back off because of it
+  private static final long MIN_DEGRADED_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long MAX_PAUSE_NANOS = TimeUnit.SECONDS.toNanos(1);
+  // intervals after which the latency baseline is re-based, so it can follow live latency which got slower for good
+  private static final int BASELINE_EPOCH = 64;
+
+  private final boolean enabled;
+  private final long intervalNanos;
+  private final int queueHighWater;
+  private final long bytesPerSecond;
+  private final IntSupplier liveQueueDepth;
+
+  private final LongAdder liveLatencyNanos = new LongAdder();
+  private final LongAdder liveRequests = new LongAdder();
+  private final Map<NodeID, PassiveSyncWindow> syncs = new ConcurrentHashMap<>();
+
+  // guarded by this
+  private final LatencyAimdController level;
+  private long lastAdjustNanos = System.nanoTime();
+  private long lastLatencyNanos;
+  private int lastQueueDepth;
+  private long nextPayloadNanos;
+  private long pausedNanos;
+
+  public PassiveSyncThrottle(boolean enabled, double minLevel, long intervalNanos, double latencyFactor, int queueHighWater, long bytesPerSecond, IntSupplier liveQueueDepth) {
+    if (minLevel <= 0 || minLevel > 1) {
+      throw new IllegalArgumentException("Minimum level must be in (0, 1]: " + minLevel);
+    }
+    this.enabled = enabled;
+    this.intervalNanos = intervalNanos;
+    this.queueHighWater = queueHighWater;
+    this.bytesPerSecond = bytesPerSecond;
+    this.liveQueueDepth = liveQueueDepth;
+    this.level = new LatencyAimdController(minLevel, 1.0, 1.0, INCREASE_STEP, 0.5, latencyFactor, MIN_DEGRADED_NANOS,
+        BASELINE_EPOCH);
+  }
+
+  public static PassiveSyncThrottle fromProperties(IntSupplier liveQueueDepth) {
+    TCProperties props = TCPropertiesImpl.getProperties();
+    return new PassiveSyncThrottle(props.getBoolean(TCPropertiesConsts.L2_PASSIVE_SYNC_THROTTLE_ENABLED, true),
+        props.getInt(TCPropertiesConsts.L2_PASSIVE_SYNC_THROTTLE_MIN_PERCENT, 10) / 100.0,
+        TimeUnit.MILLISECONDS.toNanos(props.getLong(TCPropertiesConsts.L2_PASSIVE_SYNC_THROTTLE_INTERVAL_MILLIS, 100)),
+        props.getInt(TCPropertiesConsts.L2_PASSIVE_SYNC_THROTTLE_LATENCY_PERCENT, 200) / 100.0,
+        props.getInt(TCPropertiesConsts.L2_PASSIVE_SYNC_THROTTLE_QUEUE_HIGH_WATER, 1000),
+        props.getLong(TCPropertiesConsts.L2_PASSIVE_SYNC_THROTTLE_BYTES_PER_SECOND, 0),
+        liveQueueDepth);
+  }
+
+  /**
+   * A throttle which never slows sync down, still tracking its progress.
+   */
+  public static PassiveSyncThrottle disabled() {
+    return new PassiveSyncThrottle(false, 1.0, TimeUnit.SECONDS.toNanos(1), 1.0, Integer.MAX_VALUE, 0, () -> 0);
+  }
+
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  /**
+   * Records the time a live client invoke took on this server, from its arrival to its result.
+   */
+  public void recordLiveLatency(long nanos) {
+    this.liveLatencyNanos.add(nanos);
+    this.liveRequests.increment();
+  }
+
+  /**
+   * Called on the sync thread after a piece of sync work, sleeps so that sync only uses the current level's share of
+   *  the time and of the byte rate cap.
+   */
+  public void pace(long workNanos) {
+    long pause = pauseFor(workNanos, System.nanoTime());
+    if (pause > 0) {
+      ThreadUtil.reallySleep(TimeUnit.NANOSECONDS.toMillis(pause), (int) (pause % 1_000_000));
+    }
+  }
+
+  /**
+   * Accounts for a sync payload about to be sent against the byte rate cap.  Called on a request processor thread so it
+   *  never sleeps, the next {@link #pace(long)} makes up for it.
+   */
+  public void payloadSent(int bytes) {
+    if (this.enabled && this.bytesPerSecond > 0) {
+      accountPayload(bytes, System.nanoTime());
+    }
+  }
+
+  synchronized long pauseFor(long workNanos, long now) {
+    adjust(now);
+    long pause = 0;
+    double share = this.level.getValue();
+    if (share < 1.0) {
+      pause = (long) (workNanos * (1 - share) / share);
+    }
+    if (this.enabled && this.bytesPerSecond > 0) {
+      pause = Math.max(pause, this.nextPayloadNanos - now);
+    }
+    pause = Math.min(MAX_PAUSE_NANOS, pause);
+    if (pause > 0) {
+      this.pausedNanos += pause;
+    }
+    return pause;
+  }
+
+  synchronized void accountPayload(int bytes, long now) {
+    adjust(now);
+    double rate = this.bytesPerSecond * this.level.getValue();
+    this.nextPayloadNanos = Math.max(this.nextPayloadNanos, now) + (long) (bytes * 1_000_000_000d / rate);
+  }
+
+  /**
+   * Re-evaluates the level once per interval.
+   */
+  synchronized void adjust(long now) {
+    if (!this.enabled || now - this.lastAdjustNanos < this.intervalNanos) {
+      return;
+    }
+    this.lastAdjustNanos = now;
+    long requests = this.liveRequests.sumThenReset();
+    long latency = this.liveLatencyNanos.sumThenReset();
+    int depth = this.liveQueueDepth.getAsInt();
+    this.lastQueueDepth = depth;
+    this.lastLatencyNanos = (requests > 0) ? latency / requests : 0;
+    if (requests > 0) {
+      this.level.recordLatency(this.lastLatencyNanos);
+    }
+    boolean slow = requests > 0 && this.level.isCongested(this.lastLatencyNanos);
+    if (slow || depth > this.queueHighWater) {
+      if (this.level.decrease(now) && LOGGER.isDebugEnabled()) {
+        LOGGER.debug("passive sync throttled to " + this.level.getValue() + " live latency " + this.lastLatencyNanos + "ns baseline " + this.level.getMinLatency() + "ns queue " + depth);
+      }
+    } else if (requests == 0 && depth == 0) {
+      this.level.reset();
+    } else {
+      this.level.increase();
+    }
+  }
+
+  public synchronized double getLevel() {
+    return this.level.getValue();
+  }
+
+  void syncStarted(NodeID passive, PassiveSyncWindow window) {
+    this.syncs.put(passive, window);
+  }
+
+  /**
+   * Forgets a passive which left, its last sync is kept until then.
+   */
+  public void passiveRemoved(NodeID passive) {
+    this.syncs.remove(passive);
+  }
+
+  public synchronized Map<String, Long> getStatistics() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("Enabled", this.enabled ? 1L : 0L);
+    stats.put("LevelPercent", Math.round(getLevel() * 100));
+    stats.put("Decreases", this.level.getDecreases());
+    stats.put("Increases", this.level.getIncreases());
+    stats.put("PausedMillis", TimeUnit.NANOSECONDS.toMillis(this.pausedNanos));
+    stats.put("LiveLatencyMicros", TimeUnit.NANOSECONDS.toMicros(this.lastLatencyNanos));
+    stats.put("BaselineLatencyMicros", TimeUnit.NANOSECONDS.toMicros(this.level.getMinLatency()));
+    stats.put("LiveQueueDepth", (long) this.lastQueueDepth);
+    return stats;
+  }
+
+  /**
+   * @return The progress of the latest sync to each passive, keyed by passive.
+   */
+  public Map<String, Map<String, Long>> getSyncProgress() {
+    Map<String, Map<String, Long>> progress = new LinkedHashMap<>();
+    for (Map.Entry<NodeID, PassiveSyncWindow> entry : this.syncs.entrySet()) {
+      progress.put(entry.getKey().toString(), entry.getValue().getProgress());
+    }
+    return progress;
+  }
+}
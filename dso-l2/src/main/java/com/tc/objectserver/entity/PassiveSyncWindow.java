@@ -0,0 +1,185 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.entity;
+
+import com.tc.net.NodeID;
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Flow control for the messages of one passive sync.
+ * <p>
+ * Passive sync must put its messages on the wire in the order ReplicationSender and the passive's sync state expect
+ *  (entity begin, then each concurrency key's begin, payloads and end, then entity end), so there is never more than
+ *  one entity or key in progress.  What this window removes is the round trip per message:  payloads are streamed
+ *  until the bytes the passive has not yet received reach the window, and the acks of the begin/end messages are only
+ *  waited on in {@link #drain()}, before sync completes.
+ * <p>
+ * With a window of zero bytes (not pipelined) every payload waits to be received and every other message waits to be
+ *  completed before the next is sent, which is how passive sync used to run.
+ * <p>
+ * The window also paces the sync through its {@link PassiveSyncThrottle} and tracks the progress reported over JMX.
+ */
+public class PassiveSyncWindow {
+  private static final int DEFAULT_WINDOW_BYTES = 8 * 1024 * 1024;
+
+  private final long windowBytes;
+  private final PassiveSyncThrottle throttle;
+  private final Deque<Payload> payloads = new ArrayDeque<>();
+  private final Deque<ActivePassiveAckWaiter> controls = new ArrayDeque<>();
+  private long outstandingBytes;
+  // progress, written by the sync but read by monitoring without the lock
+  private final long startNanos = System.nanoTime();
+  private volatile long endNanos;
+  private volatile long payloadCount;
+  private volatile long payloadBytes;
+  private volatile long payloadWaits;
+  private volatile long entitiesTotal;
+  private volatile long entitiesSynced;
+  private volatile long pausedNanos;
+
+  public PassiveSyncWindow(long windowBytes) {
+    this(windowBytes, PassiveSyncThrottle.disabled());
+  }
+
+  public PassiveSyncWindow(long windowBytes, PassiveSyncThrottle throttle) {
+    this.windowBytes = windowBytes;
+    this.throttle = throttle;
+  }
+
+  public static PassiveSyncWindow fromProperties(PassiveSyncThrottle throttle) {
+    boolean pipelined = TCPropertiesImpl.getProperties().getBoolean(TCPropertiesConsts.L2_PASSIVE_SYNC_PIPELINED, true);
+    return new PassiveSyncWindow(pipelined ? TCPropertiesImpl.getProperties().getLong(TCPropertiesConsts.L2_PASSIVE_SYNC_WINDOW_BYTES, DEFAULT_WINDOW_BYTES) : 0, throttle);
+  }
+
+  /**
+   * Starts tracking a sync of the given number of entities to passive.
+   */
+  public void syncStarted(NodeID passive, int entities) {
+    this.entitiesTotal = entities;
+    this.throttle.syncStarted(passive, this);
+  }
+
+  public void entitySynced() {
+    this.entitiesSynced += 1;
+  }
+
+  public void syncFinished() {
+    this.endNanos = System.nanoTime();
+  }
+
+  /**
+   * Called on the sync thread, never from a request processor thread, after a piece of sync work which took
+   *  workNanos.  Pauses as long as the throttle asks.
+   */
+  public void pace(long workNanos) {
+    long start = System.nanoTime();
+    this.throttle.pace(workNanos);
+    this.pausedNanos += System.nanoTime() - start;
+  }
+
+  public boolean isPipelined() {
+    return this.windowBytes > 0;
+  }
+
+  /**
+   * Accounts for a payload message just sent, waiting for older payloads to be received while the window is full.
+   *  Called on a request processor thread so the throttle only counts the bytes, the sync thread pauses for them.
+   */
+  public synchronized void payloadSent(ActivePassiveAckWaiter waiter, int bytes) {
+    this.throttle.payloadSent(bytes);
+    this.payloads.addLast(new Payload(waiter, bytes));
+    this.outstandingBytes += bytes;
+    this.payloadCount += 1;
+    this.payloadBytes += bytes;
+    while (!this.payloads.isEmpty() && (!isPipelined() || this.outstandingBytes > this.windowBytes)) {
+      Payload oldest = this.payloads.removeFirst();
+      oldest.waiter.waitForReceived();
+      this.outstandingBytes -= oldest.bytes;
+      this.payloadWaits += 1;
+    }
+  }
+
+  /**
+   * Accounts for a sync begin or end message just sent.  Unless pipelined, waits for it to complete.
+   */
+  public synchronized void controlSent(ActivePassiveAckWaiter waiter) {
+    if (isPipelined()) {
+      // drop what has already completed so a long sync doesn't hold on to every waiter
+      while (!this.controls.isEmpty() && this.controls.peekFirst().isCompleted()) {
+        this.controls.removeFirst();
+      }
+      this.controls.addLast(waiter);
+    } else {
+      waiter.waitForCompleted();
+    }
+  }
+
+  /**
+   * Waits for every payload to be received and every begin/end message to be completed by the passive.
+   */
+  public synchronized void drain() {
+    while (!this.payloads.isEmpty()) {
+      Payload oldest = this.payloads.removeFirst();
+      oldest.waiter.waitForReceived();
+      this.outstandingBytes -= oldest.bytes;
+    }
+    while (!this.controls.isEmpty()) {
+      this.controls.removeFirst().waitForCompleted();
+    }
+  }
+
+  public Map<String, Long> getProgress() {
+    long end = this.endNanos;
+    Map<String, Long> progress = new LinkedHashMap<>();
+    progress.put("EntitiesTotal", this.entitiesTotal);
+    progress.put("EntitiesSynced", this.entitiesSynced);
+    progress.put("Payloads", this.payloadCount);
+    progress.put("PayloadBytes", this.payloadBytes);
+    progress.put("PayloadWaits", this.payloadWaits);
+    progress.put("PausedMillis", TimeUnit.NANOSECONDS.toMillis(this.pausedNanos));
+    progress.put("ElapsedMillis", TimeUnit.NANOSECONDS.toMillis(((end != 0) ? end : System.nanoTime()) - this.startNanos));
+    progress.put("Complete", (end != 0) ? 1L : 0L);
+    return progress;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "PassiveSyncWindow{windowBytes=" + this.windowBytes + ", payloads=" + this.payloadCount + ", payloadBytes=" + this.payloadBytes
+        + ", payloadWaits=" + this.payloadWaits + ", outstandingBytes=" + this.outstandingBytes + ", pendingControls=" + this.controls.size()
+        + ", pausedMillis=" + TimeUnit.NANOSECONDS.toMillis(this.pausedNanos) + '}';
+  }
+
+  private static class Payload {
+    private final ActivePassiveAckWaiter waiter;
+    private final int bytes;
+
+    Payload(ActivePassiveAckWaiter waiter, int bytes) {
+      this.waiter = waiter;
+      this.bytes = bytes;
+    }
+  }
+}
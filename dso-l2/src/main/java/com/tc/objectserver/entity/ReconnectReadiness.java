@@ -0,0 +1,167 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.entity;
+
+import com.tc.net.ClientID;
+import com.tc.object.EntityID;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Which entities are still waiting for clients during an incremental reconnect.
+ * <p>
+ * An entity is ready once every client which held a reference to it, as recorded by the
+ *  {@link ClientEntityStateManager} while this server was a passive, has reconnected.  Its resends can then be
+ *  replayed and its new requests run without waiting for the rest of the reconnect window.  Entities whose references
+ *  this server didn't see in full (they were synced from the active or loaded from disk) can't be judged this way and
+ *  wait for the whole reconnect, as every entity used to.
+ * <p>
+ * Lifecycle resends (create, destroy, reconfigure and fetch) for an entity no client was recorded as using are not
+ *  ordered against those of clients which haven't reconnected yet, so they also wait for the whole reconnect.
+ */
+public class ReconnectReadiness {
+  private final Map<EntityID, Set<ClientID>> waiting = new LinkedHashMap<>();
+  private final Set<EntityID> unknown;
+  // every entity which started out waiting, for clients or for the whole reconnect
+  private final Set<EntityID> expected;
+  private final Set<ClientID> reconnected = new HashSet<>();
+  private long readyEarly;
+  private boolean complete;
+
+  /**
+   * @param expected the clients holding references to each entity
+   * @param unknown entities whose references aren't all known, these wait for the whole reconnect
+   */
+  public ReconnectReadiness(Map<EntityID, Set<ClientID>> expected, Set<EntityID> unknown) {
+    this.unknown = new HashSet<>(unknown);
+    for (Map.Entry<EntityID, Set<ClientID>> entry : expected.entrySet()) {
+      if (!entry.getValue().isEmpty() && !this.unknown.contains(entry.getKey())) {
+        this.waiting.put(entry.getKey(), new HashSet<>(entry.getValue()));
+      }
+    }
+    this.expected = getWaitingEntities();
+  }
+
+  public static ReconnectReadiness complete() {
+    ReconnectReadiness readiness = new ReconnectReadiness(Collections.emptyMap(), Collections.emptySet());
+    readiness.reconnectComplete();
+    return readiness;
+  }
+
+  public synchronized boolean isReady(EntityID eid) {
+    return this.complete || (!this.waiting.containsKey(eid) && !this.unknown.contains(eid));
+  }
+
+  /**
+   * A lifecycle resend for an entity which isn't expected may race the same kind of resend from a client which isn't
+   *  back yet, the reconnect has to complete before either can be replayed.
+   *
+   * @return true if lifecycle resends for the entity must wait for the reconnect to complete
+   */
+  public synchronized boolean holdsLifecycleResends(EntityID eid) {
+    return !this.complete && !this.expected.contains(eid);
+  }
+
+  /**
+   * @return every entity which isn't ready yet
+   */
+  public synchronized Set<EntityID> getWaitingEntities() {
+    Set<EntityID> all = new HashSet<>(this.unknown);
+    all.addAll(this.waiting.keySet());
+    return all;
+  }
+
+  /**
+   * Records that a client has reconnected and handed over all its resends.
+   *
+   * @return the entities which became ready because of it
+   */
+  public synchronized List<EntityID> clientReconnected(ClientID client) {
+    List<EntityID> ready = new ArrayList<>();
+    if (this.complete || !this.reconnected.add(client)) {
+      return ready;
+    }
+    for (Map.Entry<EntityID, Set<ClientID>> entry : this.waiting.entrySet()) {
+      Set<ClientID> clients = entry.getValue();
+      if (clients.remove(client) && clients.isEmpty()) {
+        ready.add(entry.getKey());
+      }
+    }
+    for (EntityID eid : ready) {
+      this.waiting.remove(eid);
+    }
+    this.readyEarly += ready.size();
+    return ready;
+  }
+
+  /**
+   * The reconnect window has closed, or every expected client is back, so nothing waits any longer.
+   *
+   * @return the entities which were still waiting
+   */
+  public synchronized Set<EntityID> reconnectComplete() {
+    Set<EntityID> released = getWaitingEntities();
+    this.complete = true;
+    this.waiting.clear();
+    this.unknown.clear();
+    return released;
+  }
+
+  public synchronized boolean isComplete() {
+    return this.complete;
+  }
+
+  /**
+   * @return the entities which aren't ready yet and the clients each still waits for.  Entities waiting for the whole
+   *  reconnect have no clients listed.
+   */
+  public synchronized Map<EntityID, Set<ClientID>> getWaitingClients() {
+    Map<EntityID, Set<ClientID>> clients = new LinkedHashMap<>();
+    for (Map.Entry<EntityID, Set<ClientID>> entry : this.waiting.entrySet()) {
+      clients.put(entry.getKey(), Collections.unmodifiableSet(new HashSet<>(entry.getValue())));
+    }
+    for (EntityID eid : this.unknown) {
+      clients.put(eid, Collections.emptySet());
+    }
+    return clients;
+  }
+
+  public synchronized Map<String, Long> getStatistics() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("ReconnectedClients", (long) this.reconnected.size());
+    stats.put("ReadyEarly", this.readyEarly);
+    stats.put("WaitingForClients", (long) this.waiting.size());
+    stats.put("WaitingForWindow", (long) this.unknown.size());
+    stats.put("Complete", this.complete ? 1L : 0L);
+    return stats;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "ReconnectReadiness{complete=" + this.complete + ", readyEarly=" + this.readyEarly + ", waiting=" + this.waiting
+        + ", unknown=" + this.unknown + '}';
+  }
+}
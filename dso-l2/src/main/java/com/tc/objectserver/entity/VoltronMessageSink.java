@@ -20,22 +20,27 @@ package com.tc.objectserver.entity;
 
 import com.tc.entity.MessageCodecSupplier;
 import com.tc.async.api.Sink;
+import com.tc.async.api.SpecializedEventContext;
 import com.tc.entity.NetworkVoltronEntityMessage;
+import com.tc.entity.NetworkVoltronEntityMultiMessage;
 import com.tc.entity.VoltronEntityMessage;
 import com.tc.net.protocol.tcm.HydrateContext;
 import com.tc.net.protocol.tcm.TCMessage;
 import com.tc.net.protocol.tcm.TCMessageSink;
+import com.tc.stats.Stats;
 
 public class VoltronMessageSink implements TCMessageSink {
   private final Sink<VoltronEntityMessage> destSink;
   private final Sink<HydrateContext> hydrateSink;
   private final MessageCodecSupplier codecSupplier;
+  private final Sink<NetworkVoltronEntityMultiMessage> unpackingSink;
   
 
   public VoltronMessageSink(Sink<VoltronEntityMessage> destSink, Sink<HydrateContext> hydrateSink, MessageCodecSupplier codecSupplier) {
     this.destSink = destSink;
     this.hydrateSink = hydrateSink;
     this.codecSupplier = codecSupplier;
+    this.unpackingSink = new UnpackingSink(destSink);
   }
 
   @Override
@@ -43,10 +48,82 @@ public class VoltronMessageSink implements TCMessageSink {
     if (message instanceof NetworkVoltronEntityMessage) {
       ((NetworkVoltronEntityMessage)message).setMessageCodecSupplier(codecSupplier);
     }
-    HydrateContext<VoltronEntityMessage> context = new HydrateContext<>(message, destSink);
-    hydrateSink.addMultiThreaded(context);
+    if (message instanceof NetworkVoltronEntityMultiMessage) {
+      ((NetworkVoltronEntityMultiMessage)message).setMessageCodecSupplier(codecSupplier);
+//  hydration is keyed on the source so the unpacked invokes still land in order with the client's single messages
+      HydrateContext<NetworkVoltronEntityMultiMessage> context = new HydrateContext<>(message, unpackingSink);
+      hydrateSink.addMultiThreaded(context);
+    } else {
+      HydrateContext<VoltronEntityMessage> context = new HydrateContext<>(message, destSink);
+      hydrateSink.addMultiThreaded(context);
+    }
   }
   
-    
-  
+  /**
+   * Hands each invoke of a coalesced message to the destination, in order, as if it had arrived on its own.
+   */
+  private static class UnpackingSink implements Sink<NetworkVoltronEntityMultiMessage> {
+    private final Sink<VoltronEntityMessage> destSink;
+
+    UnpackingSink(Sink<VoltronEntityMessage> destSink) {
+      this.destSink = destSink;
+    }
+
+    @Override
+    public void addSingleThreaded(NetworkVoltronEntityMultiMessage context) {
+      for (VoltronEntityMessage invoke : context.getInvokes()) {
+        destSink.addSingleThreaded(invoke);
+      }
+    }
+
+    @Override
+    public void addMultiThreaded(NetworkVoltronEntityMultiMessage context) {
+      addSingleThreaded(context);
+    }
+
+    @Override
+    public void addSpecialized(SpecializedEventContext specialized) {
+      destSink.addSpecialized(specialized);
+    }
+
+    @Override
+    public int size() {
+      return destSink.size();
+    }
+
+    @Override
+    public void clear() {
+      destSink.clear();
+    }
+
+    @Override
+    public void setClosed(boolean closed) {
+      destSink.setClosed(closed);
+    }
+
+    @Override
+    public void enableStatsCollection(boolean enable) {
+      destSink.enableStatsCollection(enable);
+    }
+
+    @Override
+    public boolean isStatsCollectionEnabled() {
+      return destSink.isStatsCollectionEnabled();
+    }
+
+    @Override
+    public Stats getStats(long frequency) {
+      return destSink.getStats(frequency);
+    }
+
+    @Override
+    public Stats getStatsAndReset(long frequency) {
+      return destSink.getStatsAndReset(frequency);
+    }
+
+    @Override
+    public void resetStats() {
+      destSink.resetStats();
+    }
+  }
 }
@@ -0,0 +1,120 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.handler;
+
+import com.tc.stats.LatencyHistogram;
+import com.tc.util.LatencyAimdController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Sizes the window of unacknowledged batches a {@link GroupMessageBatchContext} may have outstanding to its target,
+ *  using the latency of the target's acks as the congestion signal (AIMD, in the style of delay based TCP congestion
+ *  control).
+ * <p>
+ * While acks come back within the target latency the window grows by one batch per window's worth of acks.  Once they
+ *  take longer, the window is halved, at most once per round trip.  The target latency is a multiple of the lowest
+ *  recently observed ack latency so it follows the link rather than being a fixed number, see
+ *  {@link LatencyAimdController}.  Batches are bounded both in
+ *  elements and in estimated bytes so a shrinking window turns into fewer, larger messages rather than a stall.
+ * <p>
+ * Not thread-safe:  all calls are made under the lock of the owning batch context.
+ */
+class AdaptiveBatchController {
+  // the ack latency we tolerate before backing off, as a multiple of the minimum observed latency
+  private static final int LATENCY_TOLERANCE = 2;
+  // how many acks we sample before letting the minimum latency drift up to the latest period's minimum
+  private static final int MIN_LATENCY_PERIOD = 256;
+
+  private final int maxBatchSize;
+  private final long maxBatchBytes;
+  private final LatencyAimdController controller;
+
+  private final LatencyHistogram batchSizes = new LatencyHistogram();
+  private final LatencyHistogram batchBytes = new LatencyHistogram();
+  private final LatencyHistogram ackLatency = new LatencyHistogram();
+
+  AdaptiveBatchController(int minWindow, int maxWindow, int initialWindow, int maxBatchSize, long maxBatchBytes, long latencyFloor, TimeUnit unit) {
+    if (minWindow < 1 || maxWindow < minWindow) {
+      throw new IllegalArgumentException("Invalid window bounds " + minWindow + "-" + maxWindow);
+    }
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    this.maxBatchBytes = Math.max(1, maxBatchBytes);
+    this.controller = new LatencyAimdController(minWindow, maxWindow, initialWindow, 1, 0.5, LATENCY_TOLERANCE,
+        unit.toNanos(latencyFloor), MIN_LATENCY_PERIOD);
+  }
+
+  /**
+   * @param unacknowledged batches sent but not yet acknowledged
+   * @param batchElements elements in the pending batch
+   * @param batchBytes estimated size of the pending batch
+   * @return true if the pending batch should be sent now
+   */
+  boolean shouldSend(int unacknowledged, int batchElements, long batchBytes) {
+    return (unacknowledged < getWindow()) || (batchElements >= this.maxBatchSize) || (batchBytes >= this.maxBatchBytes);
+  }
+
+  void batchSent(int elements, long bytes) {
+    this.batchSizes.record(elements);
+    this.batchBytes.record(bytes);
+  }
+
+  /**
+   * Feeds the controller one ack latency sample.
+   *
+   * @param latency nanoseconds between sending a batch and its first ack
+   * @param now current System.nanoTime()
+   */
+  void batchAcknowledged(long latency, long now) {
+    this.ackLatency.record(latency);
+    this.controller.sample(latency, now);
+  }
+
+  int getWindow() {
+    return (int) this.controller.getValue();
+  }
+
+  long getTargetLatency() {
+    return this.controller.getTargetLatency();
+  }
+
+  long getSmoothedLatency() {
+    return this.controller.getSmoothedLatency();
+  }
+
+  Map<String, Long> getStatistics() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("Window", (long) getWindow());
+    stats.put("WindowIncreases", this.controller.getIncreases());
+    stats.put("WindowDecreases", this.controller.getDecreases());
+    stats.put("Batches", this.batchSizes.getCount());
+    stats.put("BatchSizeP50", this.batchSizes.getValueAtPercentile(50));
+    stats.put("BatchSizeP99", this.batchSizes.getValueAtPercentile(99));
+    stats.put("BatchBytesP50", this.batchBytes.getValueAtPercentile(50));
+    stats.put("BatchBytesP99", this.batchBytes.getValueAtPercentile(99));
+    stats.put("AckLatencyP50Micros", TimeUnit.NANOSECONDS.toMicros(this.ackLatency.getValueAtPercentile(50)));
+    stats.put("AckLatencyP99Micros", TimeUnit.NANOSECONDS.toMicros(this.ackLatency.getValueAtPercentile(99)));
+    stats.put("AckLatencySmoothedMicros", TimeUnit.NANOSECONDS.toMicros(getSmoothedLatency()));
+    stats.put("AckLatencyTargetMicros", TimeUnit.NANOSECONDS.toMicros(getTargetLatency()));
+    return stats;
+  }
+}
@@ -0,0 +1,318 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.handler;
+
+import com.tc.entity.VoltronEntityAppliedResponse;
+import com.tc.entity.VoltronEntityMultiResponse;
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+import com.tc.net.ClientID;
+import com.tc.net.protocol.tcm.MessageChannel;
+import com.tc.net.protocol.tcm.TCMessage;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.object.tx.TransactionID;
+import com.tc.objectserver.handshakemanager.ServerClientHandshakeManager;
+import com.tc.stats.LatencyHistogram;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import org.terracotta.exception.EntityException;
+
+
+/**
+ * Accumulates the received, result, failure and retired acks for each client and flushes them as multi-responses.
+ * <p>
+ * Acks are added from any thread without locking:  each client has its own lock-free queue and a flag which makes
+ * sure at most one flush is scheduled at a time.  The flush itself runs on the single response stage thread, which is
+ * the only thread to touch the acks once they are drained.
+ * <p>
+ * A received ack may not go out until the transaction order of its request is persisted.  Only the acks of that
+ * transaction are held back for it, everything else queued for the client is sent right away.  The held acks are sent
+ * by a later flush, scheduled when the persistence future completes.
+ */
+class ClientResponseAggregator {
+  private static final TCLogger LOGGER = TCLogging.getLogger(ClientResponseAggregator.class);
+
+  private final Function<ClientID, Optional<MessageChannel>> channels;
+  private final Consumer<TCMessage> sender;
+  private final IntSupplier queueDepth;
+  private final ConcurrentHashMap<ClientID, ClientResponses> clients = new ConcurrentHashMap<>();
+
+  /**
+   * @param channels looks up the channel of a client, empty if it has disconnected
+   * @param sender schedules a message on the response stage, which then calls {@link #flush(VoltronEntityMultiResponse)}
+   * @param queueDepth the server load reported on multi-responses to clients which accept it, negative if unknown
+   */
+  ClientResponseAggregator(Function<ClientID, Optional<MessageChannel>> channels, Consumer<TCMessage> sender, IntSupplier queueDepth) {
+    this.channels = channels;
+    this.sender = sender;
+    this.queueDepth = queueDepth;
+  }
+
+  /**
+   * @param persisted the transaction order persistence of this request, null if it isn't persisted
+   */
+  void received(ClientID client, TransactionID tid, Future<Void> persisted) {
+    add(client, new Ack(AckType.RECEIVED, tid, persisted, null, null));
+  }
+
+  void result(ClientID client, TransactionID tid, byte[] result) {
+    add(client, new Ack(AckType.RESULT, tid, null, result, null));
+  }
+
+  void failure(ClientID client, TransactionID tid, EntityException failure) {
+    add(client, new Ack(AckType.FAILURE, tid, null, null, failure));
+  }
+
+  void retired(ClientID client, TransactionID tid) {
+    add(client, new Ack(AckType.RETIRED, tid, null, null, null));
+  }
+
+  /**
+   * Drops whatever is still queued for a client which is gone.
+   */
+  void removeClient(ClientID client) {
+    this.clients.remove(client);
+  }
+
+  /**
+   * Called on the response stage thread with a multi-response scheduled by this aggregator.  Fills it with everything
+   * which can be sent to its client and sends it.
+   */
+  void flush(VoltronEntityMultiResponse carrier) {
+    ClientResponses responses = this.clients.get((ClientID) carrier.getDestinationNodeID());
+    if (responses != null) {
+      responses.flush(carrier);
+    }
+  }
+
+  Map<ClientID, Map<String, Long>> getStatistics() {
+    Map<ClientID, Map<String, Long>> stats = new LinkedHashMap<>();
+    for (Map.Entry<ClientID, ClientResponses> entry : this.clients.entrySet()) {
+      stats.put(entry.getKey(), entry.getValue().getStatistics());
+    }
+    return stats;
+  }
+
+  private void add(ClientID client, Ack ack) {
+    ClientResponses responses = this.clients.computeIfAbsent(client, ClientResponses::new);
+    responses.incoming.add(ack);
+    responses.schedule();
+  }
+
+  private enum AckType {
+    RECEIVED, RESULT, FAILURE, RETIRED
+  }
+
+  private static class Ack {
+    private final AckType type;
+    private final TransactionID tid;
+    private final Future<Void> persisted;
+    private final byte[] result;
+    private final EntityException failure;
+    private final long queuedNanos = System.nanoTime();
+    private boolean held;
+
+    Ack(AckType type, TransactionID tid, Future<Void> persisted, byte[] result, EntityException failure) {
+      this.type = type;
+      this.tid = tid;
+      this.persisted = persisted;
+      this.result = result;
+      this.failure = failure;
+    }
+  }
+
+  private class ClientResponses {
+    private final ClientID client;
+    private final ConcurrentLinkedQueue<Ack> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // only touched by the flushing thread
+    private final ArrayDeque<Ack> pending = new ArrayDeque<>();
+    private Future<Void> waitingOn;
+
+    private final LatencyHistogram responseLatency = new LatencyHistogram();
+    private volatile long messagesSent;
+    private volatile long acksHeld;
+
+    ClientResponses(ClientID client) {
+      this.client = client;
+    }
+
+    void schedule() {
+      if (this.scheduled.compareAndSet(false, true)) {
+        Optional<MessageChannel> channel = channels.apply(this.client);
+        if (channel.isPresent()) {
+          sender.accept(channel.get().createMessage(TCMessageType.VOLTRON_ENTITY_MULTI_RESPONSE));
+        } else {
+//  no more client.  ignore
+          clients.remove(this.client, this);
+        }
+      }
+    }
+
+    void flush(VoltronEntityMultiResponse carrier) {
+      // clear the flag before draining so an ack added from here on schedules another flush
+      this.scheduled.set(false);
+      Ack next;
+      while ((next = this.incoming.poll()) != null) {
+        this.pending.add(next);
+      }
+
+      VoltronEntityMultiResponse response = carrier;
+      boolean hasAcks = false;
+      Set<TransactionID> blocked = null;
+      Future<Void> blocker = null;
+      long now = System.nanoTime();
+      for (Iterator<Ack> it = this.pending.iterator(); it.hasNext(); ) {
+        Ack ack = it.next();
+        if (blocked != null && blocked.contains(ack.tid)) {
+          hold(ack);
+          continue;
+        }
+        if (ack.persisted != null && !isPersisted(ack.persisted)) {
+          // everything for this transaction waits behind its received
+          if (blocked == null) {
+            blocked = new HashSet<>();
+            blocker = ack.persisted;
+          }
+          blocked.add(ack.tid);
+          hold(ack);
+          continue;
+        }
+        it.remove();
+        this.responseLatency.record(now - ack.queuedNanos);
+        switch (ack.type) {
+          case RECEIVED:
+            response.addReceived(ack.tid);
+            hasAcks = true;
+            break;
+          case RESULT:
+            response.addResult(ack.tid, ack.result);
+            hasAcks = true;
+            break;
+          case RETIRED:
+            response.addRetired(ack.tid);
+            hasAcks = true;
+            break;
+          case FAILURE:
+            // failures travel in their own message so everything before them has to go first
+            if (hasAcks) {
+              send(response);
+              response = (VoltronEntityMultiResponse) carrier.getChannel().createMessage(TCMessageType.VOLTRON_ENTITY_MULTI_RESPONSE);
+              hasAcks = false;
+            }
+            VoltronEntityAppliedResponse failMessage = (VoltronEntityAppliedResponse) carrier.getChannel().createMessage(TCMessageType.VOLTRON_ENTITY_COMPLETED_RESPONSE);
+            failMessage.setFailure(ack.tid, ack.failure, false);
+            send(failMessage);
+            break;
+          default:
+            throw new AssertionError(ack.type);
+        }
+      }
+      if (hasAcks) {
+        send(response);
+      }
+      if (blocker != null) {
+        waitFor(blocker);
+      }
+    }
+
+    private void hold(Ack ack) {
+      if (!ack.held) {
+        ack.held = true;
+        this.acksHeld += 1;
+      }
+    }
+
+    private boolean isPersisted(Future<Void> persisted) {
+      if (!persisted.isDone()) {
+        return false;
+      }
+      try {
+        persisted.get();
+      } catch (InterruptedException | ExecutionException e) {
+        throw new RuntimeException(e);
+      }
+      return true;
+    }
+
+    private void waitFor(Future<Void> blocker) {
+      if (blocker instanceof CompletableFuture) {
+        if (this.waitingOn != blocker) {
+          this.waitingOn = blocker;
+          ((CompletableFuture<Void>) blocker).whenComplete((v, t) -> schedule());
+        }
+      } else {
+        // no way to be told when this one completes so wait for it, as the other clients would have before
+        try {
+          blocker.get();
+        } catch (InterruptedException | ExecutionException e) {
+          throw new RuntimeException(e);
+        }
+        schedule();
+      }
+    }
+
+    private void send(TCMessage message) {
+      if (message instanceof VoltronEntityMultiResponse) {
+        VoltronEntityMultiResponse multi = (VoltronEntityMultiResponse) message;
+        multi.stopAdding();
+        int depth = queueDepth.getAsInt();
+        // older clients read an unknown NV pair as a results block, so only send it to those which asked
+        if (depth >= 0 && Boolean.TRUE.equals(message.getChannel().getAttachment(ServerClientHandshakeManager.QUEUE_DEPTH_ATTACHMENT))) {
+          multi.setQueueDepth(depth);
+        }
+      }
+      this.messagesSent += 1;
+      boolean didSend = message.send();
+      if (!didSend) {
+        // It is possible for this send to fail.  Typically, it means that the client has disconnected.
+        LOGGER.warn("Failed to send message to: " + this.client);
+      } else if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("sent " + message);
+      }
+    }
+
+    Map<String, Long> getStatistics() {
+      Map<String, Long> stats = new LinkedHashMap<>();
+      stats.put("MessagesSent", this.messagesSent);
+      stats.put("AcksSent", this.responseLatency.getCount());
+      stats.put("AcksHeldForPersistence", this.acksHeld);
+      stats.put("QueuedAcks", (long) this.incoming.size());
+      stats.put("ResponseP50Micros", this.responseLatency.getValueAtPercentile(50) / 1000);
+      stats.put("ResponseP99Micros", this.responseLatency.getValueAtPercentile(99) / 1000);
+      stats.put("ResponseMaxMicros", this.responseLatency.getMax() / 1000);
+      return stats;
+    }
+  }
+}
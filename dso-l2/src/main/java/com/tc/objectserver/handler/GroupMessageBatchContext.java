@@ -24,7 +24,25 @@ import com.tc.net.groups.AbstractGroupMessage;
 import com.tc.net.groups.GroupException;
 import com.tc.net.groups.GroupManager;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
+
+/**
+ * Batches elements into group messages for one target node.
+ * <p>
+ * In the fixed mode a batch is sent whenever fewer than idealMessagesInFlight messages are still being written to the
+ *  network, or once it reaches maximumBatchSize.  In the adaptive mode an {@link AdaptiveBatchController} decides
+ *  instead, based on how many sent batches the target has not yet acknowledged (see {@link #acknowledged(Object)}) and
+ *  how quickly it has been acknowledging them.
+ */
 public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
   private final IBatchableMessageFactory<M, E> messageFactory;
   private final GroupManager<AbstractGroupMessage> groupManager;
@@ -32,9 +50,19 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
   private final int maximumBatchSize;
   private final int idealMessagesInFlight;
   private final Runnable networkDoneTarget;
+  // only set in the adaptive mode
+  private final AdaptiveBatchController controller;
+  private final Function<? super E, ?> ackKey;
+  private final ToIntFunction<? super E> elementSize;
+  // batches sent but not yet acknowledged, oldest first, also indexed by the ack key of their last element
+  private final Deque<SentBatch> unacknowledged = new ArrayDeque<>();
+  private final Map<Object, SentBatch> unacknowledgedByKey = new HashMap<>();
+  private int unacknowledgedElements;
   
   private int messagesInFlight;
   private M cachedMessage;
+  private Object cachedLastKey;
+  private long cachedBytes;
   private long nextReplicationID;
   // Note that we may see this exception, asynchronously.  In that case, we will just hold it and fail in the next call.
   private GroupException mostRecentException;
@@ -47,6 +75,28 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
     this.maximumBatchSize = maximumBatchSize;
     this.idealMessagesInFlight = idealMessagesInFlight;
     this.networkDoneTarget = networkDoneTarget;
+    this.controller = null;
+    this.ackKey = null;
+    this.elementSize = null;
+  }
+
+  /**
+   * Creates a context in the adaptive mode.
+   *
+   * @param controller Sizes the window of unacknowledged batches.
+   * @param ackKey Maps an element to the key the target acknowledges it with.
+   * @param elementSize Estimates the serialized size of an element, in bytes.
+   */
+  GroupMessageBatchContext(IBatchableMessageFactory<M, E> messageFactory, GroupManager<AbstractGroupMessage> groupManager, NodeID target, AdaptiveBatchController controller, Function<? super E, ?> ackKey, ToIntFunction<? super E> elementSize, Runnable networkDoneTarget) {
+    this.messageFactory = messageFactory;
+    this.groupManager = groupManager;
+    this.target = target;
+    this.maximumBatchSize = 0;
+    this.idealMessagesInFlight = 0;
+    this.networkDoneTarget = networkDoneTarget;
+    this.controller = controller;
+    this.ackKey = ackKey;
+    this.elementSize = elementSize;
   }
 
   private final Runnable handleMessageSend = new Runnable() {
@@ -80,6 +130,10 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
       this.cachedMessage = this.messageFactory.createNewBatch(activity, this.nextReplicationID++);
       didCreateNewBatch = true;
     }
+    if (null != this.controller) {
+      this.cachedLastKey = this.ackKey.apply(activity);
+      this.cachedBytes += this.elementSize.applyAsInt(activity);
+    }
     return didCreateNewBatch;
   }
 
@@ -92,17 +146,25 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
    */
   public void flushBatch() throws GroupException {
     IBatchableGroupMessage<E> messageToSend = null;
+    SentBatch sent = null;
     synchronized (this) {
       // See if we have a batched message and are ready to send one.
-      // Note that we will override the ideal number of in-flight messages if the batch is getting too large.
-      if ((null != this.cachedMessage) && (
-          ((0 == this.idealMessagesInFlight) || (this.messagesInFlight < this.idealMessagesInFlight))
-          || (this.cachedMessage.getBatchSize() >= this.maximumBatchSize))
-        ) {
+      if ((null != this.cachedMessage) && isReadyToSend()) {
         // There is a batched message so send it.
         messageToSend = this.cachedMessage;
         this.cachedMessage = null;
         this.messagesInFlight += 1;
+        if (null != this.controller) {
+          sent = new SentBatch(this.cachedLastKey, messageToSend.getBatchSize(), System.nanoTime());
+          this.unacknowledged.addLast(sent);
+          if (null != sent.key) {
+            this.unacknowledgedByKey.put(sent.key, sent);
+          }
+          this.unacknowledgedElements += sent.elements;
+          this.controller.batchSent(sent.elements, this.cachedBytes);
+          this.cachedLastKey = null;
+          this.cachedBytes = 0;
+        }
       }
     }
     
@@ -116,12 +178,25 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
         synchronized (this) {
           this.mostRecentException = e;
           this.messagesInFlight -= 1;
+          if ((null != sent) && this.unacknowledged.remove(sent)) {
+            forget(sent);
+          }
         }
         throw e;
       }
     }
   }
 
+  private boolean isReadyToSend() {
+    if (null != this.controller) {
+      return this.controller.shouldSend(this.unacknowledged.size(), this.cachedMessage.getBatchSize(), this.cachedBytes);
+    } else {
+      // Note that we will override the ideal number of in-flight messages if the batch is getting too large.
+      return ((0 == this.idealMessagesInFlight) || (this.messagesInFlight < this.idealMessagesInFlight))
+          || (this.cachedMessage.getBatchSize() >= this.maximumBatchSize);
+    }
+  }
+
   public void handleNetworkDone() {
     synchronized (this) {
       this.messagesInFlight -= 1;
@@ -131,6 +206,69 @@ public class GroupMessageBatchContext<M extends IBatchableGroupMessage<E>, E> {
     this.networkDoneTarget.run();
   }
 
+  /**
+   * Called when the target acknowledges an element, in the adaptive mode.  Acknowledging the last element of a sent
+   *  batch retires that batch, and any sent before it, from the window and feeds its latency to the controller.  Other
+   *  keys are ignored so this can be called for every ack the target sends.
+   *
+   * @param key The ack key of the element, as given by the ackKey function.
+   */
+  public void acknowledged(Object key) {
+    boolean mayFlush = false;
+    synchronized (this) {
+      SentBatch batch = (null != this.controller) ? this.unacknowledgedByKey.get(key) : null;
+      if (null != batch) {
+        SentBatch oldest;
+        do {
+          oldest = this.unacknowledged.pollFirst();
+          forget(oldest);
+        } while (oldest != batch);
+        long now = System.nanoTime();
+        this.controller.batchAcknowledged(now - batch.sent, now);
+        mayFlush = (null != this.cachedMessage);
+      }
+    }
+    if (mayFlush) {
+      // The window may have opened so give the owner a chance to flush what is waiting.
+      this.networkDoneTarget.run();
+    }
+  }
+
+  private void forget(SentBatch batch) {
+    if (null != batch.key) {
+      this.unacknowledgedByKey.remove(batch.key);
+    }
+    this.unacknowledgedElements -= batch.elements;
+  }
+
+  /**
+   * @return Batching and replication lag metrics for this target (empty in the fixed mode).
+   */
+  public synchronized Map<String, Long> getStatistics() {
+    if (null == this.controller) {
+      return Collections.emptyMap();
+    }
+    Map<String, Long> stats = new LinkedHashMap<>(this.controller.getStatistics());
+    stats.put("InFlight", (long) this.unacknowledged.size());
+    stats.put("InFlightElements", (long) this.unacknowledgedElements);
+    SentBatch oldest = this.unacknowledged.peekFirst();
+    stats.put("ReplicationLagMicros", (null != oldest) ? TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - oldest.sent) : 0L);
+    stats.put("Pending", (null != this.cachedMessage) ? (long) this.cachedMessage.getBatchSize() : 0L);
+    return stats;
+  }
+
+  private static class SentBatch {
+    private final Object key;
+    private final int elements;
+    private final long sent;
+
+    SentBatch(Object key, int elements, long sent) {
+      this.key = key;
+      this.elements = elements;
+      this.sent = sent;
+    }
+  }
+
 
   /**
    * The factory used by the GroupMessageBatchContext to start a new batch.
@@ -18,13 +18,13 @@
  */
 package com.tc.objectserver.handler;
 
+import com.tc.async.api.AbstractBatchEventHandler;
 import com.tc.async.api.AbstractEventHandler;
 import com.tc.async.api.ConfigurationContext;
 import com.tc.async.api.EventHandlerException;
 import com.tc.async.api.Sink;
 import com.tc.async.api.Stage;
 import com.tc.entity.ResendVoltronEntityMessage;
-import com.tc.entity.VoltronEntityAppliedResponse;
 import com.tc.entity.VoltronEntityMessage;
 import com.tc.entity.VoltronEntityMultiResponse;
 import com.tc.logging.TCLogger;
@@ -33,7 +33,6 @@ import com.tc.net.ClientID;
 import com.tc.net.NodeID;
 import com.tc.net.protocol.tcm.MessageChannel;
 import com.tc.net.protocol.tcm.TCMessage;
-import com.tc.net.protocol.tcm.TCMessageType;
 import com.tc.object.EntityDescriptor;
 import com.tc.object.EntityID;
 import com.tc.object.net.DSOChannelManager;
@@ -43,29 +42,44 @@ import com.tc.objectserver.api.EntityManager;
 import com.tc.objectserver.api.ManagedEntity;
 import com.tc.objectserver.api.ServerEntityAction;
 import com.tc.objectserver.core.api.ServerConfigurationContext;
+import com.tc.objectserver.entity.ClientEntityStateManager;
+import com.tc.objectserver.entity.LocalPipelineFlushMessage;
 import com.tc.objectserver.entity.MessagePayload;
+import com.tc.objectserver.entity.PassiveSyncThrottle;
 import com.tc.objectserver.api.Retiree;
 import com.tc.objectserver.entity.ReconnectListener;
+import com.tc.objectserver.entity.ReconnectReadiness;
 import com.tc.objectserver.entity.ReferenceMessage;
+import com.tc.objectserver.entity.RequestProcessor;
 import com.tc.objectserver.entity.ServerEntityRequestResponse;
 import com.tc.objectserver.persistence.EntityData;
 import com.tc.objectserver.persistence.EntityPersistor;
 import com.tc.objectserver.persistence.TransactionOrderPersistor;
+import com.tc.text.PrettyPrintable;
+import com.tc.text.PrettyPrinter;
 import com.tc.util.Assert;
 import com.tc.util.SparseList;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
-
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.Consumer;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
-import java.util.function.Predicate;
+import java.util.concurrent.TimeUnit;
 import org.terracotta.entity.EntityMessage;
 import org.terracotta.entity.MessageCodecException;
 import org.terracotta.exception.EntityException;
@@ -73,8 +87,10 @@ import org.terracotta.exception.EntityNotFoundException;
 import org.terracotta.exception.EntityUserException;
 
 
-public class ProcessTransactionHandler implements ReconnectListener {
+public class ProcessTransactionHandler implements ReconnectListener, PrettyPrintable {
   private static final TCLogger LOGGER = TCLogging.getLogger(ProcessTransactionHandler.class);
+  // any fixed key, combined with the entity it routes each entity's resend decoding to one request processor queue
+  private static final int RESEND_DECODE_KEY = 1;
   
   private final EntityPersistor entityPersistor;
   private final TransactionOrderPersistor transactionOrderPersistor;
@@ -88,51 +104,110 @@ public class ProcessTransactionHandler implements ReconnectListener {
   private SparseList<ResendVoltronEntityMessage> resendReplayList;
   private List<ResendVoltronEntityMessage> resendNewList;
   private boolean reconnecting = true;
+  // time and count of each phase of the last resend replay
+  private volatile Map<String, Long> resendStatistics = Collections.emptyMap();
   
-  private Sink<TCMessage> multiSend;
-  private ConcurrentHashMap<ClientID, TCMessage> invokeReturn = new ConcurrentHashMap<>();
-  private ConcurrentHashMap<TransactionID, Future<Void>> transactionOrderPersistenceFutures = new ConcurrentHashMap<>();
+  // Set for an incremental reconnect, where each entity resumes once the clients using it have reconnected rather
+  //  than when the whole reconnect completes.
+  private ClientEntityStateManager expectedReferences;
+  // guarded by this, taken from the expected references when first needed
+  private ReconnectReadiness readiness;
+  // what each client handed over when it reconnected, guarded by this until the voltron thread takes it
+  private List<ReconnectedClient> reconnectedClients = new ArrayList<>();
+  // resends in their global order, filled by the handshake of each client in an incremental reconnect
+  private TreeMap<Long, ResendVoltronEntityMessage> orderedResends = new TreeMap<>();
+  // owned by the voltron thread once created:  the work held back for each entity still waiting for clients
+  private Map<EntityID, DeferredEntity> deferredEntities;
+  private Set<ClientID> resumedClients;
+  private Map<String, Long> incrementalStatistics;
+  private long incrementalStart;
   
-  private void sendMultiResponse(VoltronEntityMultiResponse response) {
-    multiSend.addSingleThreaded(response);
-  }
+  private Sink<TCMessage> multiSend;
+  // resent invokes are decoded here, in parallel across entities, before they are scheduled in order
+  private Sink<Runnable> requestProcessor;
+  // the queue new requests wait in, its depth is reported to clients as backpressure
+  private Sink<VoltronEntityMessage> voltronQueue;
+  // told how long live invokes take so passive sync can back off when they slow down
+  private volatile PassiveSyncThrottle syncThrottle;
+  private final ClientResponseAggregator responses = new ClientResponseAggregator(this::safeGetChannel, 
+      message -> multiSend.addSingleThreaded(message), () -> (voltronQueue != null) ? voltronQueue.size() : -1);
   
   @Override
   public synchronized void reconnectComplete() {
     reconnecting = false;
+    if (this.expectedReferences != null) {
+      getReadiness().reconnectComplete();
+    }
     notify();
   }
   
   private final AbstractEventHandler<TCMessage> multiSender = new AbstractEventHandler<TCMessage>() {
     @Override
     public void handleEvent(TCMessage context) throws EventHandlerException {
-      NodeID destinationID = context.getDestinationNodeID();
-      invokeReturn.remove((ClientID)destinationID, context);
       if(context instanceof VoltronEntityMultiResponse) {
-        VoltronEntityMultiResponse voltronEntityMultiResponse = (com.tc.entity.VoltronEntityMultiResponse) context;
-        voltronEntityMultiResponse.stopAdding();
-        for (TransactionID transactionID : voltronEntityMultiResponse.getReceivedTransactions()) {
-          waitForTransactionOrderPersistenceFuture(transactionID);
-        }
-      } else if(context instanceof VoltronEntityAppliedResponse) {
-        waitForTransactionOrderPersistenceFuture(((VoltronEntityAppliedResponse)context).getTransactionID());
+//  the multi-response only carries the flush, the aggregator fills and sends it
+        responses.flush((VoltronEntityMultiResponse) context);
       } else {
         Assert.fail("Unexpected message type: " + context.getClass());
       }
-      boolean didSend = context.send();
-      if (!didSend) {
-        // It is possible for this send to fail.  Typically, it means that the client has disconnected.
-        LOGGER.warn("Failed to send message to: " + destinationID);
-      } else if (LOGGER.isDebugEnabled()) {
-        LOGGER.debug("sent " + context);
-      }
     }
   };
   public AbstractEventHandler<TCMessage> getMultiResponseSender() {
     return multiSender;
   }
+
+  public void setPassiveSyncThrottle(PassiveSyncThrottle syncThrottle) {
+    this.syncThrottle = syncThrottle;
+  }
+
+  /**
+   * Switches on incremental reconnect:  each client is let go as soon as it has reconnected and each entity resumes
+   * once every client which used it, as recorded while this server was a passive, is back.  Must be called before
+   * the server becomes active.
+   */
+  public void setIncrementalReconnect(ClientEntityStateManager expectedReferences) {
+    this.expectedReferences = expectedReferences;
+  }
+
+  /**
+   * @return For each client with responses in flight, how many acks were sent and how long they waited to go out.
+   */
+  public Map<ClientID, Map<String, Long>> getClientResponseStatistics() {
+    return responses.getStatistics();
+  }
+
+  /**
+   * @return How many messages each phase of the last failover resend replay handled and how long it took.
+   */
+  public Map<String, Long> getResendStatistics() {
+    return resendStatistics;
+  }
+
+  /**
+   * @return During an incremental reconnect, the entities which haven't resumed yet and the clients each waits for.
+   */
+  public Map<EntityID, Set<ClientID>> getWaitingEntities() {
+    ReconnectReadiness current;
+    synchronized (this) {
+      current = this.readiness;
+    }
+    return (current != null) ? current.getWaitingClients() : Collections.emptyMap();
+  }
+
+  @Override
+  public PrettyPrinter prettyPrint(PrettyPrinter out) {
+    out.print(getClass().getName()).flush();
+    out.indent().print("resends: ").print(resendStatistics).flush();
+    for (Map.Entry<EntityID, Set<ClientID>> entry : getWaitingEntities().entrySet()) {
+      out.indent().print("waiting ").print(entry.getKey()).print(": ").print(entry.getValue()).flush();
+    }
+    for (Map.Entry<ClientID, Map<String, Long>> entry : responses.getStatistics().entrySet()) {
+      out.indent().print(entry.getKey()).print(": ").print(entry.getValue()).flush();
+    }
+    return out;
+  }
   
-  private final AbstractEventHandler<VoltronEntityMessage> voltronHandler = new AbstractEventHandler<VoltronEntityMessage>() {
+  private final AbstractEventHandler<VoltronEntityMessage> voltronHandler = new AbstractBatchEventHandler<VoltronEntityMessage>() {
     @Override
     public void handleEvent(VoltronEntityMessage message) throws EventHandlerException {
 //  resends are only processed the first time an event is handled.  
@@ -140,18 +215,19 @@ public class ProcessTransactionHandler implements ReconnectListener {
 //  see ManagedEntityImpl.scheduleInOrder()
 //  the call always happens and immediately returns if the resends have already been processed
       processAllResends(message);
-      ClientID sourceNodeID = message.getSource();
-      EntityDescriptor descriptor = message.getEntityDescriptor();
-      ServerEntityAction action = decodeMessageType(message.getVoltronType());
-      EntityMessage entityMessage = message.getEntityMessage();
-      byte[] extendedData = message.getExtendedData();
-
-      TransactionID transactionID = message.getTransactionID();
-      boolean doesRequireReplication = message.doesRequireReplication();
-      TransactionID oldestTransactionOnClient = message.getOldestTransactionOnClient();
-      boolean requestedReceived = message.doesRequestReceived();
+      addVoltronMessage(message);
+    }
 
-      ProcessTransactionHandler.this.addMessage(sourceNodeID, descriptor, action, MessagePayload.commonMessagePayloadBusy(extendedData, entityMessage, doesRequireReplication), transactionID, oldestTransactionOnClient, requestedReceived);
+    @Override
+    public void handleEvents(Collection<VoltronEntityMessage> messages) throws EventHandlerException {
+//  the first message of the batch triggers the resends, the rest of the batch is ordered after them
+      Iterator<VoltronEntityMessage> it = messages.iterator();
+      if (it.hasNext()) {
+        processAllResends(it.next());
+      }
+      for (VoltronEntityMessage message : messages) {
+        addVoltronMessage(message);
+      }
     }
 
     @Override
@@ -164,6 +240,8 @@ public class ProcessTransactionHandler implements ReconnectListener {
       
       Stage<TCMessage> mss = server.getStage(ServerConfigurationContext.RESPOND_TO_REQUEST_STAGE, TCMessage.class);
       multiSend = mss.getSink();
+      voltronQueue = server.getStage(ServerConfigurationContext.VOLTRON_MESSAGE_STAGE, VoltronEntityMessage.class).getSink();
+      requestProcessor = server.getStage(ServerConfigurationContext.REQUEST_PROCESSOR_STAGE, Runnable.class).getSink();
       
 //  go right to active state.  this only gets initialized once ACTIVE-COORDINATOR is entered
       entityManager.enterActiveState();
@@ -175,6 +253,30 @@ public class ProcessTransactionHandler implements ReconnectListener {
     return this.voltronHandler;
   }
 
+  private void addVoltronMessage(VoltronEntityMessage message) {
+    if (this.deferredEntities != null && !this.deferredEntities.isEmpty()) {
+      DeferredEntity deferred = this.deferredEntities.get(entityOf(message.getEntityDescriptor()));
+      if (deferred != null) {
+        // the entity is still waiting for clients, this runs after their resends
+        deferred.live.add(message);
+        this.incrementalStatistics.merge("DeferredLive", 1L, Long::sum);
+        return;
+      }
+    }
+    ClientID sourceNodeID = message.getSource();
+    EntityDescriptor descriptor = message.getEntityDescriptor();
+    ServerEntityAction action = decodeMessageType(message.getVoltronType());
+    EntityMessage entityMessage = message.getEntityMessage();
+    byte[] extendedData = message.getExtendedData();
+
+    TransactionID transactionID = message.getTransactionID();
+    boolean doesRequireReplication = message.doesRequireReplication();
+    TransactionID oldestTransactionOnClient = message.getOldestTransactionOnClient();
+    boolean requestedReceived = message.doesRequestReceived();
+
+    addMessage(sourceNodeID, descriptor, action, MessagePayload.commonMessagePayloadBusy(extendedData, entityMessage, doesRequireReplication), transactionID, oldestTransactionOnClient, requestedReceived);
+  }
+
   public ProcessTransactionHandler(EntityPersistor entityPersistor, TransactionOrderPersistor transactionOrderPersistor, DSOChannelManager channelManager, EntityManager entityManager, Runnable stateManagerCleanup) {
     this.entityPersistor = entityPersistor;
     this.transactionOrderPersistor = transactionOrderPersistor;
@@ -198,33 +300,14 @@ public class ProcessTransactionHandler implements ReconnectListener {
     return entityManager.snapshot(runFirst);
   }
   
-  private void addSequentially(ClientID target, Predicate<VoltronEntityMultiResponse> adder) {
-    boolean handled = false;
-    while (!handled) {
-      TCMessage old = invokeReturn.get(target);
-      if (old instanceof VoltronEntityMultiResponse) {
-        handled = adder.test((VoltronEntityMultiResponse)old);
-      }
-      if (!handled) {
-        Optional<MessageChannel> channel = safeGetChannel(target);
-        if (channel.isPresent()) {
-          VoltronEntityMultiResponse vmr = (VoltronEntityMultiResponse)channel.get().createMessage(TCMessageType.VOLTRON_ENTITY_MULTI_RESPONSE);
-          old = invokeReturn.putIfAbsent(target, vmr);
-          if (old instanceof VoltronEntityMultiResponse) {
-            handled = adder.test((VoltronEntityMultiResponse)old);
-          } else {
-            handled = adder.test(vmr);
-            Assert.assertTrue(handled);
-            sendMultiResponse(vmr);
-          }
-        } else {
-          handled = true;
-//  no more client.  ignore
-        }
-      }
+  private void recordLiveLatency(ClientID source, long arrived) {
+    PassiveSyncThrottle throttle = syncThrottle;
+    // synthetic invokes are not client traffic
+    if (throttle != null && !source.isNull()) {
+      throttle.recordLiveLatency(System.nanoTime() - arrived);
     }
   }
-  
+
   private static void retireMessagesForEntity(ManagedEntity entity, EntityMessage message) {
     List<Retiree> readyToRetire = entity.getRetirementManager().retireForCompletion(message);
     for (Retiree toRetire : readyToRetire) {
@@ -256,6 +339,8 @@ public class ProcessTransactionHandler implements ReconnectListener {
         this.transactionOrderPersistor.removeTrackingForClient(sourceNodeID);
         // And the entity journal persistence.
         this.entityPersistor.removeTrackingForClient(sourceNodeID);
+        // And anything still waiting to be sent to it.
+        this.responses.removeClient(sourceNodeID);
       }
     }
     if (ServerEntityAction.CREATE_ENTITY == action) {
@@ -302,20 +387,20 @@ public class ProcessTransactionHandler implements ReconnectListener {
         // Note that it is possible to trigger an exception when decoding a message in addInvokeRequest.
         if (ServerEntityAction.INVOKE_ACTION == action) {
           ManagedEntity locked = entity;
+          Future<Void> persisted = transactionOrderPersistenceFuture;
+          long arrived = System.nanoTime();
           try {
-            if(transactionOrderPersistenceFuture != null) {
-              transactionOrderPersistenceFutures.put(transactionID, transactionOrderPersistenceFuture);
-            }
             EntityMessage message = entityMessage.decodeMessage(raw->locked.getCodec().decodeMessage(raw));
             
-            locked.addRequestMessage(serverEntityRequest, entityMessage, ()->addSequentially(sourceNodeID, addto->addto.addReceived(transactionID)), (result)-> {
-              addSequentially(sourceNodeID, addTo->addTo.addResult(transactionID, result));
+            locked.addRequestMessage(serverEntityRequest, entityMessage, ()->responses.received(sourceNodeID, transactionID, persisted), (result)-> {
+              recordLiveLatency(sourceNodeID, arrived);
+              responses.result(sourceNodeID, transactionID, result);
               RetirementManager retirementManager = locked.getRetirementManager();
               
               retirementManager.updateWithRetiree(message, new Retiree() {
                 @Override
                 public void retired() {
-                  addSequentially(sourceNodeID, addTo->addTo.addRetired(serverEntityRequest.getTransaction()));
+                  responses.retired(sourceNodeID, serverEntityRequest.getTransaction());
                 }
                 @Override
                 public TransactionID getTransaction() {
@@ -325,17 +410,13 @@ public class ProcessTransactionHandler implements ReconnectListener {
               
               retireMessagesForEntity(locked, message);
             }, (fail)-> {
-              safeGetChannel(sourceNodeID).ifPresent(channel -> {
-                VoltronEntityAppliedResponse failMessage = (VoltronEntityAppliedResponse)channel.createMessage(TCMessageType.VOLTRON_ENTITY_COMPLETED_RESPONSE);
-                failMessage.setFailure(transactionID, fail, false);
-                invokeReturn.put(sourceNodeID, failMessage);
-                multiSend.addSingleThreaded(failMessage);
-              });
+              recordLiveLatency(sourceNodeID, arrived);
+              responses.failure(sourceNodeID, transactionID, fail);
               
               locked.getRetirementManager().updateWithRetiree(message, new Retiree() {
                 @Override
                 public void retired() {
-                  addSequentially(sourceNodeID, addTo->addTo.addRetired(serverEntityRequest.getTransaction()));
+                  responses.retired(sourceNodeID, serverEntityRequest.getTransaction());
                 }
 
                 @Override
@@ -396,19 +477,6 @@ public class ProcessTransactionHandler implements ReconnectListener {
     }
   }
 
-  private void waitForTransactionOrderPersistenceFuture(TransactionID transactionID) {
-    Future<Void> future = transactionOrderPersistenceFutures.get(transactionID);
-    if(future != null) {
-      try {
-        future.get();
-      } catch (InterruptedException | ExecutionException e) {
-        throw new RuntimeException(e);
-      } finally {
-        transactionOrderPersistenceFutures.remove(transactionID);
-      }
-    }
-  }
-  
   public void loadExistingEntities() {
     // issue-439: We need to sort these entities, ascending by consumerID.
     List<EntityData.Value> sortingList = new ArrayList<EntityData.Value>(this.entityPersistor.loadEntityData());
@@ -445,6 +513,7 @@ public class ProcessTransactionHandler implements ReconnectListener {
     boolean cached = false;
     byte[] result = null;
     int index = -1;
+    long order = -1;
     try {
       switch (resentMessage.getVoltronType()) {
         case CREATE_ENTITY:
@@ -462,7 +531,12 @@ public class ProcessTransactionHandler implements ReconnectListener {
         case FETCH_ENTITY:
         case RELEASE_ENTITY:
         default:
-          index = this.transactionOrderPersistor.getIndexToReplay(resentMessage.getSource(), resentMessage.getTransactionID());
+          if (this.expectedReferences != null) {
+            // other clients keep running while this one reconnects so only the global sequence stays comparable
+            order = this.transactionOrderPersistor.getGlobalSequenceToReplay(resentMessage.getSource(), resentMessage.getTransactionID());
+          } else {
+            index = this.transactionOrderPersistor.getIndexToReplay(resentMessage.getSource(), resentMessage.getTransactionID());
+          }
           break;
       }
       if (cached) {
@@ -474,6 +548,8 @@ public class ProcessTransactionHandler implements ReconnectListener {
           response.complete();
         }
         response.retired();
+      } else if (order >= 0) {
+        this.orderedResends.put(order, resentMessage);
       } else if (index >= 0) {
         this.resendReplayList.insert(index, resentMessage);     
       } else {
@@ -487,22 +563,70 @@ public class ProcessTransactionHandler implements ReconnectListener {
     }
   }
   
+  /**
+   * Called by the handshake once a reconnecting client has handed over all of its references and resends.
+   * 
+   * @return true if the client can be acknowledged now, rather than when the reconnect completes
+   */
+  public boolean clientReconnected(ClientID client) {
+    if (this.expectedReferences == null) {
+      return false;
+    }
+    synchronized (this) {
+      List<EntityID> ready = getReadiness().clientReconnected(client);
+      this.reconnectedClients.add(new ReconnectedClient(client, this.references, this.orderedResends, this.resendNewList, ready));
+      this.references = new LinkedList<>();
+      this.orderedResends = new TreeMap<>();
+      this.resendNewList = new LinkedList<>();
+    }
+    // the order of its resends is captured so, as when all resends replay, what was recorded for it can go
+    this.transactionOrderPersistor.removeTrackingForClient(client);
+    if (this.voltronQueue != null) {
+      this.voltronQueue.addSingleThreaded(new LocalPipelineFlushMessage(EntityDescriptor.NULL_ID, false));
+    }
+    return true;
+  }
+
+  // must hold this
+  private ReconnectReadiness getReadiness() {
+    if (this.readiness == null) {
+      this.readiness = this.expectedReferences.takeExpectedReferences();
+      // everything waiting now is held back from the start, entities don't stop waiting before the voltron thread
+      //  has seen the resends of the clients they waited for
+      Map<EntityID, DeferredEntity> deferred = new HashMap<>();
+      for (EntityID eid : this.readiness.getWaitingEntities()) {
+        deferred.put(eid, new DeferredEntity());
+      }
+      this.deferredEntities = deferred;
+      this.resumedClients = new HashSet<>();
+      this.incrementalStatistics = new LinkedHashMap<>();
+    }
+    return this.readiness;
+  }
+
   private void processAllResends(VoltronEntityMessage trigger) {
  //   TODO:  investigate the need to fold FETCH and RELEASE resends on top of each other
     if (this.references == null && this.resendReplayList == null && this.resendNewList == null) {
       return;
-    } else {
-      LOGGER.debug("RESENDS:START");
-      synchronized (this) {
-        while (reconnecting) {
-          try {
-            this.wait();
-          } catch (InterruptedException ie) {
-            throw new RuntimeException(ie);
-          }
+    }
+    if (this.expectedReferences != null) {
+      processReconnectedClients();
+      return;
+    }
+    Map<String, Long> stats = new LinkedHashMap<>();
+    long start = System.nanoTime();
+    LOGGER.debug("RESENDS:START");
+    synchronized (this) {
+      while (reconnecting) {
+        try {
+          this.wait();
+        } catch (InterruptedException ie) {
+          throw new RuntimeException(ie);
         }
       }
     }
+    long phase = System.nanoTime();
+    stats.put("ReconnectWaitMillis", TimeUnit.NANOSECONDS.toMillis(phase - start));
 
     this.stateManagerCleanup.run();
 
@@ -510,35 +634,290 @@ public class ProcessTransactionHandler implements ReconnectListener {
     this.transactionOrderPersistor.clearAllRecords();
     
     for (ReferenceMessage msg : this.references) {
-      LOGGER.debug("RESENDS:" + msg);
-      try {
-        EntityID eid = this.entityManager.getEntity(msg.getEntityDescriptor()).get().getID();
-        Assert.assertEquals(eid, msg.getEntityDescriptor().getEntityID());
-      } catch (EntityException ee) {
-        // throwing here is big trouble, means the reference is gone but the client thinks it's still there
-        throw new RuntimeException(ee);
-      }
-      executeResend(msg);
+      replayReference(msg);
     }
+    stats.put("References", (long) this.references.size());
+    phase = recordPhase(stats, "References", phase);
     this.references = null;
+
+    // Decoding is the costly part of scheduling an invoke so do it up front, in parallel across entities.  Scheduling
+    //  itself stays on this thread, in the order recorded by the transaction order persistor, since that is also the
+    //  order the passives see.
+    Map<VoltronEntityMessage, MessagePayload> prepared = new IdentityHashMap<>();
+    stats.put("DecodedEntities", (long) decodeResends(prepared));
+    stats.put("Decoded", (long) prepared.size());
+    phase = recordPhase(stats, "Decode", phase);
     
     // Replay all the already-ordered messages.
+    long count = 0;
     for (ResendVoltronEntityMessage message : this.resendReplayList) {
-      LOGGER.debug("RESENDS:" + message);
-      executeResend(message);
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("RESENDS:" + message);
+      }
+      executeResend(message, preparedOrNew(prepared, message));
+      count += 1;
     }
+    stats.put("Replayed", count);
+    phase = recordPhase(stats, "Replay", phase);
     this.resendReplayList = null;
     
     // Replay all the new messages found during resends.
     for (ResendVoltronEntityMessage message : this.resendNewList) {
-      LOGGER.debug("RESENDS:" + message);
-      executeResend(message);
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("RESENDS:" + message);
+      }
+      executeResend(message, preparedOrNew(prepared, message));
     }
+    stats.put("New", (long) this.resendNewList.size());
+    phase = recordPhase(stats, "New", phase);
 //  remove tracking for any resent create journal entries
     entityPersistor.removeTrackingForClient(ClientID.NULL_ID);
     LOGGER.debug("RESENDS:END");
     this.resendNewList = null;
-    
+    stats.put("TotalMillis", TimeUnit.NANOSECONDS.toMillis(phase - start));
+    this.resendStatistics = Collections.unmodifiableMap(stats);
+    LOGGER.info("Resends replayed " + stats);
+  }
+
+  /**
+   * The incremental form of the resend replay.  Each reconnected client's references and resends are replayed as soon
+   * as they are handed over, except for those of entities still waiting for other clients.  Those are held back, with
+   * any new requests for the entity, until the entity is ready and then replayed in the global order.  The replay
+   * finishes once the reconnect completes.
+   */
+  private void processReconnectedClients() {
+    List<ReconnectedClient> arrived;
+    boolean complete;
+    synchronized (this) {
+      getReadiness();
+      arrived = this.reconnectedClients;
+      this.reconnectedClients = new ArrayList<>();
+      complete = !this.reconnecting;
+    }
+    if (this.incrementalStart == 0) {
+      this.incrementalStart = System.nanoTime();
+      this.stateManagerCleanup.run();
+      LOGGER.debug("RESENDS:START");
+    }
+    Map<String, Long> stats = this.incrementalStatistics;
+    for (ReconnectedClient client : arrived) {
+      for (ReferenceMessage msg : client.references) {
+        DeferredEntity deferred = this.deferredEntities.get(msg.getEntityDescriptor().getEntityID());
+        if (deferred != null) {
+          deferred.references.add(msg);
+        } else {
+          replayReference(msg);
+        }
+      }
+      for (Map.Entry<Long, ResendVoltronEntityMessage> entry : client.ordered.entrySet()) {
+        DeferredEntity deferred = deferredFor(entry.getValue());
+        if (deferred != null) {
+          deferred.ordered.put(entry.getKey(), entry.getValue());
+        } else {
+          replayResend(entry.getValue());
+        }
+      }
+      for (ResendVoltronEntityMessage message : client.unordered) {
+        DeferredEntity deferred = deferredFor(message);
+        if (deferred != null) {
+          deferred.unordered.add(message);
+        } else {
+          replayResend(message);
+        }
+      }
+      for (EntityID eid : client.ready) {
+        DeferredEntity deferred = this.deferredEntities.remove(eid);
+        if (deferred != null) {
+          replayDeferred(deferred);
+        }
+      }
+      this.resumedClients.add(client.client);
+      stats.put("Clients", (long) this.resumedClients.size());
+      stats.merge("References", (long) client.references.size(), Long::sum);
+      stats.merge("Replayed", (long) client.ordered.size(), Long::sum);
+      stats.merge("New", (long) client.unordered.size(), Long::sum);
+      stats.merge("ReadyEarly", (long) client.ready.size(), Long::sum);
+    }
+    if (complete) {
+      // whatever still waits was waiting for clients which didn't make it back in time
+      Map<EntityID, DeferredEntity> late = this.deferredEntities;
+      this.deferredEntities = null;
+      for (DeferredEntity deferred : late.values()) {
+        replayDeferred(deferred);
+      }
+      stats.put("ReadyAtWindowClose", (long) late.size());
+      // those clients won't be resending, drop what was recorded for them as a full replay would have
+      this.transactionOrderPersistor.retainTrackingFor(this.resumedClients);
+      entityPersistor.removeTrackingForClient(ClientID.NULL_ID);
+      this.references = null;
+      this.resendReplayList = null;
+      this.resendNewList = null;
+      stats.put("TotalMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.incrementalStart));
+      LOGGER.debug("RESENDS:END");
+      LOGGER.info("Incremental reconnect complete " + stats);
+    }
+    if (complete || !arrived.isEmpty()) {
+      this.resendStatistics = Collections.unmodifiableMap(new LinkedHashMap<>(stats));
+    }
+  }
+
+  /**
+   * @return where to hold the resend back, null to replay it now.  A lifecycle resend for an entity the readiness
+   *  doesn't expect starts holding back its entity, with everything after it, until the reconnect completes.
+   */
+  private DeferredEntity deferredFor(ResendVoltronEntityMessage message) {
+    EntityID eid = entityOf(message.getEntityDescriptor());
+    DeferredEntity deferred = this.deferredEntities.get(eid);
+    if (deferred == null && eid != null && isLifecycle(message.getVoltronType()) && this.readiness.holdsLifecycleResends(eid)) {
+      deferred = new DeferredEntity();
+      this.deferredEntities.put(eid, deferred);
+      this.incrementalStatistics.merge("HeldForWindow", 1L, Long::sum);
+    }
+    return deferred;
+  }
+
+  private static boolean isLifecycle(VoltronEntityMessage.Type type) {
+    switch (type) {
+      case CREATE_ENTITY:
+      case DESTROY_ENTITY:
+      case RECONFIGURE_ENTITY:
+      case FETCH_ENTITY:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private void replayDeferred(DeferredEntity deferred) {
+    for (ReferenceMessage msg : deferred.references) {
+      replayReference(msg);
+    }
+    for (ResendVoltronEntityMessage message : deferred.ordered.values()) {
+      replayResend(message);
+    }
+    for (ResendVoltronEntityMessage message : deferred.unordered) {
+      replayResend(message);
+    }
+    for (VoltronEntityMessage message : deferred.live) {
+      addVoltronMessage(message);
+    }
+  }
+
+  private void replayReference(ReferenceMessage msg) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RESENDS:" + msg);
+    }
+    try {
+      EntityID eid = this.entityManager.getEntity(msg.getEntityDescriptor()).get().getID();
+      Assert.assertEquals(eid, msg.getEntityDescriptor().getEntityID());
+    } catch (EntityException ee) {
+      // throwing here is big trouble, means the reference is gone but the client thinks it's still there
+      throw new RuntimeException(ee);
+    }
+    executeResend(msg, prepareResend(msg));
+  }
+
+  private void replayResend(ResendVoltronEntityMessage message) {
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug("RESENDS:" + message);
+    }
+    executeResend(message, prepareResend(message));
+  }
+
+  private EntityID entityOf(EntityDescriptor descriptor) {
+    if (!descriptor.isIndexed()) {
+      return descriptor.getEntityID();
+    }
+    try {
+      Optional<ManagedEntity> entity = this.entityManager.getEntity(descriptor);
+      return entity.isPresent() ? entity.get().getID() : null;
+    } catch (EntityException ee) {
+      return null;
+    }
+  }
+
+  private static long recordPhase(Map<String, Long> stats, String name, long phaseStart) {
+    long now = System.nanoTime();
+    stats.put(name + "Millis", TimeUnit.NANOSECONDS.toMillis(now - phaseStart));
+    return now;
+  }
+
+  /**
+   * Decodes the payloads of the resent invokes on the request processor stage, all of an entity's on the same queue,
+   * and waits for them.  Anything which can't be decoded here (the entity doesn't exist until an earlier resend
+   * creates it, say) is left out and decoded as it is scheduled, like any other message.  So are all the invokes of an
+   * entity with a resent create, destroy or reconfigure:  the payload keeps the message it decodes, and the codec it
+   * would be decoded with now may not be the one of the entity the invoke reaches once the lifecycle resend ran.
+   * 
+   * @return the number of entities whose resends were decoded
+   */
+  private int decodeResends(Map<VoltronEntityMessage, MessagePayload> prepared) {
+    Sink<Runnable> target = this.requestProcessor;
+    if (target == null) {
+      return 0;
+    }
+    List<Iterable<ResendVoltronEntityMessage>> lists = Arrays.asList(this.resendReplayList, this.resendNewList);
+    Set<EntityID> lifecycle = new HashSet<>();
+    for (Iterable<ResendVoltronEntityMessage> list : lists) {
+      for (ResendVoltronEntityMessage message : list) {
+        switch (message.getVoltronType()) {
+          case CREATE_ENTITY:
+          case DESTROY_ENTITY:
+          case RECONFIGURE_ENTITY:
+            EntityID eid = entityOf(message.getEntityDescriptor());
+            if (eid != null) {
+              lifecycle.add(eid);
+            }
+            break;
+          default:
+            break;
+        }
+      }
+    }
+    Map<EntityID, List<MessagePayload>> byEntity = new HashMap<>();
+    Map<EntityID, ManagedEntity> entities = new HashMap<>();
+    for (Iterable<ResendVoltronEntityMessage> list : lists) {
+      for (ResendVoltronEntityMessage message : list) {
+        if (message.getVoltronType() != VoltronEntityMessage.Type.INVOKE_ACTION) {
+          continue;
+        }
+        try {
+          Optional<ManagedEntity> entity = entityManager.getEntity(message.getEntityDescriptor());
+          if (entity.isPresent() && !lifecycle.contains(entity.get().getID())) {
+            MessagePayload payload = prepareResend(message);
+            EntityID eid = entity.get().getID();
+            entities.putIfAbsent(eid, entity.get());
+            byEntity.computeIfAbsent(eid, k -> new ArrayList<>()).add(payload);
+            prepared.put(message, payload);
+          }
+        } catch (EntityException ee) {
+          // scheduling reports this
+        }
+      }
+    }
+    CountDownLatch decoded = new CountDownLatch(byEntity.size());
+    for (Map.Entry<EntityID, List<MessagePayload>> entry : byEntity.entrySet()) {
+      ManagedEntity entity = entities.get(entry.getKey());
+      target.addMultiThreaded(new RequestProcessor.EntityRequest(entry.getKey(), () -> {
+        try {
+          for (MessagePayload payload : entry.getValue()) {
+            try {
+              payload.decodeMessage(raw -> entity.getCodec().decodeMessage(raw));
+            } catch (MessageCodecException | RuntimeException e) {
+              // left undecoded so scheduling fails it the same as a live invoke
+            }
+          }
+        } finally {
+          decoded.countDown();
+        }
+      }, RESEND_DECODE_KEY));
+    }
+    try {
+      decoded.await();
+    } catch (InterruptedException ie) {
+      throw new RuntimeException(ie);
+    }
+    return byEntity.size();
   }
 
   private Optional<MessageChannel> safeGetChannel(NodeID id) {
@@ -549,20 +928,26 @@ public class ProcessTransactionHandler implements ReconnectListener {
     }
   }
 
-  private void executeResend(VoltronEntityMessage message) {
-    ClientID sourceNodeID = message.getSource();
-    EntityDescriptor descriptor = message.getEntityDescriptor();
-    ServerEntityAction action = decodeMessageType(message.getVoltronType());
+  private static MessagePayload preparedOrNew(Map<VoltronEntityMessage, MessagePayload> prepared, VoltronEntityMessage message) {
+    MessagePayload payload = prepared.get(message);
+    return (payload != null) ? payload : prepareResend(message);
+  }
+
+  private static MessagePayload prepareResend(VoltronEntityMessage message) {
     // Note that we currently don't expect messages which already have an EntityMessage instance to appear here.
     EntityMessage entityMessage = message.getEntityMessage();
     Assert.assertNull(entityMessage);
-    byte[] extendedData = message.getExtendedData();
+    MessagePayload payload = MessagePayload.commonMessagePayloadNotBusy(message.getExtendedData(), entityMessage, message.doesRequireReplication());
+    payload.setDebugId(message.toString());
+    return payload;
+  }
 
+  private void executeResend(VoltronEntityMessage message, MessagePayload payload) {
+    ClientID sourceNodeID = message.getSource();
+    EntityDescriptor descriptor = message.getEntityDescriptor();
+    ServerEntityAction action = decodeMessageType(message.getVoltronType());
     TransactionID transactionID = message.getTransactionID();
-    boolean doesRequireReplication = message.doesRequireReplication();
     TransactionID oldestTransactionOnClient = message.getOldestTransactionOnClient();
-    MessagePayload payload = MessagePayload.commonMessagePayloadNotBusy(extendedData, entityMessage, doesRequireReplication);
-    payload.setDebugId(message.toString());
     
     ProcessTransactionHandler.this.addMessage(sourceNodeID, descriptor, action, payload, transactionID, oldestTransactionOnClient, false);
   }
@@ -602,4 +987,33 @@ public class ProcessTransactionHandler implements ReconnectListener {
     }
     return action;
   }
+
+  /**
+   * The references and resends one client handed over as it reconnected and the entities that made ready.
+   */
+  private static class ReconnectedClient {
+    private final ClientID client;
+    private final List<ReferenceMessage> references;
+    private final TreeMap<Long, ResendVoltronEntityMessage> ordered;
+    private final List<ResendVoltronEntityMessage> unordered;
+    private final List<EntityID> ready;
+
+    ReconnectedClient(ClientID client, List<ReferenceMessage> references, TreeMap<Long, ResendVoltronEntityMessage> ordered, List<ResendVoltronEntityMessage> unordered, List<EntityID> ready) {
+      this.client = client;
+      this.references = references;
+      this.ordered = ordered;
+      this.unordered = unordered;
+      this.ready = ready;
+    }
+  }
+
+  /**
+   * Everything held back for an entity which is waiting for clients, in the order it is replayed.
+   */
+  private static class DeferredEntity {
+    private final List<ReferenceMessage> references = new ArrayList<>();
+    private final TreeMap<Long, ResendVoltronEntityMessage> ordered = new TreeMap<>();
+    private final List<ResendVoltronEntityMessage> unordered = new ArrayList<>();
+    private final List<VoltronEntityMessage> live = new ArrayList<>();
+  }
 }
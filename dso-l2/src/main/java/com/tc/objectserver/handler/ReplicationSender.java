@@ -19,6 +19,7 @@
 package com.tc.objectserver.handler;
 
 import com.tc.async.api.AbstractEventHandler;
+import com.tc.async.api.BatchEventHandler;
 import com.tc.async.api.ConfigurationContext;
 import com.tc.async.api.EventHandlerException;
 import com.tc.async.api.Sink;
@@ -34,19 +35,33 @@ import com.tc.object.EntityID;
 import com.tc.object.FetchID;
 import com.tc.objectserver.entity.MessagePayload;
 import com.tc.objectserver.handler.GroupMessageBatchContext.IBatchableMessageFactory;
+import com.tc.properties.TCProperties;
 import com.tc.properties.TCPropertiesImpl;
+import com.tc.text.PrettyPrintable;
+import com.tc.text.PrettyPrinter;
 import com.tc.util.Assert;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import org.terracotta.entity.ConcurrencyStrategy;
 
 
-public class ReplicationSender extends AbstractEventHandler<NodeID> {
+public class ReplicationSender extends AbstractEventHandler<NodeID> implements BatchEventHandler<NodeID>, PrettyPrintable {
   private static final int DEFAULT_BATCH_LIMIT = 64;
   private static final int DEFAULT_INFLIGHT_MESSAGES = 1;
+  private static final boolean DEFAULT_ADAPTIVE = true;
+  private static final int DEFAULT_MIN_INFLIGHT_MESSAGES = 2;
+  private static final int DEFAULT_MAX_INFLIGHT_MESSAGES = 32;
+  private static final long DEFAULT_BATCH_BYTES = 1024 * 1024;
+  private static final long DEFAULT_LATENCY_FLOOR_MICROS = 1000;
+  // rough per activity framing overhead (ids, type, entity and client identifiers) on top of its payload
+  private static final int ACTIVITY_OVERHEAD_BYTES = 128;
   
   //  this is all single threaded.  If there is any attempt to make this multi-threaded,
   //  control structures must be fixed
@@ -56,7 +71,8 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
   private static final TCLogger PLOGGER = TCLogging.getLogger(MessagePayload.class);
   private static final boolean debugLogging = logger.isDebugEnabled();
   private static final boolean debugMessaging = PLOGGER.isDebugEnabled();
-  private final Map<NodeID, GroupMessageBatchContext<ReplicationMessage, SyncReplicationActivity>> batchContexts = new HashMap<>();
+  // acks for these contexts arrive on the replication ack stage
+  private final Map<NodeID, GroupMessageBatchContext<ReplicationMessage, SyncReplicationActivity>> batchContexts = new ConcurrentHashMap<>();
   private Sink<NodeID> selfSink;
 
   public ReplicationSender(GroupManager<AbstractGroupMessage> group) {
@@ -120,6 +136,26 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
     return didSend;
   }
 
+  /**
+   * Called, on the ack stage, for every ack a passive sends so the batch context can retire the batches it covers and
+   *  adjust its window.
+   */
+  public void acknowledged(NodeID passive, SyncReplicationActivity.ActivityID activityID) {
+    GroupMessageBatchContext<ReplicationMessage, SyncReplicationActivity> context = this.batchContexts.get(passive);
+    if (null != context) {
+      context.acknowledged(activityID);
+    }
+  }
+
+  @Override
+  public void handleEvents(Collection<NodeID> nodesToFlush) throws EventHandlerException {
+    // every batched activity queues a flush request for its node so a drained batch is mostly duplicates, one flush
+    //  per node sends everything batched so far
+    for (NodeID nodeToFlush : new LinkedHashSet<>(nodesToFlush)) {
+      handleEvent(nodeToFlush);
+    }
+  }
+
   @Override
   public void handleEvent(NodeID nodeToFlush) throws EventHandlerException {
     try {
@@ -163,9 +199,10 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
     SyncState state = new SyncState();
     filtering.put(nodeid, state);
     // Find out how many messages we should keep in-flight and our maximum batch size.
-    int maximumBatchSize = TCPropertiesImpl.getProperties().getInt("active-passive.batchsize", DEFAULT_BATCH_LIMIT);
-    int idealMessagesInFlight = TCPropertiesImpl.getProperties().getInt("active-passive.inflight", DEFAULT_INFLIGHT_MESSAGES);
-    logger.info("Created batch context for passive " + nodeid + " with max batch size " + maximumBatchSize + " and ideal messages in flight " + idealMessagesInFlight);
+    TCProperties props = TCPropertiesImpl.getProperties();
+    int maximumBatchSize = props.getInt("active-passive.batchsize", DEFAULT_BATCH_LIMIT);
+    int idealMessagesInFlight = props.getInt("active-passive.inflight", DEFAULT_INFLIGHT_MESSAGES);
+    boolean adaptive = props.getBoolean("active-passive.adaptive", DEFAULT_ADAPTIVE);
     // Create the runnable which will be called, on the network thread, to notify us when a message has been sent.  In
     //  those cases, we want to incur a new flush operation into our internal thread.
     Runnable networkDoneTarget = new Runnable() {
@@ -183,7 +220,24 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
         return message;
       }
     };
-    this.batchContexts.put(nodeid, new GroupMessageBatchContext<>(factory, this.group, nodeid, maximumBatchSize, idealMessagesInFlight, networkDoneTarget));
+    if (adaptive) {
+      int minInFlight = props.getInt("active-passive.adaptive.mininflight", DEFAULT_MIN_INFLIGHT_MESSAGES);
+      int maxInFlight = props.getInt("active-passive.adaptive.maxinflight", DEFAULT_MAX_INFLIGHT_MESSAGES);
+      long batchBytes = props.getLong("active-passive.adaptive.batchbytes", DEFAULT_BATCH_BYTES);
+      long latencyFloor = props.getLong("active-passive.adaptive.latencyfloor.micros", DEFAULT_LATENCY_FLOOR_MICROS);
+      logger.info("Created adaptive batch context for passive " + nodeid + " with max batch size " + maximumBatchSize + ", max batch bytes " + batchBytes
+          + " and messages in flight " + minInFlight + "-" + maxInFlight);
+      AdaptiveBatchController controller = new AdaptiveBatchController(minInFlight, maxInFlight, Math.max(idealMessagesInFlight, minInFlight), maximumBatchSize, batchBytes, latencyFloor, TimeUnit.MICROSECONDS);
+      this.batchContexts.put(nodeid, new GroupMessageBatchContext<>(factory, this.group, nodeid, controller, SyncReplicationActivity::getActivityID, ReplicationSender::estimateSize, networkDoneTarget));
+    } else {
+      logger.info("Created batch context for passive " + nodeid + " with max batch size " + maximumBatchSize + " and ideal messages in flight " + idealMessagesInFlight);
+      this.batchContexts.put(nodeid, new GroupMessageBatchContext<>(factory, this.group, nodeid, maximumBatchSize, idealMessagesInFlight, networkDoneTarget));
+    }
+  }
+
+  private static int estimateSize(SyncReplicationActivity activity) {
+    byte[] payload = activity.getExtendedData();
+    return ACTIVITY_OVERHEAD_BYTES + ((null != payload) ? payload.length : 0);
   }
 
   private SyncState getSyncState(NodeID nodeid, SyncReplicationActivity activity) {
@@ -214,6 +268,15 @@ public class ReplicationSender extends AbstractEventHandler<NodeID> {
   protected void initialize(ConfigurationContext context) {
     super.initialize(context);
   }
+
+  @Override
+  public PrettyPrinter prettyPrint(PrettyPrinter out) {
+    out.print(getClass().getName()).flush();
+    for (Map.Entry<NodeID, GroupMessageBatchContext<ReplicationMessage, SyncReplicationActivity>> entry : this.batchContexts.entrySet()) {
+      out.indent().print(entry.getKey()).print(": ").print(entry.getValue().getStatistics()).flush();
+    }
+    return out;
+  }
   
   private static class SyncState {
     // liveSet is the total set of entities which we believe have finished syncing and fully exist on the passive.
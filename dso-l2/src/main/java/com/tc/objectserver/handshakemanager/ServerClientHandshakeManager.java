@@ -62,6 +62,8 @@ public class ServerClientHandshakeManager {
     STARTED,
   }
   static final int                       RECONNECT_WARN_INTERVAL           = 15000;
+  // Set on the channel of a client which can read the queue depth on a VoltronEntityMultiResponse.
+  public static final String             QUEUE_DEPTH_ATTACHMENT            = "QueueDepthAttachment";
 
   private State                          state                             = State.INIT;
   private List<ReconnectListener>     waitingForReconnect = new ArrayList<>();
@@ -73,6 +75,8 @@ public class ServerClientHandshakeManager {
   private final DSOChannelManager        channelManager;
   private final TCLogger                 logger;
   private final Set<ClientID>            existingUnconnectedClients        = new HashSet<>();
+  // acknowledged early, by an incremental reconnect, so not again when the reconnect completes
+  private final Set<ClientID>            resumedClients                    = new HashSet<>();
   private final boolean                  persistent;
   private final TCLogger                 consoleLogger;
 
@@ -104,6 +108,9 @@ public class ServerClientHandshakeManager {
       this.logger.info("Handling client handshake for " + clientID);
       handshake.getChannel().addAttachment(ClientHandshakeMonitoringInfo.MONITORING_INFO_ATTACHMENT, 
           new ClientHandshakeMonitoringInfo(handshake.getClientPID(), handshake.getUUID(), handshake.getName()), false);
+      if (handshake.acceptsQueueDepth()) {
+        handshake.getChannel().addAttachment(QUEUE_DEPTH_ATTACHMENT, Boolean.TRUE, true);
+      }
 
       if (this.state == State.STARTED) {
         // This is a normal connection handshake, from a new client connecting once the server is up and running.
@@ -140,6 +147,12 @@ public class ServerClientHandshakeManager {
           transactionHandler.handleResentMessage(resentMessage);
         }
 
+        // An incremental reconnect lets the client carry on as soon as its resends are in hand.
+        if (transactionHandler.clientReconnected(clientID)) {
+          sendAckMessageFor(clientID);
+          this.resumedClients.add(clientID);
+        }
+
         // Now that we have processed everything from this resend, see if it was the last one.
         this.logger.debug("Removing client " + clientID + " from set of existing unconnected clients.");
         this.existingUnconnectedClients.remove(clientID);
@@ -196,10 +209,11 @@ public class ServerClientHandshakeManager {
     // It is important to start all the managers before sending the ack to the clients
     for (NodeID nid : cids) {
       final ClientID clientID = (ClientID) nid;
-      if (this.channelManager.isActiveID(clientID)) {
+      if (this.channelManager.isActiveID(clientID) && !this.resumedClients.contains(clientID)) {
         sendAckMessageFor(clientID);
       }
     }
+    this.resumedClients.clear();
     this.state = State.STARTED;
     notifyComplete();
     // Tell the transaction handler the message to replay any resends we received.  Schedule a noop 
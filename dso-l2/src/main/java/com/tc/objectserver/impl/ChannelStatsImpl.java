@@ -38,9 +38,9 @@ import com.tc.util.Events;
 public class ChannelStatsImpl implements ChannelStats, DSOChannelManagerEventListener {
 
   private static final StatsConfig[] STATS_CONFIG = new StatsConfig[] {
-      new StatsConfig(READ_RATE, new SampledCounterConfig(1, 300, true, 0L)),
-      new StatsConfig(WRITE_RATE, new SampledCounterConfig(1, 300, true, 0L)),
-      new StatsConfig(TXN_RATE, new SampledCounterConfig(1, 300, true, 0L)),
+      new StatsConfig(READ_RATE, new SampledCounterConfig(1, 300, true, 0L, true)),
+      new StatsConfig(WRITE_RATE, new SampledCounterConfig(1, 300, true, 0L, true)),
+      new StatsConfig(TXN_RATE, new SampledCounterConfig(1, 300, true, 0L, true)),
       new StatsConfig(PENDING_TRANSACTIONS, new BoundedCounterConfig(0L, 0L, Long.MAX_VALUE))};
 
   private final CounterManager    counterManager;
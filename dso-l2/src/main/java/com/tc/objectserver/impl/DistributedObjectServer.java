@@ -49,6 +49,7 @@ import com.tc.config.schema.setup.L2ConfigurationSetupManager;
 import com.tc.entity.DiagnosticMessageImpl;
 import com.tc.entity.DiagnosticResponseImpl;
 import com.tc.entity.NetworkVoltronEntityMessageImpl;
+import com.tc.entity.NetworkVoltronEntityMultiMessageImpl;
 import com.tc.entity.ServerEntityMessageImpl;
 import com.tc.entity.ServerEntityResponseMessage;
 import com.tc.entity.ServerEntityResponseMessageImpl;
@@ -236,6 +237,7 @@ import com.tc.objectserver.entity.ClientEntityStateManager;
 import com.tc.objectserver.entity.ClientEntityStateManagerImpl;
 import com.tc.objectserver.entity.EntityManagerImpl;
 import com.tc.objectserver.entity.LocalPipelineFlushMessage;
+import com.tc.objectserver.entity.PassiveSyncThrottle;
 import com.tc.objectserver.entity.RequestProcessor;
 import com.tc.objectserver.entity.RequestProcessorHandler;
 import com.tc.objectserver.entity.ServerEntityFactory;
@@ -307,6 +309,7 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
   private final TerracottaServiceProviderRegistryImpl serviceRegistry;
   private WeightGeneratorFactory globalWeightGeneratorFactory;
   private EntityManager entityManager;
+  private ReplicationSender replicationSender;
 
   // used by a test
   public DistributedObjectServer(L2ConfigurationSetupManager configSetupManager, TCThreadGroup threadGroup,
@@ -371,6 +374,10 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     pp.println();
     this.entityManager.prettyPrint(pp);
     pp.println();
+    if (this.replicationSender != null) {
+      this.replicationSender.prettyPrint(pp);
+      pp.println();
+    }
     this.serviceRegistry.prettyPrint(pp);
     pp.println();
     return bytes.toByteArray();
@@ -459,9 +466,14 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     final SessionManager sessionManager = new NullSessionManager();
 
     this.dumpHandler.registerForDump(new CallbackDumpAdapter(stageManager));
+    this.dumpHandler.registerForDump(new CallbackDumpAdapter(this.timer));
 
     this.sampledCounterManager = new CounterManagerImpl();
-    final SampledCounterConfig sampledCounterConfig = new SampledCounterConfig(1, 300, true, 0L);
+    final int statsSampleSecs = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_STATS_SAMPLE_INTERVAL_SECONDS);
+    final int statsHistorySize = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_STATS_SAMPLE_HISTORY_SIZE);
+    // the global rate counters are bumped from every stage thread so stripe them rather than share one atomic
+    final SampledCounterConfig sampledCounterConfig = new SampledCounterConfig(statsSampleSecs, statsHistorySize, true,
+                                                                               0L, true);
 
     // Set up the ServiceRegistry.
     TcConfiguration base = this.configSetupManager.commonl2Config().getBean();
@@ -564,8 +576,9 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
                                                                tcSecurityManager);
 
 
-    final SampledCumulativeCounterConfig sampledCumulativeCounterConfig = new SampledCumulativeCounterConfig(1, 300,
-                                                                                                             true, 0L);
+    final SampledCumulativeCounterConfig sampledCumulativeCounterConfig = new SampledCumulativeCounterConfig(statsSampleSecs,
+                                                                                                             statsHistorySize,
+                                                                                                             true, 0L, true);
 
     final TCMemoryManagerImpl tcMemManager = new TCMemoryManagerImpl(this.threadGroup);
     final long timeOut = TCPropertiesImpl.getProperties().getLong(TCPropertiesConsts.LOGGING_LONG_GC_THRESHOLD);
@@ -655,7 +668,8 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
         .createCounter(sampledCounterConfig);
     final SampledCounter globalLockRecallCounter = (SampledCounter) this.sampledCounterManager
         .createCounter(sampledCounterConfig);
-    final SampledRateCounterConfig sampledRateCounterConfig = new SampledRateCounterConfig(1, 300, true);
+    final SampledRateCounterConfig sampledRateCounterConfig = new SampledRateCounterConfig(statsSampleSecs, statsHistorySize,
+                                                                                           true);
     final SampledRateCounter changesPerBroadcast = (SampledRateCounter) this.sampledCounterManager
         .createCounter(sampledRateCounterConfig);
     final SampledRateCounter transactionSizeCounter = (SampledRateCounter) this.sampledCounterManager
@@ -698,14 +712,22 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     RequestProcessor processor = new RequestProcessor(requestProcessorSink);
     
     ManagementTopologyEventCollector eventCollector = new ManagementTopologyEventCollector(serviceInterface);
-    ClientEntityStateManager clientEntityStateManager = new ClientEntityStateManagerImpl();
+    final boolean incrementalReconnect = TCPropertiesImpl.getProperties().getBoolean(TCPropertiesConsts.L2_RECONNECT_INCREMENTAL, false);
+    ClientEntityStateManager clientEntityStateManager = new ClientEntityStateManagerImpl(incrementalReconnect);
 
     entityManager = new EntityManagerImpl(this.serviceRegistry, clientEntityStateManager, eventCollector, processor, this::flushLocalPipeline);
     // We need to set up a stage to point at the ProcessTransactionHandler and we also need to register it for events, below.
     final ProcessTransactionHandler processTransactionHandler = new ProcessTransactionHandler(this.persistor.getEntityPersistor(), this.persistor.getTransactionOrderPersistor(), channelManager, entityManager, () -> l2Coordinator.getStateManager().cleanupKnownServers());
     final Stage<VoltronEntityMessage> processTransactionStage_voltron = stageManager.createStage(ServerConfigurationContext.VOLTRON_MESSAGE_STAGE, VoltronEntityMessage.class, processTransactionHandler.getVoltronMessageHandler(), 1, maxStageSize);
     final Stage<TCMessage> multiRespond = stageManager.createStage(ServerConfigurationContext.RESPOND_TO_REQUEST_STAGE, TCMessage.class, processTransactionHandler.getMultiResponseSender(), 1, maxStageSize);
+    this.dumpHandler.registerForDump(new CallbackDumpAdapter(processTransactionHandler));
     final Sink<VoltronEntityMessage> voltronMessageSink = processTransactionStage_voltron.getSink();
+    // passive sync backs off while live invokes slow down or queue up
+    final PassiveSyncThrottle syncThrottle = PassiveSyncThrottle.fromProperties(voltronMessageSink::size);
+    processTransactionHandler.setPassiveSyncThrottle(syncThrottle);
+    if (incrementalReconnect) {
+      processTransactionHandler.setIncrementalReconnect(clientEntityStateManager);
+    }
     
     // We need to connect the IInterEntityMessengerProvider to the voltronMessageSink.
     messengerProvider.setMessageSink(voltronMessageSink);
@@ -723,7 +745,9 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     final Sink<HydrateContext> hydrateSink = this.hydrateStage.getSink();
     messageRouter.routeMessageType(TCMessageType.NOOP_MESSAGE, requestLock.getSink(), hydrateSink);
     messageRouter.routeMessageType(TCMessageType.CLIENT_HANDSHAKE_MESSAGE, clientHandshake.getSink(), hydrateSink);
-    messageRouter.routeMessageType(TCMessageType.VOLTRON_ENTITY_MESSAGE, new VoltronMessageSink(voltronMessageSink, hydrateSink, entityManager));
+    VoltronMessageSink voltronMessages = new VoltronMessageSink(voltronMessageSink, hydrateSink, entityManager);
+    messageRouter.routeMessageType(TCMessageType.VOLTRON_ENTITY_MESSAGE, voltronMessages);
+    messageRouter.routeMessageType(TCMessageType.VOLTRON_ENTITY_MULTI_MESSAGE, voltronMessages);
     messageRouter.routeMessageType(TCMessageType.SERVER_ENTITY_RESPONSE_MESSAGE, communicatorResponseStage.getSink(), hydrateSink);
     messageRouter.routeMessageType(TCMessageType.DIAGNOSTIC_REQUEST, new DiagnosticsHandler(this));    
 
@@ -770,11 +794,11 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
 
     connectServerStateToReplicatedState(state, l2Coordinator.getReplicatedClusterStateManager());
 // setup replication    
-    ReplicationSender replicationSender = new ReplicationSender(groupCommManager);
-    final Stage<NodeID> replicationSenderStage = stageManager.createStage(ServerConfigurationContext.ACTIVE_TO_PASSIVE_DRIVER_STAGE, NodeID.class, replicationSender, 1, maxStageSize);
-    replicationSender.setSelfSink(replicationSenderStage.getSink());
+    this.replicationSender = new ReplicationSender(groupCommManager);
+    final Stage<NodeID> replicationSenderStage = stageManager.createStage(ServerConfigurationContext.ACTIVE_TO_PASSIVE_DRIVER_STAGE, NodeID.class, this.replicationSender, 1, maxStageSize);
+    this.replicationSender.setSelfSink(replicationSenderStage.getSink());
     
-    final ActiveToPassiveReplication passives = new ActiveToPassiveReplication(processTransactionHandler, l2Coordinator.getReplicatedClusterStateManager().getPassives(), this.persistor.getEntityPersistor(), replicationSender, this.getGroupManager());
+    final ActiveToPassiveReplication passives = new ActiveToPassiveReplication(processTransactionHandler, l2Coordinator.getReplicatedClusterStateManager().getPassives(), this.persistor.getEntityPersistor(), this.replicationSender, this.getGroupManager(), syncThrottle);
     processor.setReplication(passives); 
 
     Stage<ReplicationMessageAck> replicationStageAck = stageManager.createStage(ServerConfigurationContext.PASSIVE_REPLICATION_ACK_STAGE, ReplicationMessageAck.class, 
@@ -865,7 +889,7 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
         this.lockManager, (DSOChannelManagerMBean) channelManager,
                                                          serverStats, channelStats, instanceMonitor,
                                                          connectionPolicy,
-                                                         remoteManagement);
+                                                         remoteManagement, stageManager, syncThrottle);
 
     final CallbackOnExitHandler handler = new CallbackGroupExceptionHandler(logger, consoleLogger);
     this.threadGroup.addCallbackOnExitExceptionHandler(GroupException.class, handler);
@@ -1048,6 +1072,7 @@ public class DistributedObjectServer implements TCDumper, LockInfoDumpHandler, S
     messageTypeClassMapping.put(TCMessageType.INVOKE_REGISTERED_SERVICE_MESSAGE, InvokeRegisteredServiceMessage.class);
     messageTypeClassMapping.put(TCMessageType.INVOKE_REGISTERED_SERVICE_RESPONSE_MESSAGE, InvokeRegisteredServiceResponseMessage.class);
     messageTypeClassMapping.put(TCMessageType.VOLTRON_ENTITY_MESSAGE, NetworkVoltronEntityMessageImpl.class);
+    messageTypeClassMapping.put(TCMessageType.VOLTRON_ENTITY_MULTI_MESSAGE, NetworkVoltronEntityMultiMessageImpl.class);
     messageTypeClassMapping.put(TCMessageType.VOLTRON_ENTITY_RECEIVED_RESPONSE, VoltronEntityReceivedResponseImpl.class);
     messageTypeClassMapping.put(TCMessageType.VOLTRON_ENTITY_COMPLETED_RESPONSE, VoltronEntityAppliedResponseImpl.class);
     messageTypeClassMapping.put(TCMessageType.VOLTRON_ENTITY_RETIRED_RESPONSE, VoltronEntityRetiredResponseImpl.class);
@@ -0,0 +1,193 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.terracotta.persistence.IPlatformPersistence;
+
+
+/**
+ * An append-only journal of records kept in the data elements of an {@link IPlatformPersistence}.
+ * <p>
+ * Each record is written to its own element, named by its sequence number, so appending costs one small write no
+ * matter how much state the records describe.  The owner periodically writes a snapshot of its whole state; the
+ * snapshot names the last sequence it covers, after which the records it replaces are deleted.  Recovery loads the
+ * snapshot and replays the records which follow it, stopping at the first one which is missing or fails its checksum
+ * (the tail of a write interrupted by a crash).
+ * <p>
+ * Records and snapshots are stored as serialized bytes with a CRC32, so the storage never holds a reference to live
+ * state.  Not thread safe: callers serialize access.
+ */
+class ChecksummedJournal {
+  private static final TCLogger LOGGER = TCLogging.getLogger(ChecksummedJournal.class);
+
+  private final IPlatformPersistence storageManager;
+  private final String name;
+  private final int compactionInterval;
+
+  // Sequence of the last record covered by the snapshot in storage (0 if there is none).
+  private long snapshotSequence = 0;
+  // Sequence of the last record appended.
+  private long lastSequence = 0;
+
+  /**
+   * @param name prefix of the data elements used by this journal
+   * @param compactionInterval number of records after which {@link #append(Serializable)} asks for a snapshot
+   */
+  ChecksummedJournal(IPlatformPersistence storageManager, String name, int compactionInterval) {
+    if (compactionInterval < 1) {
+      throw new IllegalArgumentException("Compaction interval must be positive: " + compactionInterval);
+    }
+    this.storageManager = storageManager;
+    this.name = name;
+    this.compactionInterval = compactionInterval;
+  }
+
+  /**
+   * Passes the latest snapshot to restoreSnapshot and then every valid record after it to replay, in order.
+   *
+   * @return true if there was a snapshot to restore
+   */
+  boolean recover(Consumer<Serializable> restoreSnapshot, Consumer<Serializable> replay) throws IOException {
+    Frame snapshot = (Frame) this.storageManager.loadDataElement(snapshotName());
+    if (null != snapshot) {
+      if (!snapshot.isValid()) {
+        throw new IOException("Snapshot " + snapshotName() + " failed its checksum");
+      }
+      restoreSnapshot.accept(snapshot.decode());
+      this.snapshotSequence = snapshot.sequence;
+      // Finish deleting the records the snapshot replaced, in case we went down part way through.
+      deleteRecords(snapshot.previousSequence + 1, snapshot.sequence);
+    }
+    this.lastSequence = this.snapshotSequence;
+    while (true) {
+      long sequence = this.lastSequence + 1;
+      Frame record = (Frame) this.storageManager.loadDataElement(recordName(sequence));
+      if (null == record) {
+        break;
+      }
+      if (record.sequence != sequence || !record.isValid()) {
+        LOGGER.warn("Discarding invalid record " + sequence + " at the tail of journal " + this.name);
+        this.storageManager.storeDataElement(recordName(sequence), null);
+        break;
+      }
+      replay.accept(record.decode());
+      this.lastSequence = sequence;
+    }
+    LOGGER.debug("Recovered journal " + this.name + " at snapshot " + this.snapshotSequence + " with " + getRecordsSinceSnapshot() + " records");
+    return (null != snapshot);
+  }
+
+  /**
+   * Durably appends one record.
+   *
+   * @return true once enough records have accumulated that the caller should {@link #snapshot(Serializable)}.
+   */
+  boolean append(Serializable record) throws IOException {
+    long sequence = this.lastSequence + 1;
+    this.storageManager.storeDataElement(recordName(sequence), Frame.encode(sequence, 0, record));
+    this.lastSequence = sequence;
+    return getRecordsSinceSnapshot() >= this.compactionInterval;
+  }
+
+  /**
+   * Replaces the snapshot with the given state, which must reflect every record appended so far, and deletes the
+   * records it covers.
+   */
+  void snapshot(Serializable state) throws IOException {
+    long previous = this.snapshotSequence;
+    this.storageManager.storeDataElement(snapshotName(), Frame.encode(this.lastSequence, previous, state));
+    this.snapshotSequence = this.lastSequence;
+    deleteRecords(previous + 1, this.lastSequence);
+  }
+
+  long getRecordsSinceSnapshot() {
+    return this.lastSequence - this.snapshotSequence;
+  }
+
+  private void deleteRecords(long first, long last) throws IOException {
+    for (long sequence = first; sequence <= last; ++sequence) {
+      this.storageManager.storeDataElement(recordName(sequence), null);
+    }
+  }
+
+  private String snapshotName() {
+    return this.name + ".snapshot";
+  }
+
+  private String recordName(long sequence) {
+    return this.name + "." + sequence;
+  }
+
+  private static class Frame implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long sequence;
+    // Only meaningful for snapshots: the sequence covered by the snapshot this one replaced.
+    private long previousSequence;
+    private byte[] payload;
+    private long checksum;
+
+    static Frame encode(long sequence, long previousSequence, Serializable body) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+        out.writeObject(body);
+      }
+      Frame frame = new Frame();
+      frame.sequence = sequence;
+      frame.previousSequence = previousSequence;
+      frame.payload = bytes.toByteArray();
+      frame.checksum = frame.computeChecksum();
+      return frame;
+    }
+
+    boolean isValid() {
+      return (null != this.payload) && (this.checksum == computeChecksum());
+    }
+
+    Serializable decode() throws IOException {
+      try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(this.payload))) {
+        return (Serializable) in.readObject();
+      } catch (ClassNotFoundException e) {
+        throw new IOException(e);
+      }
+    }
+
+    private long computeChecksum() {
+      CRC32 crc = new CRC32();
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        crc.update((int) (this.sequence >>> shift));
+        crc.update((int) (this.previousSequence >>> shift));
+      }
+      crc.update(this.payload, 0, this.payload.length);
+      return crc.getValue();
+    }
+  }
+}
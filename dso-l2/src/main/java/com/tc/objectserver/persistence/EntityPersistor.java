@@ -33,6 +33,7 @@ import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -45,37 +46,50 @@ import org.terracotta.persistence.IPlatformPersistence;
 
 /**
  * Stores the information relating to the entities currently alive on the platform into persistent storage.
+ * <p>
+ * Every change is written as one small record to an append-only {@link ChecksummedJournal}, rather than rewriting the
+ * entity, journal and counter maps as a whole.  Once enough records accumulate the maps are written out as a snapshot
+ * and the records they cover are dropped, so startup only replays the snapshot and a short tail.
  */
 public class EntityPersistor {
   private static final TCLogger LOGGER = TCLogging.getLogger(EntityPersistor.class);
   
+  // The whole-map files written by older versions, only read to migrate them into the journal.
   private static final String ENTITIES_ALIVE_FILE_NAME = "entities_alive.map";
   private static final String JOURNAL_CONTAINER_FILE_NAME = "journal_container.map";
   private static final String COUNTERS_FILE_NAME = "counters.map";
+  private static final String LIFECYCLE_JOURNAL_NAME = "entity_lifecycle.journal";
   private static final String COUNTERS_CONSUMER_ID = "counters:consumerID";
+  public static final int DEFAULT_COMPACTION_INTERVAL = 1024;
 
   private final IPlatformPersistence storageManager;
-  private final HashMap<EntityData.Key, EntityData.Value> entities;
-  private final HashMap<ClientID, List<EntityData.JournalEntry>> entityLifeJournal;
-  private final HashMap<String, Long> counters;
+  private final ChecksummedJournal lifecycleJournal;
+  private final HashMap<EntityData.Key, EntityData.Value> entities = new HashMap<>();
+  private final HashMap<ClientID, List<EntityData.JournalEntry>> entityLifeJournal = new HashMap<>();
+  private final HashMap<String, Long> counters = new HashMap<>();
 
-  @SuppressWarnings({ "unchecked" })
   public EntityPersistor(IPlatformPersistence storageManager) {
+    this(storageManager, DEFAULT_COMPACTION_INTERVAL);
+  }
+
+  /**
+   * @param compactionInterval number of lifecycle records written between snapshots
+   */
+  public EntityPersistor(IPlatformPersistence storageManager, int compactionInterval) {
     this.storageManager = storageManager;
+    this.lifecycleJournal = new ChecksummedJournal(storageManager, LIFECYCLE_JOURNAL_NAME, compactionInterval);
     try {
-      HashMap<EntityData.Key, EntityData.Value> entities = (HashMap<Key, Value>) this.storageManager.loadDataElement(ENTITIES_ALIVE_FILE_NAME);
-      this.entities = (null != entities) ? entities : new HashMap<>();
-      HashMap<ClientID, List<EntityData.JournalEntry>> entityLifeJournal = (HashMap<ClientID, List<JournalEntry>>) this.storageManager.loadDataElement(JOURNAL_CONTAINER_FILE_NAME);
-      this.entityLifeJournal = (null != entityLifeJournal) ? entityLifeJournal : new HashMap<>();
-      HashMap<String, Long> counters = (HashMap<String, Long>) this.storageManager.loadDataElement(COUNTERS_FILE_NAME);
-      this.counters = (null != counters) ? counters : new HashMap<>();
+      boolean hadSnapshot = this.lifecycleJournal.recover(snapshot -> restore((Snapshot) snapshot), record -> ((LifecycleRecord) record).applyTo(this));
+      if (!hadSnapshot && 0 == this.lifecycleJournal.getRecordsSinceSnapshot()) {
+        migrateMapFiles();
+      }
       // Make sure that the consumerID is initialized to 1 (0 reserved for platform).
       if (!this.counters.containsKey(COUNTERS_CONSUMER_ID)) {
         this.counters.put(COUNTERS_CONSUMER_ID, new Long(1));
       }
     } catch (IOException e) {
       // We don't expect this during startup so just throw it as runtime.
-      throw new RuntimeException("Failure reading EntityPersistor map files", e);
+      throw new RuntimeException("Failure reading EntityPersistor journal", e);
     }
   }
 
@@ -86,15 +100,8 @@ public class EntityPersistor {
     if (!this.counters.containsKey(COUNTERS_CONSUMER_ID)) {
       this.counters.put(COUNTERS_CONSUMER_ID, new Long(1));
     }
-    // We can destroy the backing for these objects.
-    try {
-      this.storageManager.storeDataElement(ENTITIES_ALIVE_FILE_NAME, null);
-      this.storageManager.storeDataElement(JOURNAL_CONTAINER_FILE_NAME, null);
-      this.storageManager.storeDataElement(COUNTERS_FILE_NAME, null);
-    } catch (IOException e) {
-      // In general, we have no way of solving this problem so throw it.
-      throw new RuntimeException("Failure storing EntityPersistor map files", e);
-    }
+    // An empty snapshot supersedes every record written so far.
+    writeSnapshot();
   }
 
   public synchronized Collection<EntityData.Value> loadEntityData() {
@@ -181,8 +188,7 @@ public class EntityPersistor {
     key.className = id.getClassName();
     key.entityName = id.getEntityName();
     Assert.assertTrue(this.entities.containsKey(key));
-    this.entities.remove(key);
-    storeToDisk(ENTITIES_ALIVE_FILE_NAME, this.entities);
+    commit(new EntityRemoved(key));
     
     // Record this in the journal - null error on success.
     addToJournal(clientID, transactionID, oldestTransactionOnClient, EntityData.Operation.DESTROY, null, null);
@@ -226,8 +232,7 @@ public class EntityPersistor {
     val.configuration = configuration;
     Assert.assertEquals(version, val.version);
     
-    this.entities.put(key, val);
-    storeToDisk(ENTITIES_ALIVE_FILE_NAME, this.entities);
+    commit(new EntityStored(val));
     
     // Record this in the journal.
     addToJournal(clientID, transactionID, oldestTransactionOnClient, EntityData.Operation.RECONFIGURE, previousConfiguration, null);
@@ -238,21 +243,21 @@ public class EntityPersistor {
 
   public synchronized long getNextConsumerID() {
     long consumerID = this.counters.get(COUNTERS_CONSUMER_ID);
-    this.counters.put(COUNTERS_CONSUMER_ID, new Long(consumerID + 1));
-    storeToDisk(COUNTERS_FILE_NAME, this.counters);
+    commit(new CounterSet(COUNTERS_CONSUMER_ID, consumerID + 1));
     return consumerID;
   }
 
   public synchronized void setNextConsumerID(long consumerID) {
     long checkID = this.counters.get(COUNTERS_CONSUMER_ID);
     if (consumerID >= checkID) {
-      this.counters.put(COUNTERS_CONSUMER_ID, new Long(consumerID + 1));
-      storeToDisk(COUNTERS_FILE_NAME, this.counters);
+      commit(new CounterSet(COUNTERS_CONSUMER_ID, consumerID + 1));
     }
   }
   
   public synchronized void removeTrackingForClient(ClientID sourceNodeID) {
-    this.entityLifeJournal.remove(sourceNodeID);
+    if (this.entityLifeJournal.containsKey(sourceNodeID)) {
+      commit(new ClientRemoved(sourceNodeID));
+    }
   }
 
 
@@ -268,20 +273,23 @@ public class EntityPersistor {
   }
 
   private void addToJournal(ClientID clientID, long transactionID, long oldestTransactionOnClient, EntityData.Operation operation, byte[] reconfigureResult, EntityException error) {
+    JournalEntry newEntry = new JournalEntry();
+    newEntry.operation = operation;
+    newEntry.transactionID = transactionID;
+    newEntry.failure = error;
+    newEntry.reconfigureResponse = reconfigureResult;
+    commit(new JournalEntryAdded(clientID, oldestTransactionOnClient, newEntry));
+  }
+
+  private void applyJournalEntry(ClientID clientID, long oldestTransactionOnClient, JournalEntry newEntry) {
     List<EntityData.JournalEntry> rawJournal = this.entityLifeJournal.get(clientID);
     // Note that this may be the first time we encountered this client.
     if (null == rawJournal) {
       rawJournal = new Vector<>();
     }
     List<EntityData.JournalEntry> clientJournal = filterJournal(rawJournal, oldestTransactionOnClient);
-    JournalEntry newEntry = new JournalEntry();
-    newEntry.operation = operation;
-    newEntry.transactionID = transactionID;
-    newEntry.failure = error;
-    newEntry.reconfigureResponse = reconfigureResult;
     clientJournal.add(newEntry);
     this.entityLifeJournal.put(clientID, clientJournal);
-    storeToDisk(JOURNAL_CONTAINER_FILE_NAME, this.entityLifeJournal);
   }
 
   private JournalEntry getEntryForTransaction(ClientID clientID, long transactionID) {
@@ -314,13 +322,15 @@ public class EntityPersistor {
     value.canDelete = canDelete;
     value.entityName = entityName;
     value.configuration = configuration;
-    this.entities.put(key, value);
-    storeToDisk(ENTITIES_ALIVE_FILE_NAME, this.entities);
+    commit(new EntityStored(value));
   }
   
   public synchronized void removeOrphanedClientsFromJournal(Set<ClientID> connectedClients) {
-    this.entityLifeJournal.entrySet().removeIf(e->!connectedClients.contains(e.getKey()));
-    storeToDisk(JOURNAL_CONTAINER_FILE_NAME, this.entityLifeJournal);
+    Set<ClientID> orphans = new HashSet<>(this.entityLifeJournal.keySet());
+    orphans.removeAll(connectedClients);
+    for (ClientID orphan : orphans) {
+      commit(new ClientRemoved(orphan));
+    }
   }
   
   public synchronized void serialize(ObjectOutput bucket) throws IOException {
@@ -363,18 +373,164 @@ public class EntityPersistor {
     } catch (ClassNotFoundException cnf) {
       throw new IOException(cnf);
     }
-    storeToDisk(JOURNAL_CONTAINER_FILE_NAME, this.entityLifeJournal);
     long nextConsumer = bucket.readLong();
     this.counters.put(COUNTERS_CONSUMER_ID, nextConsumer);
-    storeToDisk(COUNTERS_FILE_NAME, this.counters);
+    // The layered journal can be arbitrarily large so it goes straight into a snapshot.
+    writeSnapshot();
+  }
+
+  /**
+   * Applies the change to the in-memory state and then appends it to the journal.
+   */
+  private void commit(LifecycleRecord record) {
+    record.applyTo(this);
+    try {
+      if (this.lifecycleJournal.append(record)) {
+        this.lifecycleJournal.snapshot(new Snapshot(this));
+      }
+    } catch (IOException e) {
+      // In general, we have no way of solving this problem so throw it.
+      throw new RuntimeException("Failure storing EntityPersistor journal", e);
+    }
   }
 
-  private void storeToDisk(String dataName, Serializable dataElement) {
+  private void writeSnapshot() {
     try {
-      this.storageManager.storeDataElement(dataName, dataElement);
+      this.lifecycleJournal.snapshot(new Snapshot(this));
     } catch (IOException e) {
       // In general, we have no way of solving this problem so throw it.
-      throw new RuntimeException("Failure storing EntityPersistor map file", e);
+      throw new RuntimeException("Failure storing EntityPersistor snapshot", e);
+    }
+  }
+
+  private void restore(Snapshot snapshot) {
+    this.entities.putAll(snapshot.entities);
+    this.entityLifeJournal.putAll(snapshot.entityLifeJournal);
+    this.counters.putAll(snapshot.counters);
+  }
+
+  /**
+   * Loads the whole-map files of older versions into a first snapshot and then deletes them.
+   */
+  @SuppressWarnings("unchecked")
+  private void migrateMapFiles() throws IOException {
+    HashMap<EntityData.Key, EntityData.Value> entities = (HashMap<Key, Value>) this.storageManager.loadDataElement(ENTITIES_ALIVE_FILE_NAME);
+    HashMap<ClientID, List<EntityData.JournalEntry>> entityLifeJournal = (HashMap<ClientID, List<JournalEntry>>) this.storageManager.loadDataElement(JOURNAL_CONTAINER_FILE_NAME);
+    HashMap<String, Long> counters = (HashMap<String, Long>) this.storageManager.loadDataElement(COUNTERS_FILE_NAME);
+    if ((null == entities) && (null == entityLifeJournal) && (null == counters)) {
+      return;
+    }
+    LOGGER.info("Migrating EntityPersistor map files into the lifecycle journal");
+    this.entities.putAll((null != entities) ? entities : Collections.emptyMap());
+    this.entityLifeJournal.putAll((null != entityLifeJournal) ? entityLifeJournal : Collections.emptyMap());
+    this.counters.putAll((null != counters) ? counters : Collections.emptyMap());
+    this.lifecycleJournal.snapshot(new Snapshot(this));
+    this.storageManager.storeDataElement(ENTITIES_ALIVE_FILE_NAME, null);
+    this.storageManager.storeDataElement(JOURNAL_CONTAINER_FILE_NAME, null);
+    this.storageManager.storeDataElement(COUNTERS_FILE_NAME, null);
+  }
+
+  private static class Snapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final HashMap<EntityData.Key, EntityData.Value> entities;
+    private final HashMap<ClientID, List<EntityData.JournalEntry>> entityLifeJournal;
+    private final HashMap<String, Long> counters;
+
+    Snapshot(EntityPersistor source) {
+      // These are serialized immediately by the journal so they don't need to be copied.
+      this.entities = source.entities;
+      this.entityLifeJournal = source.entityLifeJournal;
+      this.counters = source.counters;
+    }
+  }
+
+  /**
+   * One change to the persisted state.  Applying it is the only way live changes reach the maps, so replaying the
+   * journal on startup goes through exactly the same code.
+   */
+  private static abstract class LifecycleRecord implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    abstract void applyTo(EntityPersistor target);
+  }
+
+  private static class EntityStored extends LifecycleRecord {
+    private static final long serialVersionUID = 1L;
+    private final EntityData.Value value;
+
+    EntityStored(EntityData.Value value) {
+      this.value = value;
+    }
+
+    @Override
+    void applyTo(EntityPersistor target) {
+      EntityData.Key key = new EntityData.Key();
+      key.className = this.value.className;
+      key.entityName = this.value.entityName;
+      target.entities.put(key, this.value);
+    }
+  }
+
+  private static class EntityRemoved extends LifecycleRecord {
+    private static final long serialVersionUID = 1L;
+    private final EntityData.Key key;
+
+    EntityRemoved(EntityData.Key key) {
+      this.key = key;
+    }
+
+    @Override
+    void applyTo(EntityPersistor target) {
+      target.entities.remove(this.key);
+    }
+  }
+
+  private static class JournalEntryAdded extends LifecycleRecord {
+    private static final long serialVersionUID = 1L;
+    private final ClientID clientID;
+    private final long oldestTransactionOnClient;
+    private final EntityData.JournalEntry entry;
+
+    JournalEntryAdded(ClientID clientID, long oldestTransactionOnClient, EntityData.JournalEntry entry) {
+      this.clientID = clientID;
+      this.oldestTransactionOnClient = oldestTransactionOnClient;
+      this.entry = entry;
+    }
+
+    @Override
+    void applyTo(EntityPersistor target) {
+      target.applyJournalEntry(this.clientID, this.oldestTransactionOnClient, this.entry);
+    }
+  }
+
+  private static class ClientRemoved extends LifecycleRecord {
+    private static final long serialVersionUID = 1L;
+    private final ClientID clientID;
+
+    ClientRemoved(ClientID clientID) {
+      this.clientID = clientID;
+    }
+
+    @Override
+    void applyTo(EntityPersistor target) {
+      target.entityLifeJournal.remove(this.clientID);
+    }
+  }
+
+  private static class CounterSet extends LifecycleRecord {
+    private static final long serialVersionUID = 1L;
+    private final String counter;
+    private final long value;
+
+    CounterSet(String counter, long value) {
+      this.counter = counter;
+      this.value = value;
+    }
+
+    @Override
+    void applyTo(EntityPersistor target) {
+      target.counters.put(this.counter, this.value);
     }
   }
 }
@@ -0,0 +1,141 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import java.util.Arrays;
+
+
+/**
+ * Rank index over the global sequence IDs of the transactions currently persisted by the
+ * {@link TransactionOrderPersistor}.
+ * <p>
+ * IDs are only ever appended in increasing order, so they are kept in a sorted primitive array and located by binary
+ * search.  A Fenwick tree over the array slots counts the live entries, giving the position of an ID in the global
+ * order in O(log n) even after older entries are removed.  Removed slots are reclaimed by compacting once they
+ * outnumber the live ones.  Not thread safe.
+ */
+class GlobalOrderIndex {
+  private static final int MIN_CAPACITY = 16;
+
+  private long[] keys = new long[MIN_CAPACITY];
+  private boolean[] present = new boolean[MIN_CAPACITY];
+  // 1-based Fenwick tree: tree[i] holds the live count of the slots (i - lowbit(i), i].
+  private int[] tree = new int[MIN_CAPACITY + 1];
+  private int used = 0;
+  private int live = 0;
+
+  /**
+   * Adds an ID which must be greater than every ID added before it.
+   */
+  void append(long key) {
+    if (this.used > 0 && key <= this.keys[this.used - 1]) {
+      throw new IllegalArgumentException("Global sequence " + key + " is not after " + this.keys[this.used - 1]);
+    }
+    if (this.used == this.keys.length) {
+      rebuild(Math.max(MIN_CAPACITY, this.live * 2));
+    }
+    int slot = this.used;
+    this.used += 1;
+    this.keys[slot] = key;
+    this.present[slot] = true;
+    this.live += 1;
+    update(slot, 1);
+  }
+
+  /**
+   * @return true if the ID was present
+   */
+  boolean remove(long key) {
+    int slot = Arrays.binarySearch(this.keys, 0, this.used, key);
+    if (slot < 0 || !this.present[slot]) {
+      return false;
+    }
+    this.present[slot] = false;
+    this.live -= 1;
+    update(slot, -1);
+    if (this.used > MIN_CAPACITY && this.live < this.used / 2) {
+      rebuild(Math.max(MIN_CAPACITY, this.keys.length / 2));
+    }
+    return true;
+  }
+
+  /**
+   * @return The number of live IDs before the given one, or -1 if it isn't present.
+   */
+  int rank(long key) {
+    int slot = Arrays.binarySearch(this.keys, 0, this.used, key);
+    if (slot < 0 || !this.present[slot]) {
+      return -1;
+    }
+    int rank = 0;
+    for (int i = slot; i > 0; i -= (i & -i)) {
+      rank += this.tree[i];
+    }
+    return rank;
+  }
+
+  int size() {
+    return this.live;
+  }
+
+  void clear() {
+    this.keys = new long[MIN_CAPACITY];
+    this.present = new boolean[MIN_CAPACITY];
+    this.tree = new int[MIN_CAPACITY + 1];
+    this.used = 0;
+    this.live = 0;
+  }
+
+  private void update(int slot, int delta) {
+    for (int i = slot + 1; i < this.tree.length; i += (i & -i)) {
+      this.tree[i] += delta;
+    }
+  }
+
+  /**
+   * Drops the removed slots and rebuilds the tree in linear time, with room for at least one more entry.
+   */
+  private void rebuild(int capacity) {
+    capacity = Math.max(capacity, this.live + 1);
+    long[] newKeys = new long[capacity];
+    boolean[] newPresent = new boolean[capacity];
+    int[] newTree = new int[capacity + 1];
+    int next = 0;
+    for (int slot = 0; slot < this.used; ++slot) {
+      if (this.present[slot]) {
+        newKeys[next] = this.keys[slot];
+        newPresent[next] = true;
+        next += 1;
+      }
+    }
+    for (int i = 1; i <= capacity; ++i) {
+      if (i <= next) {
+        newTree[i] += 1;
+      }
+      int parent = i + (i & -i);
+      if (parent <= capacity) {
+        newTree[parent] += newTree[i];
+      }
+    }
+    this.keys = newKeys;
+    this.present = newPresent;
+    this.tree = newTree;
+    this.used = next;
+  }
+}
@@ -18,6 +18,8 @@
  */
 package com.tc.objectserver.persistence;
 
+import com.tc.properties.TCPropertiesConsts;
+import com.tc.properties.TCPropertiesImpl;
 import com.tc.text.PrettyPrintable;
 import com.tc.text.PrettyPrinter;
 
@@ -39,7 +41,8 @@ public class Persistor implements PrettyPrintable {
   public Persistor(IPlatformPersistence persistentStorage) {
     this.persistentStorage = persistentStorage;
     this.clusterStatePersistor = new ClusterStatePersistor(persistentStorage);
-    this.entityPersistor = new EntityPersistor(persistentStorage);
+    int compactionInterval = TCPropertiesImpl.getProperties().getInt(TCPropertiesConsts.L2_ENTITY_PERSISTOR_COMPACTION_INTERVAL, EntityPersistor.DEFAULT_COMPACTION_INTERVAL);
+    this.entityPersistor = new EntityPersistor(persistentStorage, compactionInterval);
   }
 
   public void start() {
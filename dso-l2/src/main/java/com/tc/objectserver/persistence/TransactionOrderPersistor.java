@@ -21,41 +21,46 @@ package com.tc.objectserver.persistence;
 import org.terracotta.persistence.IPlatformPersistence;
 
 import com.tc.net.ClientID;
-import com.tc.net.protocol.tcm.ChannelID;
 import com.tc.object.tx.TransactionID;
 import com.tc.util.Assert;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
  * Stores the information mapping the client-local TransactionIDs of in-flight transactions into a global order.
  * This is persisted because reconnect on restart needs to ensure that the transactions being replayed are done so in
  * the same order as their original order.
+ * <p>
+ * The persisted sequences are loaded once, when the persistor is created, and the global order is then maintained
+ * incrementally in memory so that replay queries don't go back to storage.  Updates are serialized per client, on one
+ * of a fixed set of lock stripes, so storage writes for one client never wait behind those of another.
  */
 public class TransactionOrderPersistor {
+  private static final int LOCK_STRIPES = 64;
+
   private final IPlatformPersistence storageManager;
-  private Long receivedTransactionCount = new Long(0L);
-    
-  private List<ClientTransaction> globalList = null;
-  private final Set<Long> clientNodeIDs;
+  private final AtomicLong receivedTransactionCount = new AtomicLong();
+
+  private final Object[] stripes = new Object[LOCK_STRIPES];
+  private final Map<Long, ClientSequence> clients = new ConcurrentHashMap<>();
+  // Guarded by itself.  Only ever held briefly, never across storage calls.
+  private final GlobalOrderIndex globalOrder = new GlobalOrderIndex();
   
   public TransactionOrderPersistor(IPlatformPersistence storageManager, Set<ClientID> clients) {
     this.storageManager = storageManager;
-    
-    this.clientNodeIDs = new HashSet<>();
-    for (ClientID oneClient : clients) {
-      this.clientNodeIDs.add(oneClient.toLong());
+    for (int i = 0; i < LOCK_STRIPES; ++i) {
+      this.stripes[i] = new Object();
     }
+    loadPersistedSequences(clients);
   }
 
   /**
@@ -63,7 +68,7 @@ public class TransactionOrderPersistor {
    * This new transactionID will be enqueued as the most recent transaction for the given source but also globally.
    * Any transactions for this source which are older than oldestTransactionOnClient will be removed from persistence.
    */
-  public synchronized Future<Void> updateWithNewMessage(ClientID source, TransactionID transactionID, TransactionID oldestTransactionOnClient) {
+  public Future<Void> updateWithNewMessage(ClientID source, TransactionID transactionID, TransactionID oldestTransactionOnClient) {
     // We need to ensure that the arguments are sane.
     if ((null == oldestTransactionOnClient) || (null == transactionID)) {
       throw new IllegalArgumentException("Transactions cannot be null");
@@ -72,128 +77,258 @@ public class TransactionOrderPersistor {
       throw new IllegalArgumentException("Oldest transaction cannot come after new transaction");
     }
     
-    // This operation requires that the globalList be rebuilt.
-    this.globalList = null;
-    
-    // Make sure we have tracking for this client.
-    this.clientNodeIDs.add(source.toLong());
-    
-    // Increment the number of received transactions.
-    this.receivedTransactionCount += 1;
-    
-    // Create the new pair.
-    IPlatformPersistence.SequenceTuple transaction = new IPlatformPersistence.SequenceTuple();
-    transaction.localSequenceID = transactionID.toLong();
-    transaction.globalSequenceID = this.receivedTransactionCount;
+    if (source.isNull()) {
+      // Still counted, but there is nothing to persist.
+      this.receivedTransactionCount.incrementAndGet();
+      return null;
+    }
     
-    // We now pass this straight into the underlying storage.
-    if (!source.isNull()) {
-      return this.storageManager.fastStoreSequence(source.toLong(), transaction, oldestTransactionOnClient.toLong());
+    long sourceID = source.toLong();
+    long oldestID = oldestTransactionOnClient.toLong();
+    synchronized (stripeFor(sourceID)) {
+      // Make sure we have tracking for this client.
+      ClientSequence sequence = this.clients.computeIfAbsent(sourceID, id -> new ClientSequence());
+      
+      // Create the new pair, taking the next global position.
+      IPlatformPersistence.SequenceTuple transaction = new IPlatformPersistence.SequenceTuple();
+      transaction.localSequenceID = transactionID.toLong();
+      synchronized (this.globalOrder) {
+        sequence.pruneBefore(oldestID, this.globalOrder);
+        transaction.globalSequenceID = this.receivedTransactionCount.incrementAndGet();
+        this.globalOrder.append(transaction.globalSequenceID);
+      }
+      sequence.append(transaction.localSequenceID, transaction.globalSequenceID);
+      
+      // We now pass this into the underlying storage while still holding the stripe so this client's writes stay in order.
+      return this.storageManager.fastStoreSequence(sourceID, transaction, oldestID);
     }
-    return null;
   }
 
   /**
    * Called when we no longer need to track transaction ordering information from source (presumably due to a disconnect).
    */
-  public synchronized void removeTrackingForClient(ClientID source) {
+  public void removeTrackingForClient(ClientID source) {
     long sourceID = source.toLong();
-    try {
-      this.storageManager.deleteSequence(sourceID);
-    } catch (IOException e) {
-      Assert.fail(e.getLocalizedMessage());
+    synchronized (stripeFor(sourceID)) {
+      try {
+        this.storageManager.deleteSequence(sourceID);
+      } catch (IOException e) {
+        Assert.fail(e.getLocalizedMessage());
+      }
+      ClientSequence sequence = this.clients.remove(sourceID);
+      if (null != sequence) {
+        synchronized (this.globalOrder) {
+          sequence.pruneBefore(Long.MAX_VALUE, this.globalOrder);
+        }
+      }
     }
-    this.clientNodeIDs.remove(sourceID);
   }
 
-  private static class ClientTransaction {
-    public long clientID;
-    public long localTransactionID;
-    public long globalTransactionID;
+  /**
+   * Called to ask where a given client-local transaction exists in the global transaction list.
+   * Returns the index or -1 if it isn't known.
+   */
+  public int getIndexToReplay(ClientID source, TransactionID transaction) {
+    long sourceID = source.toLong();
+    synchronized (stripeFor(sourceID)) {
+      ClientSequence sequence = this.clients.get(sourceID);
+      long globalID = (null != sequence) ? sequence.find(transaction.toLong()) : -1;
+      if (globalID < 0) {
+        return -1;
+      }
+      synchronized (this.globalOrder) {
+        return this.globalOrder.rank(globalID);
+      }
+    }
+  }
 
-    @Override
-    public int hashCode() {
-      return (int) ((7 * clientID)
-          ^ (5 * localTransactionID)
-          ^ globalTransactionID);
+  /**
+   * Called to ask for the global sequence of a given client-local transaction.  Unlike the index, this doesn't move as
+   * other clients' transactions are added and pruned so it can be compared with one looked up later.
+   * Returns the sequence or -1 if it isn't known.
+   */
+  public long getGlobalSequenceToReplay(ClientID source, TransactionID transaction) {
+    long sourceID = source.toLong();
+    synchronized (stripeFor(sourceID)) {
+      ClientSequence sequence = this.clients.get(sourceID);
+      return (null != sequence) ? sequence.find(transaction.toLong()) : -1;
     }
-    @Override
-    public boolean equals(Object obj) {
-      boolean isEqual = (obj == this);
-      if (!isEqual && (obj instanceof ClientTransaction)) {
-        ClientTransaction other = (ClientTransaction) obj;
-        isEqual = (this.clientID == other.clientID)
-            && (this.localTransactionID == other.localTransactionID)
-            && (this.globalTransactionID == other.globalTransactionID);
+  }
+
+  /**
+   * Removes the tracking of every client not in the given set.
+   */
+  public void retainTrackingFor(Set<ClientID> retained) {
+    for (long nodeID : new ArrayList<>(this.clients.keySet())) {
+      ClientID client = new ClientID(nodeID);
+      if (!retained.contains(client)) {
+        removeTrackingForClient(client);
       }
-      return isEqual;
     }
   }
-  
-  private List<ClientTransaction> buildGlobalListIfNessessary() {
-    if (null == this.globalList) {
-      TreeMap<Long, ClientTransaction> sortMap = new TreeMap<>();
-      for (long clientID : this.clientNodeIDs) {
-        List<IPlatformPersistence.SequenceTuple> transactions = null;
+
+  /**
+   * Clears all internal state.
+   */
+  public void clearAllRecords() {
+    lockAllStripesAndRun(0, () -> {
+      for (long nodeID : this.clients.keySet()) {
         try {
-          transactions = this.storageManager.loadSequence(clientID);
+          this.storageManager.deleteSequence(nodeID);
         } catch (IOException e) {
           Assert.fail(e.getLocalizedMessage());
         }
-        for (IPlatformPersistence.SequenceTuple tuple : transactions) {
-          ClientTransaction transaction = new ClientTransaction();
-          transaction.clientID = clientID;
-          transaction.localTransactionID = tuple.localSequenceID;
-          transaction.globalTransactionID = tuple.globalSequenceID;
-          sortMap.put(tuple.globalSequenceID, transaction);
-        }
       }
-      globalList = Collections.unmodifiableList(new ArrayList<>(sortMap.values()));
-      receivedTransactionCount = sortMap.size() != 0 ? sortMap.lastKey() : new Long(0L);
-    }
-    return globalList;
+      this.clients.clear();
+      synchronized (this.globalOrder) {
+        this.globalOrder.clear();
+      }
+    });
   }
 
   /**
-   * Called to ask where a given client-local transaction exists in the global transaction list.
-   * Returns the index or -1 if it isn't known.
+   * @return The number of transactions which have been observed by the persistor (NOT the number persisted).
    */
-  public int getIndexToReplay(ClientID source, TransactionID transaction) {
-    long sourceID = source.toLong();
-    long transactionID = transaction.toLong();
-    
-    int index = -1;
-    List<ClientTransaction> list = buildGlobalListIfNessessary();
-    int seek = 0;
-    for (ClientTransaction oneTransaction : list) {
-      if ((oneTransaction.clientID == sourceID) && (oneTransaction.localTransactionID == transactionID)) {
-        index = seek;
-        break;
+  public long getReceivedTransactionCount() {
+    return this.receivedTransactionCount.get();
+  }
+
+  private Object stripeFor(long sourceID) {
+    int hash = Long.hashCode(sourceID * 0x9E3779B97F4A7C15L);
+    return this.stripes[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+  }
+
+  private void lockAllStripesAndRun(int stripe, Runnable task) {
+    if (stripe == LOCK_STRIPES) {
+      task.run();
+    } else {
+      synchronized (this.stripes[stripe]) {
+        lockAllStripesAndRun(stripe + 1, task);
       }
-      seek += 1;
     }
-    return index;
   }
 
   /**
-   * Clears all internal state.
+   * Rebuilds the in-memory order from storage, continuing the global sequence after the newest persisted transaction.
    */
-  public void clearAllRecords() {
-    this.globalList = null;
-    for (long nodeID : clientNodeIDs) {
+  private void loadPersistedSequences(Set<ClientID> knownClients) {
+    int total = 0;
+    for (ClientID oneClient : knownClients) {
+      long clientID = oneClient.toLong();
+      List<IPlatformPersistence.SequenceTuple> transactions = null;
       try {
-        this.storageManager.deleteSequence(nodeID);
+        transactions = this.storageManager.loadSequence(clientID);
       } catch (IOException e) {
         Assert.fail(e.getLocalizedMessage());
       }
+      ClientSequence sequence = new ClientSequence();
+      if (null != transactions) {
+        for (IPlatformPersistence.SequenceTuple tuple : transactions) {
+          sequence.append(tuple.localSequenceID, tuple.globalSequenceID);
+        }
+        total += transactions.size();
+      }
+      this.clients.put(clientID, sequence);
+    }
+    long[] globalIDs = new long[total];
+    int next = 0;
+    for (ClientSequence sequence : this.clients.values()) {
+      next = sequence.copyGlobalIDs(globalIDs, next);
+    }
+    Arrays.sort(globalIDs);
+    long last = 0;
+    for (long globalID : globalIDs) {
+      if (globalID > last) {
+        this.globalOrder.append(globalID);
+        last = globalID;
+      }
     }
-    this.clientNodeIDs.clear();
+    this.receivedTransactionCount.set(last);
   }
 
   /**
-   * @return The number of transactions which have been observed by the persistor (NOT the number persisted).
+   * The (local, global) pairs of one client, in the order they were persisted.  Local IDs normally increase, which
+   * lets lookups binary search; replayed resends can break that, in which case lookups fall back to a scan.
    */
-  public long getReceivedTransactionCount() {
-    return this.receivedTransactionCount;
+  private static class ClientSequence {
+    private long[] localIDs = new long[8];
+    private long[] globalIDs = new long[8];
+    private int head = 0;
+    private int tail = 0;
+    private boolean sorted = true;
+
+    void append(long localID, long globalID) {
+      if (this.tail == this.localIDs.length) {
+        int size = this.tail - this.head;
+        int capacity = (size * 2 <= this.localIDs.length) ? this.localIDs.length : this.localIDs.length * 2;
+        this.localIDs = shift(this.localIDs, capacity);
+        this.globalIDs = shift(this.globalIDs, capacity);
+        this.head = 0;
+        this.tail = size;
+      }
+      if (this.tail > this.head && localID < this.localIDs[this.tail - 1]) {
+        this.sorted = false;
+      }
+      this.localIDs[this.tail] = localID;
+      this.globalIDs[this.tail] = globalID;
+      this.tail += 1;
+    }
+
+    /**
+     * Mirrors the storage's pruning: drops entries from the oldest end while they are before oldestValidID.
+     */
+    void pruneBefore(long oldestValidID, GlobalOrderIndex order) {
+      while (this.head < this.tail && this.localIDs[this.head] < oldestValidID) {
+        order.remove(this.globalIDs[this.head]);
+        this.head += 1;
+      }
+      if (this.head == this.tail) {
+        this.head = 0;
+        this.tail = 0;
+        this.sorted = true;
+      }
+    }
+
+    /**
+     * @return The global ID of the oldest entry for localID, or -1 if there is none.
+     */
+    long find(long localID) {
+      int index = -1;
+      if (this.sorted) {
+        int low = this.head;
+        int high = this.tail;
+        while (low < high) {
+          int mid = (low + high) >>> 1;
+          if (this.localIDs[mid] < localID) {
+            low = mid + 1;
+          } else {
+            high = mid;
+          }
+        }
+        if (low < this.tail && this.localIDs[low] == localID) {
+          index = low;
+        }
+      } else {
+        for (int i = this.head; i < this.tail; ++i) {
+          if (this.localIDs[i] == localID) {
+            index = i;
+            break;
+          }
+        }
+      }
+      return (index >= 0) ? this.globalIDs[index] : -1;
+    }
+
+    int copyGlobalIDs(long[] target, int offset) {
+      int size = this.tail - this.head;
+      System.arraycopy(this.globalIDs, this.head, target, offset, size);
+      return offset + size;
+    }
+
+    private long[] shift(long[] source, int capacity) {
+      long[] target = new long[capacity];
+      System.arraycopy(source, this.head, target, 0, this.tail - this.head);
+      return target;
+    }
   }
 }
@@ -83,15 +83,8 @@ public class EntityMessengerService implements IEntityMessenger {
   public ScheduledToken messageSelfAfterDelay(EntityMessage message, long millisBeforeSend) throws MessageCodecException {
     FakeEntityMessage interEntityMessage = encodeAsFake(message);
     long startTimeMillis = this.timer.currentTimeMillis() + millisBeforeSend;
-    long id = this.timer.addDelayed(new Runnable() {
-      @Override
-      public void run() {
-        // Pre-filter if entity was destroyed.
-        if (!EntityMessengerService.this.owningEntity.isDestroyed()) {
-          EntityMessengerService.this.messageSink.addSingleThreaded(interEntityMessage);
-        }
-      }}, startTimeMillis);
-    
+    // Pre-filter if entity was destroyed.
+    long id = this.timer.addDelayed(this.messageSink, interEntityMessage, this::isStillWanted, startTimeMillis);
     return new TokenWrapper(id);
   }
 
@@ -99,9 +92,8 @@ public class EntityMessengerService implements IEntityMessenger {
   public ScheduledToken messageSelfPeriodically(EntityMessage message, long millisBetweenSends) throws MessageCodecException {
     FakeEntityMessage interEntityMessage = encodeAsFake(message);
     long startTimeMillis = this.timer.currentTimeMillis() + millisBetweenSends;
-    SelfDestructiveRunnable runnable = new SelfDestructiveRunnable(this.messageSink, this.owningEntity, interEntityMessage);
-    long id = this.timer.addPeriodic(runnable, startTimeMillis, millisBetweenSends);
-    runnable.prepareForCancel(this.timer, id);
+    // The timer cancels this, itself, once the entity is destroyed.
+    long id = this.timer.addPeriodic(this.messageSink, interEntityMessage, this::isStillWanted, startTimeMillis, millisBetweenSends);
     return new TokenWrapper(id);
   }
 
@@ -120,6 +112,10 @@ public class EntityMessengerService implements IEntityMessenger {
     this.messageSink.addSingleThreaded(interEntityMessage);
   }
 
+  private boolean isStillWanted() {
+    return !this.owningEntity.isDestroyed();
+  }
+
   private FakeEntityMessage encodeAsFake(EntityMessage message) throws MessageCodecException {
     byte[] serializedMessage = this.codec.encodeMessage(message);
     FakeEntityMessage interEntityMessage = new FakeEntityMessage(this.fakeDescriptor, message, serializedMessage);
@@ -181,35 +177,6 @@ public class EntityMessengerService implements IEntityMessenger {
   }
 
 
-  private static class SelfDestructiveRunnable implements Runnable {
-    private final Sink<VoltronEntityMessage> messageSink;
-    private final ManagedEntity owningEntity;
-    private final FakeEntityMessage message;
-    private SingleThreadedTimer timer;
-    private long id;
-    
-    public SelfDestructiveRunnable(Sink<VoltronEntityMessage> messageSink, ManagedEntity owningEntity, FakeEntityMessage message) {
-      this.messageSink = messageSink;
-      this.owningEntity = owningEntity;
-      this.message = message;
-    }
-    
-    public void prepareForCancel(SingleThreadedTimer timer, long id) {
-      this.timer = timer;
-      this.id = id;
-    }
-    
-    @Override
-    public void run() {
-      if (this.owningEntity.isDestroyed()) {
-        this.timer.cancel(id);
-      } else {
-        this.messageSink.addSingleThreaded(this.message);
-      }
-    }
-  }
-
-
   private static class TokenWrapper implements ScheduledToken {
     public final long token;
     public TokenWrapper(long token) {
@@ -18,53 +18,97 @@
  */
 package com.tc.services;
 
+import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.Iterator;
-import java.util.PriorityQueue;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
 
+import com.tc.async.api.Sink;
+import com.tc.logging.TCLogger;
+import com.tc.logging.TCLogging;
+import com.tc.stats.LatencyHistogram;
+import com.tc.text.PrettyPrintable;
+import com.tc.text.PrettyPrinter;
 import com.tc.util.Assert;
 
 
 /**
  * A basic utility class which allows tasks to be scheduled to be run, in a background thread, at some delayed point in the
  *  future.
- * NOTE:  This timer is single-threaded as it is expected that all tasks it runs are small.
+ * NOTE:  This timer is single-threaded as it is expected that all tasks it runs are small.  Work which isn't small belongs
+ *  on a stage:  {@link #addDelayed(Sink, Object, BooleanSupplier, long)} only hands the event to the sink when it fires.
+ * <p>
+ * Timers are kept in a hashed timing wheel:  a ring of buckets, each covering one tick, where a timer goes in the bucket of
+ *  the tick it is due in, whatever lap of the wheel that is.  Every timer is also indexed by its id, so scheduling and
+ *  cancelling are O(1) no matter how many timers are pending.  The timer thread visits the bucket of each tick as it
+ *  passes and fires whatever in it is due, leaving the timers of later laps where they are.
  */
-public class SingleThreadedTimer {
+public class SingleThreadedTimer implements PrettyPrintable {
+  private static final TCLogger LOGGER = TCLogging.getLogger(SingleThreadedTimer.class);
+  private static final long DEFAULT_TICK_MILLIS = 10;
+  private static final int DEFAULT_WHEEL_SIZE = 512;
+  private static final Comparator<Timeout> DUE_ORDER = Comparator.<Timeout>comparingLong(t -> t.startTimeMillis).thenComparingLong(t -> t.id);
+
   private final TimeSource timeSource;
   private final Thread timerThread = new Thread() {
     @Override
     public void run() {
-      Runnable nextRunnable = SingleThreadedTimer.this.getNextRunnable();
-      while (null != nextRunnable) {
-        try {
-          nextRunnable.run();
-        } catch (Throwable t) {
-          System.err.println("ERROR:  Unexpected exception in timer (timed events may be dropped)");
-          t.printStackTrace();
+      List<Timeout> due = SingleThreadedTimer.this.getNextDue();
+      while (null != due) {
+        for (Timeout timeout : due) {
+          try {
+            timeout.toRun.run();
+          } catch (Throwable t) {
+            LOGGER.error("Unexpected exception in timer (timed events may be dropped)", t);
+          }
         }
-        nextRunnable = SingleThreadedTimer.this.getNextRunnable();
+        due = SingleThreadedTimer.this.getNextDue();
       }
     }};
+  private final long tickMillis;
+  private final Timeout[] wheel;
+  private final int mask;
+  private final Map<Long, Timeout> timeouts = new HashMap<>();
+  // every tick up to and including this one has been visited
+  private long processedTick;
   private boolean threadIsRunning = false;
   private long nextId = 1L;
-  private final PriorityQueue<ListElement> queue = new PriorityQueue<>(1, new Comparator<ListElement>(){
-    @Override
-    public int compare(ListElement o1, ListElement o2) {
-      long delta = o1.startTimeMillis - o2.startTimeMillis;
-      return (0 == delta)
-          ? 0
-          : ((delta < 0) ? -1 : 1);
-    }});
   private boolean isInPoke = false;
 
+  private long scheduledCount;
+  private long firedCount;
+  private long cancelledCount;
+  private long lateCount;
+  private final LatencyHistogram lateness = new LatencyHistogram();
+
   public SingleThreadedTimer(TimeSource source) {
+    this(source, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+  }
+
+  /**
+   * @param tickMillis the time covered by each bucket of the wheel, timers fire up to this late
+   * @param wheelSize the number of buckets, rounded up to a power of two
+   */
+  public SingleThreadedTimer(TimeSource source, long tickMillis, int wheelSize) {
+    Assert.assertTrue(tickMillis > 0);
+    Assert.assertTrue(wheelSize > 0);
     this.timeSource = (null != source) ? source : new TimeSource() {
       @Override
       public long currentTimeMillis() {
         return System.currentTimeMillis();
       }
     };
+    this.tickMillis = tickMillis;
+    int size = Integer.highestOneBit(wheelSize);
+    if (size < wheelSize) {
+      size <<= 1;
+    }
+    this.wheel = new Timeout[size];
+    this.mask = size - 1;
+    this.processedTick = tickOf(this.timeSource.currentTimeMillis()) - 1;
     this.timerThread.setName("SingleThreadedTimer");
   }
 
@@ -106,52 +150,84 @@ public class SingleThreadedTimer {
     return enqueueNewElement(toRun, startTimeMillis, repeatPeriodMillis);
   }
 
+  /**
+   * Hands event to target once startTimeMillis has passed, unless stillWanted says otherwise by then.  The timer thread
+   *  does nothing but the hand-off so the work happens on target's stage.
+   */
+  public synchronized <T> long addDelayed(Sink<T> target, T event, BooleanSupplier stillWanted, long startTimeMillis) {
+    SinkDispatch<T> dispatch = new SinkDispatch<>(target, event, stillWanted);
+    dispatch.id = enqueueNewElement(dispatch, startTimeMillis, 0L);
+    return dispatch.id;
+  }
+
+  /**
+   * Hands event to target every repeatPeriodMillis, starting at startTimeMillis.  The first time stillWanted says
+   *  otherwise, the timer cancels itself.
+   */
+  public synchronized <T> long addPeriodic(Sink<T> target, T event, BooleanSupplier stillWanted, long startTimeMillis, long repeatPeriodMillis) {
+    SinkDispatch<T> dispatch = new SinkDispatch<>(target, event, stillWanted);
+    dispatch.id = enqueueNewElement(dispatch, startTimeMillis, repeatPeriodMillis);
+    return dispatch.id;
+  }
+
   public synchronized boolean cancel(long id) {
-    // Note that, if this is a hot-point, we could change it to be a side Map which points into the list but this keeps things simple and the list is currently always short.
-    boolean didCancel = false;
-    Iterator<ListElement> iterator = this.queue.iterator();
-    while (!didCancel && iterator.hasNext()) {
-      ListElement next = iterator.next();
-      if (next.id == id) {
-        iterator.remove();
-        didCancel = true;
-      }
+    Timeout timeout = this.timeouts.remove(id);
+    if (null != timeout) {
+      unlink(timeout);
+      this.cancelledCount += 1;
     }
-    return didCancel;
+    return null != timeout;
   }
 
   public synchronized void cancelAll() {
-    this.queue.clear();
-  }
-
-
-  private synchronized Runnable getNextRunnable() {
-    Runnable toRun = null;
-    while (this.threadIsRunning && (null == toRun)) {
-      long millisToSleep = 0;
-      ListElement head = this.queue.peek();
-      if (null != head) {
-        long now = this.timeSource.currentTimeMillis();
-        if (head.startTimeMillis <= now) {
-          // We will run this.
-          toRun = head.toRun;
-          this.queue.remove();
-          // See if we want to discard this or re-enqueue it.
-          if (head.periodTimeMillis > 0) {
-            ListElement newElement = new ListElement(head.id, head.toRun, head.startTimeMillis + head.periodTimeMillis, head.periodTimeMillis);
-            this.queue.add(newElement);
-          }
-        } else {
-          // We will sleep.
-          millisToSleep = head.startTimeMillis - now;
-        }
-      }
-      if (null == toRun) {
-        // This will cause us to sleep until the next event, unless someone notifies us, first.
+    this.timeouts.clear();
+    for (int i = 0; i < this.wheel.length; ++i) {
+      this.wheel[i] = null;
+    }
+  }
+
+  public synchronized int getPendingCount() {
+    return this.timeouts.size();
+  }
+
+  /**
+   * @return How many timers are pending and have been scheduled, fired and cancelled, along with how late they fired.
+   *  A firing is counted late when it comes more than a tick after its due time.
+   */
+  public synchronized Map<String, Long> getStatistics() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    stats.put("Pending", (long) this.timeouts.size());
+    stats.put("Scheduled", this.scheduledCount);
+    stats.put("Fired", this.firedCount);
+    stats.put("Cancelled", this.cancelledCount);
+    stats.put("LateFirings", this.lateCount);
+    stats.put("LatenessP99Millis", this.lateness.getValueAtPercentile(99));
+    stats.put("LatenessMaxMillis", this.lateness.getMax());
+    return stats;
+  }
+
+  @Override
+  public PrettyPrinter prettyPrint(PrettyPrinter out) {
+    out.print(getClass().getName()).flush();
+    out.indent().print(getStatistics()).flush();
+    return out;
+  }
+
+
+  private synchronized List<Timeout> getNextDue() {
+    List<Timeout> due = new ArrayList<>();
+    while (this.threadIsRunning && due.isEmpty()) {
+      long now = this.timeSource.currentTimeMillis();
+      collectDue(now, due);
+      if (due.isEmpty()) {
+        // This will cause us to sleep until the next tick, unless someone notifies us, first.
         if (this.isInPoke) {
           this.isInPoke = false;
           this.notifyAll();
         }
+        long millisToSleep = this.timeouts.isEmpty()
+            ? 0
+            : Math.max(1, (tickOf(now) + 1) * this.tickMillis - now);
         try {
           this.wait(millisToSleep);
         } catch (InterruptedException e) {
@@ -160,27 +236,121 @@ public class SingleThreadedTimer {
         }
       }
     }
-    return toRun;
+    return this.threadIsRunning ? due : null;
+  }
+
+  private void collectDue(long now, List<Timeout> due) {
+    long nowTick = tickOf(now);
+    long lastCompleteTick = nowTick - 1;
+    if (lastCompleteTick - this.processedTick >= this.wheel.length) {
+      // time jumped by a whole lap or more so every bucket is in play
+      for (int i = 0; i < this.wheel.length; ++i) {
+        expireBucket(i, now, due);
+      }
+    } else {
+      for (long tick = this.processedTick + 1; tick <= lastCompleteTick; ++tick) {
+        expireBucket(bucketOf(tick), now, due);
+      }
+    }
+    this.processedTick = Math.max(this.processedTick, lastCompleteTick);
+    // the current tick is only partly over, anything in it which is already due fires now rather than a tick late
+    expireBucket(bucketOf(nowTick), now, due);
+    // buckets aren't ordered so sort what fired to keep running things in the order they were due, then scheduled
+    if (due.size() > 1) {
+      due.sort(DUE_ORDER);
+    }
+
+    for (Timeout timeout : due) {
+      long late = now - timeout.startTimeMillis;
+      this.lateness.record(late);
+      if (late > this.tickMillis) {
+        this.lateCount += 1;
+      }
+      this.firedCount += 1;
+      if (timeout.periodTimeMillis > 0) {
+        // re-enqueued before it runs so it can cancel itself
+        timeout.startTimeMillis += timeout.periodTimeMillis;
+        link(timeout);
+      } else {
+        this.timeouts.remove(timeout.id);
+      }
+    }
+  }
+
+  private void expireBucket(int bucket, long now, List<Timeout> due) {
+    Timeout timeout = this.wheel[bucket];
+    while (null != timeout) {
+      Timeout next = timeout.next;
+      if (timeout.startTimeMillis <= now) {
+        unlink(timeout);
+        due.add(timeout);
+      }
+      timeout = next;
+    }
   }
 
   private long enqueueNewElement(Runnable toRun, long startTimeMillis, long repeatPeriodMillis) {
     long id = this.nextId;
     this.nextId += 1;
-    ListElement element = new ListElement(id, toRun, startTimeMillis, repeatPeriodMillis);
-    this.queue.add(element);
+    Timeout element = new Timeout(id, toRun, startTimeMillis, repeatPeriodMillis);
+    this.timeouts.put(id, element);
+    link(element);
+    this.scheduledCount += 1;
     this.notifyAll();
     
     return id;
   }
 
+  private void link(Timeout timeout) {
+    // anything due in a tick which was already visited goes in the next one to be visited
+    int bucket = bucketOf(Math.max(tickOf(timeout.startTimeMillis), this.processedTick + 1));
+    Timeout head = this.wheel[bucket];
+    timeout.bucket = bucket;
+    timeout.previous = null;
+    timeout.next = head;
+    if (null != head) {
+      head.previous = timeout;
+    }
+    this.wheel[bucket] = timeout;
+  }
+
+  private void unlink(Timeout timeout) {
+    if (timeout.bucket < 0) {
+      return;
+    }
+    if (null != timeout.previous) {
+      timeout.previous.next = timeout.next;
+    } else {
+      this.wheel[timeout.bucket] = timeout.next;
+    }
+    if (null != timeout.next) {
+      timeout.next.previous = timeout.previous;
+    }
+    timeout.previous = null;
+    timeout.next = null;
+    timeout.bucket = -1;
+  }
 
-  private static class ListElement {
+  private long tickOf(long timeMillis) {
+    return Math.floorDiv(timeMillis, this.tickMillis);
+  }
+
+  private int bucketOf(long tick) {
+    return (int) (tick & this.mask);
+  }
+
+
+  private static class Timeout {
     public final long id;
     public final Runnable toRun;
-    public final long startTimeMillis;
+    public long startTimeMillis;
     public final long periodTimeMillis;
+    // links within the bucket, only valid while bucket isn't negative
+    public Timeout previous;
+    public Timeout next;
+    public int bucket = -1;
     
-    public ListElement(long id, Runnable toRun, long startTimeMillis, long periodTimeMillis) {
+    public Timeout(long id, Runnable toRun, long startTimeMillis, long periodTimeMillis) {
       this.id = id;
       this.toRun = toRun;
       this.startTimeMillis = startTimeMillis;
@@ -189,6 +359,29 @@ public class SingleThreadedTimer {
   }
 
 
+  private class SinkDispatch<T> implements Runnable {
+    private final Sink<T> target;
+    private final T event;
+    private final BooleanSupplier stillWanted;
+    private long id;
+
+    public SinkDispatch(Sink<T> target, T event, BooleanSupplier stillWanted) {
+      this.target = target;
+      this.event = event;
+      this.stillWanted = stillWanted;
+    }
+
+    @Override
+    public void run() {
+      if (this.stillWanted.getAsBoolean()) {
+        this.target.addSingleThreaded(this.event);
+      } else {
+        cancel(this.id);
+      }
+    }
+  }
+
+
   public interface TimeSource {
     public long currentTimeMillis();
   }
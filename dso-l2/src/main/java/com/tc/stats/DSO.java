@@ -18,6 +18,9 @@
  */
 package com.tc.stats;
 
+import com.tc.async.api.StageManager;
+import com.tc.async.api.StageQueueStats;
+import com.tc.bytes.TCByteBufferFactory;
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
 import com.tc.management.RemoteManagement;
@@ -32,6 +35,7 @@ import com.tc.object.net.DSOChannelManagerMBean;
 import com.tc.objectserver.api.ObjectInstanceMonitorMBean;
 import com.tc.objectserver.core.api.ServerConfigurationContext;
 import com.tc.objectserver.core.impl.ServerManagementContext;
+import com.tc.objectserver.entity.PassiveSyncThrottle;
 import com.tc.objectserver.handshakemanager.ClientHandshakeMonitoringInfo;
 import com.tc.objectserver.locks.LockMBean;
 import com.tc.objectserver.locks.LockManagerMBean;
@@ -40,15 +44,19 @@ import com.tc.operatorevent.TerracottaOperatorEventHistoryProvider;
 import com.tc.stats.api.ClassInfo;
 import com.tc.stats.api.DSOMBean;
 import com.tc.stats.api.Stats;
+import com.tc.stats.counter.sampled.TimeStampedCounterValue;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
@@ -89,6 +97,8 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
   private final TerracottaOperatorEventHistoryProvider operatorEventHistoryProvider;
   private final ConnectionPolicy                       connectionPolicy;
   private final RemoteManagement                       remoteManagement;
+  private final StageManager                           stageManager;
+  private final PassiveSyncThrottle                    syncThrottle;
 
   public DSO(ServerManagementContext managementContext, ServerConfigurationContext configContext,
              MBeanServer mbeanServer,
@@ -108,6 +118,8 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
     this.operatorEventHistoryProvider = operatorEventHistoryProvider;
     this.connectionPolicy = managementContext.getConnectionPolicy();
     this.remoteManagement = managementContext.getRemoteManagement();
+    this.stageManager = managementContext.getStageManager();
+    this.syncThrottle = managementContext.getPassiveSyncThrottle();
 
     // add various listeners (do this before the setupXXX() methods below so we don't ever miss anything)
     channelMgr.addEventListener(new ChannelManagerListener());
@@ -150,6 +162,16 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
     return getStats().getBroadcastRate();
   }
 
+  @Override
+  public Map<String, Map<String, Long>> getRateHistory() {
+    return getStats().getRateHistory();
+  }
+
+  @Override
+  public TimeStampedCounterValue[] getRateSamples(String rateName) {
+    return getStats().getRateSamples(rateName);
+  }
+
   @Override
   public Number[] getStatistics(String[] names) {
     return getStats().getStatistics(names);
@@ -673,4 +695,47 @@ public class DSO extends AbstractNotifyingMBean implements DSOMBean {
   public RemoteManagement getRemoteManagement() {
     return remoteManagement;
   }
+
+  @Override
+  public Map<String, Map<String, Long>> getStageLatencies() {
+    Map<String, Map<String, Long>> result = new TreeMap<>();
+    if (stageManager == null) {
+      return result;
+    }
+    for (com.tc.stats.Stats stats : stageManager.getStats()) {
+      if (stats instanceof StageQueueStats) {
+        StageQueueStats queueStats = (StageQueueStats) stats;
+        if (queueStats.getQueueWaitHistogram() != null) {
+          Map<String, Long> latencies = new LinkedHashMap<>();
+          addLatencies(latencies, "queueWait", queueStats.getQueueWaitHistogram());
+          addLatencies(latencies, "handler", queueStats.getHandlerHistogram());
+          result.put(queueStats.getName(), latencies);
+        }
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getBufferPoolStatistics() {
+    return TCByteBufferFactory.getPoolStatistics();
+  }
+
+  @Override
+  public Map<String, Map<String, Long>> getPassiveSyncProgress() {
+    return (syncThrottle != null) ? syncThrottle.getSyncProgress() : Collections.emptyMap();
+  }
+
+  @Override
+  public Map<String, Long> getPassiveSyncThrottle() {
+    return (syncThrottle != null) ? syncThrottle.getStatistics() : Collections.emptyMap();
+  }
+
+  private static void addLatencies(Map<String, Long> latencies, String prefix, LatencyHistogram histogram) {
+    latencies.put(prefix + "Count", histogram.getCount());
+    latencies.put(prefix + "P50Micros", TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(50)));
+    latencies.put(prefix + "P99Micros", TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(99)));
+    latencies.put(prefix + "P999Micros", TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(99.9)));
+    latencies.put(prefix + "MaxMicros", TimeUnit.NANOSECONDS.toMicros(histogram.getMax()));
+  }
 }
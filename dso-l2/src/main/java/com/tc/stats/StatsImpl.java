@@ -22,9 +22,13 @@ import com.tc.objectserver.core.api.GlobalServerStats;
 import com.tc.objectserver.core.impl.ServerManagementContext;
 import com.tc.stats.api.Stats;
 import com.tc.stats.counter.sampled.SampledCounter;
+import com.tc.stats.counter.sampled.SampledCounterImpl;
+import com.tc.stats.counter.sampled.TimeStampedCounterValue;
 import com.tc.stats.counter.sampled.derived.SampledRateCounter;
 
 import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * This is the root interface to the global DSO Server statistics.
@@ -41,6 +45,7 @@ public class StatsImpl implements Stats {
   private final SampledCounter       globalLockRecallRate;
   private final SampledRateCounter   transactionSizeRate;
   private final SampledCounter       broadcastRate;
+  private final Map<String, SampledCounter> rates = new LinkedHashMap<>();
 
   public StatsImpl(ServerManagementContext context) {
     this.serverStats = context.getServerStats();
@@ -49,6 +54,13 @@ public class StatsImpl implements Stats {
     this.globalLockRecallRate = serverStats.getGlobalLockRecallCounter();
     this.transactionSizeRate = serverStats.getTransactionSizeCounter();
     this.broadcastRate = serverStats.getBroadcastCounter();
+
+    this.rates.put("TransactionRate", this.txnRate);
+    this.rates.put("WriteOperationRate", serverStats.getOperationCounter());
+    this.rates.put("ReadOperationRate", this.faultRate);
+    this.rates.put("BroadcastRate", this.broadcastRate);
+    this.rates.put("GlobalLockRecallRate", this.globalLockRecallRate);
+    this.rates.put("TransactionSizeRate", this.transactionSizeRate);
   }
 
   @Override
@@ -118,4 +130,31 @@ public class StatsImpl implements Stats {
   public long getWriteOperationRate() {
     return serverStats.getOperationCounter().getMostRecentSample().getCounterValue();
   }
+
+  @Override
+  public Map<String, Map<String, Long>> getRateHistory() {
+    Map<String, Map<String, Long>> result = new LinkedHashMap<>();
+    for (Map.Entry<String, SampledCounter> rate : rates.entrySet()) {
+      SampledCounter counter = rate.getValue();
+      Map<String, Long> history = new LinkedHashMap<>();
+      history.put("Samples", (long) counter.getAllSampleValues().length);
+      if (counter instanceof SampledCounterImpl) {
+        history.put("IntervalMillis", ((SampledCounterImpl) counter).getIntervalMillis());
+      }
+      history.put("Min", counter.getMinSample());
+      history.put("Max", counter.getMaxSample());
+      history.put("Mean", counter.getMeanSample());
+      history.put("P50", counter.getSamplePercentile(50));
+      history.put("P90", counter.getSamplePercentile(90));
+      history.put("P99", counter.getSamplePercentile(99));
+      result.put(rate.getKey(), history);
+    }
+    return result;
+  }
+
+  @Override
+  public TimeStampedCounterValue[] getRateSamples(String rateName) {
+    SampledCounter counter = rates.get(rateName);
+    return (counter != null) ? counter.getAllSampleValues() : new TimeStampedCounterValue[0];
+  }
 }
@@ -107,4 +107,27 @@ public interface DSOMBean extends Stats, TerracottaMBean {
 
   RemoteManagement getRemoteManagement();
 
+  /**
+   * Queue wait and handler time percentiles (p50, p99, p999 and max, in microseconds) for each SEDA stage, keyed by
+   * stage name. Empty unless stage latency tracking (tc.stage.monitor.latency.enabled) is turned on.
+   */
+  Map<String, Map<String, Long>> getStageLatencies();
+
+  /**
+   * Usage and leak accounting of the comms byte buffer pools, see TCByteBufferFactory#getPoolStatistics().
+   */
+  Map<String, Long> getBufferPoolStatistics();
+
+  /**
+   * Progress of the latest passive sync to each passive (entities, payloads and bytes sent, time spent and paused),
+   * keyed by passive.
+   */
+  Map<String, Map<String, Long>> getPassiveSyncProgress();
+
+  /**
+   * State of the passive sync throttle:  the current level as a percentage of unthrottled sync, the live latency and
+   * queue depth it last saw and how often it backed off.
+   */
+  Map<String, Long> getPassiveSyncThrottle();
+
 }
@@ -18,6 +18,10 @@
  */
 package com.tc.stats.api;
 
+import com.tc.stats.counter.sampled.TimeStampedCounterValue;
+
+import java.util.Map;
+
 public interface Stats {
 
   Number[] getStatistics(String[] names);
@@ -42,4 +46,16 @@ public interface Stats {
 
   long getWriteOperationRate();
 
+  /**
+   * Trend of each global rate over its sample history:  the number of samples held, the sampling interval and the min,
+   * max, mean, p50, p90 and p99 of the samples, keyed by rate name (TransactionRate, WriteOperationRate, ...).
+   */
+  Map<String, Map<String, Long>> getRateHistory();
+
+  /**
+   * @param rateName one of the keys of {@link #getRateHistory()}
+   * @return the sample history of the named rate, most recent first, empty for an unknown rate
+   */
+  TimeStampedCounterValue[] getRateSamples(String rateName);
+
 }
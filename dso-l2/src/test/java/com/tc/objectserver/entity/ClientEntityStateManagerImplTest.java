@@ -37,6 +37,7 @@ import com.tc.objectserver.core.impl.ManagementTopologyEventCollector;
 import com.tc.util.Assert;
 import static com.tc.util.Assert.assertEquals;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertFalse;
@@ -120,6 +121,37 @@ public class ClientEntityStateManagerImplTest {
     assertTrue(verifyNoReferences(new EntityID("foo", "bar")));
   }
 
+  @Test
+  public void testExpectedReferences() throws Exception {
+    ClientEntityStateManager tracking = new ClientEntityStateManagerImpl(true);
+    EntityID entityID = new EntityID("foo", "bar");
+    EntityID synced = new EntityID("foo", "synced");
+    ClientID client1 = new ClientID(1);
+    ClientID client2 = new ClientID(2);
+    // client1 fetches twice and releases once so it still holds a reference
+    tracking.addExpectedReference(client1, entityID);
+    tracking.addExpectedReference(client1, entityID);
+    tracking.addExpectedReference(client2, entityID);
+    tracking.removeExpectedReference(client1, entityID);
+    tracking.removeExpectedReference(client2, entityID);
+    // releases of references made before this server was watching are ignored
+    tracking.removeExpectedReference(client2, synced);
+    tracking.expectedReferencesUnknown(synced);
+
+    ReconnectReadiness readiness = tracking.takeExpectedReferences();
+    assertEquals(Collections.singleton(client1), readiness.getWaitingClients().get(entityID));
+    assertFalse(readiness.isReady(synced));
+    readiness.clientReconnected(client1);
+    assertTrue(readiness.isReady(entityID));
+    assertFalse(readiness.isReady(synced));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testExpectedReferencesNotTracked() throws Exception {
+    clientEntityStateManager.addExpectedReference(new ClientID(1), new EntityID("foo", "bar"));
+    clientEntityStateManager.takeExpectedReferences();
+  }
+
   private boolean addReference(ClientDescriptorImpl clientID, EntityID descriptor) {
     // This only fails by asserting.
     boolean didSucceed = false;
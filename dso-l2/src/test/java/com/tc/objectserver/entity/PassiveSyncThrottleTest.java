@@ -0,0 +1,129 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.entity;
+
+import com.tc.net.ClientID;
+import com.tc.net.NodeID;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PassiveSyncThrottleTest {
+  private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final AtomicInteger queueDepth = new AtomicInteger();
+  private final PassiveSyncThrottle throttle = new PassiveSyncThrottle(true, 0.1, INTERVAL, 2.0, 1000, 0, this.queueDepth::get);
+  private long now = System.nanoTime();
+
+  @Test
+  public void testBacksOffWhenLiveLatencyRises() throws Exception {
+    liveInterval(2 * MILLI);
+    Assert.assertEquals(1.0, this.throttle.getLevel(), 0.0);
+    Assert.assertEquals(0, this.throttle.pauseFor(MILLI, this.now));
+
+    liveInterval(10 * MILLI);
+    Assert.assertEquals(0.5, this.throttle.getLevel(), 0.0);
+    // at half speed sync pauses as long as it worked
+    Assert.assertEquals(MILLI, this.throttle.pauseFor(MILLI, this.now));
+
+    // back at the baseline the level climbs back one step per interval
+    liveInterval(2 * MILLI);
+    Assert.assertEquals(0.6, this.throttle.getLevel(), 0.001);
+  }
+
+  @Test
+  public void testBacksOffWhenLiveQueueIsDeep() throws Exception {
+    this.queueDepth.set(2000);
+    for (int i = 0; i < 10; ++i) {
+      liveInterval(MILLI);
+    }
+    Assert.assertEquals(0.1, this.throttle.getLevel(), 0.0);
+    Assert.assertEquals(2000L, this.throttle.getStatistics().get("LiveQueueDepth").longValue());
+    Assert.assertEquals(10L, this.throttle.getStatistics().get("LevelPercent").longValue());
+  }
+
+  @Test
+  public void testIdleRestoresFullSpeed() throws Exception {
+    this.queueDepth.set(2000);
+    liveInterval(MILLI);
+    liveInterval(MILLI);
+    Assert.assertEquals(0.25, this.throttle.getLevel(), 0.0);
+    this.queueDepth.set(0);
+    this.now += INTERVAL;
+    this.throttle.adjust(this.now);
+    Assert.assertEquals(1.0, this.throttle.getLevel(), 0.0);
+  }
+
+  @Test
+  public void testSubMillisecondLatencyIsNoise() throws Exception {
+    liveInterval(10_000);
+    liveInterval(500_000);
+    Assert.assertEquals(1.0, this.throttle.getLevel(), 0.0);
+  }
+
+  @Test
+  public void testDisabledNeverPauses() throws Exception {
+    PassiveSyncThrottle disabled = PassiveSyncThrottle.disabled();
+    disabled.recordLiveLatency(TimeUnit.SECONDS.toNanos(1));
+    Assert.assertEquals(0, disabled.pauseFor(TimeUnit.SECONDS.toNanos(1), this.now + TimeUnit.MINUTES.toNanos(1)));
+    Assert.assertEquals(1.0, disabled.getLevel(), 0.0);
+  }
+
+  @Test
+  public void testPayloadRateCap() throws Exception {
+    PassiveSyncThrottle capped = new PassiveSyncThrottle(true, 0.1, INTERVAL, 2.0, 1000, 1000, this.queueDepth::get);
+    // sending only accounts for the bytes, the sync thread pauses for them when it paces
+    capped.accountPayload(500, this.now);
+    Assert.assertEquals(500 * MILLI, capped.pauseFor(0, this.now));
+    capped.accountPayload(500, this.now);
+    Assert.assertEquals(1000 * MILLI, capped.pauseFor(0, this.now));
+    Assert.assertEquals(0, capped.pauseFor(0, this.now + 1000 * MILLI));
+  }
+
+  @Test
+  public void testSyncProgress() throws Exception {
+    NodeID passive = new ClientID(1);
+    PassiveSyncWindow window = new PassiveSyncWindow(100, this.throttle);
+    window.syncStarted(passive, 2);
+    window.entitySynced();
+    Map<String, Long> progress = this.throttle.getSyncProgress().get(passive.toString());
+    Assert.assertEquals(2L, progress.get("EntitiesTotal").longValue());
+    Assert.assertEquals(1L, progress.get("EntitiesSynced").longValue());
+    Assert.assertEquals(0L, progress.get("Complete").longValue());
+    window.entitySynced();
+    window.syncFinished();
+    Assert.assertEquals(1L, this.throttle.getSyncProgress().get(passive.toString()).get("Complete").longValue());
+    this.throttle.passiveRemoved(passive);
+    Assert.assertTrue(this.throttle.getSyncProgress().isEmpty());
+  }
+
+  private void liveInterval(long latency) {
+    for (int i = 0; i < 10; ++i) {
+      this.throttle.recordLiveLatency(latency);
+    }
+    this.now += INTERVAL;
+    this.throttle.adjust(this.now);
+  }
+}
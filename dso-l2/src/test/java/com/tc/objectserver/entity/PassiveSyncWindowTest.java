@@ -0,0 +1,103 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.entity;
+
+import com.tc.l2.msg.ReplicationResultCode;
+import com.tc.net.ClientID;
+import com.tc.net.NodeID;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class PassiveSyncWindowTest {
+  private final NodeID passive = new ClientID(1);
+
+  @Test
+  public void testPayloadsWithinWindowDoNotWait() throws Exception {
+    PassiveSyncWindow window = new PassiveSyncWindow(100);
+    Assert.assertTrue(window.isPipelined());
+    for (int i = 0; i < 10; ++i) {
+      // nobody ever acks these so any wait would hang the test
+      window.payloadSent(newWaiter(), 10);
+    }
+    window.controlSent(newWaiter());
+  }
+
+  @Test
+  public void testFullWindowWaitsForOldestPayload() throws Exception {
+    PassiveSyncWindow window = new PassiveSyncWindow(100);
+    ActivePassiveAckWaiter first = newWaiter();
+    window.payloadSent(first, 60);
+    CountDownLatch sent = sendInBackground(window, newWaiter(), 60);
+    Assert.assertFalse(sent.await(200, TimeUnit.MILLISECONDS));
+    first.didReceiveOnPassive(this.passive);
+    Assert.assertTrue(sent.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testNotPipelinedWaitsForEveryMessage() throws Exception {
+    PassiveSyncWindow window = new PassiveSyncWindow(0);
+    Assert.assertFalse(window.isPipelined());
+    ActivePassiveAckWaiter payload = newWaiter();
+    CountDownLatch sent = sendInBackground(window, payload, 1);
+    Assert.assertFalse(sent.await(200, TimeUnit.MILLISECONDS));
+    payload.didReceiveOnPassive(this.passive);
+    Assert.assertTrue(sent.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testDrainWaitsForControlCompletion() throws Exception {
+    PassiveSyncWindow window = new PassiveSyncWindow(100);
+    ActivePassiveAckWaiter payload = newWaiter();
+    ActivePassiveAckWaiter control = newWaiter();
+    window.payloadSent(payload, 10);
+    window.controlSent(control);
+    CountDownLatch drained = new CountDownLatch(1);
+    Thread drainer = new Thread(() -> {
+      window.drain();
+      drained.countDown();
+    });
+    drainer.start();
+    payload.didReceiveOnPassive(this.passive);
+    Assert.assertFalse(drained.await(200, TimeUnit.MILLISECONDS));
+    control.didCompleteOnPassive(this.passive, true, ReplicationResultCode.SUCCESS);
+    Assert.assertTrue(drained.await(10, TimeUnit.SECONDS));
+    drainer.join();
+  }
+
+  private ActivePassiveAckWaiter newWaiter() {
+    return new ActivePassiveAckWaiter(Collections.singleton(this.passive), null);
+  }
+
+  private static CountDownLatch sendInBackground(PassiveSyncWindow window, ActivePassiveAckWaiter waiter, int bytes) {
+    CountDownLatch sent = new CountDownLatch(1);
+    Thread sender = new Thread(() -> {
+      window.payloadSent(waiter, bytes);
+      sent.countDown();
+    });
+    sender.setDaemon(true);
+    sender.start();
+    return sent;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.entity;
+
+import com.tc.net.ClientID;
+import com.tc.object.EntityID;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ReconnectReadinessTest {
+  private final ClientID client1 = new ClientID(1);
+  private final ClientID client2 = new ClientID(2);
+  private final EntityID shared = new EntityID("foo", "shared");
+  private final EntityID single = new EntityID("foo", "single");
+  private final EntityID synced = new EntityID("foo", "synced");
+
+  @Test
+  public void testEntityReadyOnceAllItsClientsReconnect() throws Exception {
+    ReconnectReadiness readiness = new ReconnectReadiness(expected(), Collections.emptySet());
+    Assert.assertFalse(readiness.isReady(this.shared));
+    Assert.assertFalse(readiness.isReady(this.single));
+    Assert.assertTrue(readiness.isReady(new EntityID("foo", "unused")));
+
+    Assert.assertEquals(Collections.singletonList(this.single), readiness.clientReconnected(this.client1));
+    Assert.assertTrue(readiness.isReady(this.single));
+    Assert.assertFalse(readiness.isReady(this.shared));
+    Assert.assertEquals(Collections.singleton(this.client2), readiness.getWaitingClients().get(this.shared));
+
+    // reconnecting twice changes nothing
+    Assert.assertTrue(readiness.clientReconnected(this.client1).isEmpty());
+    Assert.assertEquals(Collections.singletonList(this.shared), readiness.clientReconnected(this.client2));
+    Assert.assertTrue(readiness.getWaitingEntities().isEmpty());
+    Assert.assertEquals(2L, (long) readiness.getStatistics().get("ReadyEarly"));
+  }
+
+  @Test
+  public void testUnknownEntityWaitsForWholeReconnect() throws Exception {
+    ReconnectReadiness readiness = new ReconnectReadiness(expected(), Collections.singleton(this.synced));
+    readiness.clientReconnected(this.client1);
+    readiness.clientReconnected(this.client2);
+    Assert.assertFalse(readiness.isReady(this.synced));
+    Assert.assertEquals(Collections.emptySet(), readiness.getWaitingClients().get(this.synced));
+
+    Assert.assertEquals(Collections.singleton(this.synced), readiness.reconnectComplete());
+    Assert.assertTrue(readiness.isReady(this.synced));
+    Assert.assertTrue(readiness.isComplete());
+  }
+
+  @Test
+  public void testCompleteReleasesClientsThatNeverCame() throws Exception {
+    ReconnectReadiness readiness = new ReconnectReadiness(expected(), Collections.emptySet());
+    readiness.clientReconnected(this.client2);
+    Assert.assertEquals(new HashSet<>(Arrays.asList(this.shared, this.single)), readiness.reconnectComplete());
+    Assert.assertTrue(readiness.isReady(this.shared));
+    Assert.assertTrue(readiness.clientReconnected(this.client1).isEmpty());
+  }
+
+  @Test
+  public void testLifecycleResendsForUnexpectedEntityWaitForWholeReconnect() throws Exception {
+    EntityID unused = new EntityID("foo", "unused");
+    ReconnectReadiness readiness = new ReconnectReadiness(expected(), Collections.singleton(this.synced));
+    Assert.assertTrue(readiness.holdsLifecycleResends(unused));
+    Assert.assertFalse(readiness.holdsLifecycleResends(this.single));
+    Assert.assertFalse(readiness.holdsLifecycleResends(this.synced));
+    // still held once every expected client is back
+    readiness.clientReconnected(this.client1);
+    readiness.clientReconnected(this.client2);
+    Assert.assertTrue(readiness.holdsLifecycleResends(unused));
+    Assert.assertFalse(readiness.holdsLifecycleResends(this.single));
+    readiness.reconnectComplete();
+    Assert.assertFalse(readiness.holdsLifecycleResends(unused));
+  }
+
+  private Map<EntityID, Set<ClientID>> expected() {
+    Map<EntityID, Set<ClientID>> expected = new HashMap<>();
+    expected.put(this.shared, new HashSet<>(Arrays.asList(this.client1, this.client2)));
+    expected.put(this.single, Collections.singleton(this.client1));
+    return expected;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+
+public class AdaptiveBatchControllerTest {
+  private static final long FAST = TimeUnit.MICROSECONDS.toNanos(100);
+  private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(20);
+
+  @Test
+  public void testWindowGrowsWhileAcksAreFast() throws Exception {
+    AdaptiveBatchController controller = new AdaptiveBatchController(1, 8, 1, 64, 1024 * 1024, 1, TimeUnit.MILLISECONDS);
+    Assert.assertEquals(1, controller.getWindow());
+    long now = 0;
+    for (int i = 0; i < 100; ++i) {
+      now += FAST;
+      controller.batchAcknowledged(FAST, now);
+    }
+    Assert.assertEquals(8, controller.getWindow());
+  }
+
+  @Test
+  public void testWindowHalvesOncePerRoundTrip() throws Exception {
+    AdaptiveBatchController controller = new AdaptiveBatchController(1, 8, 8, 64, 1024 * 1024, 1, TimeUnit.MILLISECONDS);
+    long now = FAST;
+    controller.batchAcknowledged(FAST, now);
+    Assert.assertEquals(8, controller.getWindow());
+
+    controller.batchAcknowledged(SLOW, now);
+    Assert.assertEquals(4, controller.getWindow());
+    // more slow acks from the same round trip don't back off again
+    controller.batchAcknowledged(SLOW, now);
+    Assert.assertEquals(4, controller.getWindow());
+
+    now += SLOW;
+    controller.batchAcknowledged(SLOW, now);
+    Assert.assertEquals(2, controller.getWindow());
+    for (int i = 0; i < 10; ++i) {
+      now += SLOW;
+      controller.batchAcknowledged(SLOW, now);
+    }
+    Assert.assertEquals(1, controller.getWindow());
+  }
+
+  @Test
+  public void testTargetFollowsMinimumLatency() throws Exception {
+    AdaptiveBatchController controller = new AdaptiveBatchController(1, 8, 1, 64, 1024 * 1024, 10, TimeUnit.MICROSECONDS);
+    Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(10), controller.getTargetLatency());
+    controller.batchAcknowledged(FAST, FAST);
+    Assert.assertEquals(2 * FAST, controller.getTargetLatency());
+  }
+
+  @Test
+  public void testFullBatchIsSentDespiteWindow() throws Exception {
+    AdaptiveBatchController controller = new AdaptiveBatchController(1, 8, 2, 4, 1000, 1, TimeUnit.MILLISECONDS);
+    Assert.assertTrue(controller.shouldSend(1, 1, 10));
+    Assert.assertFalse(controller.shouldSend(2, 1, 10));
+    Assert.assertTrue(controller.shouldSend(2, 4, 10));
+    Assert.assertTrue(controller.shouldSend(2, 1, 1000));
+  }
+}
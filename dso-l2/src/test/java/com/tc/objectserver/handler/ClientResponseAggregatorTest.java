@@ -0,0 +1,166 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.handler;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tc.entity.VoltronEntityAppliedResponse;
+import com.tc.entity.VoltronEntityMultiResponse;
+import com.tc.entity.VoltronEntityMultiResponseImpl;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.ClientID;
+import com.tc.net.protocol.tcm.MessageChannel;
+import com.tc.net.protocol.tcm.MessageMonitor;
+import com.tc.net.protocol.tcm.TCMessage;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.object.session.SessionID;
+import com.tc.object.tx.TransactionID;
+import com.tc.objectserver.handshakemanager.ServerClientHandshakeManager;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.terracotta.exception.EntityException;
+import org.terracotta.exception.EntityNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+
+public class ClientResponseAggregatorTest {
+  private static final byte[] RESULT = new byte[] {1};
+
+  private final ClientID client = new ClientID(1);
+  private final TransactionID first = new TransactionID(1);
+  private final TransactionID second = new TransactionID(2);
+  private MessageChannel channel;
+  private List<VoltronEntityMultiResponse> created;
+  private Queue<TCMessage> scheduled;
+  private ClientResponseAggregator aggregator;
+
+  @Before
+  public void setUp() throws Exception {
+    this.channel = mock(MessageChannel.class);
+    this.created = new ArrayList<>();
+    when(this.channel.getRemoteNodeID()).thenReturn(this.client);
+    when(this.channel.getAttachment(ServerClientHandshakeManager.QUEUE_DEPTH_ATTACHMENT)).thenReturn(Boolean.TRUE);
+    when(this.channel.createMessage(TCMessageType.VOLTRON_ENTITY_MULTI_RESPONSE)).thenAnswer(invocation -> {
+      VoltronEntityMultiResponse response = new VoltronEntityMultiResponseImpl(new SessionID(0), mock(MessageMonitor.class), new TCByteBufferOutputStream(), this.channel, TCMessageType.VOLTRON_ENTITY_MULTI_RESPONSE);
+      this.created.add(response);
+      return response;
+    });
+    this.scheduled = new LinkedList<>();
+    this.aggregator = new ClientResponseAggregator(id -> Optional.of(this.channel), this.scheduled::add, () -> 7);
+  }
+
+  @Test
+  public void testAcksShareOneMessage() throws Exception {
+    this.aggregator.received(this.client, this.first, null);
+    this.aggregator.result(this.client, this.first, RESULT);
+    this.aggregator.retired(this.client, this.first);
+    // only the first ack schedules a flush
+    Assert.assertEquals(1, this.scheduled.size());
+    flush();
+
+    VoltronEntityMultiResponse response = this.created.get(0);
+    Assert.assertEquals(Arrays.asList(this.first), Arrays.asList(response.getReceivedTransactions()));
+    Assert.assertEquals(Collections.singleton(this.first), response.getResults().keySet());
+    Assert.assertEquals(Arrays.asList(this.first), Arrays.asList(response.getRetiredTransactions()));
+    Assert.assertEquals(7, response.getQueueDepth());
+
+    Map<String, Long> stats = this.aggregator.getStatistics().get(this.client);
+    Assert.assertEquals(1L, stats.get("MessagesSent").longValue());
+    Assert.assertEquals(3L, stats.get("AcksSent").longValue());
+  }
+
+  @Test
+  public void testOnlyUnpersistedTransactionIsHeld() throws Exception {
+    CompletableFuture<Void> persisted = new CompletableFuture<>();
+    this.aggregator.received(this.client, this.first, persisted);
+    this.aggregator.received(this.client, this.second, null);
+    this.aggregator.result(this.client, this.first, RESULT);
+    this.aggregator.result(this.client, this.second, RESULT);
+    flush();
+
+    // the second transaction doesn't wait for the persistence of the first
+    VoltronEntityMultiResponse response = this.created.get(0);
+    Assert.assertEquals(Arrays.asList(this.second), Arrays.asList(response.getReceivedTransactions()));
+    Assert.assertEquals(Collections.singleton(this.second), response.getResults().keySet());
+    Assert.assertTrue(this.scheduled.isEmpty());
+
+    // persisting the first one schedules the rest
+    persisted.complete(null);
+    Assert.assertEquals(1, this.scheduled.size());
+    flush();
+    response = this.created.get(1);
+    Assert.assertEquals(Arrays.asList(this.first), Arrays.asList(response.getReceivedTransactions()));
+    Assert.assertEquals(Collections.singleton(this.first), response.getResults().keySet());
+    Assert.assertEquals(2L, this.aggregator.getStatistics().get(this.client).get("AcksHeldForPersistence").longValue());
+  }
+
+  @Test
+  public void testFailureKeepsItsPlace() throws Exception {
+    VoltronEntityAppliedResponse failMessage = mock(VoltronEntityAppliedResponse.class);
+    when(this.channel.createMessage(TCMessageType.VOLTRON_ENTITY_COMPLETED_RESPONSE)).thenReturn(failMessage);
+    EntityException failure = new EntityNotFoundException("class", "name");
+    this.aggregator.received(this.client, this.first, null);
+    this.aggregator.failure(this.client, this.first, failure);
+    this.aggregator.retired(this.client, this.first);
+    flush();
+
+    verify(failMessage).setFailure(this.first, failure, false);
+    verify(failMessage).send();
+    // received before the failure, retired after it
+    Assert.assertEquals(2, this.created.size());
+    Assert.assertEquals(Arrays.asList(this.first), Arrays.asList(this.created.get(0).getReceivedTransactions()));
+    Assert.assertEquals(0, this.created.get(0).getRetiredTransactions().length);
+    Assert.assertEquals(Arrays.asList(this.first), Arrays.asList(this.created.get(1).getRetiredTransactions()));
+  }
+
+  @Test
+  public void testQueueDepthOnlyGoesToClientsWhichAcceptIt() throws Exception {
+    when(this.channel.getAttachment(ServerClientHandshakeManager.QUEUE_DEPTH_ATTACHMENT)).thenReturn(null);
+    this.aggregator.received(this.client, this.first, null);
+    flush();
+    Assert.assertEquals(-1, this.created.get(0).getQueueDepth());
+  }
+
+  @Test
+  public void testDisconnectedClientIsDropped() throws Exception {
+    ClientResponseAggregator gone = new ClientResponseAggregator(id -> Optional.empty(), this.scheduled::add, () -> -1);
+    gone.received(this.client, this.first, null);
+    Assert.assertTrue(this.scheduled.isEmpty());
+    Assert.assertTrue(gone.getStatistics().isEmpty());
+  }
+
+  private void flush() {
+    TCMessage next;
+    while ((next = this.scheduled.poll()) != null) {
+      this.aggregator.flush((VoltronEntityMultiResponse) next);
+    }
+  }
+}
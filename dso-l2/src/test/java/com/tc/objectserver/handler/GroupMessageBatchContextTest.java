@@ -0,0 +1,151 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.handler;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.tc.l2.msg.IBatchableGroupMessage;
+import com.tc.net.NodeID;
+import com.tc.net.groups.AbstractGroupMessage;
+import com.tc.net.groups.GroupManager;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class GroupMessageBatchContextTest {
+  private final NodeID target = mock(NodeID.class);
+  private GroupManager<AbstractGroupMessage> groupManager;
+  private AtomicInteger flushRequests;
+
+  @SuppressWarnings("unchecked")
+  @Before
+  public void setUp() throws Exception {
+    this.groupManager = mock(GroupManager.class);
+    this.flushRequests = new AtomicInteger();
+  }
+
+  @Test
+  public void testFixedModeSendsWhileUnderIdealInFlight() throws Exception {
+    GroupMessageBatchContext<TestBatch, Integer> context = new GroupMessageBatchContext<>(TestBatch::new, this.groupManager, this.target, 3, 1, this.flushRequests::incrementAndGet);
+    context.batchMessage(1);
+    context.flushBatch();
+    context.batchMessage(2);
+    context.flushBatch();
+    verify(this.groupManager, times(1)).sendToWithSentCallback(eq(this.target), any(AbstractGroupMessage.class), any(Runnable.class));
+    // the network finishing the first message lets the next one go
+    context.handleNetworkDone();
+    Assert.assertEquals(1, this.flushRequests.get());
+    context.flushBatch();
+    verify(this.groupManager, times(2)).sendToWithSentCallback(eq(this.target), any(AbstractGroupMessage.class), any(Runnable.class));
+    Assert.assertTrue(context.getStatistics().isEmpty());
+  }
+
+  @Test
+  public void testAdaptiveModeWaitsForAcks() throws Exception {
+    GroupMessageBatchContext<TestBatch, Integer> context = createAdaptive(1, 64);
+    context.batchMessage(1);
+    context.flushBatch();
+    context.batchMessage(2);
+    context.batchMessage(3);
+    // writing to the network doesn't open the window, only the ack does
+    context.handleNetworkDone();
+    context.flushBatch();
+    verify(this.groupManager, times(1)).sendToWithSentCallback(eq(this.target), any(AbstractGroupMessage.class), any(Runnable.class));
+    Map<String, Long> stats = context.getStatistics();
+    Assert.assertEquals(Long.valueOf(1), stats.get("InFlight"));
+    Assert.assertEquals(Long.valueOf(2), stats.get("Pending"));
+
+    // acks for elements which don't end a batch are ignored
+    context.acknowledged(2);
+    Assert.assertEquals(1, this.flushRequests.get());
+    context.acknowledged(1);
+    Assert.assertEquals(2, this.flushRequests.get());
+    context.flushBatch();
+    verify(this.groupManager, times(2)).sendToWithSentCallback(eq(this.target), any(AbstractGroupMessage.class), any(Runnable.class));
+    stats = context.getStatistics();
+    Assert.assertEquals(Long.valueOf(1), stats.get("InFlight"));
+    Assert.assertEquals(Long.valueOf(2), stats.get("InFlightElements"));
+    Assert.assertEquals(Long.valueOf(2), stats.get("Batches"));
+  }
+
+  @Test
+  public void testAdaptiveModeAckRetiresOlderBatches() throws Exception {
+    GroupMessageBatchContext<TestBatch, Integer> context = createAdaptive(4, 64);
+    for (int i = 1; i <= 3; ++i) {
+      context.batchMessage(i);
+      context.flushBatch();
+    }
+    Assert.assertEquals(Long.valueOf(3), context.getStatistics().get("InFlight"));
+    context.acknowledged(3);
+    Assert.assertEquals(Long.valueOf(0), context.getStatistics().get("InFlight"));
+    Assert.assertEquals(Long.valueOf(0), context.getStatistics().get("ReplicationLagMicros"));
+  }
+
+  @Test
+  public void testAdaptiveModeSendsFullBatchWhenWindowIsClosed() throws Exception {
+    GroupMessageBatchContext<TestBatch, Integer> context = createAdaptive(1, 3);
+    context.batchMessage(0);
+    context.flushBatch();
+    for (int i = 1; i <= 3; ++i) {
+      context.batchMessage(i);
+      context.flushBatch();
+    }
+    verify(this.groupManager, times(2)).sendToWithSentCallback(eq(this.target), any(AbstractGroupMessage.class), any(Runnable.class));
+    Assert.assertEquals(Long.valueOf(2), context.getStatistics().get("InFlight"));
+  }
+
+  private GroupMessageBatchContext<TestBatch, Integer> createAdaptive(int window, int maxBatch) {
+    AdaptiveBatchController controller = new AdaptiveBatchController(1, window, window, maxBatch, 1024 * 1024, 1, TimeUnit.MILLISECONDS);
+    return new GroupMessageBatchContext<>(TestBatch::new, this.groupManager, this.target, controller, e -> e, e -> 100, this.flushRequests::incrementAndGet);
+  }
+
+  private static class TestBatch implements IBatchableGroupMessage<Integer> {
+    private final List<Integer> elements = new ArrayList<>();
+
+    TestBatch(Integer initial, long id) {
+      this.elements.add(initial);
+    }
+
+    @Override
+    public void addToBatch(Integer element) {
+      this.elements.add(element);
+    }
+
+    @Override
+    public int getBatchSize() {
+      return this.elements.size();
+    }
+
+    @Override
+    public AbstractGroupMessage asAbstractGroupMessage() {
+      return null;
+    }
+  }
+}
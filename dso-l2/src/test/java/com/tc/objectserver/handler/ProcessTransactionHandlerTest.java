@@ -33,11 +33,16 @@ import com.tc.async.api.SpecializedEventContext;
 import com.tc.async.api.Stage;
 import com.tc.async.api.StageManager;
 import com.tc.entity.NetworkVoltronEntityMessage;
+import com.tc.entity.ResendVoltronEntityMessage;
 import com.tc.entity.VoltronEntityAppliedResponse;
 import com.tc.entity.VoltronEntityMessage;
 import com.tc.entity.VoltronEntityReceivedResponse;
 import com.tc.entity.VoltronEntityRetiredResponse;
+import com.tc.l2.api.L2Coordinator;
+import com.tc.l2.api.ReplicatedClusterStateManager;
+import com.tc.l2.state.StateManager;
 import com.tc.net.ClientID;
+import com.tc.net.NodeID;
 import com.tc.net.protocol.tcm.MessageChannel;
 import com.tc.net.protocol.tcm.TCMessageType;
 import com.tc.object.ClientInstanceID;
@@ -47,17 +52,23 @@ import com.tc.object.FetchID;
 import com.tc.object.net.DSOChannelManager;
 import com.tc.object.net.NoSuchChannelException;
 import com.tc.object.tx.TransactionID;
+import com.tc.objectserver.api.EntityManager;
+import com.tc.objectserver.api.ManagedEntity;
 import com.tc.objectserver.api.ServerEntityAction;
+import com.tc.objectserver.api.ServerEntityRequest;
 import com.tc.objectserver.core.api.ITopologyEventCollector;
 import com.tc.objectserver.core.api.ServerConfigurationContext;
 import com.tc.objectserver.entity.ClientEntityStateManager;
 import com.tc.objectserver.entity.ClientEntityStateManagerImpl;
 import com.tc.objectserver.entity.EntityManagerImpl;
 import com.tc.objectserver.entity.LocalPipelineFlushMessage;
+import com.tc.objectserver.entity.MessagePayload;
 import com.tc.objectserver.entity.PassiveReplicationBroker;
 import com.tc.objectserver.entity.RequestProcessor;
+import com.tc.objectserver.handshakemanager.ServerClientHandshakeManager;
 import com.tc.objectserver.persistence.EntityData;
 import com.tc.objectserver.persistence.EntityPersistor;
+import com.tc.objectserver.persistence.NullPlatformPersistentStorage;
 import com.tc.objectserver.persistence.TransactionOrderPersistor;
 import com.tc.objectserver.testentity.TestEntity;
 import com.tc.services.InternalServiceRegistry;
@@ -65,9 +76,19 @@ import com.tc.services.TerracottaServiceProviderRegistry;
 import com.tc.stats.Stats;
 import com.tc.util.Assert;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Queue;
+import java.util.function.Consumer;
+
+import org.terracotta.entity.EntityMessage;
+import org.terracotta.entity.MessageCodec;
 import org.mockito.Matchers;
 
 
@@ -146,6 +167,20 @@ public class ProcessTransactionHandlerTest {
     this.processTransactionHandler.getVoltronMessageHandler().handleEvent(request);
   }
   
+  @Test
+  public void testResendReplayIsTimed() throws Exception {
+    Assert.assertTrue(this.processTransactionHandler.getResendStatistics().isEmpty());
+    // The first message through the handler replays the (here, empty) resends.
+    EntityID entityID = createMockEntity("foo");
+    NetworkVoltronEntityMessage request = createMockRequest(VoltronEntityMessage.Type.FETCH_ENTITY, entityID, new TransactionID(1));
+    this.processTransactionHandler.getVoltronMessageHandler().handleEvent(request);
+    Map<String, Long> stats = this.processTransactionHandler.getResendStatistics();
+    Assert.assertEquals(0L, stats.get("Replayed").longValue());
+    Assert.assertEquals(0L, stats.get("New").longValue());
+    Assert.assertTrue(stats.containsKey("DecodeMillis"));
+    Assert.assertTrue(stats.containsKey("TotalMillis"));
+  }
+  
   @Test
   public void testLoadExisting() throws Exception {
     // Set up a believable collection of persistent entities.
@@ -246,6 +281,135 @@ public class ProcessTransactionHandlerTest {
     }
   }
 
+  @Test
+  public void testDeferredResendsReplayInGlobalOrderBeforeHeldRequests() throws Exception {
+    ClientID client1 = new ClientID(1);
+    ClientID client2 = new ClientID(2);
+    EntityID shared = new EntityID(TEST_ENTITY_CLASS_NAME, "shared");
+    ClientEntityStateManagerImpl expected = new ClientEntityStateManagerImpl(true);
+    expected.addExpectedReference(client1, shared);
+    expected.addExpectedReference(client2, shared);
+    ReplayFixture fixture = new ReplayFixture(expected);
+    FetchID fetch = fixture.addEntity(shared, 1);
+    // the order the invokes reached the old active
+    fixture.record(client2, 1);
+    fixture.record(client1, 1);
+    fixture.record(client2, 2);
+
+    fixture.resend(client1, createDescriptorForInvoke(fetch), VoltronEntityMessage.Type.INVOKE_ACTION, 1);
+    Assert.assertTrue(fixture.handler.clientReconnected(client1));
+    // client1 is let go and sends a new request but the entity still waits for client2
+    fixture.handle(createInvoke(client1, fetch, 2));
+    Assert.assertTrue(fixture.scheduled.isEmpty());
+    Assert.assertEquals(Collections.singleton(client2), fixture.handler.getWaitingEntities().get(shared));
+
+    fixture.resend(client2, createDescriptorForInvoke(fetch), VoltronEntityMessage.Type.INVOKE_ACTION, 2);
+    fixture.resend(client2, createDescriptorForInvoke(fetch), VoltronEntityMessage.Type.INVOKE_ACTION, 1);
+    Assert.assertTrue(fixture.handler.clientReconnected(client2));
+    fixture.flush();
+    Assert.assertEquals(Arrays.asList("shared 2:1", "shared 1:1", "shared 2:2", "shared 1:2"), fixture.scheduled);
+    Assert.assertTrue(fixture.handler.getWaitingEntities().isEmpty());
+  }
+
+  @Test
+  public void testReadyEntityRunsWhileAnotherWaits() throws Exception {
+    ClientID client1 = new ClientID(1);
+    ClientID client2 = new ClientID(2);
+    EntityID own = new EntityID(TEST_ENTITY_CLASS_NAME, "own");
+    EntityID shared = new EntityID(TEST_ENTITY_CLASS_NAME, "shared");
+    ClientEntityStateManagerImpl expected = new ClientEntityStateManagerImpl(true);
+    expected.addExpectedReference(client1, own);
+    expected.addExpectedReference(client1, shared);
+    expected.addExpectedReference(client2, shared);
+    ReplayFixture fixture = new ReplayFixture(expected);
+    FetchID ownFetch = fixture.addEntity(own, 1);
+    FetchID sharedFetch = fixture.addEntity(shared, 2);
+    fixture.record(client1, 1);
+    fixture.record(client1, 2);
+
+    fixture.resend(client1, createDescriptorForInvoke(ownFetch), VoltronEntityMessage.Type.INVOKE_ACTION, 1);
+    fixture.resend(client1, createDescriptorForInvoke(sharedFetch), VoltronEntityMessage.Type.INVOKE_ACTION, 2);
+    Assert.assertTrue(fixture.handler.clientReconnected(client1));
+    fixture.handle(createInvoke(client1, ownFetch, 3));
+    fixture.handle(createInvoke(client1, sharedFetch, 4));
+    Assert.assertEquals(Arrays.asList("own 1:1", "own 1:3"), fixture.scheduled);
+    Assert.assertEquals(Collections.singleton(shared), fixture.handler.getWaitingEntities().keySet());
+    Assert.assertEquals(1L, fixture.handler.getResendStatistics().get("ReadyEarly").longValue());
+  }
+
+  @Test
+  public void testWindowCloseReleasesEntitiesStillWaiting() throws Exception {
+    ClientID client1 = new ClientID(1);
+    ClientID client2 = new ClientID(2);
+    EntityID shared = new EntityID(TEST_ENTITY_CLASS_NAME, "shared");
+    ClientEntityStateManagerImpl expected = new ClientEntityStateManagerImpl(true);
+    expected.addExpectedReference(client1, shared);
+    expected.addExpectedReference(client2, shared);
+    ReplayFixture fixture = new ReplayFixture(expected);
+    FetchID fetch = fixture.addEntity(shared, 1);
+    fixture.record(client1, 1);
+    fixture.record(client2, 1);
+
+    fixture.resend(client1, createDescriptorForInvoke(fetch), VoltronEntityMessage.Type.INVOKE_ACTION, 1);
+    Assert.assertTrue(fixture.handler.clientReconnected(client1));
+    fixture.handle(createInvoke(client1, fetch, 2));
+    Assert.assertTrue(fixture.scheduled.isEmpty());
+
+    // client2 never comes back
+    fixture.handler.reconnectComplete();
+    fixture.flush();
+    Assert.assertEquals(Arrays.asList("shared 1:1", "shared 1:2"), fixture.scheduled);
+    Assert.assertTrue(fixture.handler.getWaitingEntities().isEmpty());
+    Assert.assertEquals(1L, fixture.handler.getResendStatistics().get("ReadyAtWindowClose").longValue());
+    Assert.assertEquals(-1L, fixture.transactionOrderPersistor.getGlobalSequenceToReplay(client2, new TransactionID(1)));
+
+    // nothing is held back any more
+    fixture.handle(createInvoke(client1, fetch, 3));
+    Assert.assertEquals(Arrays.asList("shared 1:1", "shared 1:2", "shared 1:3"), fixture.scheduled);
+  }
+
+  @Test
+  public void testReplayDecodesUpFrontAndSchedulesInPersistedOrder() throws Exception {
+    ClientID client1 = new ClientID(1);
+    ClientID client2 = new ClientID(2);
+    EntityID first = new EntityID(TEST_ENTITY_CLASS_NAME, "first");
+    EntityID second = new EntityID(TEST_ENTITY_CLASS_NAME, "second");
+    ReplayFixture fixture = new ReplayFixture(null);
+    FetchID firstFetch = fixture.addEntity(first, 1);
+    FetchID secondFetch = fixture.addEntity(second, 2);
+    fixture.start();
+    fixture.record(client1, 1);
+    fixture.record(client2, 1);
+    fixture.record(client1, 2);
+    fixture.record(client2, 2);
+
+    // each client hands over its resends in turn, not in the order they were persisted
+    fixture.resend(client2, createDescriptorForInvoke(firstFetch), VoltronEntityMessage.Type.INVOKE_ACTION, 2);
+    fixture.resend(client2, createDescriptorForInvoke(secondFetch), VoltronEntityMessage.Type.INVOKE_ACTION, 1);
+    // the reconfigure may change the codec the invokes of second have to be decoded with
+    fixture.resend(client2, EntityDescriptor.createDescriptorForLifecycle(second, 1), VoltronEntityMessage.Type.RECONFIGURE_ENTITY, 3);
+    fixture.resend(client1, createDescriptorForInvoke(secondFetch), VoltronEntityMessage.Type.INVOKE_ACTION, 2);
+    fixture.resend(client1, createDescriptorForInvoke(firstFetch), VoltronEntityMessage.Type.INVOKE_ACTION, 1);
+    // never persisted so it replays with the new resends, after the ordered ones
+    fixture.resend(client1, createDescriptorForInvoke(firstFetch), VoltronEntityMessage.Type.INVOKE_ACTION, 5);
+    fixture.handler.reconnectComplete();
+    fixture.handle(createInvoke(client1, firstFetch, 6));
+
+    Assert.assertEquals(Arrays.asList("first 1:1", "second 2:1", "second 1:2", "first 2:2", "second 2:3", "first 1:5", "first 1:6"), fixture.scheduled);
+    // the invokes of first, from both lists, were decoded up front in one task and scheduling reused the payloads
+    Assert.assertEquals(1, fixture.decodeTasks);
+    Assert.assertEquals(3, fixture.decodedUpFront.get("first").intValue());
+    Assert.assertEquals(4, fixture.decoded.get("first").intValue());
+    // those of second were only decoded as they were scheduled
+    Assert.assertNull(fixture.decodedUpFront.get("second"));
+    Assert.assertEquals(2, fixture.decoded.get("second").intValue());
+    Map<String, Long> stats = fixture.handler.getResendStatistics();
+    Assert.assertEquals(1L, stats.get("DecodedEntities").longValue());
+    Assert.assertEquals(3L, stats.get("Decoded").longValue());
+    Assert.assertEquals(4L, stats.get("Replayed").longValue());
+    Assert.assertEquals(2L, stats.get("New").longValue());
+  }
+
 
   /**
    * This is pulled out as its own helper since the mocked EntityIDs aren't .equals() each other so using the same
@@ -280,6 +444,140 @@ public class ProcessTransactionHandlerTest {
     return request;
   }
 
+  private static EntityDescriptor createDescriptorForInvoke(FetchID fetch) {
+    return EntityDescriptor.createDescriptorForInvoke(fetch, new ClientInstanceID(1));
+  }
+
+  private static NetworkVoltronEntityMessage createInvoke(ClientID sender, FetchID fetch, long transaction) {
+    NetworkVoltronEntityMessage request = mock(NetworkVoltronEntityMessage.class);
+    when(request.getSource()).thenReturn(sender);
+    when(request.getVoltronType()).thenReturn(VoltronEntityMessage.Type.INVOKE_ACTION);
+    when(request.getEntityDescriptor()).thenReturn(createDescriptorForInvoke(fetch));
+    when(request.getTransactionID()).thenReturn(new TransactionID(transaction));
+    when(request.getOldestTransactionOnClient()).thenReturn(new TransactionID(0));
+    when(request.getExtendedData()).thenReturn(new byte[0]);
+    return request;
+  }
+
+
+  /**
+   * A handler over mocked entities which records, in order, each request it schedules on them as
+   * "entity client:transaction", and how often each entity's codec decoded a message.
+   */
+  private static class ReplayFixture {
+    private final TransactionOrderPersistor transactionOrderPersistor;
+    private final ProcessTransactionHandler handler;
+    private final EntityManager entityManager;
+    private final Map<EntityID, ManagedEntity> entities = new HashMap<>();
+    private final Map<Long, ManagedEntity> fetched = new HashMap<>();
+    private final List<String> scheduled = new ArrayList<>();
+    private final Map<String, Integer> decoded = new HashMap<>();
+    private final Map<String, Integer> decodedUpFront = new HashMap<>();
+    private int decodeTasks;
+    private boolean decodingUpFront;
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public ReplayFixture(ClientEntityStateManager expectedReferences) throws Exception {
+      this.transactionOrderPersistor = new TransactionOrderPersistor(new NullPlatformPersistentStorage(), Collections.emptySet());
+      this.entityManager = mock(EntityManager.class);
+      when(this.entityManager.getEntity(any(EntityDescriptor.class))).thenAnswer(invocation -> {
+        EntityDescriptor descriptor = (EntityDescriptor) invocation.getArguments()[0];
+        return Optional.ofNullable(descriptor.isIndexed() ? this.fetched.get(descriptor.getFetchID().toLong()) : this.entities.get(descriptor.getEntityID()));
+      });
+      DSOChannelManager channelManager = mock(DSOChannelManager.class);
+      when(channelManager.getActiveChannel(any(NodeID.class))).thenThrow(new NoSuchChannelException());
+      this.handler = new ProcessTransactionHandler(new EntityPersistor(new NullPlatformPersistentStorage()), this.transactionOrderPersistor, channelManager, this.entityManager, mock(Runnable.class));
+      if (expectedReferences != null) {
+        this.handler.setIncrementalReconnect(expectedReferences);
+      }
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public FetchID addEntity(EntityID eid, long fetch) throws Exception {
+      String name = eid.getEntityName();
+      MessageCodec codec = mock(MessageCodec.class);
+      EntityMessage message = mock(EntityMessage.class);
+      when(codec.decodeMessage(any(byte[].class))).thenAnswer(invocation -> {
+        this.decoded.merge(name, 1, Integer::sum);
+        if (this.decodingUpFront) {
+          this.decodedUpFront.merge(name, 1, Integer::sum);
+        }
+        return message;
+      });
+      ManagedEntity entity = mock(ManagedEntity.class);
+      when(entity.getID()).thenReturn(eid);
+      when(entity.getCodec()).thenReturn(codec);
+      when(entity.addRequestMessage(any(ServerEntityRequest.class), any(MessagePayload.class), any(Runnable.class), any(Consumer.class), any(Consumer.class))).thenAnswer(invocation -> {
+        ServerEntityRequest request = (ServerEntityRequest) invocation.getArguments()[0];
+        this.scheduled.add(name + " " + request.getNodeID().toLong() + ":" + request.getTransaction().toLong());
+        return null;
+      });
+      this.entities.put(eid, entity);
+      this.fetched.put(fetch, entity);
+      return new FetchID(fetch);
+    }
+
+    /**
+     * Wires the handler to its stages as the server would, resent invokes are decoded up front only once it has a
+     * request processor.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void start() {
+      L2Coordinator coordinator = mock(L2Coordinator.class);
+      when(coordinator.getReplicatedClusterStateManager()).thenReturn(mock(ReplicatedClusterStateManager.class));
+      when(coordinator.getStateManager()).thenReturn(mock(StateManager.class));
+      Stage processorStage = mock(Stage.class);
+      when(processorStage.getSink()).thenReturn(new NoStatsSink<Runnable>() {
+        @Override
+        public void addSingleThreaded(Runnable context) {
+          throw new UnsupportedOperationException();
+        }
+        @Override
+        public void addMultiThreaded(Runnable context) {
+          decodeTasks += 1;
+          decodingUpFront = true;
+          try {
+            context.run();
+          } finally {
+            decodingUpFront = false;
+          }
+        }
+        @Override
+        public void setClosed(boolean closed) {
+          throw new UnsupportedOperationException();
+        }
+      });
+      ServerConfigurationContext context = mock(ServerConfigurationContext.class);
+      when(context.getL2Coordinator()).thenReturn(coordinator);
+      when(context.getClientHandshakeManager()).thenReturn(mock(ServerClientHandshakeManager.class));
+      when(context.getStage(any(), any())).thenReturn(mock(Stage.class));
+      when(context.getStage(ServerConfigurationContext.REQUEST_PROCESSOR_STAGE, Runnable.class)).thenReturn(processorStage);
+      this.handler.getVoltronMessageHandler().initializeContext(context);
+    }
+
+    /**
+     * Records a transaction in the global order, as the old active did when it received it.
+     */
+    public void record(ClientID client, long transaction) {
+      this.transactionOrderPersistor.updateWithNewMessage(client, new TransactionID(transaction), new TransactionID(0));
+    }
+
+    public void resend(ClientID client, EntityDescriptor descriptor, VoltronEntityMessage.Type type, long transaction) {
+      this.handler.handleResentMessage(new ResendVoltronEntityMessage(client, new TransactionID(transaction), descriptor, type, false, new byte[0], new TransactionID(0)));
+    }
+
+    public void handle(VoltronEntityMessage message) throws EventHandlerException {
+      this.handler.getVoltronMessageHandler().handleEvent(message);
+    }
+
+    /**
+     * What the handshake queues once a client has reconnected.
+     */
+    public void flush() throws EventHandlerException {
+      handle(new LocalPipelineFlushMessage(EntityDescriptor.NULL_ID, false));
+    }
+  }
+
 
   public static abstract class NoStatsSink<T> implements Sink<T> {
     @Override
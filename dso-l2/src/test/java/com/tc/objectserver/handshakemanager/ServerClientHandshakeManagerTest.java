@@ -27,6 +27,7 @@ import org.junit.Test;
 import com.tc.entity.ResendVoltronEntityMessage;
 import com.tc.logging.TCLogger;
 import com.tc.net.ClientID;
+import com.tc.net.NodeID;
 import com.tc.net.protocol.tcm.ChannelID;
 import com.tc.net.protocol.tcm.MessageChannel;
 import com.tc.net.protocol.transport.ConnectionID;
@@ -46,6 +47,7 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -164,6 +166,39 @@ public class ServerClientHandshakeManagerTest {
     verify(this.voltronSink).addSingleThreaded(any(LocalPipelineFlushMessage.class));
   }
 
+  @Test
+  public void testIncrementalReconnectAcksEarly() throws Exception {
+    ClientID client1 = new ClientID(1);
+    ClientID client2 = new ClientID(2);
+    Set<ClientID> existingConnections = new HashSet<>();
+    existingConnections.add(client1);
+    existingConnections.add(client2);
+    Set<NodeID> allClients = new HashSet<>(existingConnections);
+    when(this.channelManager.getAllClientIDs()).thenReturn(allClients);
+    when(this.channelManager.isActiveID(client1)).thenReturn(true);
+    when(this.channelManager.isActiveID(client2)).thenReturn(true);
+    when(this.transactionHandler.clientReconnected(client1)).thenReturn(true);
+    this.manager.setStarting(existingConnections);
+    this.manager.startReconnectWindow();
+    
+    // The transaction handler takes the first client incrementally so it is acknowledged before the server starts.
+    ClientHandshakeMessage message1 = mock(ClientHandshakeMessage.class);
+    when(message1.getChannel()).thenReturn(mock(MessageChannel.class));
+    when(message1.getSourceNodeID()).thenReturn(client1);
+    this.manager.notifyClientConnect(message1, entityManager, transactionHandler);
+    assertTrue(this.manager.isStarting());
+    verify(this.channelManager).makeChannelActive(client1, true);
+    
+    // Starting acknowledges the second client but not the first one again.
+    ClientHandshakeMessage message2 = mock(ClientHandshakeMessage.class);
+    when(message2.getChannel()).thenReturn(mock(MessageChannel.class));
+    when(message2.getSourceNodeID()).thenReturn(client2);
+    this.manager.notifyClientConnect(message2, entityManager, transactionHandler);
+    assertTrue(this.manager.isStarted());
+    verify(this.channelManager, times(1)).makeChannelActive(client1, true);
+    verify(this.channelManager, times(1)).makeChannelActive(client2, true);
+  }
+
   @Test
   public void testFailedReconnects() throws Exception {
     ClientID client1 = new ClientID(1);
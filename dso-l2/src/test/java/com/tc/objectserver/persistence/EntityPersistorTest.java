@@ -22,6 +22,9 @@ import com.tc.net.ClientID;
 import com.tc.object.EntityID;
 import com.tc.test.TCTestCase;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Vector;
 
 import org.junit.Assert;
 import org.terracotta.exception.EntityException;
@@ -228,4 +231,71 @@ public class EntityPersistorTest extends TCTestCase {
     this.entityPersistor.removeOrphanedClientsFromJournal(Collections.emptySet());
     Assert.assertFalse(this.entityPersistor.wasEntityCreatedInJournal(client, 1L));
   }
+
+  public void testReloadReplaysJournal() throws Exception {
+    EntityPersistor persistor = new EntityPersistor(this.persistentStorage, 4);
+    for (int i = 0; i < 10; ++i) {
+      persistor.entityCreated(client, i + 1, 1L, new EntityID("test", "entity" + i), 1L, persistor.getNextConsumerID(), true, new byte[] { (byte) i });
+    }
+    persistor.entityDestroyed(client, 11L, 1L, new EntityID("test", "entity3"));
+    persistor.entityReconfigureSucceeded(client, 12L, 1L, new EntityID("test", "entity4"), 1L, new byte[] { 42 });
+    
+    EntityPersistor reloaded = new EntityPersistor(this.persistentStorage, 4);
+    Assert.assertEquals(9, reloaded.loadEntityData().size());
+    Assert.assertFalse(reloaded.containsEntity(client, 13L, 1L, new EntityID("test", "entity3")));
+    Assert.assertTrue(reloaded.wasEntityCreatedInJournal(client, 10L));
+    Assert.assertTrue(reloaded.wasEntityDestroyedInJournal(client, 11L));
+    Assert.assertArrayEquals(new byte[] { 4 }, reloaded.reconfiguredResultInJournal(client, 12L));
+    Assert.assertEquals(persistor.getNextConsumerID(), reloaded.getNextConsumerID());
+  }
+
+  public void testJournalIsCompacted() throws Exception {
+    EntityPersistor persistor = new EntityPersistor(this.persistentStorage, 8);
+    for (int i = 0; i < 100; ++i) {
+      persistor.entityCreated(client, i + 1, i + 1, new EntityID("test", "entity" + i), 1L, 1L, true, new byte[0]);
+    }
+    // A snapshot plus fewer than a full interval of records.
+    Assert.assertTrue(this.persistentStorage.nameToDataMap.size() <= 9);
+    Assert.assertEquals(100, new EntityPersistor(this.persistentStorage, 8).loadEntityData().size());
+  }
+
+  public void testTornTailRecordIsDiscarded() throws Exception {
+    EntityPersistor persistor = new EntityPersistor(this.persistentStorage, 100);
+    persistor.entityCreated(client, 1L, 1L, new EntityID("test", "first"), 1L, 1L, true, new byte[0]);
+    persistor.entityCreated(client, 2L, 1L, new EntityID("test", "second"), 1L, 2L, true, new byte[0]);
+    // Replace the last record with a stale frame, as an interrupted write might leave behind.
+    // Each create writes the entity and then its journal entry, so record 4 is the second create's journal entry.
+    this.persistentStorage.nameToDataMap.put("entity_lifecycle.journal.4", this.persistentStorage.nameToDataMap.get("entity_lifecycle.journal.1"));
+    
+    EntityPersistor reloaded = new EntityPersistor(this.persistentStorage, 100);
+    Assert.assertEquals(2, reloaded.loadEntityData().size());
+    Assert.assertTrue(reloaded.wasEntityCreatedInJournal(client, 1L));
+    Assert.assertFalse(reloaded.wasEntityCreatedInJournal(client, 2L));
+  }
+
+  public void testMigratesMapFiles() throws Exception {
+    EntityData.Key key = new EntityData.Key();
+    key.className = "test";
+    key.entityName = "legacy";
+    EntityData.Value value = new EntityData.Value();
+    value.className = "test";
+    value.entityName = "legacy";
+    value.version = 1L;
+    value.configuration = new byte[0];
+    HashMap<EntityData.Key, EntityData.Value> entities = new HashMap<>();
+    entities.put(key, value);
+    HashMap<ClientID, List<EntityData.JournalEntry>> journal = new HashMap<>();
+    journal.put(client, new Vector<>());
+    HashMap<String, Long> counters = new HashMap<>();
+    counters.put("counters:consumerID", 7L);
+    this.persistentStorage.storeDataElement("entities_alive.map", entities);
+    this.persistentStorage.storeDataElement("journal_container.map", journal);
+    this.persistentStorage.storeDataElement("counters.map", counters);
+    
+    EntityPersistor migrated = new EntityPersistor(this.persistentStorage);
+    Assert.assertEquals(1, migrated.loadEntityData().size());
+    Assert.assertEquals(7L, migrated.getNextConsumerID());
+    Assert.assertNull(this.persistentStorage.loadDataElement("entities_alive.map"));
+    Assert.assertEquals(8L, new EntityPersistor(this.persistentStorage).getNextConsumerID());
+  }
 }
@@ -0,0 +1,101 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.objectserver.persistence;
+
+import com.tc.test.TCTestCase;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+
+public class GlobalOrderIndexTest extends TCTestCase {
+  public void testRankAfterAppend() {
+    GlobalOrderIndex index = new GlobalOrderIndex();
+    for (long i = 1; i <= 100; ++i) {
+      index.append(i * 3);
+    }
+    assertEquals(100, index.size());
+    assertEquals(0, index.rank(3));
+    assertEquals(99, index.rank(300));
+    assertEquals(-1, index.rank(4));
+  }
+
+  public void testAppendOutOfOrderFails() {
+    GlobalOrderIndex index = new GlobalOrderIndex();
+    index.append(5);
+    try {
+      index.append(5);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testRemoveShiftsRanks() {
+    GlobalOrderIndex index = new GlobalOrderIndex();
+    for (long i = 1; i <= 10; ++i) {
+      index.append(i);
+    }
+    assertTrue(index.remove(1));
+    assertTrue(index.remove(5));
+    assertFalse(index.remove(5));
+    assertEquals(-1, index.rank(5));
+    assertEquals(0, index.rank(2));
+    assertEquals(3, index.rank(6));
+    assertEquals(7, index.rank(10));
+    index.clear();
+    assertEquals(0, index.size());
+    assertEquals(-1, index.rank(10));
+  }
+
+  /**
+   * Compares against a TreeSet through enough appends and removals to force several compactions.
+   */
+  public void testMatchesSortedSet() {
+    Random random = new Random(17);
+    GlobalOrderIndex index = new GlobalOrderIndex();
+    TreeSet<Long> expected = new TreeSet<>();
+    long next = 1;
+    for (int round = 0; round < 20000; ++round) {
+      if (expected.isEmpty() || random.nextInt(3) != 0) {
+        next += 1 + random.nextInt(4);
+        index.append(next);
+        expected.add(next);
+      } else {
+        // Mostly remove from the oldest end, the way clients retire transactions.
+        Long victim = (random.nextInt(4) != 0) ? expected.first() : expected.ceiling(next - random.nextInt(200));
+        if (null != victim) {
+          assertTrue(index.remove(victim));
+          expected.remove(victim);
+        }
+      }
+      if (round % 97 == 0 && !expected.isEmpty()) {
+        Long probe = expected.ceiling(next - random.nextInt(1000));
+        if (null != probe) {
+          assertEquals(expected.headSet(probe).size(), index.rank(probe));
+        }
+      }
+    }
+    assertEquals(expected.size(), index.size());
+    int rank = 0;
+    for (long key : expected) {
+      assertEquals(rank++, index.rank(key));
+    }
+  }
+}
@@ -24,7 +24,11 @@ import com.tc.object.tx.TransactionID;
 import com.tc.test.TCTestCase;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 
 public class TransactionOrderPersistorTest extends TCTestCase {
@@ -299,6 +303,65 @@ public class TransactionOrderPersistorTest extends TCTestCase {
   }
 
 
+  public void testExpiryShiftsReplayIndex() {
+    for (int i = 1; i < 10; ++i) {
+      TransactionID transaction = new TransactionID(i);
+      this.orderPersistor.updateWithNewMessage(this.client1, transaction, new TransactionID(0));
+      this.orderPersistor.updateWithNewMessage(this.client2, transaction, new TransactionID(0));
+    }
+    assertEquals(17, this.orderPersistor.getIndexToReplay(this.client2, new TransactionID(9)));
+    // Retiring client1's first 5 transactions moves everything after them forward.
+    this.orderPersistor.updateWithNewMessage(this.client1, new TransactionID(10), new TransactionID(6));
+    assertEquals(-1, this.orderPersistor.getIndexToReplay(this.client1, new TransactionID(5)));
+    assertEquals(0, this.orderPersistor.getIndexToReplay(this.client2, new TransactionID(1)));
+    assertEquals(12, this.orderPersistor.getIndexToReplay(this.client2, new TransactionID(9)));
+    assertEquals(13, this.orderPersistor.getIndexToReplay(this.client1, new TransactionID(10)));
+  }
+
+  public void testReloadContinuesGlobalOrder() {
+    TransactionID oldest = new TransactionID(0);
+    NullPlatformPersistentStorage storage = new NullPlatformPersistentStorage();
+    TransactionOrderPersistor persistor = new TransactionOrderPersistor(storage, Collections.emptySet());
+    for (int i = 1; i < 5; ++i) {
+      persistor.updateWithNewMessage(this.client1, new TransactionID(i), oldest);
+    }
+    
+    Set<ClientID> clients = new HashSet<>();
+    clients.add(this.client1);
+    persistor = new TransactionOrderPersistor(storage, clients);
+    assertEquals(4, persistor.getReceivedTransactionCount());
+    assertEquals(3, persistor.getIndexToReplay(this.client1, new TransactionID(4)));
+    // New transactions after the restart must sort after the persisted ones.
+    persistor.updateWithNewMessage(this.client2, new TransactionID(1), oldest);
+    assertEquals(4, persistor.getIndexToReplay(this.client2, new TransactionID(1)));
+  }
+
+  public void testConcurrentClientsKeepPerClientOrder() throws InterruptedException {
+    TransactionID oldest = new TransactionID(0);
+    List<ClientThread> threads = new ArrayList<>();
+    for (int c = 1; c <= 8; ++c) {
+      threads.add(new ClientThread(this.orderPersistor, new ClientID(c), oldest, 1, 500));
+    }
+    for (ClientThread thread : threads) {
+      thread.start();
+    }
+    for (ClientThread thread : threads) {
+      thread.join();
+    }
+    Set<Integer> seen = new HashSet<>();
+    for (int c = 1; c <= 8; ++c) {
+      int previous = -1;
+      for (int i = 1; i < 500; ++i) {
+        int index = this.orderPersistor.getIndexToReplay(new ClientID(c), new TransactionID(i));
+        assertTrue(index > previous);
+        assertTrue(seen.add(index));
+        previous = index;
+      }
+    }
+    assertEquals(8 * 499, seen.size());
+    assertEquals(8 * 499, this.orderPersistor.getReceivedTransactionCount());
+  }
+
   private static class ClientThread extends Thread {
     private TransactionOrderPersistor persistor;
     private ClientID client;
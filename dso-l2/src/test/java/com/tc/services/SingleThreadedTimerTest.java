@@ -18,14 +18,26 @@
  */
 package com.tc.services;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.tc.async.api.Sink;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
 
 public class SingleThreadedTimerTest {
   private static final long INTERVAL_MILLIS = 100;
@@ -112,6 +124,129 @@ public class SingleThreadedTimerTest {
   }
 
 
+  @Test
+  public void testManyTasksRunInDueOrder() throws Exception {
+    long now = this.source.currentTimeMillis();
+    final List<Integer> order = new ArrayList<>();
+    // Scheduled backward and spread over more than one lap of the wheel.
+    for (int i = 999; i >= 0; --i) {
+      final int index = i;
+      this.timer.addDelayed(new Runnable() {
+        @Override
+        public void run() {
+          order.add(index);
+        }}, now + 1 + (i * 7));
+    }
+    this.source.passTime(7000);
+    this.timer.poke();
+    Assert.assertEquals(1000, order.size());
+    for (int i = 0; i < 1000; ++i) {
+      Assert.assertEquals(i, order.get(i).intValue());
+    }
+  }
+
+  @Test
+  public void testCancelManyTasks() throws Exception {
+    long startTime = this.source.currentTimeMillis() + INTERVAL_MILLIS;
+    final AtomicInteger counter = new AtomicInteger();
+    Runnable increment = new Runnable() {
+      @Override
+      public void run() {
+        counter.incrementAndGet();
+      }};
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 10000; ++i) {
+      ids.add(this.timer.addDelayed(increment, startTime + (i % 50)));
+    }
+    for (int i = 0; i < ids.size(); i += 2) {
+      Assert.assertTrue(this.timer.cancel(ids.get(i)));
+    }
+    Assert.assertFalse(this.timer.cancel(ids.get(0)));
+    Assert.assertEquals(5000, this.timer.getPendingCount());
+    this.source.passTime(2 * INTERVAL_MILLIS);
+    this.timer.poke();
+    Assert.assertEquals(5000, counter.get());
+    Assert.assertEquals(0, this.timer.getPendingCount());
+    Map<String, Long> stats = this.timer.getStatistics();
+    Assert.assertEquals(10000L, stats.get("Scheduled").longValue());
+    Assert.assertEquals(5000L, stats.get("Cancelled").longValue());
+    Assert.assertEquals(5000L, stats.get("Fired").longValue());
+  }
+
+  @Test
+  public void testTaskDueLapsAheadWaits() throws Exception {
+    SingleThreadedTimer small = new SingleThreadedTimer(this.source, 10, 4);
+    small.start();
+    try {
+      long startTime = this.source.currentTimeMillis() + 1000;
+      final AtomicBoolean bool = new AtomicBoolean(false);
+      small.addDelayed(new Runnable() {
+        @Override
+        public void run() {
+          bool.set(true);
+        }}, startTime);
+      // Walk around the 4 bucket wheel many times without reaching the due time.
+      for (int i = 0; i < 99; ++i) {
+        this.source.passTime(10);
+        small.poke();
+        Assert.assertFalse(bool.get());
+      }
+      this.source.passTime(10);
+      small.poke();
+      Assert.assertTrue(bool.get());
+    } finally {
+      small.stop();
+    }
+  }
+
+  @Test
+  public void testLateFiringIsCounted() throws Exception {
+    long startTime = this.source.currentTimeMillis() + INTERVAL_MILLIS;
+    final CountDownLatch latch = new CountDownLatch(1);
+    this.timer.addDelayed(new Runnable() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }}, startTime);
+    this.source.passTime(INTERVAL_MILLIS + 500);
+    this.timer.poke();
+    latch.await();
+    Map<String, Long> stats = this.timer.getStatistics();
+    Assert.assertEquals(1L, stats.get("LateFirings").longValue());
+    Assert.assertTrue(stats.get("LatenessMaxMillis") >= 500);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testSinkDispatchStopsWhenNoLongerWanted() throws Exception {
+    long startTime = this.source.currentTimeMillis() + INTERVAL_MILLIS;
+    Sink<Object> sink = mock(Sink.class);
+    final AtomicBoolean wanted = new AtomicBoolean(true);
+    Object event = new Object();
+    this.timer.addPeriodic(sink, event, wanted::get, startTime, INTERVAL_MILLIS);
+    this.source.passTime(INTERVAL_MILLIS);
+    this.timer.poke();
+    verify(sink).addSingleThreaded(any());
+    wanted.set(false);
+    this.source.passTime(INTERVAL_MILLIS);
+    this.timer.poke();
+    verify(sink, times(1)).addSingleThreaded(any());
+    Assert.assertEquals(0, this.timer.getPendingCount());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testDelayedSinkDispatchIsCancellable() throws Exception {
+    long startTime = this.source.currentTimeMillis() + INTERVAL_MILLIS;
+    Sink<Object> sink = mock(Sink.class);
+    long id = this.timer.addDelayed(sink, new Object(), () -> true, startTime);
+    Assert.assertTrue(this.timer.cancel(id));
+    this.source.passTime(INTERVAL_MILLIS);
+    this.timer.poke();
+    verify(sink, never()).addSingleThreaded(any());
+  }
+
+
   private static class SelfDestructingRunnable implements Runnable {
     private SingleThreadedTimer timer;
     private long id;
@@ -0,0 +1,213 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.bytes;
+
+import com.tc.util.VicariousThreadLocal;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One size class of the {@link TCByteBufferFactory} slab allocator. Free buffers of exactly {@link #getCapacity()}
+ * bytes are cached per thread in a plain array, so the common allocate/recycle cycle never touches shared state. A
+ * thread whose cache runs dry refills half of it from the shared arena in one go, and a thread whose cache overflows
+ * hands half of it back to the arena in one go. Threads outside the registered comms thread groups have no cache and
+ * work on the arena directly.
+ */
+class BufferSizeClass implements BufferPool {
+
+  private static final BufferStack             NO_CACHE   = new BufferStack(0);
+
+  private final int                            capacity;
+  private final boolean                        direct;
+  private final int                            arenaMax;
+  private final ConcurrentLinkedQueue<TCByteBuffer> arena = new ConcurrentLinkedQueue<TCByteBuffer>();
+  private final AtomicInteger                  arenaSize  = new AtomicInteger();
+  private final ThreadLocal<BufferStack>       cache;
+
+  private final LongAdder                      created    = new LongAdder();
+  private final LongAdder                      requested  = new LongAdder();
+  private final LongAdder                      cacheHits  = new LongAdder();
+  private final LongAdder                      arenaHits  = new LongAdder();
+  private final LongAdder                      returned   = new LongAdder();
+  private final LongAdder                      discarded  = new LongAdder();
+
+  BufferSizeClass(int capacity, boolean direct, final int threadCacheMax, int arenaMax, final CacheEligibility eligibility) {
+    this.capacity = capacity;
+    this.direct = direct;
+    this.arenaMax = arenaMax;
+    this.cache = new VicariousThreadLocal<BufferStack>() {
+      @Override
+      protected BufferStack initialValue() {
+        return eligibility.isEligible() ? new BufferStack(threadCacheMax) : NO_CACHE;
+      }
+    };
+  }
+
+  int getCapacity() {
+    return this.capacity;
+  }
+
+  boolean isDirect() {
+    return this.direct;
+  }
+
+  /**
+   * @return a free buffer of this size class, or <code>null</code> if the caller has to create one with
+   *         {@link #created()}
+   */
+  TCByteBuffer take() {
+    this.requested.increment();
+    BufferStack stack = this.cache.get();
+    TCByteBuffer buf = stack.pop();
+    if (buf != null) {
+      this.cacheHits.increment();
+    } else {
+      buf = pollArena();
+      if (buf != null) {
+        this.arenaHits.increment();
+        // refill half the cache now so the next allocations on this thread stay local
+        int refill = stack.capacity() / 2;
+        TCByteBuffer next;
+        while (stack.size() < refill && (next = pollArena()) != null) {
+          stack.push(next);
+        }
+      }
+    }
+    if (buf != null) {
+      buf.checkedOut();
+    }
+    return buf;
+  }
+
+  void created() {
+    this.created.increment();
+  }
+
+  @Override
+  public void offer(TCByteBuffer buf) {
+    this.returned.increment();
+    BufferStack stack = this.cache.get();
+    if (stack.push(buf)) { return; }
+    // the thread cache is full, move half of it to the arena along with this buffer
+    offerArena(buf);
+    int keep = stack.capacity() / 2;
+    TCByteBuffer spilled;
+    while (stack.size() > keep && (spilled = stack.pop()) != null) {
+      offerArena(spilled);
+    }
+  }
+
+  private TCByteBuffer pollArena() {
+    TCByteBuffer buf = this.arena.poll();
+    if (buf != null) {
+      this.arenaSize.decrementAndGet();
+    }
+    return buf;
+  }
+
+  private void offerArena(TCByteBuffer buf) {
+    if (this.arenaSize.incrementAndGet() <= this.arenaMax) {
+      this.arena.offer(buf);
+    } else {
+      this.arenaSize.decrementAndGet();
+      this.discarded.increment();
+    }
+  }
+
+  long getCreatedCount() {
+    return this.created.sum();
+  }
+
+  long getRequestedCount() {
+    return this.requested.sum();
+  }
+
+  long getCacheHitCount() {
+    return this.cacheHits.sum();
+  }
+
+  long getArenaHitCount() {
+    return this.arenaHits.sum();
+  }
+
+  long getReturnedCount() {
+    return this.returned.sum();
+  }
+
+  long getDiscardedCount() {
+    return this.discarded.sum();
+  }
+
+  /**
+   * Buffers handed out and not recycled yet. A value that keeps growing under a steady load points at a leak.
+   */
+  long getOutstandingCount() {
+    return Math.max(0, getRequestedCount() - getReturnedCount());
+  }
+
+  int getArenaSize() {
+    return this.arenaSize.get();
+  }
+
+  String getName() {
+    return (this.direct ? "direct." : "heap.") + (this.capacity >= 1024 * 1024 ? (this.capacity >> 20) + "M" : (this.capacity >> 10) + "K");
+  }
+
+  interface CacheEligibility {
+    /**
+     * @return true if the current thread should get its own buffer cache
+     */
+    boolean isEligible();
+  }
+
+  /**
+   * Unsynchronized stack, only ever used by its owning thread.
+   */
+  private static final class BufferStack {
+    private final TCByteBuffer[] items;
+    private int                  size;
+
+    BufferStack(int capacity) {
+      this.items = new TCByteBuffer[capacity];
+    }
+
+    int capacity() {
+      return this.items.length;
+    }
+
+    int size() {
+      return this.size;
+    }
+
+    boolean push(TCByteBuffer buf) {
+      if (this.size == this.items.length) { return false; }
+      this.items[this.size++] = buf;
+      return true;
+    }
+
+    TCByteBuffer pop() {
+      if (this.size == 0) { return null; }
+      TCByteBuffer buf = this.items[--this.size];
+      this.items[this.size] = null;
+      return buf;
+    }
+  }
+}
@@ -20,26 +20,33 @@ package com.tc.bytes;
 
 import com.tc.logging.TCLogger;
 import com.tc.logging.TCLogging;
-import com.tc.util.Assert;
 import com.tc.util.ServiceUtil;
-import com.tc.util.VicariousThreadLocal;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
 /**
  * TCByteBuffer source that hides JDK dependencies and that can pool instances. Instance pooling is likely to be a good
  * idea for fixed size buffers and definitely a good idea for java direct buffers (since their allocation/deallocation
  * is more expensive than regular java objects).
+ * <p>
+ * Pooled buffers come in three size classes ({@link #FIXED_BUFFER_SIZE}, {@link #MEDIUM_BUFFER_SIZE} and
+ * {@link #LARGE_BUFFER_SIZE}), each with thread local caches in front of a shared arena (see {@link BufferSizeClass}).
+ * The configured pool counts are budgets in units of {@link #FIXED_BUFFER_SIZE} shared evenly by the size classes, so
+ * the memory a pool can hold on to is never more than when only 4KiB buffers were pooled. A size class whose share of
+ * the budget is smaller than one of its buffers pools nothing (see {@link #getMaxPooledBytes(int)}).
  * 
  * @author teck
  */
 public class TCByteBufferFactory {
 
   public static final int                  FIXED_BUFFER_SIZE       = 4 * 1024;                                                        // 4KiB
+  public static final int                  MEDIUM_BUFFER_SIZE      = 64 * 1024;                                                       // 64KiB
+  public static final int                  LARGE_BUFFER_SIZE       = 1024 * 1024;                                                     // 1MiB
+  private static final int[]               SIZE_CLASSES            = { FIXED_BUFFER_SIZE, MEDIUM_BUFFER_SIZE, LARGE_BUFFER_SIZE };
   private static final int                 WARN_THRESHOLD          = 10 * 1024 * 1024;                                                // 10MiB
   private static final TCByteBuffer[]      EMPTY_BB_ARRAY          = new TCByteBuffer[0];
   private static final TCByteBuffer        ZERO_BYTE_BUFFER        = TCByteBufferImpl.wrap(new byte[0]);
@@ -55,42 +62,62 @@ public class TCByteBufferFactory {
     poolMaxBufCount = config.getPoolMaxBufCount();
     commonPoolMaxBufCount = config.getCommonPoolMaxBufCount();
   }
-  
-
-  // always use ThreadLocal variables for accessing the buffer pools.
-  private static final LinkedBlockingQueue<TCByteBuffer> directCommonFreePool    = new LinkedBlockingQueue<TCByteBuffer>(commonPoolMaxBufCount);
-  private static final LinkedBlockingQueue<TCByteBuffer> nonDirectCommonFreePool = new LinkedBlockingQueue<TCByteBuffer>(commonPoolMaxBufCount);
 
   private static final Set<ThreadGroup> handledGroups = Collections.newSetFromMap(new WeakHashMap<ThreadGroup, Boolean>());
-  
-  private static final ThreadLocal<LinkedBlockingQueue<TCByteBuffer>> directFreePool = new VicariousThreadLocal<LinkedBlockingQueue<TCByteBuffer>>() {
-                                                                     @Override
-                                                                     protected LinkedBlockingQueue<TCByteBuffer> initialValue() {
-                                                                       if (handledGroups.contains(Thread.currentThread().getThreadGroup())) {
-                                                                         return new LinkedBlockingQueue<TCByteBuffer>(poolMaxBufCount);
-                                                                       } else {
-                                                                         logger.debug("Buf pool direct for " + Thread.currentThread().getName() + " - using Common Pool");
-                                                                         return directCommonFreePool;
-                                                                       }
-                                                                     }
-                                                                   };
-  private static final ThreadLocal<LinkedBlockingQueue<TCByteBuffer>> nonDirectFreePool = new VicariousThreadLocal<LinkedBlockingQueue<TCByteBuffer>>() {
-                                                                     @Override
-                                                                     protected LinkedBlockingQueue<TCByteBuffer> initialValue() {
-                                                                       if (handledGroups.contains(Thread.currentThread().getThreadGroup())) {
-                                                                         return new LinkedBlockingQueue<TCByteBuffer>(poolMaxBufCount);
-                                                                       } else {
-                                                                         logger.debug("Buf pool nonDirect for " + Thread.currentThread().getName() + " - using Common Pool");
-                                                                         return nonDirectCommonFreePool;
-                                                                       }
-                                                                     }
-                                                                   };
+
+  private static final BufferSizeClass.CacheEligibility handledThreads = new BufferSizeClass.CacheEligibility() {
+    @Override
+    public boolean isEligible() {
+      if (handledGroups.contains(Thread.currentThread().getThreadGroup())) {
+        return true;
+      } else {
+        logger.debug("Buf pool for " + Thread.currentThread().getName() + " - using Common Pool");
+        return false;
+      }
+    }
+  };
+
+  // always go through the size classes for pooled buffers, they keep the thread local caches
+  private static final BufferSizeClass[] directSizeClasses    = createSizeClasses(true);
+  private static final BufferSizeClass[] nonDirectSizeClasses = createSizeClasses(false);
+
+  private static BufferSizeClass[] createSizeClasses(boolean direct) {
+    BufferSizeClass[] classes = new BufferSizeClass[SIZE_CLASSES.length];
+    for (int i = 0; i < SIZE_CLASSES.length; i++) {
+      classes[i] = new BufferSizeClass(SIZE_CLASSES[i], direct, countForSizeClass(poolMaxBufCount, SIZE_CLASSES[i]),
+                                       countForSizeClass(commonPoolMaxBufCount, SIZE_CLASSES[i]), handledThreads);
+    }
+    return classes;
+  }
+
+  static int countForSizeClass(int fixedBufferCount, int size) {
+    long budget = (long) fixedBufferCount * FIXED_BUFFER_SIZE / SIZE_CLASSES.length;
+    return (int) Math.min(Integer.MAX_VALUE, budget / size);
+  }
+
+  /**
+   * @param fixedBufferCount a pool budget in units of {@link #FIXED_BUFFER_SIZE}, as configured for the thread local
+   *        or the common pool
+   * @return the most memory, in bytes, a pool with that budget can hold on to across all size classes
+   */
+  public static long getMaxPooledBytes(int fixedBufferCount) {
+    long bytes = 0;
+    for (int size : SIZE_CLASSES) {
+      bytes += (long) countForSizeClass(fixedBufferCount, size) * size;
+    }
+    return bytes;
+  }
 
   private static TCByteBuffer createNewInstance(boolean direct, int capacity, int index, int totalCount) {
-    try {
-      LinkedBlockingQueue<TCByteBuffer> poolQueue = getPoolQueue(direct);
+    return createNewInstance(direct, capacity, index, totalCount, null);
+  }
 
-      TCByteBuffer rv = new TCByteBufferImpl(capacity, direct, poolQueue);
+  private static TCByteBuffer createNewInstance(boolean direct, int capacity, int index, int totalCount, BufferSizeClass sizeClass) {
+    try {
+      TCByteBuffer rv = new TCByteBufferImpl(capacity, direct, sizeClass);
+      if (sizeClass != null) {
+        sizeClass.created();
+      }
       // Assert.assertEquals(0, rv.position());
       // Assert.assertEquals(capacity, rv.capacity());
       // Assert.assertEquals(capacity, rv.limit());
@@ -108,7 +135,8 @@ public class TCByteBufferFactory {
   }
 
   /**
-   * Get a single variable sized TCByteBuffer instance Note: These are not pooled (yet)
+   * Get a single variable sized TCByteBuffer instance. Requests within about 12% below one of the pooled size classes
+   * are served from the pool, anything else is allocated for the occasion.
    * 
    * @param size The desired minimum capacity of the buffer. The actual capacity may be higher. The buffer's limit will
    *        be equal to it's capacity.
@@ -125,23 +153,30 @@ public class TCByteBufferFactory {
     if (size < 0) { throw new IllegalArgumentException("Requested length cannot be less than zero"); }
     if (size == 0) { return ZERO_BYTE_BUFFER; }
 
-    // Don't give 4k ByteBuffer from pool for smaller size requests.
-    if (disablePooling || size < (FIXED_BUFFER_SIZE - 500) || size > FIXED_BUFFER_SIZE) {
+    // Don't give a pooled buffer for requests much smaller than its size class.
+    BufferSizeClass sizeClass = disablePooling ? null : sizeClassFor(direct, size);
+    if (sizeClass == null) {
       return createNewInstance(direct, size);
     } else {
-      return getFromPoolOrCreate(direct);
+      return getFromPoolOrCreate(sizeClass, 0, 1);
     }
   }
 
-  private static TCByteBuffer getFromPoolOrCreate(boolean direct) {
-    return getFromPoolOrCreate(direct, 0, 1);
+  private static BufferSizeClass sizeClassFor(boolean direct, int size) {
+    BufferSizeClass[] classes = direct ? directSizeClasses : nonDirectSizeClasses;
+    for (BufferSizeClass sizeClass : classes) {
+      int capacity = sizeClass.getCapacity();
+      if (size <= capacity) {
+        return (size > capacity - (capacity >> 3)) ? sizeClass : null;
+      }
+    }
+    return null;
   }
 
-  private static TCByteBuffer getFromPoolOrCreate(boolean direct, int i, int numBuffers) {
-
-    TCByteBuffer buffer = getFromPool(direct);
+  private static TCByteBuffer getFromPoolOrCreate(BufferSizeClass sizeClass, int i, int numBuffers) {
+    TCByteBuffer buffer = sizeClass.take();
     if (null == buffer) {
-      buffer = createNewInstance(direct, FIXED_BUFFER_SIZE, i, numBuffers);
+      buffer = createNewInstance(sizeClass.isDirect(), sizeClass.getCapacity(), i, numBuffers, sizeClass);
     }
     return buffer;
   }
@@ -155,7 +190,9 @@ public class TCByteBufferFactory {
   }
   
   /**
-   * Get enough fixed sized TCByteBuffer instances to contain the given number of bytes
+   * Get enough pooled TCByteBuffer instances to contain the given number of bytes. The bulk of a large length is
+   * covered with {@link #LARGE_BUFFER_SIZE} and {@link #MEDIUM_BUFFER_SIZE} buffers and only the tail is split into
+   * {@link #FIXED_BUFFER_SIZE} buffers, so the total capacity never exceeds the length by a full fixed buffer.
    * 
    * @param direct True to hint that the buffers should be direct buffers (ie. not on the Java heap). Direct buffers
    *        will never be returned if this parameter is false. Direct buffers may or MAY NOT returned if the parameter
@@ -173,22 +210,28 @@ public class TCByteBufferFactory {
 
     if (length == 0) { return EMPTY_BB_ARRAY; }
 
+    BufferSizeClass[] classes = direct ? directSizeClasses : nonDirectSizeClasses;
     int numBuffers = getBufferCountNeededForMessageSize(length);
     TCByteBuffer rv[] = new TCByteBuffer[numBuffers];
 
-    if (disablePooling) {
-      for (int i = 0; i < numBuffers; i++) {
-        rv[i] = createNewInstance(direct, FIXED_BUFFER_SIZE, i, numBuffers);
+    int remaining = length;
+    int sizeIndex = classes.length - 1;
+    for (int i = 0; i < numBuffers; i++) {
+      while (sizeIndex > 0 && remaining < classes[sizeIndex].getCapacity()) {
+        sizeIndex--;
       }
-    } else { // do pooling logic
-      for (int i = 0; i < numBuffers; i++) {
-        rv[i] = getFromPoolOrCreate(direct, i, numBuffers);
+      BufferSizeClass sizeClass = classes[sizeIndex];
+      if (disablePooling) {
+        rv[i] = createNewInstance(direct, sizeClass.getCapacity(), i, numBuffers);
+      } else { // do pooling logic
+        rv[i] = getFromPoolOrCreate(sizeClass, i, numBuffers);
       }
+      remaining -= sizeClass.getCapacity();
     }
 
     // adjust limit of last buffer returned
     TCByteBuffer lastBuffer = rv[rv.length - 1];
-    lastBuffer.limit(lastBuffer.capacity() - ((numBuffers * FIXED_BUFFER_SIZE) - length));
+    lastBuffer.limit(lastBuffer.capacity() + remaining);
 
     // ensureSpace(rv, length);
 
@@ -196,43 +239,24 @@ public class TCByteBufferFactory {
   }
 
   private static int getBufferCountNeededForMessageSize(int length) {
-    int numBuffers = length / FIXED_BUFFER_SIZE;
-    if ((length % FIXED_BUFFER_SIZE) != 0) {
+    int numBuffers = length / LARGE_BUFFER_SIZE;
+    int rest = length % LARGE_BUFFER_SIZE;
+    numBuffers += rest / MEDIUM_BUFFER_SIZE;
+    rest = rest % MEDIUM_BUFFER_SIZE;
+    numBuffers += rest / FIXED_BUFFER_SIZE;
+    if ((rest % FIXED_BUFFER_SIZE) != 0) {
       numBuffers++;
     }
     return numBuffers;
   }
 
   public static int getTotalBufferSizeNeededForMessageSize(int length) {
-    return (getBufferCountNeededForMessageSize(length) * FIXED_BUFFER_SIZE);
-  }
-  
-  private static LinkedBlockingQueue<TCByteBuffer> getPoolQueue(boolean direct) {
-    if (disablePooling) {
-      return null;     
-    } else {
-      return direct ? directFreePool.get() : nonDirectFreePool.get();
-    }
-  }
-
-  private static TCByteBuffer getFromPool(boolean direct) {
-    if (disablePooling) return null;
-    TCByteBuffer buf = null;
-
-    LinkedBlockingQueue<TCByteBuffer> poolQueue = getPoolQueue(direct);
-
-    Assert.assertNotNull(poolQueue);
-
-    try {
-      if ((buf = poolQueue.poll(0, TimeUnit.MILLISECONDS)) != null) {
-        buf.checkedOut();
-      }
-    } catch (InterruptedException e) {
-      logger.warn("interrupted while getting buffer from pool");
-      Thread.currentThread().interrupt();
-      return null;
+    // the size classes are multiples of the fixed size so only the tail is rounded up
+    int numFixedBuffers = length / FIXED_BUFFER_SIZE;
+    if ((length % FIXED_BUFFER_SIZE) != 0) {
+      numFixedBuffers++;
     }
-    return buf;
+    return numFixedBuffers * FIXED_BUFFER_SIZE;
   }
 
   public static void returnBuffers(TCByteBuffer buffers[]) {
@@ -246,19 +270,41 @@ public class TCByteBufferFactory {
   public static void returnBuffer(TCByteBuffer buf) {
     if (disablePooling) { return; }
 
-    if (buf.capacity() == FIXED_BUFFER_SIZE) {
-      BufferPool bufferPool = buf.getBufferPool();
+    BufferPool bufferPool = buf.getBufferPool();
+    if (bufferPool != null) {
       buf.commit();
+      try {
+        bufferPool.offer(buf);
+      } catch (InterruptedException e) {
+        logger.warn("interrupted while trying to return buffer", e);
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
 
-      if (bufferPool != null) {
-        try {
-          bufferPool.offer(buf);
-        } catch (InterruptedException e) {
-          logger.warn("interrupted while trying to return buffer", e);
-          Thread.currentThread().interrupt();
-        }
+  /**
+   * Usage and leak accounting of the buffer pools, per size class: buffers created, requested, served from a thread
+   * cache or the shared arena, returned, discarded because the pool was full, currently outstanding (handed out and
+   * not recycled) and currently held by the shared arena.
+   */
+  public static Map<String, Long> getPoolStatistics() {
+    Map<String, Long> stats = new LinkedHashMap<String, Long>();
+    if (disablePooling) { return stats; }
+    for (BufferSizeClass[] classes : new BufferSizeClass[][] { nonDirectSizeClasses, directSizeClasses }) {
+      for (BufferSizeClass sizeClass : classes) {
+        String prefix = sizeClass.getName() + ".";
+        stats.put(prefix + "created", sizeClass.getCreatedCount());
+        stats.put(prefix + "requested", sizeClass.getRequestedCount());
+        stats.put(prefix + "threadCacheHits", sizeClass.getCacheHitCount());
+        stats.put(prefix + "arenaHits", sizeClass.getArenaHitCount());
+        stats.put(prefix + "returned", sizeClass.getReturnedCount());
+        stats.put(prefix + "discarded", sizeClass.getDiscardedCount());
+        stats.put(prefix + "outstanding", sizeClass.getOutstandingCount());
+        stats.put(prefix + "outstandingBytes", sizeClass.getOutstandingCount() * sizeClass.getCapacity());
+        stats.put(prefix + "arenaSize", (long) sizeClass.getArenaSize());
       }
     }
+    return stats;
   }
 
   public static TCByteBuffer wrap(byte[] buf) {
@@ -22,8 +22,6 @@ import com.tc.util.Assert;
 import com.tc.util.State;
 
 import java.nio.ByteBuffer;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author teck A thin wrapper to a real java.nio.ByteBuffer instance
@@ -39,16 +37,16 @@ public class TCByteBufferImpl implements TCByteBuffer, BufferPool {
 
   private final ByteBuffer          buffer;
   private final TCByteBuffer        root;
-  private final LinkedBlockingQueue<TCByteBuffer> bufPool;
+  private final BufferPool          bufPool;
   private State                     state       = INIT;
 
-  TCByteBufferImpl(int capacity, boolean direct, LinkedBlockingQueue<TCByteBuffer> poolQueue) {
+  TCByteBufferImpl(int capacity, boolean direct, BufferPool pool) {
     if (direct) {
       buffer = ByteBuffer.allocateDirect(capacity);
     } else {
       buffer = ByteBuffer.allocate(capacity);
     }
-    bufPool = poolQueue;
+    bufPool = pool;
     root = this;
   }
 
@@ -593,13 +591,14 @@ public class TCByteBufferImpl implements TCByteBuffer, BufferPool {
 
   @Override
   public BufferPool getBufferPool() {
-    return this;
+    // only buffers allocated for one of the factory's size classes go back to a pool
+    return (this.bufPool == null) ? null : this;
   }
 
   @Override
   public void offer(TCByteBuffer buf) throws InterruptedException {
     if (this.bufPool != null) {
-      this.bufPool.offer(buf, 0, TimeUnit.MILLISECONDS);
+      this.bufPool.offer(buf);
     }
   }
 
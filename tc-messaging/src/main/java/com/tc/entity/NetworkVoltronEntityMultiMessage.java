@@ -0,0 +1,45 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.entity;
+
+import com.tc.net.protocol.tcm.TCMessage;
+
+import java.util.List;
+
+
+/**
+ * Several INVOKE_ACTION messages from one client coalesced into a single network message.  The server unpacks them, in
+ * order, into individual VoltronEntityMessages so each invoke keeps its own transaction and its own acks.
+ */
+public interface NetworkVoltronEntityMultiMessage extends TCMessage {
+  /**
+   * Appends an invoke which has already had its contents set.  Only the contents are copied, the given message is never
+   * sent itself.
+   */
+  public void addInvoke(NetworkVoltronEntityMessage invoke);
+
+  public int getInvokeCount();
+
+  /**
+   * @return The invokes, in the order they were added on the client.
+   */
+  public List<VoltronEntityMessage> getInvokes();
+
+  public void setMessageCodecSupplier(MessageCodecSupplier supplier);
+}
@@ -0,0 +1,222 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.entity;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.io.TCByteBufferInputStream;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.ClientID;
+import com.tc.net.protocol.tcm.MessageChannel;
+import com.tc.net.protocol.tcm.MessageMonitor;
+import com.tc.net.protocol.tcm.TCMessageHeader;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.object.EntityDescriptor;
+import com.tc.object.msg.DSOMessageBase;
+import com.tc.object.session.SessionID;
+import com.tc.object.tx.TransactionID;
+import com.tc.util.Assert;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.terracotta.entity.EntityMessage;
+import org.terracotta.entity.EntityResponse;
+import org.terracotta.entity.MessageCodec;
+import org.terracotta.entity.MessageCodecException;
+
+
+public class NetworkVoltronEntityMultiMessageImpl extends DSOMessageBase implements NetworkVoltronEntityMultiMessage {
+  private static final byte INVOKES_ID = 0;
+
+  private ClientID clientID;
+  private final List<VoltronEntityMessage> invokes = new ArrayList<VoltronEntityMessage>();
+  private MessageCodecSupplier supplier;
+
+  public NetworkVoltronEntityMultiMessageImpl(SessionID sessionID, MessageMonitor monitor, TCByteBufferOutputStream out, MessageChannel channel, TCMessageType type) {
+    super(sessionID, monitor, out, channel, type);
+  }
+
+  public NetworkVoltronEntityMultiMessageImpl(SessionID sessionID, MessageMonitor monitor, MessageChannel channel, TCMessageHeader header, TCByteBuffer[] data) {
+    super(sessionID, monitor, channel, header, data);
+  }
+
+  @Override
+  public void addInvoke(NetworkVoltronEntityMessage invoke) {
+    Assert.assertTrue(invoke.getVoltronType() == VoltronEntityMessage.Type.INVOKE_ACTION);
+    if (null == this.clientID) {
+      this.clientID = invoke.getSource();
+    } else {
+      Assert.assertEquals(this.clientID, invoke.getSource());
+    }
+    this.invokes.add(new Invoke(invoke.getSource(), invoke.getTransactionID(), invoke.getEntityDescriptor(), invoke.doesRequireReplication(), 
+        invoke.getExtendedData(), invoke.getOldestTransactionOnClient(), invoke.getRequestedAcks(), null));
+  }
+
+  @Override
+  public int getInvokeCount() {
+    return this.invokes.size();
+  }
+
+  @Override
+  public List<VoltronEntityMessage> getInvokes() {
+    return Collections.unmodifiableList(this.invokes);
+  }
+
+  @Override
+  public void setMessageCodecSupplier(MessageCodecSupplier supplier) {
+    this.supplier = supplier;
+  }
+
+  @Override
+  protected void dehydrateValues() {
+    Assert.assertFalse(this.invokes.isEmpty());
+    TCByteBufferOutputStream outputStream = getOutputStream();
+    putNVPair(INVOKES_ID, this.invokes.size());
+    // Every invoke comes from the same client so the source is only written once.
+    this.clientID.serializeTo(outputStream);
+    for (VoltronEntityMessage message : this.invokes) {
+      Invoke invoke = (Invoke) message;
+      outputStream.writeLong(invoke.transactionID.toLong());
+      invoke.entityDescriptor.serializeTo(outputStream);
+      outputStream.writeInt(invoke.extendedData.length);
+      outputStream.write(invoke.extendedData);
+      outputStream.writeBoolean(invoke.requiresReplication);
+      outputStream.writeLong(invoke.oldestTransactionPending.toLong());
+      outputStream.writeByte(invoke.requestedAcks.size());
+      for (VoltronEntityMessage.Acks ack : invoke.requestedAcks) {
+        outputStream.writeByte(ack.ordinal());
+      }
+    }
+  }
+
+  @Override
+  protected boolean hydrateValue(byte name) throws IOException {
+    Assert.assertTrue(INVOKES_ID == name);
+    int count = getIntValue();
+    TCByteBufferInputStream input = getInputStream();
+    this.clientID = ClientID.readFrom(input);
+    for (int i = 0; i < count; i++) {
+      TransactionID transactionID = new TransactionID(getLongValue());
+      EntityDescriptor entityDescriptor = EntityDescriptor.readFrom(input);
+      byte[] extendedData = getBytesArray();
+      boolean requiresReplication = getBooleanValue();
+      TransactionID oldestTransactionPending = new TransactionID(getLongValue());
+      Set<VoltronEntityMessage.Acks> acks = EnumSet.noneOf(VoltronEntityMessage.Acks.class);
+      int ackCount = getByteValue();
+      for (int x = 0; x < ackCount; x++) {
+        acks.add(VoltronEntityMessage.Acks.values()[getByteValue()]);
+      }
+      this.invokes.add(new Invoke(this.clientID, transactionID, entityDescriptor, requiresReplication, extendedData, oldestTransactionPending, acks, decode(entityDescriptor, extendedData)));
+    }
+    return true;
+  }
+
+  private EntityMessage decode(EntityDescriptor entityDescriptor, byte[] extendedData) {
+    // As with the single message, decoding here is only an optimization.  A failure is left for the later stage which
+    //  decodes again and reports the exception back to the client.
+    EntityMessage decoded = null;
+    if (null != this.supplier) {
+      try {
+        MessageCodec<? extends EntityMessage, ? extends EntityResponse> codec = this.supplier.getMessageCodec(entityDescriptor);
+        decoded = codec.decodeMessage(extendedData);
+      } catch (MessageCodecException exception) {
+        // see above
+      }
+    }
+    return decoded;
+  }
+
+  private static class Invoke implements VoltronEntityMessage {
+    private final ClientID source;
+    private final TransactionID transactionID;
+    private final EntityDescriptor entityDescriptor;
+    private final boolean requiresReplication;
+    private final byte[] extendedData;
+    private final TransactionID oldestTransactionPending;
+    private final Set<VoltronEntityMessage.Acks> requestedAcks;
+    private final EntityMessage message;
+
+    public Invoke(ClientID source, TransactionID transactionID, EntityDescriptor entityDescriptor, boolean requiresReplication, 
+        byte[] extendedData, TransactionID oldestTransactionPending, Set<VoltronEntityMessage.Acks> requestedAcks, EntityMessage message) {
+      Assert.assertTrue(entityDescriptor.isIndexed());
+      this.source = source;
+      this.transactionID = transactionID;
+      this.entityDescriptor = entityDescriptor;
+      this.requiresReplication = requiresReplication;
+      this.extendedData = extendedData;
+      this.oldestTransactionPending = oldestTransactionPending;
+      this.requestedAcks = requestedAcks;
+      this.message = message;
+    }
+
+    @Override
+    public ClientID getSource() {
+      return this.source;
+    }
+
+    @Override
+    public TransactionID getTransactionID() {
+      return this.transactionID;
+    }
+
+    @Override
+    public EntityDescriptor getEntityDescriptor() {
+      return this.entityDescriptor;
+    }
+
+    @Override
+    public boolean doesRequireReplication() {
+      return this.requiresReplication;
+    }
+
+    @Override
+    public boolean doesRequestReceived() {
+      return this.requestedAcks.contains(Acks.RECEIVED);
+    }
+
+    @Override
+    public Type getVoltronType() {
+      return Type.INVOKE_ACTION;
+    }
+
+    @Override
+    public byte[] getExtendedData() {
+      return this.extendedData;
+    }
+
+    @Override
+    public TransactionID getOldestTransactionOnClient() {
+      return this.oldestTransactionPending;
+    }
+
+    @Override
+    public EntityMessage getEntityMessage() {
+      return this.message;
+    }
+
+    @Override
+    public String toString() {
+      return "Invoke{" + "source=" + source + ", transactionID=" + transactionID + ", entityDescriptor=" + entityDescriptor + '}';
+    }
+  }
+}
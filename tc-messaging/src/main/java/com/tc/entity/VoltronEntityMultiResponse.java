@@ -37,4 +37,15 @@ public interface VoltronEntityMultiResponse extends TCMessage {
   boolean addRetired(TransactionID tid);
   boolean addResult(TransactionID tid, byte[] result);
   void stopAdding();
+
+  /**
+   * Piggybacks the server's load on the response:  how many requests are queued waiting to be processed.  Only set
+   * this for a client which accepted it in its handshake, older clients fail to read it.
+   */
+  void setQueueDepth(int depth);
+
+  /**
+   * @return The queue depth reported by the server or -1 if it didn't report one.
+   */
+  int getQueueDepth();
 }
@@ -42,10 +42,12 @@ public class VoltronEntityMultiResponseImpl extends DSOMessageBase implements Vo
   private static final byte TRANSACTION_ID = 0;
   private static final byte RESULTS_ID = 1;
   private static final byte RECEIVED_ID = 2;
+  private static final byte QUEUE_DEPTH_ID = 3;
   
   private List<TransactionID> receivedIDs;
   private List<TransactionID> retiredIDs;
   private Map<TransactionID, byte[]> results;
+  private int queueDepth = -1;
 
   private boolean stopAdding;
   
@@ -130,6 +132,16 @@ public class VoltronEntityMultiResponseImpl extends DSOMessageBase implements Vo
     stopAdding = true;
   }
 
+  @Override
+  public synchronized void setQueueDepth(int depth) {
+    this.queueDepth = depth;
+  }
+
+  @Override
+  public synchronized int getQueueDepth() {
+    return this.queueDepth;
+  }
+
   @Override
   protected boolean hydrateValue(byte name) throws IOException {
     TCByteBufferInputStream input = getInputStream();
@@ -147,6 +159,9 @@ public class VoltronEntityMultiResponseImpl extends DSOMessageBase implements Vo
         retiredIDs.add(new TransactionID(input.readLong()));
       }
       return true;
+    } else if (name == QUEUE_DEPTH_ID) {
+      queueDepth = getIntValue();
+      return true;
     } else {
       int size = getIntValue();
       results = new HashMap<TransactionID, byte[]>();
@@ -184,5 +199,8 @@ public class VoltronEntityMultiResponseImpl extends DSOMessageBase implements Vo
         outputStream.write(entries.getValue());
       }
     }
+    if (queueDepth >= 0) {
+      putNVPair(QUEUE_DEPTH_ID, queueDepth);
+    }
   }
 }
@@ -21,6 +21,8 @@ package com.tc.net.core;
 import com.tc.net.TCSocketAddress;
 import com.tc.net.core.event.TCConnectionEventListener;
 import com.tc.net.protocol.NetworkMessageSink;
+import com.tc.net.protocol.transport.WireCompressionStats;
+import com.tc.net.protocol.transport.WireCompressor;
 import com.tc.util.TCTimeoutException;
 
 import java.io.IOException;
@@ -144,6 +146,14 @@ public interface TCConnection extends NetworkMessageSink {
 
   public boolean isTransportEstablished();
 
+  /**
+   * Compress outgoing messages with a payload of at least <code>threshold</code> bytes. Called once the transport
+   * handshake has agreed on the codec with the other side.
+   */
+  public void enableCompression(WireCompressor compressor, int threshold);
+
+  public WireCompressionStats getCompressionStats();
+
   /**
    *
    * @return true iff the connection as been marked for close but hasn't been closed yet
@@ -44,5 +44,12 @@ public interface OOOProtocolMessage extends TCNetworkMessage {
 
   public void reallyDoRecycleOnWrite();
 
+  /**
+   * Sequences the peer holds beyond the acked sequence, carried on ack and handshake messages.
+   *
+   * @return inclusive first/last pairs in ascending order, empty if there are none
+   */
+  public long[] getSelectiveAcks();
+
   public UUID getSessionId();
 }
@@ -19,11 +19,18 @@
 package com.tc.net.protocol.delivery;
 
 import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+import com.tc.io.TCByteBufferInputStream;
 import com.tc.net.protocol.AbstractTCNetworkMessage;
 import com.tc.net.protocol.TCNetworkMessage;
 import com.tc.util.UUID;
 
+import java.io.IOException;
+
 class OOOProtocolMessageImpl extends AbstractTCNetworkMessage implements OOOProtocolMessage {
+  private static final long[] NO_SELECTIVE_ACKS = new long[0];
+
+  private long[]              selectiveAcks;
 
   /**
    * Create a header-only message (no payload). Useful for ack and ack request messages.
@@ -39,6 +46,16 @@ class OOOProtocolMessageImpl extends AbstractTCNetworkMessage implements OOOProt
     super(header, payload);
   }
 
+  /**
+   * Create an ack or handshake message carrying selective acks. The ranges travel as the payload (a count followed by
+   * first/last pairs) so the header, and so the protocol version, is unchanged; a peer which doesn't look for them
+   * just sees a payload it ignores.
+   */
+  OOOProtocolMessageImpl(OOOProtocolMessageHeader header, long[] selectiveAcks) {
+    super(header, encodeSelectiveAcks(selectiveAcks));
+    this.selectiveAcks = selectiveAcks;
+  }
+
   /**
    * Create a message with the given TCNetworkMessage payload. Useful for propogating messages down the network stack.
    */
@@ -96,6 +113,44 @@ class OOOProtocolMessageImpl extends AbstractTCNetworkMessage implements OOOProt
     return getOOOPHeader().isGoodbye();
   }
 
+  @Override
+  public long[] getSelectiveAcks() {
+    if (selectiveAcks == null) {
+      selectiveAcks = (isSend() || getPayload().length == 0) ? NO_SELECTIVE_ACKS : decodeSelectiveAcks(getPayload());
+    }
+    return selectiveAcks;
+  }
+
+  private static TCByteBuffer[] encodeSelectiveAcks(long[] ranges) {
+    if (ranges.length % 2 != 0) { throw new IllegalArgumentException("unpaired selective ack range"); }
+    if (ranges.length == 0) { return null; }
+    TCByteBuffer buffer = TCByteBufferFactory.getInstance(false, 4 + ranges.length * 8);
+    buffer.putInt(ranges.length / 2);
+    for (long seq : ranges) {
+      buffer.putLong(seq);
+    }
+    buffer.flip();
+    return new TCByteBuffer[] { buffer };
+  }
+
+  private static long[] decodeSelectiveAcks(TCByteBuffer[] payload) {
+    TCByteBufferInputStream in = new TCByteBufferInputStream(payload);
+    try {
+      if (in.available() < 4) { return NO_SELECTIVE_ACKS; }
+      int count = in.readInt();
+      if (count <= 0 || in.available() < count * 16L) { return NO_SELECTIVE_ACKS; }
+      long[] ranges = new long[count * 2];
+      for (int i = 0; i < ranges.length; i++) {
+        ranges[i] = in.readLong();
+      }
+      return ranges;
+    } catch (IOException e) {
+      return NO_SELECTIVE_ACKS;
+    } finally {
+      in.close();
+    }
+  }
+
   @Override
   public void doRecycleOnWrite() {
     // we are disabling this because on ooo layer knows when it's safe to recycle the message
@@ -0,0 +1,40 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.transport;
+
+import com.tc.bytes.TCByteBuffer;
+
+/**
+ * Wire message carrying the compressed payload of another, already built, wire message. Sending it completes the
+ * original message, so sent callbacks and buffer recycling behave as if the original had been written.
+ */
+class CompressedWireProtocolMessage extends WireProtocolMessageImpl {
+  private final WireProtocolMessage original;
+
+  CompressedWireProtocolMessage(WireProtocolMessage original, WireProtocolHeader header, TCByteBuffer payload) {
+    super(original.getSource(), header, new TCByteBuffer[] { payload });
+    this.original = original;
+  }
+
+  @Override
+  public void doRecycleOnWrite() {
+    // the original shares our header buffer, the compressed payload is plain heap memory
+    original.wasSent();
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.transport;
+
+/**
+ * Pure java implementation of the LZ4 block format: greedy single probe hash matching, no entropy coding. It trades
+ * ratio for speed, which is what we want on the network path.
+ */
+public class Lz4WireCompressor implements WireCompressor {
+
+  static final byte        CODEC_ID      = 1;
+
+  private static final int MIN_MATCH     = 4;
+  private static final int LAST_LITERALS = 5;
+  private static final int MF_LIMIT      = 12;
+  private static final int MAX_DISTANCE  = 0xFFFF;
+  private static final int HASH_LOG      = 12;
+  private static final int RUN_MASK      = 0x0F;
+  private static final int SKIP_TRIGGER  = 6;
+
+  @Override
+  public byte getCodecId() {
+    return CODEC_ID;
+  }
+
+  @Override
+  public String getName() {
+    return "lz4";
+  }
+
+  @Override
+  public int maxCompressedLength(int length) {
+    return length + length / 255 + 16;
+  }
+
+  @Override
+  public long maxDecompressedLength(int length) {
+    // a length byte of 0xFF adds 255 bytes of output, nothing in the format expands faster than that
+    return 255L * length + RUN_MASK + MIN_MATCH;
+  }
+
+  @Override
+  public int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff) {
+    final int srcEnd = srcOff + srcLen;
+    final int mfLimit = srcEnd - MF_LIMIT;
+    final int matchLimit = srcEnd - LAST_LITERALS;
+    int sOff = srcOff;
+    int dOff = dstOff;
+    int anchor = sOff;
+
+    if (srcLen > MF_LIMIT) {
+      final int[] hashTable = new int[1 << HASH_LOG];
+      sOff++;
+      while (sOff < mfLimit) {
+        int ref;
+        int searchCount = 1 << SKIP_TRIGGER;
+        // find a match, skipping faster through data that doesn't compress
+        while (true) {
+          int h = hash(readInt(src, sOff));
+          // table entries are stored +1 so that zero means empty
+          ref = hashTable[h] - 1 + srcOff;
+          hashTable[h] = sOff - srcOff + 1;
+          if (ref >= srcOff && sOff - ref <= MAX_DISTANCE && readInt(src, ref) == readInt(src, sOff)) {
+            break;
+          }
+          sOff += searchCount++ >>> SKIP_TRIGGER;
+          if (sOff >= mfLimit) {
+            return writeLastLiterals(src, anchor, srcEnd - anchor, dst, dOff) - dstOff;
+          }
+        }
+
+        while (sOff > anchor && ref > srcOff && src[sOff - 1] == src[ref - 1]) {
+          sOff--;
+          ref--;
+        }
+
+        int literalLength = sOff - anchor;
+        int tokenOff = dOff++;
+        if (literalLength >= RUN_MASK) {
+          dst[tokenOff] = (byte) (RUN_MASK << 4);
+          dOff = writeLength(literalLength - RUN_MASK, dst, dOff);
+        } else {
+          dst[tokenOff] = (byte) (literalLength << 4);
+        }
+        System.arraycopy(src, anchor, dst, dOff, literalLength);
+        dOff += literalLength;
+
+        int distance = sOff - ref;
+        dst[dOff++] = (byte) distance;
+        dst[dOff++] = (byte) (distance >>> 8);
+
+        sOff += MIN_MATCH;
+        ref += MIN_MATCH;
+        int matchStart = sOff;
+        while (sOff < matchLimit && src[sOff] == src[ref]) {
+          sOff++;
+          ref++;
+        }
+        int matchLength = sOff - matchStart;
+        if (matchLength >= RUN_MASK) {
+          dst[tokenOff] |= RUN_MASK;
+          dOff = writeLength(matchLength - RUN_MASK, dst, dOff);
+        } else {
+          dst[tokenOff] |= matchLength;
+        }
+        anchor = sOff;
+      }
+    }
+    return writeLastLiterals(src, anchor, srcEnd - anchor, dst, dOff) - dstOff;
+  }
+
+  @Override
+  public void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) {
+    final int srcEnd = srcOff + srcLen;
+    final int dstEnd = dstOff + dstLen;
+    int sOff = srcOff;
+    int dOff = dstOff;
+
+    while (true) {
+      checkBounds(sOff < srcEnd);
+      final int token = src[sOff++] & 0xFF;
+
+      int literalLength = token >>> 4;
+      if (literalLength == RUN_MASK) {
+        int b;
+        do {
+          checkBounds(sOff < srcEnd);
+          b = src[sOff++] & 0xFF;
+          // checked before adding so a long run of length bytes can't overflow into a negative length
+          checkBounds(b <= dstEnd - dOff - literalLength);
+          literalLength += b;
+        } while (b == 0xFF);
+      }
+      checkBounds(literalLength <= srcEnd - sOff && literalLength <= dstEnd - dOff);
+      System.arraycopy(src, sOff, dst, dOff, literalLength);
+      sOff += literalLength;
+      dOff += literalLength;
+
+      if (sOff == srcEnd) {
+        // the last sequence carries literals only
+        checkBounds(dOff == dstEnd);
+        return;
+      }
+
+      checkBounds(srcEnd - sOff >= 2);
+      final int distance = (src[sOff] & 0xFF) | ((src[sOff + 1] & 0xFF) << 8);
+      sOff += 2;
+      int ref = dOff - distance;
+      checkBounds(distance > 0 && ref >= dstOff);
+
+      int matchLength = token & RUN_MASK;
+      if (matchLength == RUN_MASK) {
+        int b;
+        do {
+          checkBounds(sOff < srcEnd);
+          b = src[sOff++] & 0xFF;
+          checkBounds(b <= dstEnd - dOff - matchLength);
+          matchLength += b;
+        } while (b == 0xFF);
+      }
+      matchLength += MIN_MATCH;
+      checkBounds(matchLength <= dstEnd - dOff);
+
+      if (distance >= matchLength) {
+        System.arraycopy(dst, ref, dst, dOff, matchLength);
+        dOff += matchLength;
+      } else {
+        // overlapping copy repeats the last distance bytes
+        for (int end = dOff + matchLength; dOff < end;) {
+          dst[dOff++] = dst[ref++];
+        }
+      }
+    }
+  }
+
+  private static int writeLastLiterals(byte[] src, int anchor, int literalLength, byte[] dst, int dOff) {
+    if (literalLength >= RUN_MASK) {
+      dst[dOff++] = (byte) (RUN_MASK << 4);
+      dOff = writeLength(literalLength - RUN_MASK, dst, dOff);
+    } else {
+      dst[dOff++] = (byte) (literalLength << 4);
+    }
+    System.arraycopy(src, anchor, dst, dOff, literalLength);
+    return dOff + literalLength;
+  }
+
+  private static int writeLength(int length, byte[] dst, int dOff) {
+    while (length >= 0xFF) {
+      dst[dOff++] = (byte) 0xFF;
+      length -= 0xFF;
+    }
+    dst[dOff++] = (byte) length;
+    return dOff;
+  }
+
+  private static int readInt(byte[] buf, int off) {
+    return (buf[off] & 0xFF) | ((buf[off + 1] & 0xFF) << 8) | ((buf[off + 2] & 0xFF) << 16) | (buf[off + 3] << 24);
+  }
+
+  private static int hash(int i) {
+    return (i * -1640531535) >>> (32 - HASH_LOG);
+  }
+
+  private static void checkBounds(boolean valid) {
+    if (!valid) { throw new IllegalArgumentException("Malformed LZ4 block"); }
+  }
+}
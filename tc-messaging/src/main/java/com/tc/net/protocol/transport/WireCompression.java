@@ -0,0 +1,149 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.transport;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+import com.tc.net.protocol.TCProtocolException;
+
+/**
+ * Compresses and decompresses wire protocol message payloads. A compressed payload is the uncompressed length as a
+ * 4 byte int followed by the codec output, and its header has the compressed flag and the codec id set in the type
+ * of service byte, so the receiving side never needs negotiated state to decode it.
+ */
+public final class WireCompression {
+
+  private static final WireCompressor[] CODECS        = { new Lz4WireCompressor(), new DeflateWireCompressor() };
+  private static final int              LENGTH_PREFIX = 4;
+
+  private WireCompression() {
+    // no instances
+  }
+
+  public static WireCompressor forName(String name) {
+    for (WireCompressor codec : CODECS) {
+      if (codec.getName().equalsIgnoreCase(name.trim())) { return codec; }
+    }
+    throw new IllegalArgumentException("Unknown wire compression codec: " + name);
+  }
+
+  /**
+   * @return the codec or <code>null</code> if there is none with this id
+   */
+  public static WireCompressor forId(byte codecId) {
+    for (WireCompressor codec : CODECS) {
+      if (codec.getCodecId() == codecId) { return codec; }
+    }
+    return null;
+  }
+
+  /**
+   * Compresses the payload of a sealed message that is about to be written. Messages smaller than
+   * <code>threshold</code>, or that would shrink by less than an eighth, are returned as is.
+   */
+  public static WireProtocolMessage compress(WireProtocolMessage message, WireCompressor compressor, int threshold,
+                                             WireCompressionStats stats) {
+    final int length = message.getDataLength();
+    if (length < threshold) { return message; }
+
+    final long start = System.nanoTime();
+    final TCByteBuffer[] data = message.getEntireMessageData();
+    final byte[] raw = new byte[length];
+    int offset = 0;
+    // index 0 is the header
+    for (int i = 1; i < data.length; i++) {
+      final int n = data[i].limit();
+      data[i].get(0, raw, offset, n);
+      offset += n;
+    }
+
+    final byte[] compressed = new byte[LENGTH_PREFIX + compressor.maxCompressedLength(length)];
+    final int compressedLength = LENGTH_PREFIX + compressor.compress(raw, 0, length, compressed, LENGTH_PREFIX);
+    if (compressedLength > length - (length >>> 3)) {
+      stats.recordSkipped(System.nanoTime() - start);
+      return message;
+    }
+    compressed[0] = (byte) (length >>> 24);
+    compressed[1] = (byte) (length >>> 16);
+    compressed[2] = (byte) (length >>> 8);
+    compressed[3] = (byte) length;
+
+    final WireProtocolHeader header = message.getWireProtocolHeader();
+    header.setCompressionCodec(compressor.getCodecId());
+    header.setCompressed(true);
+    final TCByteBuffer payload = TCByteBufferFactory.wrap(compressed);
+    payload.limit(compressedLength);
+    final WireProtocolMessage rv = new CompressedWireProtocolMessage(message, header, payload);
+    stats.recordCompressed(length, compressedLength, System.nanoTime() - start);
+    return rv;
+  }
+
+  /**
+   * Inflates a received compressed payload and rewrites the header to describe the uncompressed message. The given
+   * buffers are recycled.
+   *
+   * @param stats counters to update, may be <code>null</code>
+   */
+  public static TCByteBuffer[] decompress(WireProtocolHeader header, TCByteBuffer[] data, WireCompressionStats stats)
+      throws TCProtocolException {
+    final long start = System.nanoTime();
+    final WireCompressor compressor = forId(header.getCompressionCodec());
+    if (compressor == null) { throw new TCProtocolException("Unknown wire compression codec: "
+                                                            + header.getCompressionCodec()); }
+
+    int length = 0;
+    for (TCByteBuffer buf : data) {
+      length += buf.limit();
+    }
+    if (length < LENGTH_PREFIX) { throw new TCProtocolException("Compressed payload too short: " + length); }
+    final byte[] compressed = new byte[length];
+    int offset = 0;
+    for (TCByteBuffer buf : data) {
+      final int n = buf.limit();
+      buf.get(0, compressed, offset, n);
+      offset += n;
+    }
+
+    final int uncompressedLength = ((compressed[0] & 0xFF) << 24) | ((compressed[1] & 0xFF) << 16)
+                                   | ((compressed[2] & 0xFF) << 8) | (compressed[3] & 0xFF);
+    if (uncompressedLength < 0 || uncompressedLength > Integer.MAX_VALUE - header.getHeaderByteLength()
+        || uncompressedLength > compressor.maxDecompressedLength(length - LENGTH_PREFIX)) {
+      throw new TCProtocolException("Invalid uncompressed length: " + uncompressedLength + " for "
+                                    + (length - LENGTH_PREFIX) + " " + compressor.getName() + " compressed bytes");
+    }
+    final byte[] raw = new byte[uncompressedLength];
+    try {
+      compressor.decompress(compressed, LENGTH_PREFIX, length - LENGTH_PREFIX, raw, 0, uncompressedLength);
+    } catch (IllegalArgumentException e) {
+      throw new TCProtocolException("Corrupt " + compressor.getName() + " compressed payload", e);
+    }
+    for (TCByteBuffer buf : data) {
+      buf.recycle();
+    }
+
+    header.setCompressed(false);
+    header.setCompressionCodec(WireProtocolHeader.COMPRESSION_NONE);
+    header.setTotalPacketLength(header.getHeaderByteLength() + uncompressedLength);
+    header.computeChecksum();
+    if (stats != null) {
+      stats.recordDecompressed(length, uncompressedLength, System.nanoTime() - start);
+    }
+    return new TCByteBuffer[] { TCByteBufferFactory.wrap(raw) };
+  }
+}
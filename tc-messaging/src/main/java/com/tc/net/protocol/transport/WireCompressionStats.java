@@ -0,0 +1,127 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.transport;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per connection wire compression counters. Outgoing counters are updated by the writing thread and incoming ones by
+ * the reading thread, readers may see them slightly out of step with each other.
+ */
+public class WireCompressionStats {
+  private final AtomicLong compressedMessages   = new AtomicLong();
+  private final AtomicLong skippedMessages      = new AtomicLong();
+  private final AtomicLong bytesBeforeCompress  = new AtomicLong();
+  private final AtomicLong bytesAfterCompress   = new AtomicLong();
+  private final AtomicLong compressNanos        = new AtomicLong();
+  private final AtomicLong decompressedMessages = new AtomicLong();
+  private final AtomicLong bytesBeforeInflate   = new AtomicLong();
+  private final AtomicLong bytesAfterInflate    = new AtomicLong();
+  private final AtomicLong decompressNanos      = new AtomicLong();
+
+  void recordCompressed(int uncompressedLength, int compressedLength, long nanos) {
+    compressedMessages.incrementAndGet();
+    bytesBeforeCompress.addAndGet(uncompressedLength);
+    bytesAfterCompress.addAndGet(compressedLength);
+    compressNanos.addAndGet(nanos);
+  }
+
+  void recordSkipped(long nanos) {
+    skippedMessages.incrementAndGet();
+    compressNanos.addAndGet(nanos);
+  }
+
+  void recordDecompressed(int compressedLength, int uncompressedLength, long nanos) {
+    decompressedMessages.incrementAndGet();
+    bytesBeforeInflate.addAndGet(compressedLength);
+    bytesAfterInflate.addAndGet(uncompressedLength);
+    decompressNanos.addAndGet(nanos);
+  }
+
+  public long getCompressedMessages() {
+    return compressedMessages.get();
+  }
+
+  /**
+   * Messages above the threshold that were sent uncompressed because compressing them didn't save enough.
+   */
+  public long getSkippedMessages() {
+    return skippedMessages.get();
+  }
+
+  public long getUncompressedBytesSent() {
+    return bytesBeforeCompress.get();
+  }
+
+  public long getCompressedBytesSent() {
+    return bytesAfterCompress.get();
+  }
+
+  /**
+   * Time spent compressing, including attempts that were skipped.
+   */
+  public long getCompressNanos() {
+    return compressNanos.get();
+  }
+
+  public long getDecompressedMessages() {
+    return decompressedMessages.get();
+  }
+
+  public long getCompressedBytesReceived() {
+    return bytesBeforeInflate.get();
+  }
+
+  public long getUncompressedBytesReceived() {
+    return bytesAfterInflate.get();
+  }
+
+  public long getDecompressNanos() {
+    return decompressNanos.get();
+  }
+
+  /**
+   * Uncompressed over compressed size of the sent messages that were compressed, 1.0 if nothing was compressed.
+   */
+  public double getSendCompressionRatio() {
+    return ratio(bytesBeforeCompress.get(), bytesAfterCompress.get());
+  }
+
+  public double getReceiveCompressionRatio() {
+    return ratio(bytesAfterInflate.get(), bytesBeforeInflate.get());
+  }
+
+  public boolean isEmpty() {
+    return compressedMessages.get() == 0 && skippedMessages.get() == 0 && decompressedMessages.get() == 0;
+  }
+
+  private static double ratio(long uncompressed, long compressed) {
+    return compressed == 0 ? 1.0 : (double) uncompressed / compressed;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("sent: %d compressed (%.2fx, %d ms), %d skipped; received: %d compressed (%.2fx, %d ms)",
+                         getCompressedMessages(), getSendCompressionRatio(),
+                         TimeUnit.NANOSECONDS.toMillis(getCompressNanos()), getSkippedMessages(),
+                         getDecompressedMessages(), getReceiveCompressionRatio(),
+                         TimeUnit.NANOSECONDS.toMillis(getDecompressNanos()));
+  }
+}
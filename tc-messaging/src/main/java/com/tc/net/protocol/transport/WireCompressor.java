@@ -0,0 +1,56 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.transport;
+
+/**
+ * A block codec used to compress the payload of wire protocol messages. Implementations must be stateless and thread
+ * safe since a single instance is shared by every connection that negotiated it.
+ */
+public interface WireCompressor {
+
+  /**
+   * Identifier carried in the {@link WireProtocolHeader} type of service byte, 1-15.
+   */
+  byte getCodecId();
+
+  String getName();
+
+  /**
+   * Upper bound of the compressed size of <code>length</code> input bytes.
+   */
+  int maxCompressedLength(int length);
+
+  /**
+   * Upper bound of what <code>length</code> compressed bytes can legitimately inflate to, so a receiver can reject a
+   * corrupt or hostile length prefix before allocating for it.
+   */
+  long maxDecompressedLength(int length);
+
+  /**
+   * @return number of bytes written to <code>dst</code>
+   */
+  int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff);
+
+  /**
+   * Decompresses exactly <code>dstLen</code> bytes.
+   *
+   * @throws IllegalArgumentException if the compressed data is malformed
+   */
+  void decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen);
+}
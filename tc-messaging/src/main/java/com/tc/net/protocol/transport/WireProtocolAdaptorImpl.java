@@ -95,6 +95,10 @@ public class WireProtocolAdaptorImpl extends AbstractTCProtocolAdaptor implement
     WireProtocolHeader wph = (WireProtocolHeader) hdr;
     final WireProtocolMessage rv;
 
+    if (wph.isCompressed()) {
+      data = WireCompression.decompress(wph, data, source == null ? null : source.getCompressionStats());
+    }
+
     if (wph.isHandshakeOrHealthCheckMessage()) {
       rv = new TransportMessageImpl(source, wph, data);
     } else {
@@ -74,6 +74,12 @@ public class WireProtocolHeader extends AbstractTCNetworkHeader implements Clone
 
   private static final int     MAGIC_NUM                    = 0xAAAAAAAA;
 
+  // type of service bits: the low bit flags a compressed payload and the high nibble names its codec. On transport
+  // handshake messages the codec nibble alone offers (SYN) or accepts (SYN_ACK) a codec for the connection.
+  private static final short   TOS_COMPRESSED               = 0x01;
+  private static final int     TOS_CODEC_SHIFT              = 4;
+  public static final byte     COMPRESSION_NONE             = 0;
+
   private static final short[] VALID_PROTOCOLS              = new short[] { PROTOCOL_TCM, PROTOCOL_TRANSPORT_HANDSHAKE,
       PROTOCOL_OOOP, PROTOCOL_HEALTHCHECK_PROBES, PROTOCOL_MSGGROUP };
 
@@ -127,6 +133,17 @@ public class WireProtocolHeader extends AbstractTCNetworkHeader implements Clone
     data.putUbyte(1, tos);
   }
 
+  public void setCompressed(boolean compressed) {
+    final short tos = getTypeOfService();
+    setTypeOfService((short) (compressed ? tos | TOS_COMPRESSED : tos & ~TOS_COMPRESSED));
+  }
+
+  public void setCompressionCodec(byte codec) {
+    if ((codec < 0) || (codec > 15)) { throw new IllegalArgumentException("invalid compression codec: " + codec); }
+
+    setTypeOfService((short) ((getTypeOfService() & 0x0F) | (codec << TOS_CODEC_SHIFT)));
+  }
+
   public void setTimeToLive(short ttl) {
     data.putUbyte(2, ttl);
   }
@@ -180,6 +197,14 @@ public class WireProtocolHeader extends AbstractTCNetworkHeader implements Clone
     return data.getUbyte(1);
   }
 
+  public boolean isCompressed() {
+    return (getTypeOfService() & TOS_COMPRESSED) != 0;
+  }
+
+  public byte getCompressionCodec() {
+    return (byte) (getTypeOfService() >>> TOS_CODEC_SHIFT);
+  }
+
   public short getTimeToLive() {
     return data.getUbyte(2);
   }
@@ -51,6 +51,14 @@ public interface ClientHandshakeMessage extends TCMessage {
 
   boolean enterpriseClient();
 
+  /**
+   * Marks a client which can read the server queue depth on a VoltronEntityMultiResponse.  Older clients can't, so the
+   * server only sends it to clients which set this.
+   */
+  void setAcceptsQueueDepth(boolean acceptsQueueDepth);
+
+  boolean acceptsQueueDepth();
+
   long getLocalTimeMills();
 
   void addReconnectReference(ClientEntityReferenceContext context);
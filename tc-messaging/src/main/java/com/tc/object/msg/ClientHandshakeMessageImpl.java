@@ -46,6 +46,8 @@ public class ClientHandshakeMessageImpl extends DSOMessageBase implements Client
   private static final byte   CLIENT_PID               = 7;
   private static final byte   CLIENT_UUID              = 8;
   private static final byte   CLIENT_NAME              = 9;
+  // Carried as the message version rather than an NV pair, which older servers would reject as an unknown name.
+  private static final int    QUEUE_DEPTH_VERSION      = 1;
   
 
   private long                currentLocalTimeMills    = System.currentTimeMillis();
@@ -133,6 +135,16 @@ public class ClientHandshakeMessageImpl extends DSOMessageBase implements Client
     this.enterpriseClient = isEnterpriseClient;
   }
 
+  @Override
+  public void setAcceptsQueueDepth(boolean acceptsQueueDepth) {
+    setMessageVersion(acceptsQueueDepth ? QUEUE_DEPTH_VERSION : 0);
+  }
+
+  @Override
+  public boolean acceptsQueueDepth() {
+    return getMessageVersion() >= QUEUE_DEPTH_VERSION;
+  }
+
   @Override
   public long getLocalTimeMills() {
     return this.currentLocalTimeMills;
@@ -0,0 +1,88 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.bytes;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TCByteBufferFactoryTest {
+
+  @Test
+  public void testLargeLengthsUseLargerSizeClasses() {
+    int length = TCByteBufferFactory.LARGE_BUFFER_SIZE + 2 * TCByteBufferFactory.MEDIUM_BUFFER_SIZE + 5000;
+    TCByteBuffer[] buffers = TCByteBufferFactory.getFixedSizedInstancesForLength(false, length);
+    assertEquals(5, buffers.length);
+    assertEquals(TCByteBufferFactory.LARGE_BUFFER_SIZE, buffers[0].capacity());
+    assertEquals(TCByteBufferFactory.MEDIUM_BUFFER_SIZE, buffers[1].capacity());
+    assertEquals(TCByteBufferFactory.MEDIUM_BUFFER_SIZE, buffers[2].capacity());
+    assertEquals(TCByteBufferFactory.FIXED_BUFFER_SIZE, buffers[3].capacity());
+    assertEquals(TCByteBufferFactory.FIXED_BUFFER_SIZE, buffers[4].capacity());
+    assertEquals(5000 - TCByteBufferFactory.FIXED_BUFFER_SIZE, buffers[4].limit());
+    int total = 0;
+    for (TCByteBuffer buffer : buffers) {
+      total += buffer.limit();
+    }
+    assertEquals(length, total);
+    assertEquals(length - 5000 + 2 * TCByteBufferFactory.FIXED_BUFFER_SIZE,
+                 TCByteBufferFactory.getTotalBufferSizeNeededForMessageSize(length));
+  }
+
+  @Test
+  public void testRecycledBufferIsReused() {
+    TCByteBuffer first = TCByteBufferFactory.getInstance(false, TCByteBufferFactory.MEDIUM_BUFFER_SIZE - 100);
+    assertEquals(TCByteBufferFactory.MEDIUM_BUFFER_SIZE, first.capacity());
+    long outstanding = TCByteBufferFactory.getPoolStatistics().get("heap.64K.outstanding");
+    first.recycle();
+    assertEquals(outstanding - 1, (long) TCByteBufferFactory.getPoolStatistics().get("heap.64K.outstanding"));
+
+    TCByteBuffer second = TCByteBufferFactory.getInstance(false, TCByteBufferFactory.MEDIUM_BUFFER_SIZE);
+    assertSame(first, second);
+    assertEquals(0, second.position());
+    second.recycle();
+  }
+
+  @Test
+  public void testOddSizesAreNotPooled() {
+    TCByteBuffer buffer = TCByteBufferFactory.getInstance(false, 10000);
+    assertEquals(10000, buffer.capacity());
+    assertEquals(null, buffer.getBufferPool());
+  }
+
+  @Test
+  public void testPoolStatistics() {
+    Map<String, Long> stats = TCByteBufferFactory.getPoolStatistics();
+    assertTrue(stats.containsKey("heap.4K.created"));
+    assertTrue(stats.containsKey("direct.1M.arenaSize"));
+  }
+
+  @Test
+  public void testPoolBudgetBoundsEverySizeClass() {
+    // a budget too small for even one 1MiB buffer pools none of them
+    assertEquals(0, TCByteBufferFactory.countForSizeClass(10, TCByteBufferFactory.LARGE_BUFFER_SIZE));
+    assertEquals(3, TCByteBufferFactory.countForSizeClass(10, TCByteBufferFactory.FIXED_BUFFER_SIZE));
+    for (int count : new int[] { 0, 1, 10, 2000, 3000 }) {
+      assertTrue(TCByteBufferFactory.getMaxPooledBytes(count) <= (long) count * TCByteBufferFactory.FIXED_BUFFER_SIZE);
+    }
+  }
+}
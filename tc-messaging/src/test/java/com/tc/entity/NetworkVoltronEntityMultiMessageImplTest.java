@@ -0,0 +1,100 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.entity;
+
+import java.io.IOException;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.entity.VoltronEntityMessage.Acks;
+import com.tc.entity.VoltronEntityMessage.Type;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.ClientID;
+import com.tc.net.protocol.tcm.MessageMonitor;
+import com.tc.net.protocol.tcm.TCMessageHeader;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.net.protocol.tcm.UnknownNameException;
+import com.tc.object.ClientInstanceID;
+import com.tc.object.EntityDescriptor;
+import com.tc.object.FetchID;
+import com.tc.object.session.SessionID;
+import com.tc.object.tx.TransactionID;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+
+public class NetworkVoltronEntityMultiMessageImplTest {
+  @Test
+  public void testSerialization() throws UnknownNameException, IOException {
+    MessageMonitor monitor = mock(MessageMonitor.class);
+    TCByteBufferOutputStream outputStream = new TCByteBufferOutputStream(4, 4096, false);
+    NetworkVoltronEntityMultiMessageImpl message = new NetworkVoltronEntityMultiMessageImpl(new SessionID(0), monitor, outputStream, null, TCMessageType.VOLTRON_ENTITY_MULTI_MESSAGE);
+
+    ClientID clientID = new ClientID(1);
+    EntityDescriptor first = EntityDescriptor.createDescriptorForInvoke(new FetchID(1), new ClientInstanceID(1));
+    EntityDescriptor second = EntityDescriptor.createDescriptorForInvoke(new FetchID(2), new ClientInstanceID(2));
+    message.addInvoke(createInvoke(clientID, 5, first, true, new byte[] {1, 2}, EnumSet.of(Acks.RECEIVED, Acks.COMPLETED)));
+    message.addInvoke(createInvoke(clientID, 6, second, false, new byte[0], EnumSet.noneOf(Acks.class)));
+    message.dehydrate();
+
+    TCMessageHeader header = (TCMessageHeader) message.getHeader();
+    TCByteBuffer[] payload = message.getPayload();
+    outputStream.close();
+    NetworkVoltronEntityMultiMessageImpl decodingMessage = new NetworkVoltronEntityMultiMessageImpl(SessionID.NULL_ID, monitor, null, header, payload);
+    decodingMessage.hydrate();
+
+    List<VoltronEntityMessage> invokes = decodingMessage.getInvokes();
+    assertEquals(2, invokes.size());
+    VoltronEntityMessage decoded = invokes.get(0);
+    assertEquals(clientID, decoded.getSource());
+    assertEquals(new TransactionID(5), decoded.getTransactionID());
+    assertDescriptor(first, decoded.getEntityDescriptor());
+    assertEquals(Type.INVOKE_ACTION, decoded.getVoltronType());
+    assertTrue(decoded.doesRequireReplication());
+    assertTrue(decoded.doesRequestReceived());
+    assertArrayEquals(new byte[] {1, 2}, decoded.getExtendedData());
+    assertEquals(new TransactionID(1), decoded.getOldestTransactionOnClient());
+    decoded = invokes.get(1);
+    assertEquals(clientID, decoded.getSource());
+    assertEquals(new TransactionID(6), decoded.getTransactionID());
+    assertDescriptor(second, decoded.getEntityDescriptor());
+    assertFalse(decoded.doesRequireReplication());
+    assertFalse(decoded.doesRequestReceived());
+    assertEquals(0, decoded.getExtendedData().length);
+  }
+
+  private static void assertDescriptor(EntityDescriptor expected, EntityDescriptor actual) {
+    // invoke descriptors are indexed so they can't be compared with equals()
+    assertEquals(expected.getFetchID(), actual.getFetchID());
+    assertEquals(expected.getClientInstanceID(), actual.getClientInstanceID());
+  }
+
+  private static NetworkVoltronEntityMessage createInvoke(ClientID clientID, long transaction, EntityDescriptor descriptor, boolean requiresReplication, byte[] payload, EnumSet<Acks> acks) {
+    NetworkVoltronEntityMessageImpl invoke = new NetworkVoltronEntityMessageImpl(new SessionID(0), mock(MessageMonitor.class), new TCByteBufferOutputStream(), null, TCMessageType.VOLTRON_ENTITY_MESSAGE);
+    invoke.setContents(clientID, new TransactionID(transaction), descriptor, Type.INVOKE_ACTION, requiresReplication, payload, new TransactionID(1), acks);
+    return invoke;
+  }
+}
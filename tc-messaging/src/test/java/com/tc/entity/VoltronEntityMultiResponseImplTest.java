@@ -0,0 +1,150 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.entity;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.io.TCByteBufferInputStream;
+import com.tc.io.TCByteBufferOutputStream;
+import com.tc.net.protocol.tcm.MessageChannel;
+import com.tc.net.protocol.tcm.MessageMonitor;
+import com.tc.net.protocol.tcm.TCMessageHeader;
+import com.tc.net.protocol.tcm.TCMessageType;
+import com.tc.object.session.SessionID;
+import com.tc.object.tx.TransactionID;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+
+public class VoltronEntityMultiResponseImplTest {
+  @Test
+  public void testQueueDepthIsOptional() throws Exception {
+    VoltronEntityMultiResponse withDepth = roundTrip(42);
+    assertEquals(42, withDepth.getQueueDepth());
+    assertEquals(Arrays.asList(new TransactionID(1)), Arrays.asList(withDepth.getReceivedTransactions()));
+    assertEquals(-1, roundTrip(-1).getQueueDepth());
+  }
+
+  @Test
+  public void testOlderClientReadsResponseWithoutDepth() throws Exception {
+    BaselineMultiResponse decoded = decodeAsBaseline(encode(-1));
+    decoded.hydrate();
+    assertEquals(Arrays.asList(new TransactionID(1)), Arrays.asList(decoded.getReceivedTransactions()));
+    assertEquals(Collections.singleton(new TransactionID(1)), decoded.getResults().keySet());
+  }
+
+  @Test
+  public void testOlderClientCannotReadDepth() throws Exception {
+    // which is why the server only sends it to clients that accept it in their handshake
+    BaselineMultiResponse decoded = decodeAsBaseline(encode(42));
+    try {
+      decoded.hydrate();
+      fail("the depth was read as a block of 42 results");
+    } catch (IOException expected) {
+      // expected
+    }
+  }
+
+  private static VoltronEntityMultiResponse roundTrip(int queueDepth) throws Exception {
+    VoltronEntityMultiResponseImpl sent = encode(queueDepth);
+    VoltronEntityMultiResponseImpl decoded = new VoltronEntityMultiResponseImpl(SessionID.NULL_ID, mock(MessageMonitor.class), null, (TCMessageHeader) sent.getHeader(), sent.getPayload());
+    decoded.hydrate();
+    return decoded;
+  }
+
+  private static BaselineMultiResponse decodeAsBaseline(VoltronEntityMultiResponseImpl sent) {
+    return new BaselineMultiResponse(mock(MessageMonitor.class), (TCMessageHeader) sent.getHeader(), sent.getPayload());
+  }
+
+  private static VoltronEntityMultiResponseImpl encode(int queueDepth) throws Exception {
+    TCByteBufferOutputStream outputStream = new TCByteBufferOutputStream(4, 4096, false);
+    VoltronEntityMultiResponseImpl response = new VoltronEntityMultiResponseImpl(new SessionID(0), mock(MessageMonitor.class), outputStream, null, TCMessageType.VOLTRON_ENTITY_MULTI_RESPONSE);
+    response.addReceived(new TransactionID(1));
+    response.addResult(new TransactionID(1), new byte[] {1});
+    response.setQueueDepth(queueDepth);
+    response.dehydrate();
+    outputStream.close();
+    return response;
+  }
+
+  /**
+   * Reads the message the way clients did before the queue depth was added.
+   */
+  private static class BaselineMultiResponse extends VoltronEntityMultiResponseImpl {
+    private static final byte TRANSACTION_ID = 0;
+    private static final byte RECEIVED_ID = 2;
+
+    private List<TransactionID> receivedIDs;
+    private Map<TransactionID, byte[]> results;
+
+    BaselineMultiResponse(MessageMonitor monitor, TCMessageHeader header, TCByteBuffer[] data) {
+      super(SessionID.NULL_ID, monitor, (MessageChannel) null, header, data);
+    }
+
+    @Override
+    public TransactionID[] getReceivedTransactions() {
+      return receivedIDs.toArray(new TransactionID[receivedIDs.size()]);
+    }
+
+    @Override
+    public Map<TransactionID, byte[]> getResults() {
+      return results;
+    }
+
+    @Override
+    protected boolean hydrateValue(byte name) throws IOException {
+      TCByteBufferInputStream input = getInputStream();
+      if (name == RECEIVED_ID) {
+        int size = getIntValue();
+        receivedIDs = new ArrayList<TransactionID>(size);
+        for (int x=0;x<size;x++) {
+          receivedIDs.add(new TransactionID(input.readLong()));
+        }
+        return true;
+      } else if (name == TRANSACTION_ID) {
+        int size = getIntValue();
+        for (int x=0;x<size;x++) {
+          input.readLong();
+        }
+        return true;
+      } else {
+        int size = getIntValue();
+        results = new HashMap<TransactionID, byte[]>();
+        for (int x=0;x<size;x++) {
+          TransactionID id = new TransactionID(input.readLong());
+          byte[] read = new byte[input.readInt()];
+          input.readFully(read);
+          results.put(id, read);
+        }
+        return true;
+      }
+    }
+  }
+}
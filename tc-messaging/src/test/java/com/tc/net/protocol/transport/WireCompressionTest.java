@@ -0,0 +1,233 @@
+/*
+ *
+ *  The contents of this file are subject to the Terracotta Public License Version
+ *  2.0 (the "License"); You may not use this file except in compliance with the
+ *  License. You may obtain a copy of the License at
+ *
+ *  http://terracotta.org/legal/terracotta-public-license.
+ *
+ *  Software distributed under the License is distributed on an "AS IS" basis,
+ *  WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ *  the specific language governing rights and limitations under the License.
+ *
+ *  The Covered Software is Terracotta Core.
+ *
+ *  The Initial Developer of the Covered Software is
+ *  Terracotta, Inc., a Software AG company
+ *
+ */
+package com.tc.net.protocol.transport;
+
+import com.tc.bytes.TCByteBuffer;
+import com.tc.bytes.TCByteBufferFactory;
+import com.tc.net.protocol.TCProtocolException;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WireCompressionTest {
+
+  private final Random random = new Random(42);
+
+  @Test
+  public void testLz4RoundTrip() {
+    roundTrip(new Lz4WireCompressor());
+  }
+
+  @Test
+  public void testDeflateRoundTrip() {
+    roundTrip(new DeflateWireCompressor());
+  }
+
+  @Test
+  public void testLz4RejectsTruncatedInput() {
+    WireCompressor codec = new Lz4WireCompressor();
+    byte[] raw = compressible(10000);
+    byte[] compressed = new byte[codec.maxCompressedLength(raw.length)];
+    int length = codec.compress(raw, 0, raw.length, compressed, 0);
+    try {
+      codec.decompress(compressed, 0, length / 2, new byte[raw.length], 0, raw.length);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testLz4RejectsLengthRunsBeyondTheOutput() {
+    // enough run bytes for either length to overflow an int if it were summed unchecked
+    int run = Integer.MAX_VALUE / 0xFF + 2;
+    byte[] literals = new byte[run + 2];
+    literals[0] = (byte) 0xF0;
+    Arrays.fill(literals, 1, run + 1, (byte) 0xFF);
+    byte[] match = new byte[run + 5];
+    match[0] = (byte) 0x1F;
+    match[1] = 1;
+    match[2] = 1;
+    Arrays.fill(match, 4, run + 4, (byte) 0xFF);
+
+    WireCompressor codec = new Lz4WireCompressor();
+    for (byte[] corrupt : new byte[][] { literals, match }) {
+      try {
+        codec.decompress(corrupt, 0, corrupt.length, new byte[100], 0, 100);
+        fail();
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testCodecLookup() {
+    assertEquals("lz4", WireCompression.forName("LZ4").getName());
+    assertEquals("deflate", WireCompression.forId(DeflateWireCompressor.CODEC_ID).getName());
+    assertNull(WireCompression.forId((byte) 15));
+    try {
+      WireCompression.forName("snappy");
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testMessageRoundTrip() throws Exception {
+    byte[] raw = compressible(50000);
+    WireProtocolMessage message = message(raw);
+    final AtomicBoolean sent = new AtomicBoolean();
+    message.setSentCallback(new Runnable() {
+      @Override
+      public void run() {
+        sent.set(true);
+      }
+    });
+    WireCompressionStats stats = new WireCompressionStats();
+
+    WireProtocolMessage compressed = WireCompression.compress(message, new Lz4WireCompressor(), 1024, stats);
+    WireProtocolHeader header = compressed.getWireProtocolHeader();
+    assertTrue(header.isCompressed());
+    assertEquals(Lz4WireCompressor.CODEC_ID, header.getCompressionCodec());
+    assertTrue(compressed.getDataLength() < raw.length / 2);
+    assertEquals(header.getHeaderByteLength() + compressed.getDataLength(), header.getTotalPacketLength());
+    assertEquals(1, stats.getCompressedMessages());
+    assertEquals(raw.length, stats.getUncompressedBytesSent());
+    assertTrue(stats.getSendCompressionRatio() > 2.0);
+
+    // what the receiving side reads off the wire
+    TCByteBuffer received = TCByteBufferFactory.getInstance(false, compressed.getDataLength());
+    received.put(compressed.getEntireMessageData()[1]).flip();
+    TCByteBuffer[] inflated = WireCompression.decompress(header, new TCByteBuffer[] { received }, stats);
+    assertFalse(header.isCompressed());
+    assertEquals(header.getHeaderByteLength() + raw.length, header.getTotalPacketLength());
+    assertTrue(header.isChecksumValid());
+    assertArrayEquals(raw, Arrays.copyOf(inflated[0].array(), inflated[0].limit()));
+    assertEquals(1, stats.getDecompressedMessages());
+
+    compressed.wasSent();
+    assertTrue(sent.get());
+  }
+
+  @Test
+  public void testSmallAndIncompressibleMessagesAreSentAsIs() {
+    WireCompressionStats stats = new WireCompressionStats();
+    WireProtocolMessage small = message(compressible(100));
+    assertSame(small, WireCompression.compress(small, new Lz4WireCompressor(), 1024, stats));
+
+    byte[] noise = new byte[20000];
+    random.nextBytes(noise);
+    WireProtocolMessage incompressible = message(noise);
+    assertSame(incompressible, WireCompression.compress(incompressible, new Lz4WireCompressor(), 1024, stats));
+    assertFalse(incompressible.getWireProtocolHeader().isCompressed());
+    assertEquals(1, stats.getSkippedMessages());
+    assertEquals(0, stats.getCompressedMessages());
+  }
+
+  @Test(expected = TCProtocolException.class)
+  public void testUnknownCodecIsAProtocolError() throws Exception {
+    WireProtocolHeader header = new WireProtocolHeader();
+    header.setCompressionCodec((byte) 15);
+    header.setCompressed(true);
+    WireCompression.decompress(header, new TCByteBuffer[] { TCByteBufferFactory.wrap(new byte[8]) }, null);
+  }
+
+  @Test
+  public void testLengthPrefixBeyondCodecRatioIsAProtocolError() throws Exception {
+    byte[] raw = compressible(50000);
+    WireProtocolMessage compressed = WireCompression.compress(message(raw), new Lz4WireCompressor(), 1024,
+                                                              new WireCompressionStats());
+    WireProtocolHeader header = compressed.getWireProtocolHeader();
+    TCByteBuffer received = TCByteBufferFactory.getInstance(false, compressed.getDataLength());
+    received.put(compressed.getEntireMessageData()[1]).flip();
+    // claim a 1GiB payload, which must be refused before anything is allocated for it
+    received.put(0, (byte) 0x40);
+    try {
+      WireCompression.decompress(header, new TCByteBuffer[] { received }, null);
+      fail();
+    } catch (TCProtocolException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testDecompressedBoundCoversHighlyCompressibleInput() {
+    byte[] zeros = new byte[4 * 1024 * 1024];
+    for (WireCompressor codec : new WireCompressor[] { new Lz4WireCompressor(), new DeflateWireCompressor() }) {
+      byte[] compressed = new byte[codec.maxCompressedLength(zeros.length)];
+      int length = codec.compress(zeros, 0, zeros.length, compressed, 0);
+      assertTrue(codec.getName(), zeros.length <= codec.maxDecompressedLength(length));
+    }
+  }
+
+  private void roundTrip(WireCompressor codec) {
+    byte[] noise = new byte[5000];
+    random.nextBytes(noise);
+    byte[][] inputs = { new byte[0], new byte[] { 1, 2, 3 }, new byte[13], compressible(100000), noise,
+        repeated(70000) };
+    for (byte[] raw : inputs) {
+      byte[] compressed = new byte[3 + codec.maxCompressedLength(raw.length)];
+      int length = codec.compress(raw, 0, raw.length, compressed, 3);
+      assertTrue(length <= codec.maxCompressedLength(raw.length));
+      byte[] restored = new byte[raw.length + 5];
+      codec.decompress(compressed, 3, length, restored, 5, raw.length);
+      assertArrayEquals(raw, Arrays.copyOfRange(restored, 5, restored.length));
+    }
+  }
+
+  private WireProtocolMessage message(byte[] raw) {
+    // split across a few buffers like a real message
+    int split = raw.length / 3;
+    TCByteBuffer[] payload = { TCByteBufferFactory.wrap(Arrays.copyOfRange(raw, 0, split)),
+        TCByteBufferFactory.wrap(Arrays.copyOfRange(raw, split, raw.length)) };
+    WireProtocolHeader header = new WireProtocolHeader();
+    header.setProtocol(WireProtocolHeader.PROTOCOL_TCM);
+    return new WireProtocolMessageImpl(null, header, payload);
+  }
+
+  private byte[] compressible(int length) {
+    String[] words = { "entity", "invoke", "passive", "sync", "replicate", "ack", "transaction", "key", "value" };
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < length) {
+      sb.append(words[random.nextInt(words.length)]).append(random.nextInt(100)).append(' ');
+    }
+    return Arrays.copyOf(sb.toString().getBytes(), length);
+  }
+
+  private static byte[] repeated(int length) {
+    byte[] b = new byte[length];
+    for (int i = 0; i < length; i++) {
+      b[i] = (byte) (i % 7);
+    }
+    return b;
+  }
+}
@@ -86,6 +86,26 @@ public class WireProtocolHeaderTest {
     assertTrue(header.getOptions().length == 0);
   }
 
+  @Test
+  public void testCompressionBits() {
+    WireProtocolHeader header = new WireProtocolHeader();
+    assertFalse(header.isCompressed());
+    assertTrue(WireProtocolHeader.COMPRESSION_NONE == header.getCompressionCodec());
+
+    header.setCompressionCodec((byte) 9);
+    assertFalse(header.isCompressed());
+    header.setCompressed(true);
+    assertTrue(header.isCompressed());
+    assertTrue(9 == header.getCompressionCodec());
+
+    header.setCompressionCodec((byte) 3);
+    assertTrue(header.isCompressed());
+    assertTrue(3 == header.getCompressionCodec());
+    header.setCompressed(false);
+    assertFalse(header.isCompressed());
+    assertTrue(3 == header.getCompressionCodec());
+  }
+
   @Test
   public void testVersion() {
     WireProtocolHeader header = new WireProtocolHeader();
@@ -66,5 +66,21 @@ public class ClientHandshakeMessageTest {
     Assert.assertTrue(reconnectReferences.contains(ref1));
     Assert.assertTrue(reconnectReferences.contains(ref2));
     Assert.assertFalse(reconnectReferences.contains(ref3));
+    Assert.assertFalse(msg2.acceptsQueueDepth());
+  }
+
+  @Test
+  public void testAcceptsQueueDepth() throws Exception {
+    ClientHandshakeMessageImpl msg = new ClientHandshakeMessageImpl(new SessionID(0), mock(MessageMonitor.class),
+                                                                    new TCByteBufferOutputStream(4, 4096, false), null,
+                                                                    TCMessageType.CLIENT_HANDSHAKE_MESSAGE);
+    msg.setAcceptsQueueDepth(true);
+    msg.dehydrate();
+
+    ClientHandshakeMessageImpl msg2 = new ClientHandshakeMessageImpl(SessionID.NULL_ID, mock(MessageMonitor.class), null,
+                                                                     (TCMessageHeader) msg.getHeader(), msg
+                                                                         .getPayload());
+    msg2.hydrate();
+    Assert.assertTrue(msg2.acceptsQueueDepth());
   }
 }